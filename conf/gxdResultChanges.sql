@@ -0,0 +1,18 @@
+-- Change set for incremental (delta) gxdResult runs.
+--
+-- One row per added ('A'), changed ('C'), or deleted ('D') expression result.  For classical
+-- results, result_key is expression_result_summary.result_key and is_classical is 1; for RNA-Seq
+-- data, result_key is expression_ht_consolidated_sample_measurement.consolidated_measurement_key
+-- and is_classical is 0.  An incremental run picks up the rows with changed_at after the watermark
+-- saved by the last successful run.
+--
+-- This table may be filled by the process that loads the database, or by hand for testing.
+
+create table gxd_result_changes (
+	result_key	int		not null,
+	is_classical	int		not null,
+	change_type	char(1)		not null,
+	changed_at	timestamp	not null default now()
+);
+
+create index gxd_result_changes_changed_at on gxd_result_changes (changed_at);
@@ -0,0 +1,137 @@
+package org.jax.mgi.gxdindexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jax.mgi.gxdindexer.GxdResultIndexer.ChunkCache;
+import org.jax.mgi.shr.fe.query.SolrLocationTranslator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * GxdResultDocBenchmark
+ *
+ * Times the building of gxdResult documents from rows (GxdResultDocMapper),
+ * and the small helpers it calls for every row, on SyntheticData.  Each
+ * benchmark handles a batch of ROWS rows, and reports the time per row.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class GxdResultDocBenchmark {
+	public static final int ROWS = 10000;
+	public static final int LOCATED_ROWS = ROWS / 2;	// rows (of those with coordinates) for locationIndexValue
+
+	private GxdResultDocMapper mapper;
+	private ChunkCache cc;
+	private List<GxdResultRow> classicalRows;
+	private List<GxdResultRow> rnaSeqRows;
+
+	// inputs for the helpers, taken from the rows
+	private String[] ages;
+	private String[] detectionLevels;
+	private String[][] joinerArgs;
+	private String[] chromosomes;
+	private long[] startCoords;
+	private long[] endCoords;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SyntheticData data = new SyntheticData();
+		cc = data.chunkCache(new GxdResultIndexer());
+		mapper = data.mapper();
+		classicalRows = data.classicalRows(ROWS);
+		rnaSeqRows = data.rnaSeqRows(ROWS);
+
+		ages = new String[ROWS];
+		detectionLevels = new String[ROWS];
+		joinerArgs = new String[ROWS][];
+		List<Integer> located = new ArrayList<Integer>();
+		for (int i = 0; i < ROWS; i++) {
+			GxdResultRow row = classicalRows.get(i);
+			ages[i] = row.ageMin;
+			detectionLevels[i] = row.detectionLevel;
+			joinerArgs[i] = new String[] { cc.emapaID.get(row.structureTermKey), row.isExpressed,
+				row.markerKey, row.theilerStage };
+			if (cc.startCoord.containsKey(row.markerKey)) {
+				located.add(i);
+			}
+		}
+		chromosomes = new String[LOCATED_ROWS];
+		startCoords = new long[LOCATED_ROWS];
+		endCoords = new long[LOCATED_ROWS];
+		for (int i = 0; i < LOCATED_ROWS; i++) {
+			String markerKey = classicalRows.get(located.get(i)).markerKey;
+			chromosomes[i] = cc.chromosome.get(markerKey);
+			startCoords[i] = Long.parseLong(cc.startCoord.get(markerKey));
+			endCoords[i] = Long.parseLong(cc.endCoord.get(markerKey));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void classicalDoc(Blackhole bh) throws Exception {
+		for (GxdResultRow row : classicalRows) {
+			bh.consume(mapper.toDoc(row, cc));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void rnaSeqDoc(Blackhole bh) throws Exception {
+		for (GxdResultRow row : rnaSeqRows) {
+			bh.consume(mapper.toDoc(row, cc));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void joiner(Blackhole bh) {
+		for (String[] args : joinerArgs) {
+			bh.consume(mapper.joiner(args[0], args[1], args[2], args[3]));
+			bh.consume(mapper.joiner(args[0], args[1], args[3]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void roundAge(Blackhole bh) {
+		for (String age : ages) {
+			bh.consume(mapper.roundAge(age));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void mapDetectionLevel(Blackhole bh) {
+		for (String level : detectionLevels) {
+			bh.consume(mapper.mapDetectionLevel(level));
+		}
+	}
+
+	// SolrLocationTranslator.getIndexValue() as GxdResultDocMapper calls it (once for each
+	// row whose marker has coordinates)
+	@Benchmark
+	@OperationsPerInvocation(LOCATED_ROWS)
+	public void locationIndexValue(Blackhole bh) {
+		for (int i = 0; i < chromosomes.length; i++) {
+			bh.consume(SolrLocationTranslator.getIndexValue(chromosomes[i], startCoords[i], endCoords[i], true));
+		}
+	}
+}
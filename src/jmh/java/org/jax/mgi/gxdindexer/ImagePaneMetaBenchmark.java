@@ -0,0 +1,135 @@
+package org.jax.mgi.gxdindexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jax.mgi.gxdindexer.GxdImagePaneIndexer.PaneMeta;
+import org.jax.mgi.gxdindexer.shr.JsonCache;
+import org.jax.mgi.shr.jsonmodel.GxdImageMeta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * ImagePaneMetaBenchmark
+ *
+ * Times what GxdImagePaneIndexer does with each image pane's meta data:
+ * sorting it (by marker symbol, then assay type) and writing each entry as
+ * JSON, either with a new ObjectMapper call per entry (as it once did) or
+ * through a JsonCache keyed by the indexer's content keys (as it does now).
+ * Uses PANES synthetic panes, most with one or two entries and a few with
+ * many; the panes of one image (one to eight, skewed low) share the same meta
+ * data, as they do in the database.  Reports the time per pane.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public class ImagePaneMetaBenchmark {
+	public static final int PANES = 5000;
+
+	private GxdImagePaneIndexer indexer;
+	private List<List<PaneMeta>> panes;
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SyntheticData data = new SyntheticData();
+		indexer = new GxdImagePaneIndexer();
+		for (int i = 0; i < SyntheticData.ASSAY_TYPES.size(); i++) {
+			indexer.assayTypeSeqMap.put(SyntheticData.ASSAY_TYPES.get(i), i + 1);
+		}
+
+		panes = new ArrayList<List<PaneMeta>>(PANES);
+		while (panes.size() < PANES) {
+			// one image's meta data:  marker, assay type, hybridization and specimen labels per entry
+			List<String[]> entries = new ArrayList<String[]>();
+			int entryCount = data.skewed(1, 60);
+			for (int e = 0; e < entryCount; e++) {
+				int specimens = data.skewed(1, 20);
+				String[] entry = new String[3 + specimens * 2];
+				entry[0] = "Gene" + data.nextInt(SyntheticData.MARKERS);
+				entry[1] = SyntheticData.ASSAY_TYPES.get(data.nextInt(3));
+				entry[2] = (e % 2 == 0) ? "section" : "whole mount";
+				for (int s = 0; s < specimens; s++) {
+					entry[3 + s * 2] = "specimen " + s;
+					entry[4 + s * 2] = "MGI:" + (5000000 + data.nextInt(SyntheticData.ASSAYS));
+				}
+				entries.add(entry);
+			}
+
+			// each of the image's panes gets its own copy, as the indexer builds one per pane
+			int imagePanes = Math.min(data.skewed(1, 8), PANES - panes.size());
+			for (int p = 0; p < imagePanes; p++) {
+				List<PaneMeta> metas = new ArrayList<PaneMeta>();
+				for (String[] entry : entries) {
+					GxdImageMeta meta = new GxdImageMeta();
+					meta.setMarkerSymbol(entry[0]);
+					meta.setAssayType(entry[1]);
+					meta.setHybridization(entry[2]);
+					PaneMeta paneMeta = new PaneMeta(meta);
+					for (int s = 3; s < entry.length; s += 2) {
+						paneMeta.addSpecimenLabel(entry[s], entry[s + 1]);
+					}
+					metas.add(paneMeta);
+				}
+				panes.add(metas);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PANES)
+	public void sortMeta(Blackhole bh) {
+		GxdImagePaneIndexer.ImageMetaComparator<GxdImageMeta> comparator =
+			indexer.new ImageMetaComparator<GxdImageMeta>();
+		for (List<PaneMeta> metas : panes) {
+			List<GxdImageMeta> sorted = new ArrayList<GxdImageMeta>(metas.size());
+			for (PaneMeta paneMeta : metas) {
+				sorted.add(paneMeta.meta);
+			}
+			Collections.sort(sorted, comparator);
+			bh.consume(sorted);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PANES)
+	public void serializeMeta(Blackhole bh) throws Exception {
+		for (List<PaneMeta> metas : panes) {
+			for (PaneMeta paneMeta : metas) {
+				bh.consume(objectMapper.writeValueAsString(paneMeta.meta));
+			}
+		}
+	}
+
+	// a new cache for each pass over the panes, as for each indexer run, so repeats are
+	// only found within the pass
+	@Benchmark
+	@OperationsPerInvocation(PANES)
+	public void serializeMetaCached(Blackhole bh) throws Exception {
+		JsonCache cache = new JsonCache(objectMapper.writerFor(GxdImageMeta.class), 200000);
+		for (List<PaneMeta> metas : panes) {
+			for (PaneMeta paneMeta : metas) {
+				bh.consume(cache.toJson(paneMeta.contentKey.toString(), paneMeta.meta));
+			}
+		}
+	}
+}
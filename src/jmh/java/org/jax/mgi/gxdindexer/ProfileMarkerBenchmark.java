@@ -0,0 +1,56 @@
+package org.jax.mgi.gxdindexer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ProfileMarkerBenchmark
+ *
+ * Times GxdProfileMarkerIndexer.buildSolrDoc() for a slice of MARKERS markers
+ * (with skewed numbers of results, as in the real data), against a synthetic
+ * EMAPS/EMAPA DAG.  Reports the time per marker.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class ProfileMarkerBenchmark {
+	public static final int MARKERS = 2000;
+
+	private GxdProfileMarkerIndexer indexer;
+	private Map<Integer,List<GxdProfileMarkerIndexer.Result>> markerResults;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SyntheticData data = new SyntheticData();
+		indexer = new GxdProfileMarkerIndexer();
+		data.fillStructures(indexer);
+		markerResults = data.profileResults(indexer, MARKERS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MARKERS)
+	public void buildSolrDoc(Blackhole bh) throws Exception {
+		for (Map.Entry<Integer,List<GxdProfileMarkerIndexer.Result>> entry : markerResults.entrySet()) {
+			bh.consume(indexer.buildSolrDoc(entry.getKey(), "MGI:" + entry.getKey(), entry.getValue()));
+		}
+	}
+}
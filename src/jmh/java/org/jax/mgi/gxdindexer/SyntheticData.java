@@ -0,0 +1,473 @@
+package org.jax.mgi.gxdindexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jax.mgi.gxdindexer.GxdResultIndexer.ChunkCache;
+import org.jax.mgi.gxdindexer.shr.CacheFixtures;
+import org.jax.mgi.gxdindexer.shr.DagClosure;
+import org.jax.mgi.gxdindexer.shr.IntStringMap;
+import org.jax.mgi.gxdindexer.shr.StringTable;
+
+/**
+ * SyntheticData
+ *
+ * Builds the lookups and rows the document-building code works from, with
+ * made-up values at roughly the cardinalities of the real data (numbers of
+ * markers, genotypes, anatomy terms, vocabulary values, results per marker,
+ * depth of the anatomy DAG, etc.), so the benchmarks need no database.
+ *
+ * Everything comes from a Random with a fixed seed, so each run of a
+ * benchmark sees the same data.
+ */
+
+public class SyntheticData {
+	// cardinalities
+	public static int MARKERS = 30000;			// markers with expression data
+	public static int GENOTYPES = 20000;
+	public static int REFERENCES = 15000;
+	public static int ASSAYS = 100000;
+	public static int EMAPA_TERMS = 6000;
+	public static int STAGES = 28;				// Theiler stages
+	public static int STAGES_PER_TERM = 7;		// average stages each EMAPA term spans
+	public static int VOCAB_TERMS = 20000;		// GO, MP, DO, cell type terms annotated to markers
+
+	// vocabulary values (as found in the database)
+	public static List<String> ASSAY_TYPES = Arrays.asList("Immunohistochemistry", "RNA in situ",
+		"In situ reporter (knock in)", "Northern blot", "Western blot", "RT-PCR", "RNase protection",
+		"Nuclease S1", "RNA-Seq");
+	public static List<String> DETECTION_LEVELS = Arrays.asList("Absent", "Present", "Trace", "Weak",
+		"Moderate", "Strong", "Very strong", "Ambiguous", "Not Specified");
+	public static List<String> PATTERNS = Arrays.asList("Homogeneous", "Regionally restricted", "Single cells",
+		"Scattered", "Ubiquitous", "Spotted", "Not Specified", "Not Applicable");
+	public static List<String> TPM_LEVELS = Arrays.asList("Below Cutoff", "Low", "Medium", "High");
+	public static List<String> SEXES = Arrays.asList("Female", "Male", "Pooled", "Not Specified");
+	public static List<String> SUBTYPES = Arrays.asList("protein coding gene", "lncRNA gene", "pseudogene",
+		"miRNA gene", "unclassified gene", "snoRNA gene");
+	public static List<String> CHROMOSOMES = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9", "10",
+		"11", "12", "13", "14", "15", "16", "17", "18", "19", "X", "Y", "MT");
+
+	private Random random = new Random(42);
+
+	// anatomy:  EMAPA term i has key EMAPA_KEY + i and a parent of lower index; EMAPS
+	// term j is EMAPA term emapsEmapa[j] at stage emapsStage[j], with key EMAPS_KEY + j
+	public static int EMAPA_KEY = 100000;
+	public static int EMAPS_KEY = 200000;
+	public int[] emapaParent;
+	public int[] emapsEmapa;
+	public int[] emapsStage;
+	public Map<Long,Integer> emapsByTermAndStage = new HashMap<Long,Integer>();
+
+	// the results of each marker (skewed, as a few markers have most of the results)
+	public int[] resultsPerMarker;
+
+	public SyntheticData() {
+		buildAnatomy();
+		resultsPerMarker = new int[MARKERS];
+		for (int i = 0; i < MARKERS; i++) {
+			resultsPerMarker[i] = skewed(5, 5000);
+		}
+	}
+
+	/*--- lookups ---*/
+
+	// key of marker i (keys are sparse, as in the marker table)
+	public static int markerKey(int i) {
+		return 10 + (i * 3);
+	}
+
+	public static String emapaID(int emapa) {
+		return "EMAPA:" + (16000 + emapa);
+	}
+
+	public static String emapsID(int emaps, int stage) {
+		return "EMAPS:" + (16000 + emaps) + String.format("%02d", stage);
+	}
+
+	// a random value from 'values', favoring the first ones
+	public String pick(List<String> values) {
+		return values.get(Math.min(values.size() - 1, (int) Math.abs(random.nextGaussian() * values.size() / 2)));
+	}
+
+	// a count between 'min' and 'max', most of them near 'min'
+	public int skewed(int min, int max) {
+		double u = random.nextDouble();
+		return (int) Math.min(max, min + Math.floor(min * (Math.pow(1 - u, -1.2) - 1)));
+	}
+
+	public int nextInt(int bound) {
+		return random.nextInt(bound);
+	}
+
+	// 'count' distinct labels drawn from 'pool' labels named by 'prefix'
+	public List<String> labels(String prefix, int pool, int count) {
+		Set<String> picked = new HashSet<String>();
+		while (picked.size() < Math.min(count, pool)) {
+			picked.add(prefix + random.nextInt(pool));
+		}
+		List<String> out = new ArrayList<String>(picked);
+		Collections.sort(out);
+		return out;
+	}
+
+	// the chunk data for the given rows' markers, genotypes, structures, assays, and references
+	public ChunkCache chunkCache(GxdResultIndexer indexer) {
+		ChunkCache cc = indexer.new ChunkCache(null);
+		StringTable markerValues = new StringTable();
+		StringTable genotypeValues = new StringTable();
+
+		cc.allelePairs = new IntStringMap();
+		cc.hasImageAllelePairs = new IntStringMap();
+		cc.bgStrains = new IntStringMap(genotypeValues);
+		for (int g = 0; g < GENOTYPES; g++) {
+			String pairs = (g % 5 == 0) ? null : "Pax6<Sey>/Pax6<+>\nShh<tm1Amc>/Shh<tm1Amc>".substring(0, 10 + (g % 30));
+			cc.allelePairs.put(g, pairs);
+			cc.hasImageAllelePairs.put(g, pairs);
+			cc.bgStrains.put(g, "strain " + (g % 400));
+		}
+
+		cc.structureID = new IntStringMap();
+		cc.emapaID = new IntStringMap();
+		cc.printname = new IntStringMap();
+		for (int j = 0; j < emapsEmapa.length; j++) {
+			cc.structureID.put(EMAPS_KEY + j, emapsID(emapsEmapa[j], emapsStage[j]));
+			cc.emapaID.put(EMAPS_KEY + j, emapaID(emapsEmapa[j]));
+			cc.printname.put(EMAPS_KEY + j, "TS" + emapsStage[j] + "; structure " + emapsEmapa[j]);
+		}
+
+		cc.markerSymbol = new IntStringMap();
+		cc.markerID = new IntStringMap();
+		cc.ensemblGMID = new IntStringMap();
+		cc.markerName = new IntStringMap();
+		cc.markerSubtype = new IntStringMap(markerValues);
+		cc.markerBySymbol = new IntStringMap();
+		cc.markerByLocation = new IntStringMap();
+		cc.startCoord = new IntStringMap();
+		cc.endCoord = new IntStringMap();
+		cc.cytoband = new IntStringMap(markerValues);
+		cc.strand = new IntStringMap(markerValues);
+		cc.chromosome = new IntStringMap(markerValues);
+		for (int i = 0; i < MARKERS; i++) {
+			int key = markerKey(i);
+			long start = 3000000L + random.nextInt(190000000);
+			cc.markerSymbol.put(key, "Gene" + i);
+			cc.markerID.put(key, "MGI:" + (1000000 + key));
+			cc.ensemblGMID.put(key, "ENSMUSG" + String.format("%011d", key));
+			cc.markerName.put(key, "gene number " + i + " of the synthetic genome");
+			cc.markerSubtype.put(key, pick(SUBTYPES));
+			cc.markerBySymbol.put(key, Integer.toString(i));
+			cc.markerByLocation.put(key, Integer.toString(i));
+			if (i % 10 != 0) {
+				cc.startCoord.put(key, Long.toString(start));
+				cc.endCoord.put(key, Long.toString(start + 500 + random.nextInt(100000)));
+			}
+			cc.cytoband.put(key, (char) ('A' + (i % 8)) + Integer.toString(1 + (i % 3)));
+			cc.strand.put(key, (i % 2 == 0) ? "+" : "-");
+			cc.chromosome.put(key, CHROMOSOMES.get(i % CHROMOSOMES.size()));
+		}
+
+		cc.pubmedID = new IntStringMap();
+		cc.citation = new IntStringMap();
+		for (int r = 0; r < REFERENCES; r++) {
+			cc.pubmedID.put(r, Integer.toString(10000000 + r));
+			cc.citation.put(r, "Author" + (r % 2000) + " A, et al., J Synth Biol " + (1990 + (r % 35)) + ";" + r);
+		}
+
+		StringTable assayValues = new StringTable();
+		cc.assayHasImage = new IntStringMap(assayValues);
+		cc.assayProbeKey = new IntStringMap();
+		cc.assayAntibodyKey = new IntStringMap();
+		cc.assayID = new IntStringMap();
+		for (int a = 0; a < ASSAYS; a++) {
+			cc.assayHasImage.put(a, (a % 3 == 0) ? "1" : "0");
+			cc.assayProbeKey.put(a, (a % 2 == 0) ? Integer.toString(a % 9000) : null);
+			cc.assayAntibodyKey.put(a, (a % 2 == 1) ? Integer.toString(a % 4000) : null);
+			cc.assayID.put(a, "MGI:" + (5000000 + a));
+		}
+		return cc;
+	}
+
+	// a document mapper with synthetic caches and global lookups
+	public GxdResultDocMapper mapper() {
+		Map<Integer,List<String>> mp = new HashMap<Integer,List<String>>();
+		Map<Integer,List<String>> go = new HashMap<Integer,List<String>>();
+		Map<Integer,List<String>> dobj = new HashMap<Integer,List<String>>();
+		Map<Integer,List<String>> types = new HashMap<Integer,List<String>>();
+		Map<String,List<String>> nomen = new HashMap<String,List<String>>();
+		Map<String,String> centimorgans = new HashMap<String,String>();
+		Map<String,List<String>> markerVocab = new HashMap<String,List<String>>();
+		for (int i = 0; i < MARKERS; i++) {
+			int key = markerKey(i);
+			String markerKey = Integer.toString(key);
+			if (i % 3 != 0) {
+				mp.put(key, labels("MP header ", 28, 1 + nextInt(8)));
+			}
+			if (i % 4 != 0) {
+				go.put(key, labels("GO header ", 45, 1 + nextInt(12)));
+			}
+			if (i % 7 == 0) {
+				dobj.put(key, labels("DO header ", 25, 1 + nextInt(3)));
+			}
+			types.put(key, labels("feature type ", 12, 1 + nextInt(2)));
+			if (i % 2 == 0) {
+				nomen.put(markerKey, labels("synonym ", 100000, 1 + nextInt(4)));
+			}
+			centimorgans.put(markerKey, (i % 10 == 0) ? "-1" : Double.toString((i % 900) / 10.0));
+			markerVocab.put(markerKey, labels("GO:", VOCAB_TERMS, skewed(3, 200)));
+		}
+		Map<Integer,List<String>> co = new HashMap<Integer,List<String>>();
+		for (int r = 0; r < 20000; r++) {
+			co.put(r * 7, labels("CO header ", 30, 1 + nextInt(3)));
+		}
+
+		Map<String,Map<String,Map<String,String>>> mutatedIn = new HashMap<String,Map<String,Map<String,String>>>();
+		Map<String,List<String>> mutatedInAlleles = new HashMap<String,List<String>>();
+		for (int g = 0; g < GENOTYPES; g++) {
+			if (g % 5 == 0) {
+				continue;
+			}
+			Map<String,Map<String,String>> markers = new HashMap<String,Map<String,String>>();
+			for (int m = 0; m < 1 + (g % 3); m++) {
+				int i = nextInt(MARKERS);
+				Map<String,String> marker = new HashMap<String,String>();
+				marker.put("symbol", "Gene" + i);
+				marker.put("name", "gene number " + i + " of the synthetic genome");
+				markers.put(Integer.toString(markerKey(i)), marker);
+			}
+			mutatedIn.put(Integer.toString(g), markers);
+			mutatedInAlleles.put(Integer.toString(g), labels("MGI:", 2000000, 1 + (g % 3)));
+		}
+
+		// vocabulary DAG (term IDs to their ancestor IDs, about 8 deep)
+		DagClosure.Builder vocab = new DagClosure.Builder();
+		int[] vocabParent = new int[VOCAB_TERMS];
+		for (int t = 1; t < VOCAB_TERMS; t++) {
+			vocabParent[t] = nextInt(t);
+			for (int a = vocabParent[t]; ; a = vocabParent[a]) {
+				vocab.add("GO:" + t, "GO:" + a);
+				if (a == 0) {
+					break;
+				}
+			}
+		}
+
+		// structure ancestors by ID and key, and synonyms by EMAPA ID
+		DagClosure.Builder ancestorIds = new DagClosure.Builder();
+		DagClosure.Builder ancestorKeys = new DagClosure.Builder();
+		for (int j = 0; j < emapsEmapa.length; j++) {
+			String structureKey = Integer.toString(EMAPS_KEY + j);
+			for (int a = emapaParent[emapsEmapa[j]]; a >= 0; a = emapaParent[a]) {
+				ancestorIds.add(structureKey, emapaID(a));
+				ancestorKeys.add(structureKey, Integer.toString(EMAPA_KEY + a));
+			}
+		}
+		Map<String,List<String>> synonyms = new HashMap<String,List<String>>();
+		for (int e = 0; e < EMAPA_TERMS; e++) {
+			List<String> names = new ArrayList<String>();
+			names.add("structure " + e);
+			for (int s = 0; s < e % 3; s++) {
+				names.add("structure " + e + " synonym " + s);
+			}
+			synonyms.put(emapaID(e), names);
+		}
+
+		GxdResultDocMapper mapper = new GxdResultDocMapper(CacheFixtures.markerMP(mp),
+			CacheFixtures.markerGO(go, headers("GO header ", 0, 20), headers("GO header ", 20, 30), headers("GO header ", 30, 45)),
+			CacheFixtures.markerDO(dobj), CacheFixtures.resultCO(co), CacheFixtures.markerType(types),
+			nomen, centimorgans, mutatedIn, mutatedInAlleles, markerVocab, vocab.build(),
+			ancestorIds.build(), ancestorKeys.build(), synonyms);
+
+		Map<String,List<String>> htExpRefs = new HashMap<String,List<String>>();
+		for (int a = 0; a < ASSAYS; a += 50) {
+			htExpRefs.put(Integer.toString(a), labels("J:", 300000, 1 + (a % 2)));
+		}
+		mapper.setRnaSeqData(htExpRefs, 400000);
+		return mapper;
+	}
+
+	// 'count' classical result rows, for markers chosen in proportion to their results
+	public List<GxdResultRow> classicalRows(int count) {
+		List<GxdResultRow> rows = new ArrayList<GxdResultRow>(count);
+		for (int r = 0; r < count; r++) {
+			GxdResultRow row = commonRow(r);
+			row.isRnaSeq = false;
+			row.resultKey = Integer.toString(r * 7);
+			row.assayType = ASSAY_TYPES.get(nextInt(ASSAY_TYPES.size() - 1));
+			row.detectionLevel = pick(DETECTION_LEVELS);
+			row.isExpressed = "Absent".equals(row.detectionLevel) ? "No" : "Yes";
+			row.hasImage = (r % 3 == 0) ? "1" : "0";
+			row.jnumID = "J:" + (100000 + (r % REFERENCES));
+			row.referenceKey = Integer.toString(r % REFERENCES);
+			row.isWildType = (r % 4 == 0) ? "0" : "1";
+			if (r % 20 == 0) {
+				row.cellType = "cell type " + (r % 300);
+				row.cellTypeID = "GO:" + nextInt(VOCAB_TERMS);
+			}
+			if (row.hasImage.equals("1")) {
+				row.figures = new HashSet<String>(Arrays.asList("Fig. " + (1 + r % 8), "Fig. " + (1 + r % 8) + "A"));
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	// 'count' RNA-Seq measurement rows
+	public List<GxdResultRow> rnaSeqRows(int count) {
+		List<GxdResultRow> rows = new ArrayList<GxdResultRow>(count);
+		for (int r = 0; r < count; r++) {
+			GxdResultRow row = commonRow(r);
+			row.isRnaSeq = true;
+			row.resultKey = "rnaseq" + r;
+			row.assayKey = Integer.toString((r % 2000) * 50);
+			row.assayType = "RNA-Seq";
+			row.tpmLevel = pick(TPM_LEVELS);
+			row.detectionLevel = row.tpmLevel;
+			row.isExpressed = "Below Cutoff".equals(row.tpmLevel) ? "No" : "Yes";
+			row.avgQnTpm = Double.toString(random.nextDouble() * 100);
+			row.biologicalReplicates = "1-" + (1 + r % 4);
+			row.note = (r % 9 == 0) ? "a note" : null;
+			row.isConditional = (r % 11 == 0) ? 1 : 0;
+			row.consolidatedSampleKey = Integer.toString(r % 20000);
+			row.refID = "J:" + (200000 + r % 500);
+			row.refTitle = "Synthetic RNA-Seq study " + (r % 500);
+			row.byReferenceNumber = r % 500;
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	// the results of 'markers' markers, as the Results GxdProfileMarkerIndexer builds
+	// documents from (keyed by marker key)
+	public Map<Integer,List<GxdProfileMarkerIndexer.Result>> profileResults(GxdProfileMarkerIndexer indexer, int markers) {
+		Map<Integer,List<GxdProfileMarkerIndexer.Result>> results = new HashMap<Integer,List<GxdProfileMarkerIndexer.Result>>();
+		for (int i = 0; i < markers; i++) {
+			List<GxdProfileMarkerIndexer.Result> list = new ArrayList<GxdProfileMarkerIndexer.Result>();
+			for (int r = 0; r < resultsPerMarker[i]; r++) {
+				int emaps = nextInt(emapsEmapa.length);
+				list.add(indexer.new Result(EMAPS_KEY + emaps, emapsID(emapsEmapa[emaps], emapsStage[emaps]),
+					Integer.toString(emapsStage[emaps]), random.nextDouble() < 0.7, r % 5 == 0));
+			}
+			results.put(markerKey(i), list);
+		}
+		return results;
+	}
+
+	// give 'indexer' the synthetic EMAPS to EMAPA mapping and EMAPS ancestors
+	public void fillStructures(GxdProfileMarkerIndexer indexer) {
+		int n = emapsEmapa.length;
+		int[] emapsKeys = new int[n];
+		int[] emapaKeys = new int[n];
+		DagClosure.Builder ancestors = new DagClosure.Builder();
+		for (int j = 0; j < n; j++) {
+			emapsKeys[j] = EMAPS_KEY + j;
+			emapaKeys[j] = EMAPA_KEY + emapsEmapa[j];
+			String emapsKey = Integer.toString(EMAPS_KEY + j);
+			ancestors.add(emapsKey, emapsKey);
+			for (int a = emapaParent[emapsEmapa[j]]; a >= 0; a = emapaParent[a]) {
+				Integer ancestor = emapsByTermAndStage.get(((long) a << 8) + emapsStage[j]);
+				if (ancestor != null) {
+					ancestors.add(emapsKey, Integer.toString(EMAPS_KEY + ancestor));
+				}
+			}
+		}
+		indexer.setStructures(emapsKeys, emapaKeys, n);
+		indexer.setAncestors(ancestors.build());
+	}
+
+	/*--- private methods ---*/
+
+	// EMAPA terms in a random tree (about ln(n) deep), each spanning a run of stages,
+	// inside its parent's stages where possible
+	private void buildAnatomy() {
+		emapaParent = new int[EMAPA_TERMS];
+		int[] firstStage = new int[EMAPA_TERMS];
+		int[] lastStage = new int[EMAPA_TERMS];
+		List<Integer> termOf = new ArrayList<Integer>();
+		List<Integer> stageOf = new ArrayList<Integer>();
+
+		emapaParent[0] = -1;
+		firstStage[0] = 1;
+		lastStage[0] = STAGES;
+		for (int e = 1; e < EMAPA_TERMS; e++) {
+			int parent = nextInt(e);
+			emapaParent[e] = parent;
+			int span = Math.min(lastStage[parent] - firstStage[parent] + 1, 1 + nextInt(STAGES_PER_TERM * 2));
+			firstStage[e] = firstStage[parent] + nextInt(lastStage[parent] - firstStage[parent] - span + 2);
+			lastStage[e] = firstStage[e] + span - 1;
+		}
+		for (int e = 0; e < EMAPA_TERMS; e++) {
+			for (int s = firstStage[e]; s <= lastStage[e]; s++) {
+				emapsByTermAndStage.put(((long) e << 8) + s, termOf.size());
+				termOf.add(e);
+				stageOf.add(s);
+			}
+		}
+		emapsEmapa = new int[termOf.size()];
+		emapsStage = new int[termOf.size()];
+		for (int j = 0; j < emapsEmapa.length; j++) {
+			emapsEmapa[j] = termOf.get(j);
+			emapsStage[j] = stageOf.get(j);
+		}
+	}
+
+	// fields shared by classical and RNA-Seq rows, for a marker chosen in proportion
+	// to its number of results
+	private GxdResultRow commonRow(int r) {
+		GxdResultRow row = new GxdResultRow();
+		int marker = weightedMarker();
+		int emaps = nextInt(emapsEmapa.length);
+		row.markerKey = Integer.toString(markerKey(marker));
+		row.assayKey = Integer.toString(nextInt(ASSAYS));
+		row.theilerStage = Integer.toString(emapsStage[emaps]);
+		row.structureTermKey = Integer.toString(EMAPS_KEY + emaps);
+		row.emapsID = emapsID(emapsEmapa[emaps], emapsStage[emaps]);
+		row.ageMin = Double.toString(emapsStage[emaps] * 0.7);
+		row.ageMax = Double.toString(emapsStage[emaps] * 0.7 + 0.5);
+		row.ageAbbreviation = "E" + (emapsStage[emaps] * 0.7);
+		row.sex = pick(SEXES);
+		row.genotypeKey = (r % 3 == 0) ? "-1" : Integer.toString(nextInt(GENOTYPES));
+		row.pattern = pick(PATTERNS);
+		row.byAssayType = Integer.toString(r);
+		row.byGeneSymbol = Integer.toString(marker);
+		row.byAge = Integer.toString(r % 5000);
+		row.byStructure = Integer.toString(emaps);
+		row.byExpressed = Integer.toString(r % 2);
+		row.byReference = Integer.toString(r % REFERENCES);
+		if (r % 4 != 0) {
+			row.systems = new HashSet<String>(labels("system ", 20, 1 + nextInt(2)));
+		}
+		return row;
+	}
+
+	private int[] cumulativeResults = null;
+
+	// a marker index, chosen with probability proportional to its number of results
+	private int weightedMarker() {
+		if (cumulativeResults == null) {
+			cumulativeResults = new int[MARKERS];
+			int total = 0;
+			for (int i = 0; i < MARKERS; i++) {
+				total += resultsPerMarker[i];
+				cumulativeResults[i] = total;
+			}
+		}
+		int pick = nextInt(cumulativeResults[MARKERS - 1]);
+		int i = Arrays.binarySearch(cumulativeResults, pick + 1);
+		return (i >= 0) ? i : -(i + 1);
+	}
+
+	private static Set<String> headers(String prefix, int from, int to) {
+		Set<String> headers = new HashSet<String>();
+		for (int i = from; i < to; i++) {
+			headers.add(prefix + i);
+		}
+		return headers;
+	}
+}
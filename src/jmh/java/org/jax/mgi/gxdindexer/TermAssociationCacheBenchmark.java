@@ -0,0 +1,80 @@
+package org.jax.mgi.gxdindexer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jax.mgi.gxdindexer.shr.CacheFixtures;
+import org.jax.mgi.gxdindexer.shr.MarkerMPCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * TermAssociationCacheBenchmark
+ *
+ * Times TermAssociationCache.getTerms() lookups (by String key, as the
+ * document mapper makes them) for LOOKUPS marker keys, about a third of which
+ * have no terms.  Reports the time per lookup.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public class TermAssociationCacheBenchmark {
+	public static final int LOOKUPS = 10000;
+
+	private MarkerMPCache cache;
+	private String[] keys;
+	private Integer[] intKeys;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SyntheticData data = new SyntheticData();
+		Map<Integer,List<String>> terms = new HashMap<Integer,List<String>>();
+		for (int i = 0; i < SyntheticData.MARKERS; i++) {
+			if (i % 3 != 0) {
+				terms.put(SyntheticData.markerKey(i), data.labels("MP header ", 28, 1 + data.nextInt(8)));
+			}
+		}
+		cache = CacheFixtures.markerMP(terms);
+
+		keys = new String[LOOKUPS];
+		intKeys = new Integer[LOOKUPS];
+		for (int i = 0; i < LOOKUPS; i++) {
+			int key = SyntheticData.markerKey(data.nextInt(SyntheticData.MARKERS));
+			keys[i] = Integer.toString(key);
+			intKeys[i] = key;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void getTermsByString(Blackhole bh) {
+		for (String key : keys) {
+			bh.consume(cache.getTerms(key));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void getTermsByInteger(Blackhole bh) {
+		for (Integer key : intKeys) {
+			bh.consume(cache.getTerms(key));
+		}
+	}
+}
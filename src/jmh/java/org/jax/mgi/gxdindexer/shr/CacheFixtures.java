@@ -0,0 +1,36 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CacheFixtures
+ *
+ * Builds the term association caches from terms already in hand, rather than
+ * the database, for the benchmarks (whose own package cannot reach the caches'
+ * package-private constructors).
+ */
+
+public class CacheFixtures {
+	public static MarkerMPCache markerMP(Map<Integer,List<String>> termsByKey) {
+		return new MarkerMPCache(termsByKey);
+	}
+
+	public static MarkerGOCache markerGO(Map<Integer,List<String>> termsByKey, Set<String> bpHeaders,
+			Set<String> ccHeaders, Set<String> mfHeaders) {
+		return new MarkerGOCache(termsByKey, bpHeaders, ccHeaders, mfHeaders);
+	}
+
+	public static MarkerDOCache markerDO(Map<Integer,List<String>> termsByKey) {
+		return new MarkerDOCache(termsByKey);
+	}
+
+	public static ResultCOCache resultCO(Map<Integer,List<String>> termsByKey) {
+		return new ResultCOCache(termsByKey);
+	}
+
+	public static MarkerTypeCache markerType(Map<Integer,List<String>> termsByKey) {
+		return new MarkerTypeCache(termsByKey);
+	}
+}
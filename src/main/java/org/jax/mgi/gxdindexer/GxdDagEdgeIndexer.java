@@ -2,13 +2,22 @@ package org.jax.mgi.gxdindexer;
 
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.solr.common.SolrInputDocument;
+import org.jax.mgi.gxdindexer.shr.DagClosure;
+import org.jax.mgi.gxdindexer.shr.EmapDag;
+import org.jax.mgi.gxdindexer.shr.IndexerMetrics;
+import org.jax.mgi.gxdindexer.shr.KeyRangeScanner;
+import org.jax.mgi.gxdindexer.shr.SQLExecutor;
 import org.jax.mgi.shr.fe.IndexConstants;
 import org.jax.mgi.shr.fe.indexconstants.DagEdgeFields;
 
@@ -18,6 +27,12 @@ import org.jax.mgi.shr.fe.indexconstants.DagEdgeFields;
  * This index is intended to be a lookup for all vocab term edges (i.e. parent->child relationships)
  *  
  *  For now it just has the EMAPA DAG (with additional data for EMAPA IDs)
+ *
+ *  With gxdDagEdge.dagEngine=true, the edges are built from the DAG held in memory
+ *  (see EmapDag) rather than from per-range joins.  Both ways give each edge the same
+ *  unique key (vocab, edge type, and the term_child or term_descendent unique_key), so
+ *  either may rebuild or update a core built by the other.  A descendent edge the DAG
+ *  finds but term_descendent lacks has no key, so it is left out (and counted in the log).
  * 
  */
 
@@ -26,39 +41,188 @@ public class GxdDagEdgeIndexer extends Indexer
 	public GxdDagEdgeIndexer () 
 	{ super("gxdDagEdge"); }
 
+	// most documents built before they are handed to Solr (descendent edges far outnumber
+	// direct ones, so a range's documents are not all held at once)
+	private static int DOCS_PER_BATCH = 5000;
+
+	// the direct and descendent edges are read at once, each through its own connection
+	@Override
+	protected int getDefaultConnections() {
+		return 2;
+	}
+
 	public void index() throws Exception
 	{    
-		ResultSet rs = ex.executeProto("select max(t.term_key) as max_term_key, min(t.term_key) as min_term_key from term t join " +
-				"term_child tc on tc.term_key=t.term_key where t.vocab_name='EMAPA'");
-		rs.next();
+		if ("true".equalsIgnoreCase(getIndexProperty("dagEngine", "false"))) {
+			indexFromDag();
+			return;
+		}
 
-		Integer minKey = rs.getInt("min_term_key");
-		Integer maxKey = rs.getInt("max_term_key");
-		logger.info("min term key = " + minKey + ", max term key = " + maxKey);
-		int chunkSize = 150000;
+		// step through the EMAPA parent terms, (up to) 150,000 edges at a time, for the
+		// direct edges (term_child) and, separately, for the descendent edges (term_descendent)
+		KeyRangeScanner scanner = new KeyRangeScanner(ex,
+			"term t join term_child tc on tc.term_key=t.term_key", "t.term_key")
+			.where("t.vocab_name='EMAPA'")
+			.setTargetRows(150000)
+			.setMetrics(metrics);
+		logger.info("max term key = " + scanner.getMaxKey() + ", direct edge chunks = " + scanner.getRanges().size());
 
-		int start = minKey - 1;
-		while (start < maxKey) {
-			int stop = start + chunkSize;
+		SQLExecutor descendentEx = new SQLExecutor();
+		try {
+			KeyRangeScanner descendentScanner = new KeyRangeScanner(descendentEx,
+				"term t join term_descendent td on td.term_key=t.term_key", "t.term_key")
+				.where("t.vocab_name='EMAPA'")
+				.setTargetRows(getIndexIntProperty("descendentRowsPerRange", 150000))
+				.setMetrics(metrics);
+			logger.info("descendent edge chunks = " + descendentScanner.getRanges().size());
 
-			logger.info("Loading direct edges for terms "+start+" to "+stop);
-			processDirectEdges(start,stop);
+			// descendent edges in the background, direct edges here
+			Future<Void> descendents = descendentScanner.scanInBackground((start, stop) -> {
+				logger.info("Loading descendent edges for terms "+start+" to "+stop);
+				processDescendentEdges(descendentEx,start,stop);
+			});
+			try {
+				scanner.scan((start, stop) -> {
+					logger.info("Loading direct edges for terms "+start+" to "+stop);
+					processDirectEdges(ex,start,stop);
+				});
+			} catch (Exception e) {
+				// wait for the descendent scan to stop before its connection is released
+				descendents.cancel(true);
+				try {
+					descendents.get();
+				} catch (CancellationException | ExecutionException ignored) {}
+				throw e;
+			}
+			try {
+				descendents.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) {
+					throw (Exception) e.getCause();
+				}
+				throw e;
+			}
+		} finally {
+			descendentEx.cleanup();
+		}
+		commit();
+		logger.info("load completed");
+	}
 
-			logger.info("Loading descendent edges for terms "+start+" to "+stop);
-			processDescendentEdges(start,stop);
-			
-			start = stop;
+	/*
+	 * Builds every edge from the in-memory EMAPA/EMAPS DAG (see EmapDag), read in four
+	 * scans, rather than from per-range joins.
+	 */
+	private void indexFromDag() throws Exception
+	{
+		boolean deriveEmaps = "true".equalsIgnoreCase(getIndexProperty("dagEngine.deriveEmaps", "false"));
+		EmapDag dag = getSharedLookup("gxd.emapDag", () -> EmapDag.load(ex, deriveEmaps));
+		int[] emapaKeys = dag.getEmapaKeys();
+		int termsPerSlice = getIndexIntProperty("dagEngine.termsPerSlice", 500);
+		logger.info("Building edges for " + emapaKeys.length + " EMAPA terms, " + termsPerSlice + " at a time");
+
+		List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+		int unkeyed = 0;
+		for (int first = 0; first < emapaKeys.length; first += termsPerSlice)
+		{
+			long start = System.nanoTime();
+			int[] slice = Arrays.copyOfRange(emapaKeys, first, Math.min(emapaKeys.length, first + termsPerSlice));
+			int built = 0;
+
+			for (int parentKey : slice)
+			{
+				int[] childKeys = dag.getChildKeys(parentKey);
+				int[] edgeKeys = dag.getChildEdgeKeys(parentKey);
+				List<String> ancestorIds = dag.getAncestorIds(parentKey);
+				for (int i = 0; i < childKeys.length; i++)
+				{
+					SolrInputDocument doc = newEdgeDoc(dag, dag.getVocab(parentKey) + "_direct_" + edgeKeys[i],
+						parentKey, childKeys[i], DagEdgeFields.DIRECT_EDGE_TYPE);
+					for (String ancestorId : ancestorIds) {
+						doc.addField(DagEdgeFields.RELATED_ANCESTOR, ancestorId);
+					}
+					for (String descendentId : dag.getDescendentIds(childKeys[i])) {
+						doc.addField(DagEdgeFields.RELATED_DESCENDENT, descendentId);
+					}
+					addStages(dag, doc, parentKey, DagEdgeFields.PARENT_START_STAGE, DagEdgeFields.PARENT_END_STAGE);
+					addStages(dag, doc, childKeys[i], DagEdgeFields.CHILD_START_STAGE, DagEdgeFields.CHILD_END_STAGE);
+					docs.add(doc);
+					docs = flushIfFull(docs);
+					built++;
+				}
+			}
+
+			// the slice's descendants are traversed in parallel
+			for (EmapDag.Descendents d : dag.getDescendents(slice))
+			{
+				for (int i = 0; i < d.keys.length; i++)
+				{
+					int edgeKey = dag.getDescendentEdgeKey(d.ancestorKey, d.keys[i]);
+					if (edgeKey < 0) {
+						unkeyed++;
+						continue;
+					}
+					SolrInputDocument doc = newEdgeDoc(dag, dag.getVocab(d.ancestorKey) + "_descendent_" + edgeKey,
+						d.ancestorKey, d.keys[i], DagEdgeFields.DESCENDENT_EDGE_TYPE);
+					if (!d.emapsIds.get(i).isEmpty()) {
+						doc.addField(DagEdgeFields.EMAPS_ID, d.emapsIds.get(i));
+					}
+					docs.add(doc);
+					docs = flushIfFull(docs);
+					built++;
+				}
+			}
+			metrics.record(IndexerMetrics.DOC_BUILD, start, built);
+		}
+		if (unkeyed > 0) {
+			logger.warn(unkeyed + " descendent edges in the DAG have no term_descendent row; skipped them");
 		}
+		writeDocs(docs);
 		commit();
 		logger.info("load completed");
 	}
 
-	private void processDirectEdges(int start,int stop) throws Exception
+	// a document for the edge from 'parentKey' to 'childKey', with the fields all edges have
+	private SolrInputDocument newEdgeDoc(EmapDag dag, String uniqueKey, int parentKey, int childKey, String edgeType)
+	{
+		SolrInputDocument doc = new SolrInputDocument();
+		doc.addField(IndexConstants.UNIQUE_KEY,uniqueKey);
+		doc.addField(DagEdgeFields.CHILD_TERM_KEY,childKey);
+		doc.addField(DagEdgeFields.CHILD_TERM,dag.getTerm(childKey));
+		doc.addField(DagEdgeFields.CHILD_ID,dag.getId(childKey));
+		doc.addField(DagEdgeFields.VOCAB,dag.getVocab(parentKey));
+		doc.addField(DagEdgeFields.PARENT_TERM_KEY,parentKey);
+		doc.addField(DagEdgeFields.PARENT_TERM,dag.getTerm(parentKey));
+		doc.addField(DagEdgeFields.PARENT_ID,dag.getId(parentKey));
+		doc.addField(DagEdgeFields.EDGE_TYPE,edgeType);
+		return doc;
+	}
+
+	// add the term's stage range (if it has one) to the given fields
+	private void addStages(EmapDag dag, SolrInputDocument doc, int termKey, String startField, String endField)
+	{
+		if (dag.getStartStage(termKey) > 0) {
+			doc.addField(startField,dag.getStartStage(termKey));
+			doc.addField(endField,dag.getEndStage(termKey));
+		}
+	}
+
+	// hand 'docs' to Solr once it holds DOCS_PER_BATCH, returning the list to add to next
+	private List<SolrInputDocument> flushIfFull(List<SolrInputDocument> docs)
+	{
+		if (docs.size() < DOCS_PER_BATCH) {
+			return docs;
+		}
+		writeDocs(docs);
+		return new ArrayList<SolrInputDocument>();
+	}
+
+	private void processDirectEdges(SQLExecutor sql,int start,int stop) throws Exception
 	{
-		Map<String,EMAPAInfo> emapaInfoMap = getEmapaInfo(start,stop);
+		Map<String,EMAPAInfo> emapaInfoMap = getEmapaInfo(sql,start,stop);
 
-		Map<String,Set<String>> edgeAncestorMap = getEdgeAncestors(start,stop);
-		Map<String,Set<String>> edgeDescendentMap = getEdgeDescendents(start,stop);
+		DagClosure edgeAncestors = getEdgeAncestors(sql,start,stop);
+		DagClosure edgeDescendents = getEdgeDescendents(sql,start,stop);
 
 		String query = "select tc.unique_key, p.term_key parent_term_key,\n" + 
 				"p.term parent_term,\n" + 
@@ -72,7 +236,7 @@ public class GxdDagEdgeIndexer extends Indexer
 				"where p.vocab_name='EMAPA' "
 				+ "AND tc.term_key>"+start+" AND tc.term_key<="+stop;
 
-		ResultSet rs = ex.executeProto(query);
+		ResultSet rs = sql.executeProto(query);
 		List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
 		while (rs.next()) 
 		{
@@ -93,8 +257,8 @@ public class GxdDagEdgeIndexer extends Indexer
 			doc.addField(DagEdgeFields.PARENT_ID,rs.getString("parent_id"));
 			doc.addField(DagEdgeFields.EDGE_TYPE,DagEdgeFields.DIRECT_EDGE_TYPE);
 
-			this.addAllFromLookup(doc,DagEdgeFields.RELATED_ANCESTOR,parentKeyString,edgeAncestorMap);
-			this.addAllFromLookup(doc,DagEdgeFields.RELATED_DESCENDENT,childKeyString,edgeDescendentMap);
+			this.addAllFromLookup(doc,DagEdgeFields.RELATED_ANCESTOR,parentKeyString,edgeAncestors);
+			this.addAllFromLookup(doc,DagEdgeFields.RELATED_DESCENDENT,childKeyString,edgeDescendents);
 
 			if(emapaInfoMap.containsKey(parentKeyString))
 			{
@@ -110,15 +274,20 @@ public class GxdDagEdgeIndexer extends Indexer
 			}
 			
 			docs.add(doc);
+			if (docs.size() >= DOCS_PER_BATCH) {
+				writeDocs(docs);
+				docs = new ArrayList<SolrInputDocument>();
+			}
 		}
+		rs.close();
 		writeDocs(docs);
 	}
 
-	private void processDescendentEdges(int start,int stop) throws Exception
+	private void processDescendentEdges(SQLExecutor sql,int start,int stop) throws Exception
 	{	
 		// mapping that tells us what EMAPS IDs are valid for looking up the given edge:
 		//    emapsIDs[EMAPA ancestor ID][EMAPA descendant ID] = set of EMAPS IDs
-		Map<String,Map<String,Set<String>>> emapsIDs = this.getEmapsMapping(start, stop);
+		Map<String,Map<String,Set<String>>> emapsIDs = this.getEmapsMapping(sql, start, stop);
 
 		String query = "select td.unique_key, p.term_key parent_term_key,\n" + 
 				"p.term parent_term,\n" + 
@@ -132,7 +301,7 @@ public class GxdDagEdgeIndexer extends Indexer
 				"where p.vocab_name='EMAPA' "
 				+ "AND td.term_key>"+start+" AND td.term_key<="+stop;
 
-		ResultSet rs = ex.executeProto(query);
+		ResultSet rs = sql.executeProto(query);
 		List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
 		while (rs.next()) 
 		{
@@ -160,14 +329,19 @@ public class GxdDagEdgeIndexer extends Indexer
 			}
 
 			docs.add(doc);
+			if (docs.size() >= DOCS_PER_BATCH) {
+				writeDocs(docs);
+				docs = new ArrayList<SolrInputDocument>();
+			}
 		}
+		rs.close();
 		writeDocs(docs);
 	}
 
 	/*
 	 * Returns map of term-key to EMAPAInfo
 	 */
-	private Map<String,EMAPAInfo> getEmapaInfo(int start,int stop) throws Exception
+	private Map<String,EMAPAInfo> getEmapaInfo(SQLExecutor sql,int start,int stop) throws Exception
 	{
 		logger.debug("building map of term_key to EMAPAInfo");
 		Map<String,EMAPAInfo> emapaInfoMap = new HashMap<String,EMAPAInfo>();
@@ -184,7 +358,7 @@ public class GxdDagEdgeIndexer extends Indexer
 				"select te.term_key,te.start_stage,te.end_stage\n" + 
 				"from emapa_tc tc join \n" + 
 				"term_emap te on te.term_key=tc.child_term_key\n";
-		ResultSet rs = ex.executeProto(emapaInfoQuery);
+		ResultSet rs = sql.executeProto(emapaInfoQuery);
 		while(rs.next())
 		{
 			emapaInfoMap.put(rs.getString("term_key"),
@@ -196,9 +370,9 @@ public class GxdDagEdgeIndexer extends Indexer
 	}
 
 	/*
-	 * Returns map of parent_term_key to Ancestor term IDs
+	 * Returns closure of parent_term_key to Ancestor term IDs
 	 */
-	private Map<String,Set<String>> getEdgeAncestors(int start,int stop) throws Exception
+	private DagClosure getEdgeAncestors(SQLExecutor sql,int start,int stop) throws Exception
 	{
 		logger.debug("building map of parent_term_key to ancestor terms");
 		String query = "select tc.term_key parent_key,\n" + 
@@ -207,13 +381,13 @@ public class GxdDagEdgeIndexer extends Indexer
 				"term_ancestor tas on tas.term_key=tc.term_key\n" + 
 				"where tc.term_key>"+start+" and tc.term_key<="+stop;
 		logger.debug("done building map of term_child.unique_key to ancestor terms");
-		return this.populateLookup(query,"parent_key","ancestor_id","parent_term_key->ancestor_id");
+		return DagClosure.load(sql,query,"parent_key","ancestor_id",false);
 	}
 
 	/*
-	 * Returns map of child_term_key to descendent term IDs
+	 * Returns closure of child_term_key to descendent term IDs
 	 */
-	private Map<String,Set<String>> getEdgeDescendents(int start,int stop) throws Exception
+	private DagClosure getEdgeDescendents(SQLExecutor sql,int start,int stop) throws Exception
 	{
 		logger.debug("building map of child_term_key to descendent terms");
 		String query = "select tc.child_term_key child_key,\n" + 
@@ -222,14 +396,14 @@ public class GxdDagEdgeIndexer extends Indexer
 				"term_descendent td on td.term_key=tc.child_term_key\n" + 
 				"where tc.term_key>"+start+" and tc.term_key<="+stop;
 		logger.debug("done building map of term_child.unique_key to ancestor terms");
-		return this.populateLookup(query,"child_key","descendent_id","child_term_key->descendent_id");
+		return DagClosure.load(sql,query,"child_key","descendent_id",false);
 	}
 
 	/* Look up a mapping to identify which EMAPS IDs can be used to retrieve each descendant DAG edge, as:
 	 *		map[EMAPA ancestor ID][EMAPA descendant ID] = set of EMAPS IDs
 	 * Mapping includes EMAPA ancestor terms with keys more than 'start' and less than or equal to 'stop'.
 	 */
-	private Map<String,Map<String,Set<String>>> getEmapsMapping(int start, int stop) throws Exception {
+	private Map<String,Map<String,Set<String>>> getEmapsMapping(SQLExecutor sql, int start, int stop) throws Exception {
 		String cmd = "select a.primary_id as emapa_ancestor, ca.primary_id as emapa_descendant, "
 			+ " s.primary_id as emaps_id "
 			+ "from term s, term_emaps_child sc, term ca, "
@@ -244,7 +418,7 @@ public class GxdDagEdgeIndexer extends Indexer
 			+ " and a.term_key <= " + stop;
 		
 		Map<String,Map<String,Set<String>>> map = new HashMap<String,Map<String,Set<String>>>();
-		ResultSet rs = ex.executeProto(cmd);
+		ResultSet rs = sql.executeProto(cmd);
 		while (rs.next()) {
 			String emapaAncestor = rs.getString("emapa_ancestor");
 			String emapaDescendant = rs.getString("emapa_descendant");
@@ -11,6 +11,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.solr.common.SolrInputDocument;
+import org.jax.mgi.gxdindexer.shr.ChunkSizeController;
+import org.jax.mgi.gxdindexer.shr.JsonCache;
+import org.jax.mgi.gxdindexer.shr.KeyRangeScanner;
 import org.jax.mgi.shr.fe.IndexConstants;
 import org.jax.mgi.shr.fe.indexconstants.GxdResultFields;
 import org.jax.mgi.shr.fe.indexconstants.ImagePaneFields;
@@ -32,6 +35,10 @@ public class GxdImagePaneIndexer extends Indexer
 {   
 	// class variables
 	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	// IMAGE_META JSON, written once per distinct meta data (many panes share the same
+	// marker, assay type, hybridization and specimen labels); built at the start of index()
+	private JsonCache metaJsonCache = null;
 	
 	public Map<String,Integer> assayTypeSeqMap = new HashMap<String,Integer>();
 	public SmartAlphaComparator sac = new SmartAlphaComparator();
@@ -57,111 +64,48 @@ public class GxdImagePaneIndexer extends Indexer
     	
     		// get assay type sequences for image meta data sorting
     		initAssayTypeSeqMap();
+    		metaJsonCache = new JsonCache(objectMapper.writerFor(GxdImageMeta.class),
+    			getIndexIntProperty("metaJsonCacheEntries", 200000));
     	
     	
     	
-        	String imageQuery="select ei.result_key,ei.imagepane_key,ers.assay_id "+
-        			"from expression_result_to_imagepane ei,expression_result_summary ers "+
-        			"where ei.result_key=ers.result_key";
-        	Map<Integer,List<Integer>> imagePaneResultMap = new HashMap<Integer,List<Integer>>();
-        	Map<Integer,String> assayIDMap = new HashMap<Integer,String>();
-        	logger.info("building map of image pane keys to result keys");
-        	
-            ResultSet rs = ex.executeProto(imageQuery);
-
-	        while (rs.next())
-	        {
-	        	int ipKey = rs.getInt("imagepane_key");
-	        	int resultKey = rs.getInt("result_key");
-	        	if(!imagePaneResultMap.containsKey(ipKey))
-	        	{
-	        		imagePaneResultMap.put(ipKey, new ArrayList<Integer>());
-	        	}
-	        	imagePaneResultMap.get(ipKey).add(resultKey);
-	        	
-	        	assayIDMap.put(ipKey, rs.getString("assay_id"));
-	        }
-	        logger.info("done building map of image pane keys to result keys");
+        	// With gxdImagePane.streaming, each pane's result keys and assay ID are read
+        	// along with its meta data, so memory is bounded by the chunk size; otherwise they
+        	// are all loaded up front.
+        	boolean streaming = "true".equalsIgnoreCase(getIndexProperty("streaming", "true"));
+        	Map<Integer,List<Integer>> allPaneResults = new HashMap<Integer,List<Integer>>();
+        	Map<Integer,String> allPaneAssayIDs = new HashMap<Integer,String>();
+        	if (!streaming) {
+        		loadImagePaneResults(allPaneResults, allPaneAssayIDs);
+        	}
 	        
-        	ResultSet rs_tmp = ex.executeProto("select max(imagepane_key) as max_ip_key from expression_imagepane");
-        	rs_tmp.next();
-        	
-        	Integer start = 0;
-            Integer end = rs_tmp.getInt("max_ip_key");
-        	int chunkSize = 15000;
-            
-            int modValue = end.intValue() / chunkSize;
-            
-            // Perform the chunking, this might become a configurable value later on
+        	// step through the image panes that will be indexed (starting at 15,000 at a time,
+        	// then adjusted as throughput and memory allow)
+        	KeyRangeScanner scanner = new KeyRangeScanner(ex,
+        		"expression_imagepane ip join image i on (i.image_key = ip.image_key)", "ip.imagepane_key")
+        		.where("i.pixeldb_numeric_id is not null")
+        		.setController(new ChunkSizeController("gxdImagePane", 15000))
+        		.setMetrics(metrics);
 
             logger.info("Getting all image panes");
             
-            for (int i = 0; i <= modValue; i++) {
-            
-	            start = i * chunkSize;
-	            end = start + chunkSize;
-	            
-	            String geneQuery="select eri.imagepane_key,ers.assay_type,ers.marker_symbol,ers.assay_id, "+
+            scanner.scan((start, end) -> {
+
+	            // The meta data (and, when streaming, result keys) and the panes themselves are
+	            // read through two cursors ordered by imagepane_key, and merge-joined:  each pane's
+	            // meta rows are gathered and sorted just before its document is built.
+	            logger.info ("Processing imagepane key > " + start + " and <= " + end);
+	            String geneQuery="select eri.imagepane_key,eri.result_key,ers.assay_type,ers.marker_symbol,ers.assay_id, "+
 	            		"s.hybridization, s.specimen_label " +
 		        		"from expression_result_to_imagepane eri,  " +
 		        		"expression_result_summary ers LEFT OUTER JOIN " +
 		        		"assay_specimen s ON ers.specimen_key=s.specimen_key "+
 		        		"where eri.result_key=ers.result_key " +
-		        		"and eri.imagepane_key > "+start+" and eri.imagepane_key <= "+end+" ";
-	        	Map<Integer,Map<String,GxdImageMeta>> imagePaneMetaMap = new HashMap<Integer,Map<String,GxdImageMeta>>();
-	        	logger.info("building map of image pane keys to meta data, ie. gene symbols + assay types + specimen labels");
-	        	
-	            rs = ex.executeProto(geneQuery);
+		        		"and eri.imagepane_key > "+start+" and eri.imagepane_key <= "+end+" " +
+		        		"order by eri.imagepane_key";
+	            ResultSet metaRs = ex.executeProto(geneQuery);
+	            boolean moreMeta = metaRs.next();
 
-		        while (rs.next())
-		        {
-		        	int ipKey = rs.getInt("imagepane_key");
-		        	String assayType = rs.getString("assay_type");
-		        	String markerSymbol = rs.getString("marker_symbol");
-		        	String hybridization = rs.getString("hybridization");
-		        	
-		        	GxdImageMeta imageMeta = new GxdImageMeta();
-		        	imageMeta.setMarkerSymbol(markerSymbol);
-		        	imageMeta.setAssayType(assayType);
-		        	imageMeta.setHybridization(hybridization);
-		        	
-		        	// init the meta data map for this pane
-		        	if(!imagePaneMetaMap.containsKey(ipKey))
-		        	{
-		        		imagePaneMetaMap.put(ipKey, new HashMap<String,GxdImageMeta>());
-		        	}
-		        	Map<String,GxdImageMeta> metaMap = imagePaneMetaMap.get(ipKey);
-		        	
-		        	//init the meta data for this gene/assay type combo
-		        	if(!metaMap.containsKey(imageMeta.toKey()))
-		        	{
-		        		metaMap.put(imageMeta.toKey(), imageMeta);
-		        	}
-		        	else {
-		        		imageMeta = metaMap.get(imageMeta.toKey());
-		        	}
-		        	
-		        	// append and specimen labels
-		        	String specLabel = rs.getString("specimen_label");
-		        	String assayID = rs.getString("assay_id");
-		        	imageMeta.addSpecimenLabel(specLabel, assayID);
-		        }
-		        logger.info("done building map of image pane keys to meta data");
-		        
-		        logger.info("sorting map of image pane keys to meta data");
-		        Map<Integer,List<GxdImageMeta>> imagePaneSortedMetaMap = new HashMap<Integer,List<GxdImageMeta>>();
-		        for(Integer key : imagePaneMetaMap.keySet())
-		        {
-		        	List<GxdImageMeta> sortedMeta = new ArrayList<GxdImageMeta>(imagePaneMetaMap.get(key).values());
-		        	// actually sort the meta
-		        	Collections.sort(sortedMeta,new ImageMetaComparator<GxdImageMeta>());
-		        	imagePaneSortedMetaMap.put(key,sortedMeta);
-		        }
-		        imagePaneMetaMap = null; // mark for garbage collection
-		        logger.info("done sorting map of image pane keys to meta data");
-		        
-		        
-	            logger.info ("Processing imagepane key > " + start + " and <= " + end);
 	            String query = "select i.mgi_id,ip.imagepane_key, " +
 	            		"i.figure_label, i.pixeldb_numeric_id, ip.pane_label, " +
 	            		"ip.x,ip.y,ip.width,ip.height, " +
@@ -170,17 +114,48 @@ public class GxdImagePaneIndexer extends Indexer
 	            		"i.width image_width, i.height image_height " +
 	            		" from image i,expression_imagepane ip where i.image_key=ip.image_key " +
 	            		"and i.pixeldb_numeric_id is not null "+
-	                    "and ip.imagepane_key > "+start+" and ip.imagepane_key <= "+end+" ";
-	            rs = ex.executeProto(query);
+	                    "and ip.imagepane_key > "+start+" and ip.imagepane_key <= "+end+" " +
+	                    "order by ip.imagepane_key";
+	            ResultSet rs = ex.executeProto(query);
 	            
-	            //Map<String,SolrInputDocument> docs = new HashMap<String,SolrInputDocument>();
 	            Collection<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
 	            
 	            while (rs.next()) 
 	            {           
 	            	int imagepane_key = rs.getInt("imagepane_key");
+
+	            	// skip meta rows of panes that are not indexed (those without a pixeldb ID)
+	            	while (moreMeta && (metaRs.getInt("imagepane_key") < imagepane_key)) {
+	            		moreMeta = metaRs.next();
+	            	}
+
+	            	// gather this pane's meta data, one per gene/assay type combo
+	            	Map<String,PaneMeta> metaMap = new HashMap<String,PaneMeta>();
+	            	List<Integer> expressionResultKeys = streaming ? new ArrayList<Integer>() : allPaneResults.get(imagepane_key);
+	            	String assayID = streaming ? null : allPaneAssayIDs.get(imagepane_key);
+	            	while (moreMeta && (metaRs.getInt("imagepane_key") == imagepane_key)) {
+	            		addImageMeta(metaMap, metaRs);
+	            		if (streaming) {
+	            			expressionResultKeys.add(metaRs.getInt("result_key"));
+	            			assayID = metaRs.getString("assay_id");
+	            		}
+	            		moreMeta = metaRs.next();
+	            	}
+	            	if (assayID == null) {
+	            		assayID = "";
+	            	}
+
+	            	//get results
+	            	// if this lookup fails, then there is probably a data inconsistency
+	            	// we need all the expression_gatherers run at the same time to get the db keys in line
+	            	if((expressionResultKeys == null) || expressionResultKeys.isEmpty())
+	            	{
+	            		// these keys are the whole point of this index. Without them, we can't join to it to get images.
+	            		// This may happen in a case with inconsistent image data.
+	            		continue;
+	            	}
+
 	            	String imageID = rs.getString("mgi_id");
-	            	String assayID = assayIDMap.containsKey(imagepane_key) ? assayIDMap.get(imagepane_key): "";
 
 	            	SolrInputDocument doc = new SolrInputDocument();
 	            	doc.addField(ImagePaneFields.IMAGE_PANE_KEY, imagepane_key);
@@ -205,33 +180,20 @@ public class GxdImagePaneIndexer extends Indexer
 	            	doc.addField(ImagePaneFields.BY_HYBRIDIZATION_ASC, rs.getInt("by_hybridization_asc"));
 	            	doc.addField(ImagePaneFields.BY_HYBRIDIZATION_DESC, rs.getInt("by_hybridization_desc"));
 
-	            	//get results
-	            	// if this lookup fails, then there is probably a data inconsistency
-	            	// we need all the expression_gatherers run at the same time to get the db keys in line
-	            	List<Integer> expressionResultKeys = imagePaneResultMap.get(imagepane_key);
-	            	if(expressionResultKeys == null)
-	            	{
-	            		// these keys are the whole point of this index. Without them, we can't join to it to get images.
-	            		// This may happen in a case with inconsistent image data.
-	            		continue;
-	            	}
-	            	
 	            	for(Integer result_key : expressionResultKeys)
 	            	{
 	            		doc.addField(GxdResultFields.RESULT_KEY,result_key);
 	            	}
 	            	
-	            	if(imagePaneSortedMetaMap.containsKey(imagepane_key))
+	            	List<PaneMeta> sortedMeta = new ArrayList<PaneMeta>(metaMap.values());
+	            	ImageMetaComparator<GxdImageMeta> metaComparator = new ImageMetaComparator<GxdImageMeta>();
+	            	Collections.sort(sortedMeta, (a, b) -> metaComparator.compare(a.meta, b.meta));
+	            	for(PaneMeta paneMeta : sortedMeta)
 	            	{
-	            		for(GxdImageMeta imageMeta : imagePaneSortedMetaMap.get(imagepane_key))
-	            		{
-	            			// save image meta data as JSON
-	            			doc.addField(ImagePaneFields.IMAGE_META, objectMapper.writeValueAsString(imageMeta));
-	            		}
-	            	
+	            		// save image meta data as JSON
+	            		doc.addField(ImagePaneFields.IMAGE_META, metaJsonCache.toJson(paneMeta.contentKey.toString(), paneMeta.meta));
 	            	}
 	            	
-		                
                     docs.add(doc);
 	                if (docs.size() > 1000) {
 	                    //logger.info("Adding a stack of the documents to Solr");
@@ -246,14 +208,83 @@ public class GxdImagePaneIndexer extends Indexer
 
 	                }
 	            }
+	            rs.close();
+	            metaRs.close();
 	            if (! docs.isEmpty()) {
 	                writeDocs(docs);
 	            }
 	            
 	            commit();
-            }
+            });
+            logger.info(metaJsonCache.getSummary());
             
     }
+
+    /* Is: one entry of an image pane's meta data
+     * Has: the meta data, and a key made of everything its JSON is written from
+     *	(marker, assay type, hybridization, then each specimen label and assay ID added)
+     */
+    static class PaneMeta {
+    	GxdImageMeta meta;
+    	StringBuilder contentKey;
+
+    	PaneMeta(GxdImageMeta meta) {
+    		this.meta = meta;
+    		this.contentKey = new StringBuilder(meta.toKey()).append('\t')
+    			.append(meta.getMarkerSymbol()).append('\t').append(meta.getAssayType())
+    			.append('\t').append(meta.getHybridization());
+    	}
+
+    	// add a specimen label (and its assay ID) to the meta data and its key
+    	void addSpecimenLabel(String specLabel, String assayID) {
+    		meta.addSpecimenLabel(specLabel, assayID);
+    		contentKey.append('\n').append(specLabel).append('\t').append(assayID);
+    	}
+    }
+
+    // add the meta data in the current row of 'rs' to its pane's 'metaMap' (keyed by
+    // gene/assay type combo), appending its specimen label
+    private void addImageMeta(Map<String,PaneMeta> metaMap, ResultSet rs) throws SQLException {
+    	GxdImageMeta imageMeta = new GxdImageMeta();
+    	imageMeta.setMarkerSymbol(rs.getString("marker_symbol"));
+    	imageMeta.setAssayType(rs.getString("assay_type"));
+    	imageMeta.setHybridization(rs.getString("hybridization"));
+
+    	//init the meta data for this gene/assay type combo
+    	PaneMeta paneMeta = metaMap.get(imageMeta.toKey());
+    	if(paneMeta == null)
+    	{
+    		paneMeta = new PaneMeta(imageMeta);
+    		metaMap.put(imageMeta.toKey(), paneMeta);
+    	}
+
+    	// append and specimen labels
+    	paneMeta.addSpecimenLabel(rs.getString("specimen_label"), rs.getString("assay_id"));
+    }
+
+    // load the result keys and assay ID of every image pane (when not streaming)
+    private void loadImagePaneResults(Map<Integer,List<Integer>> imagePaneResultMap,
+    		Map<Integer,String> assayIDMap) throws SQLException {
+    	String imageQuery="select ei.result_key,ei.imagepane_key,ers.assay_id "+
+    			"from expression_result_to_imagepane ei,expression_result_summary ers "+
+    			"where ei.result_key=ers.result_key";
+    	logger.info("building map of image pane keys to result keys");
+
+    	ResultSet rs_ip = ex.executeProto(imageQuery);
+    	while (rs_ip.next())
+    	{
+    		int ipKey = rs_ip.getInt("imagepane_key");
+    		if(!imagePaneResultMap.containsKey(ipKey))
+    		{
+    			imagePaneResultMap.put(ipKey, new ArrayList<Integer>());
+    		}
+    		imagePaneResultMap.get(ipKey).add(rs_ip.getInt("result_key"));
+    		assayIDMap.put(ipKey, rs_ip.getString("assay_id"));
+    	}
+    	rs_ip.close();
+    	logger.info("done building map of image pane keys to result keys");
+    }
+
     /*
      * For debugging purposes only
      */
@@ -277,7 +308,7 @@ public class GxdImagePaneIndexer extends Indexer
      * NOTE: This sorts the meta information inside each image pane row
      * 	It is unrelated to the column sorts: BY_ASSAY_TYPE, BY_MARKER, and BY_HYBRIDIZATION
      */
-    private class ImageMetaComparator<T> implements Comparator<GxdImageMeta> {
+    class ImageMetaComparator<T> implements Comparator<GxdImageMeta> {
 
 		@Override
 		public int compare(GxdImageMeta o1, GxdImageMeta o2) {
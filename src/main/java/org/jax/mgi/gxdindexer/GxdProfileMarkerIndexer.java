@@ -2,14 +2,22 @@ package org.jax.mgi.gxdindexer;
 
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.solr.common.SolrInputDocument;
+import org.jax.mgi.gxdindexer.shr.ChunkSizeController;
+import org.jax.mgi.gxdindexer.shr.DagClosure;
+import org.jax.mgi.gxdindexer.shr.IndexerMetrics;
+import org.jax.mgi.gxdindexer.shr.IntIntMap;
+import org.jax.mgi.gxdindexer.shr.KeyRangeScanner;
 import org.jax.mgi.shr.fe.indexconstants.GxdResultFields;
 
 /**
@@ -25,14 +33,26 @@ public class GxdProfileMarkerIndexer extends Indexer
 {   
 	//--- instance variables ---//
 	
-	// shared empty set object to make code simpler later on
-	private Set<String> emptySet = new HashSet<String>();
-	
-	// maps from EMAPS structure keys to EMAPA structure keys
-	private Map<String,String> emaps2emapa = null;
-
-	// maps from EMAPS structure key to all of its EMAPS ancestor keys 
-	private Map<String,Set<String>> emapsAncestors = null;
+	// each EMAPS and EMAPA structure has a dense index, so a marker's sets of structures
+	// can be kept as BitSets:  EMAPS term key -> EMAPS index, and by EMAPS index, the
+	// EMAPS term key and the EMAPA index of its EMAPA structure
+	private IntIntMap emapsIndexes = null;
+	private int[] emapsKeys = null;
+	private int[] emapaOf = null;
+
+	// EMAPA term key by EMAPA index
+	private int[] emapaKeys = null;
+
+	// EMAPS ancestors (reflexive) by EMAPS index:  the ancestors of EMAPS index i are
+	// the EMAPS indexes in emapsAncestors[ancestorOffsets[i]] up to emapsAncestors[ancestorOffsets[i+1]]
+	private int[] ancestorOffsets = null;
+	private int[] emapsAncestors = null;
+
+	// builds documents for a slice of markers while the next slice is read
+	private ForkJoinPool docPool = null;
+
+	// batches of documents still being built for the last slice read
+	private List<Future<Void>> pendingTasks = new ArrayList<Future<Void>>();
 	
 	//--- constructors ---//
 	
@@ -62,9 +82,12 @@ public class GxdProfileMarkerIndexer extends Indexer
 		return markerIDs;
 	}
 
-	// get the mapping from each EMAPS term key to its EMAPA equivalent
+	// get the mapping from each EMAPS term key to its EMAPA equivalent, giving each
+	// EMAPS and EMAPA structure its dense index
 	public void fillEmaps2Emapa() throws Exception {
-		emaps2emapa = new HashMap<String,String>();
+		int[] emapsTermKeys = new int[1024];
+		int[] emapaTermKeys = new int[1024];
+		int count = 0;
 		
 		String cmd = "select te.term_key, te.emapa_term_key "
 			+ "from term_emap te "
@@ -72,90 +95,132 @@ public class GxdProfileMarkerIndexer extends Indexer
 		
 		ResultSet rs = ex.executeProto(cmd);
 		while (rs.next()) {
-			emaps2emapa.put(rs.getString("term_key"), rs.getString("emapa_term_key"));
+			emapsTermKeys = ensureLength(emapsTermKeys, count + 1);
+			emapaTermKeys = ensureLength(emapaTermKeys, count + 1);
+			emapsTermKeys[count] = rs.getInt("term_key");
+			emapaTermKeys[count] = rs.getInt("emapa_term_key");
+			count++;
 		}
 		rs.close();
-		logger.info("Got EMAPS to EMAPA mappings for " + emaps2emapa.size() + " EMAPS terms");
+		setStructures(emapsTermKeys, emapaTermKeys, count);
+		logger.info("Got EMAPS to EMAPA mappings for " + emapsKeys.length + " EMAPS terms ("
+			+ emapaKeys.length + " EMAPA terms)");
 	}
 
-	public String getEmapaKey (String emapsKey) {
-		return emaps2emapa.get(emapsKey);
+	// index the structures from the first 'count' pairs of EMAPS term key and the
+	// EMAPA term key it maps to (package-level, so benchmarks can supply their own)
+	void setStructures(int[] emapsTermKeys, int[] emapaTermKeys, int count) {
+		emapsIndexes = new IntIntMap(count);
+		IntIntMap emapaIndexes = new IntIntMap();
+		emapsKeys = new int[count];
+		emapaOf = new int[count];
+		emapaKeys = new int[1024];
+
+		for (int i = 0; i < count; i++) {
+			int emapsKey = emapsTermKeys[i];
+			int emapaKey = emapaTermKeys[i];
+
+			int emapa = emapaIndexes.get(emapaKey, -1);
+			if (emapa < 0) {
+				emapa = emapaIndexes.size();
+				emapaKeys = ensureLength(emapaKeys, emapa + 1);
+				emapaKeys[emapa] = emapaKey;
+				emapaIndexes.put(emapaKey, emapa);
+			}
+			if (!emapsIndexes.containsKey(emapsKey)) {
+				int emaps = emapsIndexes.size();
+				emapsKeys[emaps] = emapsKey;
+				emapaOf[emaps] = emapa;
+				emapsIndexes.put(emapsKey, emaps);
+			}
+		}
+		emapsKeys = Arrays.copyOf(emapsKeys, emapsIndexes.size());
+		emapaOf = Arrays.copyOf(emapaOf, emapsIndexes.size());
+		emapaKeys = Arrays.copyOf(emapaKeys, emapaIndexes.size());
 	}
-	
-	public Set<String> getEmapaKeys (Set<String> emapsKeys) {
-		Set<String> emapaKeys = new HashSet<String>();
-		for (String emapsKey : emapsKeys) {
-		        emapaKeys.add(getEmapaKey(emapsKey));
+
+	// return 'a', or a longer copy of it if it has fewer than 'length' elements
+	private static int[] ensureLength(int[] a, int length) {
+		if (a.length >= length) {
+			return a;
 		}
-		return emapaKeys;
+		return Arrays.copyOf(a, Math.max(length, a.length * 2));
 	}
 	
-	// get the mapping from each EMAPS term key to its EMAPS ancestor keys
-	// (Reflexive. A term's ancestor keys includes its own key.)
+	// get the EMAPS ancestors of each EMAPS term, by EMAPS index
+	// (Reflexive. A term's ancestors include itself.)  Must follow fillEmaps2Emapa().
 	public void fillEmapsAncestors() throws Exception {
-		emapsAncestors = new HashMap<String,Set<String>>();
-		
 		String cmd = "select t.term_key, a.ancestor_term_key "
 			+ "from term t, term_ancestor a "
 			+ "where t.term_key = a.term_key "
 			+ "and t.vocab_name = 'EMAPS'" ;
 		
-		ResultSet rs = ex.executeProto(cmd);
-		while (rs.next()) {
-			String termKey = rs.getString("term_key");
-			if (!emapsAncestors.containsKey(termKey)) {
-				emapsAncestors.put(termKey, new HashSet<String>());
-				emapsAncestors.get(termKey).add(termKey);
+		setAncestors(DagClosure.load(ex, cmd, "term_key", "ancestor_term_key", true));
+		logger.info("Got " + emapsAncestors.length + " EMAPS ancestors for " + emapsKeys.length + " EMAPS terms");
+	}
+
+	// lay 'closure' (of EMAPS term keys) out by EMAPS index; ancestors without an EMAPA
+	// structure are left out, as they have no place in the EMAPA sets.  Must follow
+	// setStructures().  (Package-level, so benchmarks can supply their own.)
+	void setAncestors(DagClosure closure) {
+		ancestorOffsets = new int[emapsKeys.length + 1];
+		emapsAncestors = new int[closure.relationshipCount()];
+		int count = 0;
+		for (int emaps = 0; emaps < emapsKeys.length; emaps++) {
+			ancestorOffsets[emaps] = count;
+			int term = closure.indexOf(Integer.toString(emapsKeys[emaps]));
+			for (int i = closure.start(term); i < closure.end(term); i++) {
+				int ancestor = emapsIndexes.get(Integer.parseInt(closure.getLabel(closure.relatedAt(i))), -1);
+				if (ancestor >= 0) {
+					emapsAncestors[count++] = ancestor;
+				}
 			}
-			emapsAncestors.get(termKey).add(rs.getString("ancestor_term_key"));
 		}
-		rs.close();
-		logger.info("Got EMAPS ancestors for " + emapsAncestors.size() + " EMAPS terms");
+		ancestorOffsets[emapsKeys.length] = count;
+		emapsAncestors = Arrays.copyOf(emapsAncestors, count);
 	}
 	
-	// get the set of EMAPS structure keys that are ancestors of the given EMAPS structure key,
-	// (including 'emapsKey' itself)
-	public Set<String> getEmapsAncestors(String emapsKey) throws Exception {
-		if (emapsAncestors.containsKey(emapsKey)) {
-			return emapsAncestors.get(emapsKey);
+	// add the profile fields for one type of data to 'doc', given the EMAPS indexes
+	// of the structures where the marker was expressed ('exact'):  those structures, their
+	// EMAPS ancestors, and the EMAPA structures of each, as term keys
+	private void addProfileFields(SolrInputDocument doc, BitSet exact, String exactField,
+			String ancField, String exactAField, String ancAField) {
+		BitSet anc = new BitSet(emapsKeys.length);
+		BitSet exactA = new BitSet(emapaKeys.length);
+		BitSet ancA = new BitSet(emapaKeys.length);
+
+		for (int emaps = exact.nextSetBit(0); emaps >= 0; emaps = exact.nextSetBit(emaps + 1)) {
+			exactA.set(emapaOf[emaps]);
+			for (int i = ancestorOffsets[emaps]; i < ancestorOffsets[emaps + 1]; i++) {
+				anc.set(emapsAncestors[i]);
+			}
 		}
-		return emptySet;
-	}
-	
-
-	// get an ordered list of markers that have expression data
-	public List<Integer> getMarkerKeys() throws Exception {
-		logger.info("Getting marker keys");
-		List<Integer> markerKeys = new ArrayList<Integer>();
-
-		String cmd = "select m.marker_key from marker m "
-			+ "where m.organism = 'mouse' "
-			+ "and m.status = 'official' "
-			+ "and exists (select 1 from expression_result_summary s "
-			+ "  where m.marker_key = s.marker_key) "
-			+ " UNION "
-			+ "select m.marker_key from marker m "
-			+ "where m.organism = 'mouse' "
-			+ "and m.status = 'official' "
-			+ "and exists (select 1 from expression_ht_consolidated_sample_measurement s "
-			+ "  where m.marker_key = s.marker_key) "
-			+ "order by 1";
-
-		ResultSet rs = ex.executeProto(cmd);
-		while (rs.next()) {
-			markerKeys.add(rs.getInt("marker_key"));
+		for (int emaps = anc.nextSetBit(0); emaps >= 0; emaps = anc.nextSetBit(emaps + 1)) {
+			ancA.set(emapaOf[emaps]);
 		}
-		rs.close();
-		logger.info(" - found " + markerKeys.size() + " marker keys from " + markerKeys.get(0) + " to " + markerKeys.get(markerKeys.size() - 1));
 
-		return markerKeys;
+		doc.addField(exactField,  toInts(exact, emapsKeys));
+		doc.addField(ancField,    toInts(anc, emapsKeys));
+		doc.addField(exactAField, toInts(exactA, emapaKeys));
+		doc.addField(ancAField,   toInts(ancA, emapaKeys));
 	}
 
-	// add results for the classical data for markers between the two given keys
-	public void addClassicalResults(Integer startMarkerKey, Integer endMarkerKey, Map<Integer,List<Result>> markerResults) throws Exception {
-		logger.info("Getting classical results (markers " + startMarkerKey + " to " + endMarkerKey + ")");
-
-		String query = "select ers.is_expressed, ers.structure_key, "
+	// markers that have expression data (official mouse markers with classical or RNA-seq results)
+	private static String MARKER_KEY_QUERY = "select m.marker_key from marker m "
+		+ "where m.organism = 'mouse' "
+		+ "and m.status = 'official' "
+		+ "and exists (select 1 from expression_result_summary s "
+		+ "  where m.marker_key = s.marker_key) "
+		+ " UNION "
+		+ "select m.marker_key from marker m "
+		+ "where m.organism = 'mouse' "
+		+ "and m.status = 'official' "
+		+ "and exists (select 1 from expression_ht_consolidated_sample_measurement s "
+		+ "  where m.marker_key = s.marker_key) ";
+
+	// query for the classical results for markers between the two given keys
+	private String classicalResultsQuery(Integer startMarkerKey, Integer endMarkerKey) {
+		return "select ers.is_expressed, ers.structure_key, "
 			+ " ers.structure_printname, "
 			+ " emaps.primary_id emaps_id, "
 			+ " ers.theiler_stage, ers.marker_key "
@@ -167,15 +232,20 @@ public class GxdProfileMarkerIndexer extends Indexer
 			+ " and ers.assay_type != 'Recombinase reporter' "
 			+ " and ers.assay_type != 'In situ reporter (transgenic)' "
 			+ " and (ers.is_wild_type = 1 or ers.genotype_key=-1)";
+	}
+
+	// add results for the classical data for markers between the two given keys
+	public void addClassicalResults(Integer startMarkerKey, Integer endMarkerKey, Map<Integer,List<Result>> markerResults) throws Exception {
+		logger.info("Getting classical results (markers " + startMarkerKey + " to " + endMarkerKey + ")");
 
 		// "order by is_expressed desc ";
-		ResultSet rs = ex.executeProto(query);
+		ResultSet rs = ex.executeProto(classicalResultsQuery(startMarkerKey, endMarkerKey));
 
 		logger.info(" - organizing them");
 		while (rs.next()) {           
 			int marker_key = rs.getInt("marker_key");
 			boolean is_expressed = rs.getString("is_expressed").equals("Yes");
-			String structure_key = rs.getString("structure_key");
+			int structure_key = rs.getInt("structure_key");
 			String emapsId = rs.getString("emaps_id");
 			String stage = rs.getString("theiler_stage");
 			if(!markerResults.containsKey(marker_key)) {
@@ -187,10 +257,9 @@ public class GxdProfileMarkerIndexer extends Indexer
 		logger.info(" - returning data for " + markerResults.size() + " markers");
 	}
 
-	// add results for the RNA-seq data for markers between the two given keys
-	public void addRnaSeqResults(Integer startMarkerKey, Integer endMarkerKey, Map<Integer,List<Result>> markerResults) throws Exception {
-		logger.info("Getting RNA-seq results (markers " + startMarkerKey + " to " + endMarkerKey + ")");
-		String query = ""
+	// query for the RNA-seq results for markers between the two given keys
+	private String rnaSeqResultsQuery(Integer startMarkerKey, Integer endMarkerKey) {
+		return ""
 			+ "select  "
                         + "  ht.marker_key, "
                         + "  case  "
@@ -218,12 +287,17 @@ public class GxdProfileMarkerIndexer extends Indexer
 			+ "  and cs.genotype_key = g.genotype_key "
 			+ "  and g.combination_1 is null "
 			;
-		ResultSet rs = ex.executeProto(query);
+	}
+
+	// add results for the RNA-seq data for markers between the two given keys
+	public void addRnaSeqResults(Integer startMarkerKey, Integer endMarkerKey, Map<Integer,List<Result>> markerResults) throws Exception {
+		logger.info("Getting RNA-seq results (markers " + startMarkerKey + " to " + endMarkerKey + ")");
+		ResultSet rs = ex.executeProto(rnaSeqResultsQuery(startMarkerKey, endMarkerKey));
 		logger.info(" - organizing them");
 		while (rs.next()) {           
 			int marker_key = rs.getInt("marker_key");
 			boolean is_expressed = rs.getInt("is_expressed") == 1;
-			String structure_key = rs.getString("structure_key");
+			int structure_key = rs.getInt("structure_key");
 			String emapsId = rs.getString("emaps_id");
 			String stage = rs.getString("theiler_stage");
 			if(!markerResults.containsKey(marker_key)) {
@@ -242,11 +316,27 @@ public class GxdProfileMarkerIndexer extends Indexer
 		addRnaSeqResults(startKey, endKey, markerResults);
 		return markerResults;
 	}
+
+	// query for the classical and RNA-seq results of all markers as one stream, ordered
+	// by marker (is_expressed and is_rnaseq are 1 or 0)
+	private String allResultsQuery() {
+		return "select u.* from ("
+			+ "select r.marker_key, r.structure_key, r.emaps_id, r.theiler_stage::text as theiler_stage, "
+			+ "  case when r.is_expressed = 'Yes' then 1 else 0 end as is_expressed, 0 as is_rnaseq "
+			+ "from (" + classicalResultsQuery(0, Integer.MAX_VALUE) + ") r "
+			+ "union all "
+			+ "select r.marker_key, r.structure_key, r.emaps_id, r.theiler_stage::text, "
+			+ "  r.is_expressed, 1 "
+			+ "from (" + rnaSeqResultsQuery(0, Integer.MAX_VALUE) + ") r "
+			+ ") u "
+			+ "order by u.marker_key";
+	}
 	
-	private Set<Integer> toInts (Set<String> strs) {
-		Set<Integer> ans = new HashSet();
-		for (String s : strs) {
-		    ans.add(Integer.valueOf(s));
+	// return the term keys (from 'keys') of the indexes set in 'bits'
+	private List<Integer> toInts (BitSet bits, int[] keys) {
+		List<Integer> ans = new ArrayList<Integer>(bits.cardinality());
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+		    ans.add(keys[i]);
 		}
 		return ans;
 	}
@@ -270,111 +360,193 @@ public class GxdProfileMarkerIndexer extends Indexer
 				
 		// iterate this marker's results to build various search fields.
 
-		Set<String> posCexact = new HashSet<String>();
-		Set<String> posCanc   = new HashSet();
-		Set<String> posRexact = new HashSet<String>();
-		Set<String> posRanc   = new HashSet();
-
-		Set<String> posCexactA = new HashSet<String>();
-		Set<String> posCancA   = new HashSet();
-		Set<String> posRexactA = new HashSet<String>();
-		Set<String> posRancA   = new HashSet();
+		BitSet posCexact = new BitSet(emapsKeys.length);
+		BitSet posRexact = new BitSet(emapsKeys.length);
 
 		for(Result result : markerResults) {
 		    if(result.expressed) {
-			String emapsKey = result.structureKey;
-			Set<String> emapsAncestors = getEmapsAncestors(result.structureKey);
-			String emapaKey = getEmapaKey(emapsKey);
-			Set<String> emapaAncestors = getEmapaKeys(emapsAncestors);
-			if (result.isRnaSeq) {
-			    posRexact.add(emapsKey);
-			    posRanc.addAll(emapsAncestors);
-			    posRexactA.add(emapaKey);
-			    posRancA.addAll(emapaAncestors);
+			int emaps = emapsIndexes.get(result.structureKey, -1);
+			if (emaps < 0) {
+			    logger.error("No EMAPA structure for EMAPS key " + result.structureKey + " (marker " + markerKey + ")");
+			} else if (result.isRnaSeq) {
+			    posRexact.set(emaps);
 			} else {
-			    posCexact.add(emapsKey);
-			    posCanc.addAll(emapsAncestors);
-			    posCexactA.add(emapaKey);
-			    posCancA.addAll(emapaAncestors);
+			    posCexact.set(emaps);
 			}
 		    }
 		} 
-		doc.addField(GxdResultFields.PROF_POS_C_EXACT,   toInts(posCexact));
-		doc.addField(GxdResultFields.PROF_POS_C_ANC,     toInts(posCanc));
-		doc.addField(GxdResultFields.PROF_POS_C_EXACT_A, toInts(posCexactA));
-		doc.addField(GxdResultFields.PROF_POS_C_ANC_A,   toInts(posCancA));
-
-		doc.addField(GxdResultFields.PROF_POS_R_EXACT,   toInts(posRexact));
-		doc.addField(GxdResultFields.PROF_POS_R_ANC,     toInts(posRanc));
-		doc.addField(GxdResultFields.PROF_POS_R_EXACT_A, toInts(posRexactA));
-		doc.addField(GxdResultFields.PROF_POS_R_ANC_A,   toInts(posRancA));
+		addProfileFields(doc, posCexact, GxdResultFields.PROF_POS_C_EXACT, GxdResultFields.PROF_POS_C_ANC,
+			GxdResultFields.PROF_POS_C_EXACT_A, GxdResultFields.PROF_POS_C_ANC_A);
+		addProfileFields(doc, posRexact, GxdResultFields.PROF_POS_R_EXACT, GxdResultFields.PROF_POS_R_ANC,
+			GxdResultFields.PROF_POS_R_EXACT_A, GxdResultFields.PROF_POS_R_ANC_A);
 
 		return doc;
 	}
 
+	// build the documents for one slice of markers on the document pool, in batches of
+	// at most 'batchSize' markers, writing each batch as it is finished
+	private List<Future<Void>> submitSlice(Map<Integer,String> markerIDs,
+			Map<Integer,List<Result>> markerResults, int batchSize) {
+		List<Integer> markerKeys = new ArrayList<Integer>(markerResults.keySet());
+		List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+
+		for (int i = 0; i < markerKeys.size(); i += batchSize) {
+			List<Integer> batch = markerKeys.subList(i, Math.min(i + batchSize, markerKeys.size()));
+			tasks.add(docPool.submit(() -> {
+				long start = System.nanoTime();
+				Collection<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(batch.size());
+				for (Integer markerKey : batch) {
+					docs.add(buildSolrDoc(markerKey, markerIDs.get(markerKey), markerResults.get(markerKey)));
+				}
+				metrics.record(IndexerMetrics.DOC_BUILD, start, docs.size());
+				writeDocs(docs);
+				return null;
+			}));
+		}
+		return tasks;
+	}
+
+	// wait for all the given batches to be built and written; rethrows the first failure
+	private void awaitTasks(List<Future<Void>> tasks) throws Exception {
+		for (Future<Void> task : tasks) {
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) {
+					throw (Exception) e.getCause();
+				}
+				throw e;
+			}
+		}
+	}
+
 	// main logic for building the index
 	public void index() throws Exception
 	{    
-		List<Integer> markerKeys = getMarkerKeys();
+		long start = System.nanoTime();
 		fillEmaps2Emapa();
 		fillEmapsAncestors();
-		Collection<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
-
-		int startIndex = 0;
-		int numMarkers = markerKeys.size();
-		int chunkSize = 2000;	// number of markers to process at once
-		int cacheSize = 1000;	// number of solr docs to keep in memory
-
-		Integer startMarkerKey = 0;
-		Integer endMarkerKey = 0;
-                
-		while (startIndex < numMarkers) {
-			// get a slice of markers to work on
-			startMarkerKey = markerKeys.get(startIndex);
-			int endIndex = startIndex + chunkSize;
-
-			if (endIndex >= numMarkers) {
-				endMarkerKey = markerKeys.get(markerKeys.size() - 1);
+		metrics.record(IndexerMetrics.CACHE_LOAD, start);
+		int docThreads = getIntProperty("gxdProfileMarker.docThreads", Runtime.getRuntime().availableProcessors());
+		docPool = new ForkJoinPool(docThreads);
+		logger.info("Building documents with " + docThreads + " thread(s)");
+
+		try {
+			if ("true".equalsIgnoreCase(getIndexProperty("streaming", "false"))) {
+				indexStreaming(docThreads);
 			} else {
-				endMarkerKey = markerKeys.get(endIndex);
+				indexSlices(docThreads);
 			}
+		} finally {
+			docPool.shutdown();
+		}
 
-			Map<Integer,String> markerIDs = getMarkerIDs(startMarkerKey, endMarkerKey); 
+		commit();
+	}
+
+	// read the results one slice of markers at a time, building each slice's documents
+	// while the next slice is read
+	private void indexSlices(int docThreads) throws Exception
+	{
+		int chunkSize = 2000;	// number of markers to start processing at once (then adjusted)
+		int cacheSize = 1000;	// most markers to build and write as one batch of solr docs
+
+		KeyRangeScanner scanner = new KeyRangeScanner(ex, "(" + MARKER_KEY_QUERY + ") markers", "marker_key")
+			.setController(new ChunkSizeController("gxdProfileMarker", chunkSize))
+			.setMetrics(metrics);
+		logger.info(" - found " + scanner.getRowCount() + " markers up to key " + scanner.getMaxKey());
+
+		// Each slice's documents are built on the document pool, while the scanner's thread
+		// goes on to read the next slice.  (Only one slice is built at a time, so at most two
+		// slices of results are held in memory.)
+		scanner.scan((start, end) -> {
+				// get a slice of markers to work on (the marker queries include their start key
+				// but not their end key)
+				Integer startMarkerKey = start + 1;
+				Integer endMarkerKey = end + 1;
+
+				Map<Integer,String> markerIDs = getMarkerIDs(startMarkerKey, endMarkerKey); 
+
+				Map<Integer,List<Result>> markerResults = getMarkerResults(startMarkerKey, endMarkerKey);
+
+				// finish the previous slice, then hand this one to the pool (split so that
+				// each thread gets a few batches)
+				awaitTasks(pendingTasks);
+				int batchSize = Math.max(1, Math.min(cacheSize, markerResults.size() / (docThreads * 4) + 1));
+				pendingTasks = submitSlice(markerIDs, markerResults, batchSize);
+				logger.info(" - building solr docs for " + markerResults.size() + " markers");
+			}); // end walking through slices of markers
+
+		awaitTasks(pendingTasks);
+		logger.info(" - built solr docs");
+	}
+
+	// read the results of all markers through one cursor, ordered by marker; as each
+	// marker's run of rows ends, its results are passed on to be built into a document
+	private void indexStreaming(int docThreads) throws Exception
+	{
+		int batchSize = 200;				// markers per batch of documents
+		int maxPending = docThreads * 2;	// batches allowed to wait for the pool
+
+		Map<Integer,String> markerIDs = getMarkerIDs(0, Integer.MAX_VALUE);
+
+		ResultSet rs = ex.executeProto(allResultsQuery(), 50000);
+		logger.info(" - streaming results");
 
-			Map<Integer,List<Result>> markerResults = getMarkerResults(startMarkerKey, endMarkerKey);
+		Map<Integer,List<Result>> batch = new HashMap<Integer,List<Result>>();
+		List<Result> results = null;
+		int markerKey = -1;
+		int markerCount = 0;
 
-			// now build & handle solr documents (one per marker)
-			for (Integer markerKey : markerResults.keySet()) {
-				docs.add(buildSolrDoc(markerKey, markerIDs.get(markerKey), markerResults.get(markerKey)));
-				if (docs.size() > cacheSize) {
-                                        logger.info(" - writing " + docs.size() + " docs.");
-					writeDocs(docs);
-					docs = new ArrayList<SolrInputDocument>();
+		while (rs.next()) {
+			int marker_key = rs.getInt("marker_key");
+			if (marker_key != markerKey) {
+				if (results != null) {
+					batch.put(markerKey, results);
+					markerCount++;
 				}
+				if (batch.size() >= batchSize) {
+					submitBatch(markerIDs, batch, maxPending);
+					batch = new HashMap<Integer,List<Result>>();
+				}
+				markerKey = marker_key;
+				results = new ArrayList<Result>();
 			}
-			logger.info(" - built solr docs");
+			results.add(new Result(rs.getInt("structure_key"), rs.getString("emaps_id"),
+				rs.getString("theiler_stage"), rs.getInt("is_expressed") == 1, rs.getInt("is_rnaseq") == 1));
+		}
+		rs.close();
+		if (results != null) {
+			batch.put(markerKey, results);
+			markerCount++;
+		}
+		submitBatch(markerIDs, batch, maxPending);
 
-			// prepare for the next slice of markers
-			startIndex = endIndex;
-		} // end while (walking through chunks of markers)
+		awaitTasks(pendingTasks);
+		logger.info(" - built solr docs for " + markerCount + " markers");
+	}
 
-		if (docs.size() > 0) {
-                        logger.info(" - writing " + docs.size() + " docs.");
-			writeDocs(docs);
+	// hand one batch of markers to the document pool, first waiting for the oldest
+	// batches if more than 'maxPending' are already waiting
+	private void submitBatch(Map<Integer,String> markerIDs, Map<Integer,List<Result>> batch,
+			int maxPending) throws Exception {
+		while (pendingTasks.size() >= maxPending) {
+			awaitTasks(pendingTasks.subList(0, 1));
+			pendingTasks.remove(0);
 		}
-		commit();
+		pendingTasks.addAll(submitSlice(markerIDs, batch, Math.max(1, batch.size())));
 	}
 
 	// helper classes
 	public class Result
 	{
-		public String structureKey;
+		public int structureKey;
 		public String structureId;
 		public String stage;
 		public boolean expressed;
 		public boolean isRnaSeq;
 
-		public Result(String structureKey, String structureId, String stage, boolean expressed, boolean isrnaseq)
+		public Result(int structureKey, String structureId, String stage, boolean expressed, boolean isrnaseq)
 		{
 			this.structureKey=structureKey;
 			this.structureId=structureId;
@@ -0,0 +1,635 @@
+package org.jax.mgi.gxdindexer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.jax.mgi.gxdindexer.GxdResultIndexer.ChunkCache;
+import org.jax.mgi.gxdindexer.shr.DagClosure;
+import org.jax.mgi.gxdindexer.shr.MarkerDOCache;
+import org.jax.mgi.gxdindexer.shr.MarkerGOCache;
+import org.jax.mgi.gxdindexer.shr.MarkerMPCache;
+import org.jax.mgi.gxdindexer.shr.MarkerTypeCache;
+import org.jax.mgi.gxdindexer.shr.ResultCOCache;
+import org.jax.mgi.shr.fe.IndexConstants;
+import org.jax.mgi.shr.fe.indexconstants.GxdResultFields;
+import org.jax.mgi.shr.fe.query.SolrLocationTranslator;
+
+/**
+ * GxdResultDocMapper
+ *
+ * Builds the gxdResult (or gxdResultHasImage) Solr document for a
+ * GxdResultRow.  All the lookups it
+ * needs (the global maps and caches given to the constructor, plus the
+ * ChunkCache for the row's chunk) are only read once built, and the mapper
+ * itself keeps no per-row state, so one mapper can be shared by any number
+ * of threads.
+ */
+
+public class GxdResultDocMapper {
+	// detected values that should be mapped to "yes"
+	public static List<String> detectedYesLevels = Arrays.asList("Present", "Trace", "Weak", "Moderate", "Strong", "Very strong");
+
+	// caches of marker and result annotation data
+	private MarkerMPCache markerMpCache;
+	private MarkerGOCache markerGoCache;
+	private MarkerDOCache markerDoCache;
+	private ResultCOCache resultCoCache;
+	private MarkerTypeCache markerTypeCache;
+
+	// global mappings (see GxdResultIndexer.index() for what each holds)
+	private Map<String, List<String>> markerNomenMap;
+	private Map<String, String> centimorganMap;
+	private Map<String, Map<String, Map<String, String>>> mutatedInMap;
+	private Map<String, List<String>> mutatedInAlleleMap;
+	private Map<String, Map<String, Map<String, String>>> hasImageMutatedInMap;
+	private Map<String, List<String>> hasImageMutatedInAlleleMap;
+	private Map<String, List<String>> markerVocabMap;
+	private DagClosure vocabAncestors;
+	private DagClosure structureAncestorIds;
+	private DagClosure structureAncestorKeys;
+	private Map<String, List<String>> structureSynonymMap;
+
+	// for RNA-Seq data only:  J#s for HT experiments (key is experiment key), and the
+	// maximum symbol sequence number (to sort RNA-Seq assays after classical ones)
+	private Map<String, List<String>> htExpRefs = null;
+	private int maxSymbol = 0;
+
+	public GxdResultDocMapper(MarkerMPCache markerMpCache, MarkerGOCache markerGoCache,
+			MarkerDOCache markerDoCache, ResultCOCache resultCoCache, MarkerTypeCache markerTypeCache,
+			Map<String, List<String>> markerNomenMap,
+			Map<String, String> centimorganMap,
+			Map<String, Map<String, Map<String, String>>> mutatedInMap,
+			Map<String, List<String>> mutatedInAlleleMap,
+			Map<String, List<String>> markerVocabMap,
+			DagClosure vocabAncestors,
+			DagClosure structureAncestorIds,
+			DagClosure structureAncestorKeys,
+			Map<String, List<String>> structureSynonymMap) {
+		this.markerMpCache = markerMpCache;
+		this.markerGoCache = markerGoCache;
+		this.markerDoCache = markerDoCache;
+		this.resultCoCache = resultCoCache;
+		this.markerTypeCache = markerTypeCache;
+		this.markerNomenMap = markerNomenMap;
+		this.centimorganMap = centimorganMap;
+		this.mutatedInMap = mutatedInMap;
+		this.mutatedInAlleleMap = mutatedInAlleleMap;
+		this.hasImageMutatedInMap = mutatedInMap;
+		this.hasImageMutatedInAlleleMap = mutatedInAlleleMap;
+		this.markerVocabMap = markerVocabMap;
+		this.vocabAncestors = vocabAncestors;
+		this.structureAncestorIds = structureAncestorIds;
+		this.structureAncestorKeys = structureAncestorKeys;
+		this.structureSynonymMap = structureSynonymMap;
+	}
+
+	// set the lookups needed for RNA-Seq rows (must be done before mapping any)
+	public void setRnaSeqData(Map<String, List<String>> htExpRefs, int maxSymbol) {
+		this.htExpRefs = htExpRefs;
+		this.maxSymbol = maxSymbol;
+	}
+
+	// set the mutated-in lookups for gxdResultHasImage documents, which (as that indexer's
+	// own queries do) include recombinase and wild-type alleles; by default the gxdResult
+	// ones are used
+	public void setHasImageGenotypeData(Map<String, Map<String, Map<String, String>>> mutatedInMap,
+			Map<String, List<String>> mutatedInAlleleMap) {
+		this.hasImageMutatedInMap = mutatedInMap;
+		this.hasImageMutatedInAlleleMap = mutatedInAlleleMap;
+	}
+
+	// build the document for 'row', using the chunk data in 'cc'; returns null if the row
+	// should not be indexed
+	public SolrInputDocument toDoc(GxdResultRow row, ChunkCache cc) throws Exception {
+		if (row.isRnaSeq) {
+			return rnaSeqDoc(row, cc);
+		}
+		return classicalDoc(row, cc);
+	}
+
+	// build the document for a classical expression result
+	public SolrInputDocument classicalDoc(GxdResultRow row, ChunkCache cc) throws Exception {
+		return buildClassicalDoc(row, cc, false);
+	}
+
+	// build the gxdResultHasImage document for a classical expression result (read with
+	// its image sorts); returns null if the result has none.  This matches the gxdResult
+	// document, except for its sorts, its genotype (allele pairs as in combination_1), and
+	// having no Ensembl gene model ID.
+	public SolrInputDocument hasImageDoc(GxdResultRow row, ChunkCache cc) throws Exception {
+		if (row.imageByAssayType == null) {
+			return null;
+		}
+		return buildClassicalDoc(row, cc, true);
+	}
+
+	// build the document for a classical expression result, for the gxdResult index or (if
+	// 'forHasImage') the gxdResultHasImage index
+	private SolrInputDocument buildClassicalDoc(GxdResultRow row, ChunkCache cc, boolean forHasImage) throws Exception {
+		String markerKey = row.markerKey;
+		String result_key = row.resultKey;
+		String assay_key = row.assayKey;
+		String assay_type = row.assayType;
+
+		String unique_key = assay_type + "-" + result_key;
+		if (unique_key == null || unique_key.equals("-")) {
+			return null;
+		}
+
+		SolrInputDocument doc = new SolrInputDocument();
+
+		// Add the single value fields
+		doc.addField(GxdResultFields.KEY, unique_key);
+		doc.addField(GxdResultFields.MARKER_KEY, markerKey);
+		doc.addField(IndexConstants.MRK_BY_SYMBOL, forHasImage ? row.imageByGeneSymbol : row.byGeneSymbol);
+		doc.addField(GxdResultFields.M_BY_LOCATION, cc.markerByLocation.get(markerKey));
+		doc.addField(GxdResultFields.ASSAY_KEY, assay_key);
+		doc.addField(GxdResultFields.RESULT_KEY, result_key);
+		doc.addField(GxdResultFields.RESULT_TYPE, assay_type);
+		doc.addField(GxdResultFields.ASSAY_TYPE, assay_type);
+		doc.addField(GxdResultFields.THEILER_STAGE, row.theilerStage);
+		doc.addField(GxdResultFields.EMAPS_ID, row.emapsID);
+		doc.addField(GxdResultFields.IS_EXPRESSED, row.isExpressed);
+		doc.addField(GxdResultFields.AGE_MIN, roundAge(row.ageMin));
+		doc.addField(GxdResultFields.AGE_MAX, roundAge(row.ageMax));
+		doc.addField(GxdResultFields.SEX, row.sex);
+		doc.addField(GxdResultFields.STRAIN, cc.bgStrains.get(row.genotypeKey));
+		doc.addField(GxdResultFields.CELL_TYPE, row.cellType);
+
+		boolean isWildType = row.isWildType.equals("1") || row.genotypeKey.equals("-1");
+
+		String wildType = "mutant";
+		if (isWildType) {
+			wildType = "wild type";
+		}
+
+		doc.addField(GxdResultFields.IS_WILD_TYPE, wildType);
+
+		addMarkerFields(doc, markerKey, cc, !forHasImage);
+		addLocationFields(doc, markerKey, cc);
+		addAssayFields(doc, assay_key, cc);
+
+		// assay sorts (gxdResultHasImage sorts assays by assay type in both)
+		if (forHasImage) {
+			doc.addField(GxdResultFields.A_BY_SYMBOL, row.imageByAssayType);
+			doc.addField(GxdResultFields.A_BY_ASSAY_TYPE, row.imageByAssayType);
+		} else {
+			doc.addField(GxdResultFields.A_BY_SYMBOL, row.byGeneSymbol);
+			doc.addField(GxdResultFields.A_BY_ASSAY_TYPE, row.byAssayType);
+		}
+
+		// result summary
+		doc.addField(GxdResultFields.DETECTION_LEVEL, mapDetectionLevel(row.detectionLevel) );
+		doc.addField(GxdResultFields.STRUCTURE_PRINTNAME, cc.printname.get(row.structureTermKey));
+		doc.addField(GxdResultFields.AGE, row.ageAbbreviation);
+		doc.addField(GxdResultFields.ASSAY_MGIID, cc.assayID.get(assay_key));
+		doc.addField(GxdResultFields.JNUM, row.jnumID);
+		doc.addField(GxdResultFields.JNUMS, row.jnumID);
+		doc.addField(GxdResultFields.PUBMED_ID, cc.pubmedID.get(row.referenceKey));
+		doc.addField(GxdResultFields.SHORT_CITATION, cc.citation.get(row.referenceKey));
+		if (forHasImage) {
+			doc.addField(GxdResultFields.GENOTYPE, cc.hasImageAllelePairs.get(row.genotypeKey));
+		} else {
+			doc.addField(GxdResultFields.GENOTYPE, cc.allelePairs.get(row.genotypeKey));
+		}
+		doc.addField(GxdResultFields.PATTERN, row.pattern);
+
+		// add fields for filtering by marker-associated vocabularies
+		for (String mpTerm : markerMpCache.getTerms(markerKey)) {
+			doc.addField(GxdResultFields.MP_HEADERS, mpTerm);
+		}
+
+		addGoTerms(doc, markerKey);
+
+		for (String doTerm : markerDoCache.getTerms(markerKey)) {
+			doc.addField(GxdResultFields.DO_HEADERS, doTerm);
+		}
+
+		for (String coTerm : resultCoCache.getTerms(result_key)) {
+			doc.addField(GxdResultFields.CO_HEADERS, coTerm);
+		}
+
+		for (String featureType : markerTypeCache.getTerms(markerKey)) {
+			doc.addField(GxdResultFields.FEATURE_TYPES, featureType);
+		}
+
+		// multi values
+
+		addSystems(doc, row);
+		addNomenclature(doc, markerKey);
+		if (forHasImage) {
+			addGenotypeFields(doc, row.genotypeKey, hasImageMutatedInMap, hasImageMutatedInAlleleMap);
+		} else {
+			addGenotypeFields(doc, row.genotypeKey, mutatedInMap, mutatedInAlleleMap);
+		}
+		addAnnotations(doc, markerKey);
+
+		String cellTypeID = row.cellTypeID;
+		int cellType = vocabAncestors.indexOf(cellTypeID);
+		if (vocabAncestors.hasRelated(cellType)) {
+			// add this DAG node, and all it's parents (up to 'cell')
+			doc.addField(GxdResultFields.ANNOTATION, cellTypeID);
+			for (int i = vocabAncestors.start(cellType); i < vocabAncestors.end(cellType); i++) {
+				doc.addField(GxdResultFields.ANNOTATION, vocabAncestors.getLabel(vocabAncestors.relatedAt(i)));
+			}
+		}
+
+		if ((row.figures != null) && row.hasImage.equals("1")) {
+			for (String figure : row.figures) {
+				doc.addField(GxdResultFields.FIGURE, figure);
+				doc.addField(GxdResultFields.FIGURE_PLAIN, figure);
+			}
+		}
+
+		String myEmapaID = addStructureFields(doc, row.structureTermKey, cc);
+
+		// result sorts
+		if (forHasImage) {
+			doc.addField(GxdResultFields.R_BY_ASSAY_TYPE, row.imageByAssayType);
+			doc.addField(GxdResultFields.R_BY_MRK_SYMBOL, row.imageByGeneSymbol);
+			doc.addField(GxdResultFields.R_BY_AGE, row.imageByAge);
+			doc.addField(GxdResultFields.R_BY_STRUCTURE, row.imageByStructure);
+			doc.addField(GxdResultFields.R_BY_EXPRESSED, row.imageByExpressed);
+			doc.addField(GxdResultFields.R_BY_MUTANT_ALLELES, row.imageByMutantAlleles);
+			doc.addField(GxdResultFields.R_BY_REFERENCE, row.imageByReference);
+		} else {
+			doc.addField(GxdResultFields.R_BY_ASSAY_TYPE, row.byAssayType);
+			doc.addField(GxdResultFields.R_BY_MRK_SYMBOL, row.byGeneSymbol);
+			doc.addField(GxdResultFields.R_BY_AGE, row.byAge);
+			doc.addField(GxdResultFields.R_BY_STRUCTURE, row.byStructure);
+			doc.addField(GxdResultFields.R_BY_EXPRESSED, row.byExpressed);
+			doc.addField(GxdResultFields.R_BY_REFERENCE, row.byReference);
+		}
+
+		addMatrixGroups(doc, row, myEmapaID);
+		return doc;
+	}
+
+	// build the document for an RNA-Seq measurement
+	public SolrInputDocument rnaSeqDoc(GxdResultRow row, ChunkCache cc) throws Exception {
+		String markerKey = row.markerKey;
+		String result_key = row.resultKey;
+		String assay_key = row.assayKey;
+		String assay_type = row.assayType;
+		String genotypeKey = row.genotypeKey;
+		String combination = cc.allelePairs.get(genotypeKey);
+
+		String unique_key = assay_type + "-" + result_key;
+		if (unique_key == null || unique_key.equals("-")) {
+			return null;
+		}
+
+		SolrInputDocument doc = new SolrInputDocument();
+
+		// Add the single value fields
+		doc.addField(GxdResultFields.KEY, unique_key);
+		doc.addField(GxdResultFields.MARKER_KEY, markerKey);
+		doc.addField(IndexConstants.MRK_BY_SYMBOL, row.byGeneSymbol);
+		doc.addField(GxdResultFields.M_BY_LOCATION, cc.markerByLocation.get(markerKey));
+		doc.addField(GxdResultFields.ASSAY_KEY, assay_key);
+		doc.addField(GxdResultFields.RESULT_KEY, result_key);
+		doc.addField(GxdResultFields.RESULT_TYPE, assay_type);
+		doc.addField(GxdResultFields.ASSAY_TYPE, assay_type);
+		doc.addField(GxdResultFields.THEILER_STAGE, row.theilerStage);
+		doc.addField(GxdResultFields.EMAPS_ID, row.emapsID);
+		doc.addField(GxdResultFields.IS_EXPRESSED, row.isExpressed);
+		doc.addField(GxdResultFields.AGE_MIN, roundAge(row.ageMin));
+		doc.addField(GxdResultFields.AGE_MAX, roundAge(row.ageMax));
+		doc.addField(GxdResultFields.TPM_LEVEL, row.tpmLevel);
+		doc.addField(GxdResultFields.AVG_QN_TPM_LEVEL, row.avgQnTpm);
+		doc.addField(GxdResultFields.BIOLOGICAL_REPLICATES, row.biologicalReplicates);
+		doc.addField(GxdResultFields.SEX, row.sex);
+		String note = row.note;
+		if (row.isConditional == 1) {
+			if (note == null) {
+				note = "Conditional mutant.";
+			} else {
+				note = "Conditional mutant. " + note;
+			}
+		}
+		doc.addField(GxdResultFields.NOTES, note);
+		doc.addField(GxdResultFields.CONSOLIDATED_SAMPLE_KEY, row.consolidatedSampleKey);
+
+		boolean isWildType = "-1".equals(genotypeKey)
+			|| (combination == null)
+			|| ("".equals(combination));
+
+		String wildType = "mutant";
+		if (isWildType) {
+			wildType = "wild type";
+		}
+
+		doc.addField(GxdResultFields.IS_WILD_TYPE, wildType);
+
+		addMarkerFields(doc, markerKey, cc, true);
+
+		// add fields for filtering by marker-associated vocabularies
+		for (String mpTerm : markerMpCache.getTerms(markerKey)) {
+			doc.addField(GxdResultFields.MP_HEADERS, mpTerm);
+		}
+
+		addGoTerms(doc, markerKey);
+
+		for (String doTerm : markerDoCache.getTerms(markerKey)) {
+			doc.addField(GxdResultFields.DO_HEADERS, doTerm);
+		}
+
+		for (String featureType : markerTypeCache.getTerms(markerKey)) {
+			doc.addField(GxdResultFields.FEATURE_TYPES, featureType);
+		}
+
+		addLocationFields(doc, markerKey, cc);
+		addAssayFields(doc, assay_key, cc);
+
+		// assay sorts (For RNA-Seq, push these below the classical data and sort them by reference.)
+		doc.addField(GxdResultFields.A_BY_SYMBOL, maxSymbol + row.byReferenceNumber);
+		doc.addField(GxdResultFields.A_BY_ASSAY_TYPE, maxSymbol + row.byReferenceNumber);
+
+		// result summary
+		doc.addField(GxdResultFields.DETECTION_LEVEL, row.detectionLevel);
+		doc.addField(GxdResultFields.STRUCTURE_PRINTNAME, cc.printname.get(row.structureTermKey));
+		doc.addField(GxdResultFields.AGE, row.ageAbbreviation);
+		doc.addField(GxdResultFields.ASSAY_MGIID, cc.assayID.get(assay_key));
+		doc.addField(GxdResultFields.JNUM, row.refID);
+		doc.addField(GxdResultFields.SHORT_CITATION, row.refTitle);
+		doc.addField(GxdResultFields.GENOTYPE, combination);
+		doc.addField(GxdResultFields.STRAIN, cc.bgStrains.get(genotypeKey));
+		doc.addField(GxdResultFields.PATTERN, row.pattern);
+
+		// multi values
+
+		if (htExpRefs.containsKey(assay_key)) {
+			for (String jnum : htExpRefs.get(assay_key)) {
+				doc.addField(GxdResultFields.JNUMS, jnum);
+			}
+		}
+
+		addSystems(doc, row);
+		addNomenclature(doc, markerKey);
+		addGenotypeFields(doc, genotypeKey, mutatedInMap, mutatedInAlleleMap);
+		addAnnotations(doc, markerKey);
+
+		String myEmapaID = addStructureFields(doc, row.structureTermKey, cc);
+
+		// result sorts
+		doc.addField(GxdResultFields.R_BY_ASSAY_TYPE, row.byAssayType);
+		doc.addField(GxdResultFields.R_BY_MRK_SYMBOL, row.byGeneSymbol);
+		doc.addField(GxdResultFields.R_BY_AGE, row.byAge);
+		doc.addField(GxdResultFields.R_BY_STRUCTURE, row.byStructure);
+		doc.addField(GxdResultFields.R_BY_EXPRESSED, row.byExpressed);
+		doc.addField(GxdResultFields.R_BY_MUTANT_ALLELES, "0");
+		doc.addField(GxdResultFields.R_BY_REFERENCE, row.byReference);
+
+		addMatrixGroups(doc, row, myEmapaID);
+		return doc;
+	}
+
+	// maps detection level to currently approved display text.
+	public String mapDetectionLevel(String level) {
+		if (level.equals("Absent"))
+			return "No";
+		else if (detectedYesLevels.contains(level))
+			return "Yes";
+
+		return level;
+	}
+
+	public Double roundAge(String ageStr) {
+		if (ageStr != null) {
+			Double age = Double.parseDouble(ageStr);
+			Double ageInt = Math.floor(age);
+			Double ageDecimal = age - ageInt;
+			// try the rounding to nearest 0.5
+			if (ageDecimal < 0.25)
+				ageDecimal = 0.0;
+			else if (ageDecimal < 0.75)
+				ageDecimal = 0.5;
+			else
+				ageDecimal = 1.0;
+			return ageInt + ageDecimal;
+		}
+		// not sure what to do here... age should never be null.
+		return -1.0;
+	}
+
+	// join non-null strings s1, s2, and s3 together, separated by underscores
+	public String joiner (String s1, String s2, String s3) {
+		return joiner(s1, s2, s3, null);
+	}
+
+	// join non-null strings s1, s2, s3, and (nullable) s4 together, separated by underscores.
+	public String joiner (String s1, String s2, String s3, String s4) {
+		StringBuffer sb = new StringBuffer();
+		sb.append(s1);
+		sb.append("_");
+		sb.append(s2);
+		sb.append("_");
+		sb.append(s3);
+		if (s4 != null) {
+			sb.append("_");
+			sb.append(s4);
+		}
+		return sb.toString();
+	}
+
+	// populate the GO fields in the SolrInputDocument for the given markerKey
+	public void addGoTerms(SolrInputDocument doc, String markerKey) throws Exception {
+		for (String goTerm : markerGoCache.getTermsBP(markerKey)) {
+			doc.addField(GxdResultFields.GO_HEADERS_BP, goTerm);
+		}
+		for (String goTerm : markerGoCache.getTermsCC(markerKey)) {
+			doc.addField(GxdResultFields.GO_HEADERS_CC, goTerm);
+		}
+		for (String goTerm : markerGoCache.getTermsMF(markerKey)) {
+			doc.addField(GxdResultFields.GO_HEADERS_MF, goTerm);
+		}
+	}
+
+	/*--- private methods (shared by classical and RNA-Seq documents) ---*/
+
+	// marker summary fields (with the Ensembl gene model ID, if 'withEnsembl')
+	private void addMarkerFields(SolrInputDocument doc, String markerKey, ChunkCache cc, boolean withEnsembl) {
+		doc.addField(GxdResultFields.MARKER_MGIID, cc.markerID.get(markerKey));
+		doc.addField(GxdResultFields.MARKER_SYMBOL, cc.markerSymbol.get(markerKey));
+		doc.addField(GxdResultFields.MARKER_NAME, cc.markerName.get(markerKey));
+		if (withEnsembl && cc.ensemblGMID.containsKey(markerKey)) {
+			doc.addField(GxdResultFields.ENSEMBL_GMID, cc.ensemblGMID.get(markerKey));
+		}
+
+		// also add symbol and current name to searchable nomenclature
+		doc.addField(GxdResultFields.NOMENCLATURE, cc.markerSymbol.get(markerKey));
+		doc.addField(GxdResultFields.NOMENCLATURE, cc.markerName.get(markerKey));
+		doc.addField(GxdResultFields.MARKER_TYPE, cc.markerSubtype.get(markerKey));
+	}
+
+	// marker location fields (coordinates and cM)
+	private void addLocationFields(SolrInputDocument doc, String markerKey, ChunkCache cc) {
+		String chr = cc.chromosome.get(markerKey);
+		String cm_offset = "";
+		if (centimorganMap.containsKey(markerKey)) {
+			cm_offset = centimorganMap.get(markerKey);
+		}
+		String start_coord = cc.startCoord.get(markerKey);
+		String end_coord = cc.endCoord.get(markerKey);
+		String spatialString = new String("");
+		if ((start_coord != null) && (end_coord != null)) {
+			spatialString = SolrLocationTranslator.getIndexValue(
+					chr,Long.parseLong(start_coord),Long.parseLong(end_coord),true);
+		}
+
+		doc.addField(GxdResultFields.CHROMOSOME, chr);
+		doc.addField(GxdResultFields.START_COORD, start_coord);
+		doc.addField(GxdResultFields.END_COORD, end_coord);
+		doc.addField(GxdResultFields.CYTOBAND, cc.cytoband.get(markerKey));
+		doc.addField(GxdResultFields.STRAND, cc.strand.get(markerKey));
+		if (!spatialString.equals("")) {
+			doc.addField(GxdResultFields.MOUSE_COORDINATE, spatialString);
+		}
+
+		if (cm_offset == null || cm_offset.equals("-1"))
+			cm_offset = "";
+		doc.addField(GxdResultFields.CENTIMORGAN, cm_offset);
+	}
+
+	// assay summary fields
+	private void addAssayFields(SolrInputDocument doc, String assayKey, ChunkCache cc) {
+		doc.addField(GxdResultFields.ASSAY_HAS_IMAGE, "1".equals(cc.assayHasImage.get(assayKey)));
+		doc.addField(GxdResultFields.PROBE_KEY, cc.assayProbeKey.get(assayKey));
+		doc.addField(GxdResultFields.ANTIBODY_KEY, cc.assayAntibodyKey.get(assayKey));
+	}
+
+	// high-level EMAPA structures for the result
+	private void addSystems(SolrInputDocument doc, GxdResultRow row) {
+		if (row.systems != null) {
+			for (String system : row.systems) {
+				doc.addField(GxdResultFields.ANATOMICAL_SYSTEM, system);
+			}
+		}
+	}
+
+	// marker synonyms
+	private void addNomenclature(SolrInputDocument doc, String markerKey) {
+		if (markerNomenMap.containsKey(markerKey)) {
+			for (String nomen : markerNomenMap.get(markerKey)) {
+				doc.addField(GxdResultFields.NOMENCLATURE, nomen);
+			}
+		}
+	}
+
+	// markers (with their synonyms) and alleles mutated in the genotype, from the given lookups
+	private void addGenotypeFields(SolrInputDocument doc, String genotype_key,
+			Map<String, Map<String, Map<String, String>>> mutatedInMap,
+			Map<String, List<String>> mutatedInAlleleMap) {
+		if (mutatedInMap.containsKey(genotype_key)) {
+			Map<String, Map<String, String>> gMap = mutatedInMap.get(genotype_key);
+			for (String genotype_marker_key : gMap.keySet()) {
+				doc.addField(GxdResultFields.MUTATED_IN, gMap.get(genotype_marker_key).get("symbol"));
+				doc.addField(GxdResultFields.MUTATED_IN, gMap.get(genotype_marker_key).get("name"));
+
+				// get any synonyms
+				if (markerNomenMap.containsKey(genotype_marker_key)) {
+					for (String synonym : markerNomenMap.get(genotype_marker_key)) {
+						doc.addField(GxdResultFields.MUTATED_IN, synonym);
+					}
+				}
+			}
+		}
+
+		if (mutatedInAlleleMap.containsKey(genotype_key)) {
+			List<String> alleleIds = mutatedInAlleleMap.get(genotype_key);
+
+			for (String alleleId : alleleIds) {
+				doc.addField(GxdResultFields.ALLELE_ID, alleleId);
+			}
+
+		}
+	}
+
+	// IDs of (non-anatomy) terms annotated to the marker, and their ancestors
+	private void addAnnotations(SolrInputDocument doc, String markerKey) {
+		if (markerVocabMap.containsKey(markerKey)) {
+			Set<String> uniqueAnnotationIDs = new HashSet<String>();
+
+			for (String termId : markerVocabMap.get(markerKey)) {
+				uniqueAnnotationIDs.add(termId);
+				int term = vocabAncestors.indexOf(termId);
+				for (int i = vocabAncestors.start(term); i < vocabAncestors.end(term); i++) {
+					uniqueAnnotationIDs.add(vocabAncestors.getLabel(vocabAncestors.relatedAt(i)));
+				}
+			}
+
+			for (String annotationID : uniqueAnnotationIDs) {
+				doc.addField(GxdResultFields.ANNOTATION, annotationID);
+			}
+		}
+	}
+
+	// structure fields (the structure and its ancestors, by ID, key, and synonym); returns
+	// the EMAPA ID of the annotated structure
+	private String addStructureFields(SolrInputDocument doc, String structureTermKey, ChunkCache cc) {
+		String myEmapaID = cc.emapaID.get(structureTermKey);
+
+		Set<String> ancestorIDs = new HashSet<String>();
+		ancestorIDs.add(cc.structureID.get(structureTermKey));
+		Set<String> ancestorStructures = new HashSet<String>();
+		ancestorStructures.add(cc.printname.get(structureTermKey));
+
+		int structure = structureAncestorIds.indexOf(structureTermKey);
+		if (structureAncestorIds.hasRelated(structure)) {
+			// get ancestors
+			for (int i = structureAncestorIds.start(structure); i < structureAncestorIds.end(structure); i++) {
+				String structure_ancestor_id = structureAncestorIds.getLabel(structureAncestorIds.relatedAt(i));
+				// get synonyms for each ancestor/term
+
+				if (structureSynonymMap.containsKey(structure_ancestor_id)) {
+
+					// also add structure MGI ID
+					ancestorIDs.add(structure_ancestor_id);
+					for (String structureSynonym : structureSynonymMap.get(structure_ancestor_id)) {
+						ancestorStructures.add(structureSynonym);
+					}
+				}
+			}
+
+			// only add unique structures (for best solr indexing
+			// performance)
+			for (String ancestorId : ancestorIDs) {
+				doc.addField(GxdResultFields.STRUCTURE_ID, ancestorId);
+			}
+			for (String ancestorStructure : ancestorStructures) {
+				doc.addField(GxdResultFields.STRUCTURE_ANCESTORS, ancestorStructure);
+			}
+		}
+
+		// add the id for this exact structure
+		doc.addField(GxdResultFields.STRUCTURE_EXACT, myEmapaID);
+
+		Set<String> structureKeys = new HashSet<String>();
+		structureKeys.add(structureTermKey);
+		doc.addField(GxdResultFields.ANNOTATED_STRUCTURE_KEY, structureTermKey);
+
+		// get ancestors by key as well (for links from AD browser)
+		int structureByKey = structureAncestorKeys.indexOf(structureTermKey);
+		for (int i = structureAncestorKeys.start(structureByKey); i < structureAncestorKeys.end(structureByKey); i++) {
+			structureKeys.add(structureAncestorKeys.getLabel(structureAncestorKeys.relatedAt(i)));
+		}
+
+		for (String structKey : structureKeys) {
+			doc.addField(GxdResultFields.STRUCTURE_KEY, structKey);
+		}
+		return myEmapaID;
+	}
+
+	// add matrix grouping fields
+	private void addMatrixGroups(SolrInputDocument doc, GxdResultRow row, String myEmapaID) {
+		String stageMatrixGroup = joiner(myEmapaID, row.isExpressed, row.theilerStage);
+		doc.addField(GxdResultFields.STAGE_MATRIX_GROUP, stageMatrixGroup);
+
+		String geneMatrixGroup = joiner(myEmapaID, row.isExpressed, row.markerKey, row.theilerStage);
+		doc.addField(GxdResultFields.GENE_MATRIX_GROUP, geneMatrixGroup);
+	}
+}
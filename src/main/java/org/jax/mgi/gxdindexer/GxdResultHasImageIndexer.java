@@ -12,11 +12,16 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.solr.common.SolrInputDocument;
+import org.jax.mgi.gxdindexer.shr.ChunkSizeController;
+import org.jax.mgi.gxdindexer.shr.DagClosure;
+import org.jax.mgi.gxdindexer.shr.KeyRangeScanner;
+import org.jax.mgi.gxdindexer.shr.IntStringMap;
 import org.jax.mgi.gxdindexer.shr.MarkerDOCache;
 import org.jax.mgi.gxdindexer.shr.ResultCOCache;
 import org.jax.mgi.gxdindexer.shr.MarkerGOCache;
 import org.jax.mgi.gxdindexer.shr.MarkerMPCache;
 import org.jax.mgi.gxdindexer.shr.MarkerTypeCache;
+import org.jax.mgi.gxdindexer.shr.StringTable;
 import org.jax.mgi.shr.fe.IndexConstants;
 import org.jax.mgi.shr.fe.indexconstants.GxdResultFields;
 import org.jax.mgi.shr.fe.query.SolrLocationTranslator;
@@ -29,6 +34,11 @@ import org.jax.mgi.shr.fe.query.SolrLocationTranslator;
  * data, the full set of results is too large to efficiently join to the
  * gxdImagePane index.  (Getting a count of images for Hoxd* was over 18
  * seconds.)
+ *
+ * When gxdResult and gxdResultHasImage are run together with
+ * gxdResult.feedHasImage=true, this indexer does not run on its own;
+ * GxdResultIndexer fills this index from its own pass over the results (see
+ * GxdResultDocMapper.hasImageDoc()), using this indexer only for its Solr core.
  */
 
 public class GxdResultHasImageIndexer extends Indexer {
@@ -39,26 +49,26 @@ public class GxdResultHasImageIndexer extends Indexer {
 	public int solrCacheSize = 1200;
 	
 	// caches of genotype data (key is genotype key)
-	public Map<String, String> allelePairs = null;
-	public Map<String, String> bgStrains = null;
+	public IntStringMap allelePairs = null;
+	public IntStringMap bgStrains = null;
 
 	// caches of structure data (key is annotated structure key)
-	public Map<String, String> structureID = null;
-	public Map<String, String> emapaID = null;
-	public Map<String, String> printname = null;
+	public IntStringMap structureID = null;
+	public IntStringMap emapaID = null;
+	public IntStringMap printname = null;
 
 	// caches of marker data (key is marker key)
-	public Map<String, String> markerSymbol = null;
-	public Map<String, String> markerID = null;
-	public Map<String, String> markerName = null;
-	public Map<String, String> markerSubtype = null;
-	public Map<String, String> markerBySymbol = null;
-	public Map<String, String> markerByLocation = null;
-	public Map<String, String> startCoord = null;
-	public Map<String, String> endCoord = null;
-	public Map<String, String> cytoband = null;
-	public Map<String, String> strand = null;
-	public Map<String, String> chromosome = null;
+	public IntStringMap markerSymbol = null;
+	public IntStringMap markerID = null;
+	public IntStringMap markerName = null;
+	public IntStringMap markerSubtype = null;
+	public IntStringMap markerBySymbol = null;
+	public IntStringMap markerByLocation = null;
+	public IntStringMap startCoord = null;
+	public IntStringMap endCoord = null;
+	public IntStringMap cytoband = null;
+	public IntStringMap strand = null;
+	public IntStringMap chromosome = null;
 	public MarkerMPCache markerMpCache = null;
 	public MarkerGOCache markerGoCache = null;
 	public MarkerDOCache markerDoCache = null;
@@ -66,25 +76,36 @@ public class GxdResultHasImageIndexer extends Indexer {
 	public MarkerTypeCache markerTypeCache = null;
 	
 	// caches of reference data (key is reference key)
-	public Map<String, String> pubmedID = null;
-	public Map<String, String> citation = null;
+	public IntStringMap pubmedID = null;
+	public IntStringMap citation = null;
 	
 	// caches of assay data (key is assay key)
-	public Map<String, String> assayHasImage = null;
-	public Map<String, String> assayProbeKey = null;
-	public Map<String, String> assayAntibodyKey = null;
-	public Map<String, String> assayID = null;
+	public IntStringMap assayHasImage = null;
+	public IntStringMap assayProbeKey = null;
+	public IntStringMap assayAntibodyKey = null;
+	public IntStringMap assayID = null;
 	
+	// true if GxdResultIndexer is filling this index with just the changed results
+	boolean incremental = false;
+
 	public GxdResultHasImageIndexer() {
 		super("gxdResultHasImage");
 	}
 
+	// only incremental when fed by an incremental gxdResult run (never on our own)
+	@Override
+	protected boolean isIncremental() throws Exception {
+		return incremental;
+	}
+
 	// cache data for assays for expression results > startKey and <= endKey
 	public void cacheAssays (int startKey, int endKey) throws SQLException {
-		assayHasImage = new HashMap<String, String>();
-		assayProbeKey = new HashMap<String, String>();
-		assayAntibodyKey = new HashMap<String, String>();
-		assayID = new HashMap<String, String>();
+		// columns with few distinct values are stored as IDs in this table
+		StringTable assayValues = new StringTable();
+		assayHasImage = new IntStringMap(assayValues);
+		assayProbeKey = new IntStringMap();
+		assayAntibodyKey = new IntStringMap();
+		assayID = new IntStringMap();
 
 		String assayQuery = "select distinct a.assay_key, a.has_image, a.probe_key, a.antibody_key, "
 			+ "  e.assay_id "
@@ -95,7 +116,7 @@ public class GxdResultHasImageIndexer extends Indexer {
 		
 		ResultSet rs = ex.executeProto(assayQuery);
 		while (rs.next()) {
-			String assayKey = rs.getString("assay_key");
+			int assayKey = rs.getInt("assay_key");
 			assayHasImage.put(assayKey, rs.getString("has_image"));
 			assayProbeKey.put(assayKey, rs.getString("probe_key"));
 			assayAntibodyKey.put(assayKey, rs.getString("antibody_key"));
@@ -107,9 +128,9 @@ public class GxdResultHasImageIndexer extends Indexer {
 	
 	// cache data for structures for expression results > startKey and <= endKey
 	public void cacheTerms (int startKey, int endKey) throws SQLException {
-		structureID = new HashMap<String, String>();
-		emapaID = new HashMap<String, String>();
-		printname = new HashMap<String, String>();
+		structureID = new IntStringMap();
+		emapaID = new IntStringMap();
+		printname = new IntStringMap();
 
 		String structureQuery = "select distinct e.structure_key, e.structure_printname, "
 			+ "  structure.primary_id, emapa.primary_id as emapa_id "
@@ -123,10 +144,10 @@ public class GxdResultHasImageIndexer extends Indexer {
 		
 		ResultSet rs = ex.executeProto(structureQuery);
 		while (rs.next()) {
-			String structureKey = rs.getString("structure_key");
-			structureID.put(structureKey, rs.getString("primary_id"));
-			emapaID.put(structureKey, rs.getString("emapa_id"));
-			printname.put(structureKey, rs.getString("structure_printname"));
+			int structureKey = rs.getInt("structure_key");
+			structureID.put(structureKey, intern(rs.getString("primary_id")));
+			emapaID.put(structureKey, intern(rs.getString("emapa_id")));
+			printname.put(structureKey, intern(rs.getString("structure_printname")));
 		}
 		rs.close();
 		logger.info("Cached data for " + emapaID.size() + " structures");
@@ -134,8 +155,10 @@ public class GxdResultHasImageIndexer extends Indexer {
 	
 	// cache data for genotypes for expression results > startKey and <= endKey
 	public void cacheGenotypes (int startKey, int endKey) throws SQLException {
-		allelePairs = new HashMap<String, String>();
-		bgStrains = new HashMap<String, String>();
+		// columns with few distinct values are stored as IDs in this table
+		StringTable genotypeValues = new StringTable();
+		allelePairs = new IntStringMap();
+		bgStrains = new IntStringMap(genotypeValues);
 
 		String genotypeQuery = "select distinct g.genotype_key, g.combination_1, g.background_strain "
 			+ "from expression_result_summary e, genotype g "
@@ -145,8 +168,8 @@ public class GxdResultHasImageIndexer extends Indexer {
 		
 		ResultSet rs = ex.executeProto(genotypeQuery);
 		while (rs.next()) {
-			allelePairs.put(rs.getString("genotype_key"), rs.getString("combination_1"));
-			bgStrains.put(rs.getString("genotype_key"), rs.getString("background_strain"));
+			allelePairs.put(rs.getInt("genotype_key"), rs.getString("combination_1"));
+			bgStrains.put(rs.getInt("genotype_key"), rs.getString("background_strain"));
 		}
 		rs.close();
 		logger.info("Cached data for " + allelePairs.size() + " genotypes");
@@ -154,17 +177,19 @@ public class GxdResultHasImageIndexer extends Indexer {
 	
 	// cache data for markers for expression results > startKey and <= endKey
 	public void cacheMarkers (int startKey, int endKey) throws SQLException {
-		markerSymbol = new HashMap<String, String>();
-		markerID = new HashMap<String, String>();
-		markerName = new HashMap<String, String>();
-		markerSubtype = new HashMap<String, String>();
-		markerBySymbol = new HashMap<String, String>();
-		markerByLocation = new HashMap<String, String>();
-		startCoord = new HashMap<String, String>();
-		endCoord = new HashMap<String, String>();
-		cytoband = new HashMap<String, String>();
-		strand = new HashMap<String, String>();
-		chromosome = new HashMap<String, String>();
+		// columns with few distinct values are stored as IDs in this table
+		StringTable markerValues = new StringTable();
+		markerSymbol = new IntStringMap();
+		markerID = new IntStringMap();
+		markerName = new IntStringMap();
+		markerSubtype = new IntStringMap(markerValues);
+		markerBySymbol = new IntStringMap();
+		markerByLocation = new IntStringMap();
+		startCoord = new IntStringMap();
+		endCoord = new IntStringMap();
+		cytoband = new IntStringMap(markerValues);
+		strand = new IntStringMap(markerValues);
+		chromosome = new IntStringMap(markerValues);
 		
 		String markerQuery = "select distinct m.marker_key, m.symbol, m.primary_id, m.name, m.marker_subtype, "
 			+ " s.by_location, s.by_symbol, loc.chromosome, loc.cytogenetic_offset, loc.start_coordinate, "
@@ -179,7 +204,7 @@ public class GxdResultHasImageIndexer extends Indexer {
 		
 		ResultSet rs = ex.executeProto(markerQuery);
 		while (rs.next()) {
-			String markerKey = rs.getString("marker_key");
+			int markerKey = rs.getInt("marker_key");
 			markerSymbol.put(markerKey, rs.getString("symbol"));
 			markerID.put(markerKey, rs.getString("primary_id"));
 			markerName.put(markerKey, rs.getString("name"));
@@ -198,8 +223,8 @@ public class GxdResultHasImageIndexer extends Indexer {
 	
 	// cache data for references for expression results > startKey and <= endKey
 	public void cacheReferences (int startKey, int endKey) throws SQLException {
-		pubmedID = new HashMap<String, String>();
-		citation = new HashMap<String, String>();
+		pubmedID = new IntStringMap();
+		citation = new IntStringMap();
 
 		String referenceQuery = "select distinct r.reference_key, r.pubmed_id, r.mini_citation "
 			+ "from expression_result_summary e, reference r "
@@ -209,7 +234,7 @@ public class GxdResultHasImageIndexer extends Indexer {
 		
 		ResultSet rs = ex.executeProto(referenceQuery);
 		while (rs.next()) {
-			String referenceKey = rs.getString("reference_key");
+			int referenceKey = rs.getInt("reference_key");
 			pubmedID.put(referenceKey, rs.getString("pubmed_id"));
 			citation.put(referenceKey, rs.getString("mini_citation"));
 		}
@@ -272,7 +297,7 @@ public class GxdResultHasImageIndexer extends Indexer {
 
 		while (rs.next()) {
 			String resultKey = rs.getString("result_key");
-			String system = rs.getString("anatomical_system") + "_" + rs.getString("emapa_id");
+			String system = intern(rs.getString("anatomical_system") + "_" + rs.getString("emapa_id"));
 
 			if (!systemMap.containsKey(resultKey)) {
 				systemMap.put(resultKey, new HashSet<String>());
@@ -356,9 +381,10 @@ public class GxdResultHasImageIndexer extends Indexer {
 	 * get a mapping from genotype keys (as Strings) to data about markers
 	 * mutated in those genotypes. Mapping returned is like: { genotype key : {
 	 * marker key : { "symbol" : symbol, "name" : name } } } The mapping only
-	 * includes genotypes tied to expression results.
+	 * includes genotypes tied to expression results.  (Also used by
+	 * GxdResultIndexer when it fills this index.)
 	 */
-	private Map<String, Map<String, Map<String, String>>> getMutatedInMap() throws Exception {
+	Map<String, Map<String, Map<String, String>>> getMutatedInMap() throws Exception {
 
 		// maps from genotype key (as a String) to a map of marker data like:
 		// { marker key : { "symbol" : symbol,
@@ -421,8 +447,9 @@ public class GxdResultHasImageIndexer extends Indexer {
 	/*
 	 * get a mapping from genotype keys (as Strings) to a List of IDs for
 	 * alleles in that genotype. Only includes genotypes with allele data.
+	 * (Also used by GxdResultIndexer when it fills this index.)
 	 */
-	private Map<String, List<String>> getMutatedInAlleleMap() throws Exception {
+	Map<String, List<String>> getMutatedInAlleleMap() throws Exception {
 
 		Map<String, List<String>> mutatedInAlleleMap = new HashMap<String, List<String>>();
 
@@ -470,8 +497,6 @@ public class GxdResultHasImageIndexer extends Indexer {
 	 */
 	private Map<String, List<String>> getMarkerVocabMap() throws Exception {
 		
-		HashMap<String, String> allTermIdBuffer = new HashMap<String, String>();
-		
 		Map<String, List<String>> markerVocabMap = new HashMap<String, List<String>>();
 
 		logger.info("building map of vocabulary annotations");
@@ -483,15 +508,12 @@ public class GxdResultHasImageIndexer extends Indexer {
 
 		while (rs.next()) {
 			mkey = rs.getString("marker_key");
-			termId = rs.getString("term_id");
+			termId = intern(rs.getString("term_id"));
 
 			if (!markerVocabMap.containsKey(mkey)) {
 				markerVocabMap.put(mkey, new ArrayList<String>());
 			}
-			if(!allTermIdBuffer.containsKey(termId)) {
-				allTermIdBuffer.put(termId, termId);
-			}
-			markerVocabMap.get(mkey).add(allTermIdBuffer.get(termId));
+			markerVocabMap.get(mkey).add(termId);
 		}
 		rs.close();
 		logger.info(" - gathered annotated terms for " + markerVocabMap.size() + " markers, RAM used: " + memoryUsed());
@@ -504,50 +526,35 @@ public class GxdResultHasImageIndexer extends Indexer {
 
 		while (rs2.next()) {
 			mkey = rs2.getString("marker_key");
-			termId = rs2.getString("term_id");
+			termId = intern(rs2.getString("term_id"));
 
 			if (!markerVocabMap.containsKey(mkey)) {
 				markerVocabMap.put(mkey, new ArrayList<String>());
 			}
-			if(!allTermIdBuffer.containsKey(termId)) {
-				allTermIdBuffer.put(termId, termId);
-			}
 			if (!markerVocabMap.get(mkey).contains(termId)) {
-				markerVocabMap.get(mkey).add(allTermIdBuffer.get(termId));
+				markerVocabMap.get(mkey).add(termId);
 				i++;
 			}
 		}
 
 		logger.info(" - added " + i + " annotations to DO via homology, RAM used: " + memoryUsed());
-		allTermIdBuffer.clear();
 		rs2.close();
 		return markerVocabMap;
 	}
 
 	/*
-	 * get a mapping from each term ID to a Set of IDs for its ancestor terms,
+	 * get the closure from each term ID to the IDs of its ancestor terms,
 	 * for terms in non-anatomy vocabularies which are annotated to markers.
 	 */
-	private Map<String, Set<String>> getVocabAncestorMap() throws Exception {
-		Map<String, Set<String>> vocabAncestorMap = new HashMap<String, Set<String>>();
-
-		logger.info("building map of vocabulary term ancestors");
+	private DagClosure getVocabAncestors() throws Exception {
+		logger.info("building closure of vocabulary term ancestors");
 
-		String vocabAncestorQuery = SharedQueries.GXD_VOCAB_ANCESTOR_QUERY;
-		String termId; // term's ID
-		ResultSet rs = ex.executeProto(vocabAncestorQuery);
+		DagClosure vocabAncestors = DagClosure.load(ex, SharedQueries.GXD_VOCAB_ANCESTOR_QUERY,
+			"primary_id", "ancestor_primary_id", false);
 
-		while (rs.next()) {
-			termId = rs.getString("primary_id");
-
-			if (!vocabAncestorMap.containsKey(termId)) {
-				vocabAncestorMap.put(termId, new HashSet<String>());
-			}
-			vocabAncestorMap.get(termId).add(rs.getString("ancestor_primary_id"));
-		}
-		logger.info(" - gathered ancestor IDs for " + vocabAncestorMap.size() + " terms, RAM used: " + memoryUsed());
-		rs.close();
-		return vocabAncestorMap;
+		logger.info(" - gathered " + vocabAncestors.relationshipCount() + " ancestor IDs for "
+			+ vocabAncestors.size() + " terms, RAM used: " + memoryUsed());
+		return vocabAncestors;
 	}
 
 	/*
@@ -610,8 +617,6 @@ public class GxdResultHasImageIndexer extends Indexer {
 	 */
 	private Map<String, List<String>> getMap(String query, String key, String value1, String value2, String msg) throws Exception {
 
-		HashMap<String, String> allValuesBuffer = new HashMap<String, String>();
-		
 		Map<String, List<String>> structureAncestorMap = new HashMap<String, List<String>>();
 
 		logger.info("building map of " + msg + " for structures");
@@ -624,77 +629,101 @@ public class GxdResultHasImageIndexer extends Indexer {
 
 		while (rs.next()) {
 			sKey = rs.getString(key);
-			sValue1 = rs.getString(value1);
+			sValue1 = intern(rs.getString(value1));
+
 
-			if(!allValuesBuffer.containsKey(sValue1)) {
-				allValuesBuffer.put(sValue1, sValue1);
-			}
-			
 			if (!structureAncestorMap.containsKey(sKey)) {
 				structureAncestorMap.put(sKey, new ArrayList<String>());
 
 				// add value2 the first time this key is found, if defined
 				if (value2 != null) {
-					sValue2 = rs.getString(value2);
-					if(!allValuesBuffer.containsKey(sValue2)) {
-						allValuesBuffer.put(sValue2, sValue2);
-					}
-					structureAncestorMap.get(sKey).add(allValuesBuffer.get(sValue2));
+					sValue2 = intern(rs.getString(value2));
+					structureAncestorMap.get(sKey).add(sValue2);
 				}
 			}
 
 			if ((sValue1 != null) && (!sValue1.equals(""))) {
-				structureAncestorMap.get(sKey).add(allValuesBuffer.get(sValue1));
+				structureAncestorMap.get(sKey).add(sValue1);
 			}
 		}
 		logger.info(" - gathered " + msg + " for " + structureAncestorMap.size() + " terms, RAM used: " + memoryUsed());
-		allValuesBuffer.clear();
 		rs.close();
 		return structureAncestorMap;
 	}
 
+	/*
+	 * build a closure from each structure (field specified by 'key') to the
+	 * values of the field specified by 'value1'. If 'value2' is specified then
+	 * each structure is also related to the value of that field. 'msg' specifies
+	 * the type of items we are gathering, only used for debugging output.
+	 */
+	private DagClosure getClosure(String query, String key, String value1, String value2, String msg) throws Exception {
+		logger.info("building closure of " + msg + " for structures");
+
+		DagClosure.Builder builder = new DagClosure.Builder();
+		ResultSet rs = ex.executeProto(query);
+
+		while (rs.next()) {
+			String sKey = rs.getString(key);
+			if (value2 != null) {
+				builder.add(sKey, rs.getString(value2));
+			}
+
+			String sValue1 = rs.getString(value1);
+			if ((sValue1 != null) && (!sValue1.equals(""))) {
+				builder.add(sKey, sValue1);
+			}
+		}
+		rs.close();
+
+		DagClosure closure = builder.build();
+		logger.info(" - gathered " + closure.relationshipCount() + " " + msg + " for structures, RAM used: " + memoryUsed());
+		return closure;
+	}
+
 	/*
 	 * -------------------- main indexing method --------------------
 	 */
 	public void index() throws Exception {
 		// pull a bunch of mappings into memory, to make later
-		// processing easier
+		// processing easier (those also used by another indexer are shared
+		// through the LookupRegistry, so are only built once if runs overlap)
 
 		try {
-			markerMpCache = new MarkerMPCache();
+			markerMpCache = getSharedLookup("MarkerMPCache", MarkerMPCache::new);
 		} catch (Exception e) {
 			logger.error("Marker/MP Cache failed; no MP filtering terms will be indexed.");
 		}
 
 		try {
-			markerGoCache = new MarkerGOCache();
+			markerGoCache = getSharedLookup("MarkerGOCache", MarkerGOCache::new);
 		} catch (Exception e) {
 			logger.error("Marker/GO Cache failed; no GO filtering terms will be indexed.");
 		}
 
 		try {
-			markerDoCache = new MarkerDOCache();
+			markerDoCache = getSharedLookup("MarkerDOCache", MarkerDOCache::new);
 		} catch (Exception e) {
 			logger.error("Marker/DO Cache failed; no DO filtering terms will be indexed.");
 		}
 
 		try {
-			resultCoCache = new ResultCOCache();
+			resultCoCache = getSharedLookup("ResultCOCache", ResultCOCache::new);
 		} catch (Exception e) {
 			logger.error("Result/Cell ontology Cache failed; no CO filtering terms will be indexed.");
 		}		
 		
 		try {
-			markerTypeCache = new MarkerTypeCache();
+			markerTypeCache = getSharedLookup("MarkerTypeCache", MarkerTypeCache::new);
 		} catch (Exception e) {
 			logger.error("Marker/Type Cache failed; no Feature Type filtering terms will be indexed.");
 		}
 
 		// mapping from marker key to List of synonyms for each marker
-		Map<String, List<String>> markerNomenMap = getMarkerNomenMap();
+		Map<String, List<String>> markerNomenMap = getSharedLookup("gxd.markerNomenMap", this::getMarkerNomenMap);
 
 		// mapping from marker key to its cM location, if available
-		Map<String, String> centimorganMap = getCentimorganMap();
+		Map<String, String> centimorganMap = getSharedLookup("gxd.centimorganMap", this::getCentimorganMap);
 		
 		// get markers mutated in each genotype
 		Map<String, Map<String, Map<String, String>>> mutatedInMap = getMutatedInMap();
@@ -703,22 +732,22 @@ public class GxdResultHasImageIndexer extends Indexer {
 		Map<String, List<String>> mutatedInAlleleMap = getMutatedInAlleleMap();
 
 		// get IDs of non-anatomy terms annotated to markers
-		Map<String, List<String>> markerVocabMap = getMarkerVocabMap();
+		Map<String, List<String>> markerVocabMap = getSharedLookup("gxd.markerVocabMap", this::getMarkerVocabMap);
 
-		// get List of ancestor term IDs for each non-anatomy term
-		Map<String, Set<String>> vocabAncestorMap = getVocabAncestorMap();
+		// get ancestor term IDs for each non-anatomy term
+		DagClosure vocabAncestors = getSharedLookup("gxd.vocabAncestors", this::getVocabAncestors);
 
-		// get List of ancestor IDs for each structure
-		Map<String, List<String>> structureAncestorIdMap = getMap(
-				SharedQueries.GXD_EMAP_ANCESTOR_QUERY, "structure_term_key", "ancestor_id", "structure_id", "IDs");
+		// get ancestor IDs for each structure (and the structure's own ID)
+		DagClosure structureAncestorIds = getSharedLookup("gxd.structureAncestorIds", () -> getClosure(
+				SharedQueries.GXD_EMAP_ANCESTOR_QUERY, "structure_term_key", "ancestor_id", "structure_id", "IDs"));
 
-		// get List of ancestor keys for each structure
-		Map<String, List<String>> structureAncestorKeyMap = getMap(
-				SharedQueries.GXD_EMAP_ANCESTOR_QUERY, "structure_term_key", "default_parent_key", null, "keys");
+		// get ancestor keys for each structure
+		DagClosure structureAncestorKeys = getSharedLookup("gxd.structureAncestorKeys", () -> getClosure(
+				SharedQueries.GXD_EMAP_ANCESTOR_QUERY, "structure_term_key", "default_parent_key", null, "keys"));
 
 		// get List of synonyms for each structure
-		Map<String, List<String>> structureSynonymMap = getMap(
-				SharedQueries.GXD_EMAP_SYNONYMS_QUERY, "structure_id", "synonym", "structure", "synonyms");
+		Map<String, List<String>> structureSynonymMap = getSharedLookup("gxd.structureSynonymMap", () -> getMap(
+				SharedQueries.GXD_EMAP_SYNONYMS_QUERY, "structure_id", "synonym", "structure", "synonyms"));
 
 		// -------------------------------------------------------------------
 		// Finally finished gathering mappings, time for the main body of work
@@ -726,10 +755,22 @@ public class GxdResultHasImageIndexer extends Indexer {
 
 		identifySystemIDs();
 		indexClassicalData(markerNomenMap, centimorganMap, mutatedInMap, mutatedInAlleleMap,
-			markerVocabMap, vocabAncestorMap, structureAncestorIdMap, structureAncestorKeyMap,
+			markerVocabMap, vocabAncestors, structureAncestorIds, structureAncestorKeys,
 			structureSynonymMap);
 		this.setSkipOptimizer(true);
 	}
+
+	// drop our references to the shared caches along with our holds on them, so they
+	// can be freed once the last indexer using them is done
+	@Override
+	protected void releaseSharedLookups() {
+		super.releaseSharedLookups();
+		markerMpCache = null;
+		markerGoCache = null;
+		markerDoCache = null;
+		resultCoCache = null;
+		markerTypeCache = null;
+	}
 		
 	// populate the GO fields in the SolrInputDocument for the given markerKey
 	public void addGoTerms(SolrInputDocument doc, String markerKey) throws Exception {
@@ -751,39 +792,28 @@ public class GxdResultHasImageIndexer extends Indexer {
 			Map<String, Map<String, Map<String, String>>> mutatedInMap,
 			Map<String, List<String>> mutatedInAlleleMap,
 			Map<String, List<String>> markerVocabMap,
-			Map<String, Set<String>> vocabAncestorMap, 
-			Map<String, List<String>> structureAncestorIdMap,
-			Map<String, List<String>> structureAncestorKeyMap,
+			DagClosure vocabAncestors,
+			DagClosure structureAncestorIds,
+			DagClosure structureAncestorKeys,
 			Map<String, List<String>> structureSynonymMap) throws Exception {
 
-		// find the maximum result key, so we have an upper bound when
-		// stepping through chunks of results
-
-		ResultSet rs_tmp = ex.executeProto("select max(result_key) as max_result_key from expression_result_summary");
-		rs_tmp.next();
-
-		Integer start = 0;
-		Integer end = rs_tmp.getInt("max_result_key");
-		rs_tmp.close();
-		int chunkSize = 50000;
+		// step through the indexed results in chunks (starting at 50,000 results, then
+		// adjusted as throughput and memory allow)
 
-		// While it appears that modValue could be one iteration too low (due
-		// to rounding down), this is accounted for by using <= in the loop.
-
-		int modValue = end.intValue() / chunkSize;
+		KeyRangeScanner scanner = new KeyRangeScanner(ex, "expression_result_summary", "result_key")
+			.where("assay_type != 'Recombinase reporter' and assay_type != 'In situ reporter (transgenic)'")
+			.setController(new ChunkSizeController("gxdResultHasImage", 50000))
+			.setMetrics(metrics);
 
 		// Perform the chunking
 
 		logger.info("Getting all assay results and related search criteria");
-		logger.info("Max result_key: " + end + ", chunks: " + (modValue + 1));
+		logger.info("Max result_key: " + scanner.getMaxKey() + ", results: " + scanner.getRowCount());
 
-		// can set the size to our known max (slight efficiency gain)
-		Collection<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(1001);
-		
-		for (int i = 0; i <= modValue; i++) {
+		scanner.scan((start, end) -> {
 
-			start = i * chunkSize;
-			end = start + chunkSize;
+			// can set the size to our known max (slight efficiency gain)
+			Collection<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(1001);
 
 			cacheGenotypes(start, end);		// cache allele combinations for genotypes for this chunk
 			cacheMarkers(start, end);		// cache marker symbols, names, IDs, and subtypes for this chunk
@@ -991,10 +1021,9 @@ public class GxdResultHasImageIndexer extends Indexer {
 
 					for (String termId : markerVocabMap.get(markerKey)) {
 						uniqueAnnotationIDs.add(termId);
-						if (vocabAncestorMap.containsKey(termId)) {
-							for (String ancestorId : vocabAncestorMap.get(termId)) {
-								uniqueAnnotationIDs.add(ancestorId);
-							}
+						int term = vocabAncestors.indexOf(termId);
+						for (int i = vocabAncestors.start(term); i < vocabAncestors.end(term); i++) {
+							uniqueAnnotationIDs.add(vocabAncestors.getLabel(vocabAncestors.relatedAt(i)));
 						}
 					}
 
@@ -1004,11 +1033,12 @@ public class GxdResultHasImageIndexer extends Indexer {
 				}
 
 				String cellTypeID = rs.getString("cell_type_id");
-				if (vocabAncestorMap.containsKey(cellTypeID)) {
+				int cellType = vocabAncestors.indexOf(cellTypeID);
+				if (vocabAncestors.hasRelated(cellType)) {
 					// add this DAG node, and all it's parents (up to 'cell')				
 					doc.addField(GxdResultFields.ANNOTATION, cellTypeID);
-					for (String ancestorId : vocabAncestorMap.get(cellTypeID)) {
-						doc.addField(GxdResultFields.ANNOTATION, ancestorId);
+					for (int i = vocabAncestors.start(cellType); i < vocabAncestors.end(cellType); i++) {
+						doc.addField(GxdResultFields.ANNOTATION, vocabAncestors.getLabel(vocabAncestors.relatedAt(i)));
 					}
 				} 				
 				
@@ -1029,11 +1059,11 @@ public class GxdResultHasImageIndexer extends Indexer {
 				Set<String> ancestorStructures = new HashSet<String>();
 				ancestorStructures.add(printname.get(structureTermKey));
 
-				if (structureAncestorIdMap.containsKey(structureTermKey)) {
+				int structure = structureAncestorIds.indexOf(structureTermKey);
+				if (structureAncestorIds.hasRelated(structure)) {
 					// get ancestors
-					List<String> structure_ancestor_ids = structureAncestorIdMap.get(structureTermKey);
-
-					for (String structure_ancestor_id : structure_ancestor_ids) {
+					for (int i = structureAncestorIds.start(structure); i < structureAncestorIds.end(structure); i++) {
+						String structure_ancestor_id = structureAncestorIds.getLabel(structureAncestorIds.relatedAt(i));
 						// get synonyms for each ancestor/term
 
 						if (structureSynonymMap.containsKey(structure_ancestor_id)) {
@@ -1063,11 +1093,10 @@ public class GxdResultHasImageIndexer extends Indexer {
 				structureKeys.add(structureTermKey);
 				doc.addField(GxdResultFields.ANNOTATED_STRUCTURE_KEY, structureTermKey);
 
-				if (structureAncestorKeyMap.containsKey(structureTermKey)) {
-					// get ancestors by key as well (for links from AD browser)
-					for (String structureAncestorKey : structureAncestorKeyMap.get(structureTermKey)) {
-						structureKeys.add(structureAncestorKey);
-					}
+				// get ancestors by key as well (for links from AD browser)
+				int structureByKey = structureAncestorKeys.indexOf(structureTermKey);
+				for (int i = structureAncestorKeys.start(structureByKey); i < structureAncestorKeys.end(structureByKey); i++) {
+					structureKeys.add(structureAncestorKeys.getLabel(structureAncestorKeys.relatedAt(i)));
 				}
 
 				for (String structKey : structureKeys) {
@@ -1098,6 +1127,7 @@ public class GxdResultHasImageIndexer extends Indexer {
 			} // while loop (stepping through rows for this chunk)
 
 			rs.close();
+			writeDocs(docs);
 			String ramUsed = memoryUsed();
 			systemMap = null;
 			imageMap = null;
@@ -1105,9 +1135,8 @@ public class GxdResultHasImageIndexer extends Indexer {
 
 			if(memoryPercent() > .80) { printMemory(); commit(); }
 			
-		} // for loop (stepping through chunks)
+		}); // stepping through chunks
 		
-		writeDocs(docs);
 		commit();
 	}
 
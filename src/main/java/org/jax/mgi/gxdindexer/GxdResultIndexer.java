@@ -1,26 +1,45 @@
 package org.jax.mgi.gxdindexer;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.solr.common.SolrInputDocument;
+import org.jax.mgi.gxdindexer.shr.ChunkSizeController;
+import org.jax.mgi.gxdindexer.shr.DagClosure;
+import org.jax.mgi.gxdindexer.shr.IndexerMetrics;
+import org.jax.mgi.gxdindexer.shr.KeyRangeScanner;
+import org.jax.mgi.gxdindexer.shr.IntStringMap;
 import org.jax.mgi.gxdindexer.shr.MarkerDOCache;
 import org.jax.mgi.gxdindexer.shr.ResultCOCache;
 import org.jax.mgi.gxdindexer.shr.MarkerGOCache;
 import org.jax.mgi.gxdindexer.shr.MarkerMPCache;
 import org.jax.mgi.gxdindexer.shr.MarkerTypeCache;
-import org.jax.mgi.shr.fe.IndexConstants;
+import org.jax.mgi.gxdindexer.shr.SQLExecutor;
+import org.jax.mgi.gxdindexer.shr.StringTable;
 import org.jax.mgi.shr.fe.indexconstants.GxdResultFields;
-import org.jax.mgi.shr.fe.query.SolrLocationTranslator;
 
 /**
  * GxdResultIndexer
@@ -31,244 +50,459 @@ import org.jax.mgi.shr.fe.query.SolrLocationTranslator;
  *         and markerKey
  *
  *         Note: refactored during 5.x development
+ *
+ *         With gxdResult.delta=true, a run can instead update the existing
+ *         index with just the results changed since the last successful run
+ *         (see conf/gxdResultChanges.sql).
+ *
+ *         With gxdResult.feedHasImage=true (and both indexes requested), the
+ *         same pass over the classical results also fills gxdResultHasImage,
+ *         so the lookups are only built (and the results only read) once.
+ *         gxdResultHasImage keeps its own watermark; a delta run updates both
+ *         in place only when the two watermarks match, and otherwise builds
+ *         both in full.
  */
 
 public class GxdResultIndexer extends Indexer {
-	// detected values that should be mapped to "yes"
-	public static List<String> detectedYesLevels = Arrays.asList("Present", "Trace", "Weak", "Moderate", "Strong", "Very strong");
-
 	// how many Solr documents are kept in memory before being sent to Solr?
 	public int solrCacheSize = 1200;
 	
 	// count of temp tables produced so far for ordering (to ensure unique names)
-	public int tempTableCount = 0;
+	private AtomicInteger tempTableCount = new AtomicInteger(0);
 	
-	// caches of genotype data (key is genotype key)
-	public Map<String, String> allelePairs = null;
-	public Map<String, String> bgStrains = null;
-
-	// caches of structure data (key is annotated structure key)
-	public Map<String, String> structureID = null;
-	public Map<String, String> emapaID = null;
-	public Map<String, String> printname = null;
-
-	// caches of marker data (key is marker key)
-	public Map<String, String> markerSymbol = null;
-	public Map<String, String> markerID = null;
-	public Map<String, String> ensemblGMID = null;
-	public Map<String, String> markerName = null;
-	public Map<String, String> markerSubtype = null;
-	public Map<String, String> markerBySymbol = null;
-	public Map<String, String> markerByLocation = null;
-	public Map<String, String> startCoord = null;
-	public Map<String, String> endCoord = null;
-	public Map<String, String> cytoband = null;
-	public Map<String, String> strand = null;
-	public Map<String, String> chromosome = null;
+	// caches of marker and result annotation data (shared by all chunks)
 	public MarkerMPCache markerMpCache = null;
 	public MarkerGOCache markerGoCache = null;
 	public MarkerDOCache markerDoCache = null;
 	public ResultCOCache resultCoCache = null;
 	public MarkerTypeCache markerTypeCache = null;
-	
-	// caches of reference data (key is reference key)
-	public Map<String, String> pubmedID = null;
-	public Map<String, String> citation = null;
 
+	// J#s for HT experiments (key is experiment key)
 	public Map<String, List<String>> htExpRefs = null;
-	
-	// caches of assay data (key is assay key)
-	public Map<String, String> assayHasImage = null;
-	public Map<String, String> assayProbeKey = null;
-	public Map<String, String> assayAntibodyKey = null;
-	public Map<String, String> assayID = null;
+
+	// pool that builds documents from rows, and permits for the batches it may have waiting
+	private ForkJoinPool docPool = null;
+	private Semaphore batchPermits = null;
+
+	// set while a chunk worker commits to relieve memory pressure, so only one does at once
+	private AtomicBoolean memoryCommit = new AtomicBoolean(false);
+
+	// when not null, classical results with image sorts are also sent to this indexer's core
+	private GxdResultHasImageIndexer hasImageIndexer = null;
+
+	// for incremental runs:  changed results within this many keys of each other are
+	// rebuilt as one range
+	private static int DELTA_MAX_GAP = 1000;
+
+	// for incremental runs:  whether this run is one, the table of changes, where the
+	// watermark is kept, and the watermark read at the start and to be saved at the end
+	private Boolean incremental = null;
+	private String changeTable = null;
+	private String watermarkFile = null;
+	private String oldWatermark = null;
+	private String newWatermark = null;
+
+	// where gxdResultHasImage's own watermark is kept, when we fill that index (it may have
+	// been built up to a different change than ours, eg. by a delta run of gxdResult alone)
+	private String hasImageWatermarkFile = "";
 	
 	public GxdResultIndexer() {
 		super("gxdResult");
 	}
 
-	// cache data for assays for expression results > startKey and <= endKey
-	public void cacheAssays (int startKey, int endKey, boolean forRnaSeq) throws SQLException {
-		assayHasImage = new HashMap<String, String>();
-		assayProbeKey = new HashMap<String, String>();
-		assayAntibodyKey = new HashMap<String, String>();
-		assayID = new HashMap<String, String>();
-
-		String assayQuery = "select distinct a.assay_key, a.has_image, a.probe_key, a.antibody_key, "
-			+ "  e.assay_id "
-			+ "from expression_result_summary e, expression_assay a "
-			+ "where e.result_key > " + startKey
-			+ " and e.result_key <= " + endKey
-			+ " and e.assay_key = a.assay_key ";
-		
-		// adjust the query if we need to work with RNA-Seq data
-		if (forRnaSeq) {
-			assayQuery = "select distinct cs.experiment_key as assay_key, 0 as has_image, null as probe_key, "
-				+ " null as antibody_key, e.primary_id as assay_id "
-				+ "from expression_ht_consolidated_sample cs, "
-				+ "  expression_ht_experiment e "
-				+ "where cs.experiment_key = e.experiment_key ";
-		}
-		
-		ResultSet rs = ex.executeProto(assayQuery);
-		while (rs.next()) {
-			String assayKey = rs.getString("assay_key");
-			assayHasImage.put(assayKey, rs.getString("has_image"));
-			assayProbeKey.put(assayKey, rs.getString("probe_key"));
-			assayAntibodyKey.put(assayKey, rs.getString("antibody_key"));
-			assayID.put(assayKey, rs.getString("assay_id"));
-		}
-		rs.close();
-		logger.info("Cached data for " + assayID.size() + " assays");
+	// fill the gxdResultHasImage index (through 'indexer', which then need not run on its
+	// own) from this indexer's pass over the classical results
+	public void setHasImageIndexer(GxdResultHasImageIndexer indexer) {
+		this.hasImageIndexer = indexer;
 	}
-	
-	// cache data for structures for expression results > startKey and <= endKey
-	public void cacheTerms (int startKey, int endKey, boolean forRnaSeq) throws SQLException {
-		structureID = new HashMap<String, String>();
-		emapaID = new HashMap<String, String>();
-		printname = new HashMap<String, String>();
-
-		String structureQuery = "select distinct e.structure_key, e.structure_printname, "
-			+ "  structure.primary_id, emapa.primary_id as emapa_id "
-			+ "from expression_result_summary e, term structure, "
-			+ "  term_emap mapping, term emapa "
-			+ "where e.result_key > " + startKey
-			+ " and e.result_key <= " + endKey
-			+ " and e.structure_key = structure.term_key "
-			+ " and e.structure_key = mapping.term_key "
-			+ " and mapping.emapa_term_key = emapa.term_key";
-		
-		if (forRnaSeq) {
-			// adjust the query to deal with RNA-Seq data rather than classical expression data
-			structureQuery = "select distinct emaps.term_key as structure_key, "
-				+ "  emapa.term as structure_printname, "
-				+ "  emaps.primary_id, emapa.primary_id as emapa_id "
-				+ "from  expression_ht_consolidated_sample cs, "
-				+ "  term emapa, term_emap mapping, term emaps "
-				+ "where cs.emapa_key = emapa.term_key "
-				+ "  and emapa.term_key = mapping.emapa_term_key "
-				+ "  and cs.theiler_stage::integer = mapping.stage "
-				+ "  and mapping.term_key = emaps.term_key";
+
+	/* Is: the lookups needed to build the documents for one chunk of results
+	 * Has: caches of genotype, structure, marker, reference, and assay data, plus the
+	 *	database connection used to fill them (and to build the chunk's ordering table)
+	 * Notes: Each chunk gets its own ChunkCache, so chunks can be assembled concurrently.
+	 */
+	public class ChunkCache {
+		// connection used for this chunk's queries and temp tables
+		SQLExecutor ex;
+
+		// caches of genotype data (key is genotype key); gxdResultHasImage shows the
+		// allele pairs from combination_1, rather than combination_2 (classical data only)
+		IntStringMap allelePairs = null;
+		IntStringMap hasImageAllelePairs = null;
+		IntStringMap bgStrains = null;
+
+		// caches of structure data (key is annotated structure key)
+		IntStringMap structureID = null;
+		IntStringMap emapaID = null;
+		IntStringMap printname = null;
+
+		// caches of marker data (key is marker key)
+		IntStringMap markerSymbol = null;
+		IntStringMap markerID = null;
+		IntStringMap ensemblGMID = null;
+		IntStringMap markerName = null;
+		IntStringMap markerSubtype = null;
+		IntStringMap markerBySymbol = null;
+		IntStringMap markerByLocation = null;
+		IntStringMap startCoord = null;
+		IntStringMap endCoord = null;
+		IntStringMap cytoband = null;
+		IntStringMap strand = null;
+		IntStringMap chromosome = null;
+
+		// caches of reference data (key is reference key)
+		IntStringMap pubmedID = null;
+		IntStringMap citation = null;
+
+		// caches of assay data (key is assay key)
+		IntStringMap assayHasImage = null;
+		IntStringMap assayProbeKey = null;
+		IntStringMap assayAntibodyKey = null;
+		IntStringMap assayID = null;
+
+		public ChunkCache(SQLExecutor ex) {
+			this.ex = ex;
 		}
-		
-		ResultSet rs = ex.executeProto(structureQuery);
-		while (rs.next()) {
-			String structureKey = rs.getString("structure_key");
-			structureID.put(structureKey, rs.getString("primary_id"));
-			emapaID.put(structureKey, rs.getString("emapa_id"));
-			printname.put(structureKey, rs.getString("structure_printname"));
+
+		// cache data for assays for expression results > startKey and <= endKey
+		public void cacheAssays (int startKey, int endKey, boolean forRnaSeq) throws SQLException {
+			// columns with few distinct values are stored as IDs in this table
+			StringTable assayValues = new StringTable();
+			assayHasImage = new IntStringMap(assayValues);
+			assayProbeKey = new IntStringMap();
+			assayAntibodyKey = new IntStringMap();
+			assayID = new IntStringMap();
+
+			String assayQuery = "select distinct a.assay_key, a.has_image, a.probe_key, a.antibody_key, "
+				+ "  e.assay_id "
+				+ "from expression_result_summary e, expression_assay a "
+				+ "where e.result_key > " + startKey
+				+ " and e.result_key <= " + endKey
+				+ " and e.assay_key = a.assay_key ";
+	
+			// adjust the query if we need to work with RNA-Seq data
+			if (forRnaSeq) {
+				assayQuery = "select distinct cs.experiment_key as assay_key, 0 as has_image, null as probe_key, "
+					+ " null as antibody_key, e.primary_id as assay_id "
+					+ "from expression_ht_consolidated_sample cs, "
+					+ "  expression_ht_experiment e "
+					+ "where cs.experiment_key = e.experiment_key ";
+			}
+	
+			ResultSet rs = ex.executeProto(assayQuery);
+			while (rs.next()) {
+				int assayKey = rs.getInt("assay_key");
+				assayHasImage.put(assayKey, rs.getString("has_image"));
+				assayProbeKey.put(assayKey, rs.getString("probe_key"));
+				assayAntibodyKey.put(assayKey, rs.getString("antibody_key"));
+				assayID.put(assayKey, rs.getString("assay_id"));
+			}
+			rs.close();
+			logger.info("Cached data for " + assayID.size() + " assays");
 		}
-		rs.close();
-		logger.info("Cached data for " + emapaID.size() + " structures");
-	}
 	
-	// cache data for genotypes for expression results > startKey and <= endKey
-	public void cacheGenotypes (int startKey, int endKey, boolean forRnaSeq) throws SQLException {
-		allelePairs = new HashMap<String, String>();
-		bgStrains = new HashMap<String, String>();
-
-		String genotypeQuery = "select distinct g.genotype_key, g.combination_2, g.background_strain "
-			+ "from expression_result_summary e, genotype g "
-			+ "where e.result_key > " + startKey
-			+ " and e.result_key <= " + endKey
-			+ " and e.genotype_key = g.genotype_key";
-		
-		if (forRnaSeq) {
-			// adjust the query if we need to be working with RNA-Seq data rather than classical
-			genotypeQuery = "select distinct g.genotype_key, g.combination_2, g.background_strain "
-				+ "from expression_ht_consolidated_sample cs, "
-				+ " genotype g "
-				+ "where cs.genotype_key = g.genotype_key";
+		// cache data for structures for expression results > startKey and <= endKey
+		public void cacheTerms (int startKey, int endKey, boolean forRnaSeq) throws SQLException {
+			structureID = new IntStringMap();
+			emapaID = new IntStringMap();
+			printname = new IntStringMap();
+
+			String structureQuery = "select distinct e.structure_key, e.structure_printname, "
+				+ "  structure.primary_id, emapa.primary_id as emapa_id "
+				+ "from expression_result_summary e, term structure, "
+				+ "  term_emap mapping, term emapa "
+				+ "where e.result_key > " + startKey
+				+ " and e.result_key <= " + endKey
+				+ " and e.structure_key = structure.term_key "
+				+ " and e.structure_key = mapping.term_key "
+				+ " and mapping.emapa_term_key = emapa.term_key";
+	
+			if (forRnaSeq) {
+				// adjust the query to deal with RNA-Seq data rather than classical expression data
+				structureQuery = "select distinct emaps.term_key as structure_key, "
+					+ "  emapa.term as structure_printname, "
+					+ "  emaps.primary_id, emapa.primary_id as emapa_id "
+					+ "from  expression_ht_consolidated_sample cs, "
+					+ "  term emapa, term_emap mapping, term emaps "
+					+ "where cs.emapa_key = emapa.term_key "
+					+ "  and emapa.term_key = mapping.emapa_term_key "
+					+ "  and cs.theiler_stage::integer = mapping.stage "
+					+ "  and mapping.term_key = emaps.term_key";
+			}
+	
+			ResultSet rs = ex.executeProto(structureQuery);
+			while (rs.next()) {
+				int structureKey = rs.getInt("structure_key");
+				structureID.put(structureKey, intern(rs.getString("primary_id")));
+				emapaID.put(structureKey, intern(rs.getString("emapa_id")));
+				printname.put(structureKey, intern(rs.getString("structure_printname")));
+			}
+			rs.close();
+			logger.info("Cached data for " + emapaID.size() + " structures");
 		}
-		
-		ResultSet rs = ex.executeProto(genotypeQuery);
-		while (rs.next()) {
-			allelePairs.put(rs.getString("genotype_key"), rs.getString("combination_2"));
-			bgStrains.put(rs.getString("genotype_key"), rs.getString("background_strain"));
+	
+		// cache data for genotypes for expression results > startKey and <= endKey
+		public void cacheGenotypes (int startKey, int endKey, boolean forRnaSeq) throws SQLException {
+			// columns with few distinct values are stored as IDs in this table
+			StringTable genotypeValues = new StringTable();
+			allelePairs = new IntStringMap();
+			hasImageAllelePairs = new IntStringMap();
+			bgStrains = new IntStringMap(genotypeValues);
+
+			String genotypeQuery = "select distinct g.genotype_key, g.combination_1, g.combination_2, g.background_strain "
+				+ "from expression_result_summary e, genotype g "
+				+ "where e.result_key > " + startKey
+				+ " and e.result_key <= " + endKey
+				+ " and e.genotype_key = g.genotype_key";
+	
+			if (forRnaSeq) {
+				// adjust the query if we need to be working with RNA-Seq data rather than classical
+				genotypeQuery = "select distinct g.genotype_key, g.combination_2, g.background_strain "
+					+ "from expression_ht_consolidated_sample cs, "
+					+ " genotype g "
+					+ "where cs.genotype_key = g.genotype_key";
+			}
+	
+			ResultSet rs = ex.executeProto(genotypeQuery);
+			while (rs.next()) {
+				allelePairs.put(rs.getInt("genotype_key"), rs.getString("combination_2"));
+				bgStrains.put(rs.getInt("genotype_key"), rs.getString("background_strain"));
+				if (!forRnaSeq) {
+					hasImageAllelePairs.put(rs.getInt("genotype_key"), rs.getString("combination_1"));
+				}
+			}
+			rs.close();
+			logger.info("Cached data for " + allelePairs.size() + " genotypes");
 		}
-		rs.close();
-		logger.info("Cached data for " + allelePairs.size() + " genotypes");
-	}
 	
-	// cache data for markers for expression results > startKey and <= endKey
-	public void cacheMarkers (int startKey, int endKey, boolean forRnaSeq) throws SQLException {
-		markerSymbol = new HashMap<String, String>();
-		markerID = new HashMap<String, String>();
-		markerName = new HashMap<String, String>();
-		markerSubtype = new HashMap<String, String>();
-		markerBySymbol = new HashMap<String, String>();
-		markerByLocation = new HashMap<String, String>();
-		startCoord = new HashMap<String, String>();
-		endCoord = new HashMap<String, String>();
-		cytoband = new HashMap<String, String>();
-		strand = new HashMap<String, String>();
-		chromosome = new HashMap<String, String>();
-		ensemblGMID = new HashMap<String, String>();
-		
-		String markerQuery = "select distinct m.marker_key, m.symbol, m.primary_id, m.name, m.marker_subtype, "
-			+ " s.by_location, s.by_symbol, loc.chromosome, loc.cytogenetic_offset, loc.start_coordinate, "
-			+ " loc.end_coordinate, loc.strand, mid.acc_id as ensembl_gm_id "
-			+ "from expression_result_summary e "
-			+ "inner join marker m on (e.marker_key = m.marker_key) "
-			+ "inner join marker_sequence_num s on (e.marker_key = s.marker_key) "
-			+ "inner join marker_location loc on (e.marker_key = loc.marker_key and loc.sequence_num = 1) "
-			+ "left outer join marker_id mid on (e.marker_key = mid.marker_key and mid.logical_db = 'Ensembl Gene Model') "
-			+ "where e.result_key > " + startKey
-			+ " and e.result_key <= " + endKey;
-
-		if (forRnaSeq) {
-			// adjust the query if we need to be working with RNA-Seq data rather than classical
-			markerQuery = "select distinct m.marker_key, m.symbol, m.primary_id, m.name, m.marker_subtype, "
+		// cache data for markers for expression results > startKey and <= endKey
+		public void cacheMarkers (int startKey, int endKey, boolean forRnaSeq) throws SQLException {
+			// columns with few distinct values are stored as IDs in this table
+			StringTable markerValues = new StringTable();
+			markerSymbol = new IntStringMap();
+			markerID = new IntStringMap();
+			markerName = new IntStringMap();
+			markerSubtype = new IntStringMap(markerValues);
+			markerBySymbol = new IntStringMap();
+			markerByLocation = new IntStringMap();
+			startCoord = new IntStringMap();
+			endCoord = new IntStringMap();
+			cytoband = new IntStringMap(markerValues);
+			strand = new IntStringMap(markerValues);
+			chromosome = new IntStringMap(markerValues);
+			ensemblGMID = new IntStringMap();
+	
+			String markerQuery = "select distinct m.marker_key, m.symbol, m.primary_id, m.name, m.marker_subtype, "
 				+ " s.by_location, s.by_symbol, loc.chromosome, loc.cytogenetic_offset, loc.start_coordinate, "
 				+ " loc.end_coordinate, loc.strand, mid.acc_id as ensembl_gm_id "
-				+ "from marker m "
-				+ "inner join marker_sequence_num s on (s.marker_key = m.marker_key) "
-				+ "inner join marker_location loc on (m.marker_key = loc.marker_key and loc.sequence_num = 1) "
-				+ "left outer join marker_id mid on (m.marker_key = mid.marker_key and mid.logical_db = 'Ensembl Gene Model') "
-				+ "where m.organism = 'mouse' ";
+				+ "from expression_result_summary e "
+				+ "inner join marker m on (e.marker_key = m.marker_key) "
+				+ "inner join marker_sequence_num s on (e.marker_key = s.marker_key) "
+				+ "inner join marker_location loc on (e.marker_key = loc.marker_key and loc.sequence_num = 1) "
+				+ "left outer join marker_id mid on (e.marker_key = mid.marker_key and mid.logical_db = 'Ensembl Gene Model') "
+				+ "where e.result_key > " + startKey
+				+ " and e.result_key <= " + endKey;
+
+			if (forRnaSeq) {
+				// adjust the query if we need to be working with RNA-Seq data rather than classical
+				markerQuery = "select distinct m.marker_key, m.symbol, m.primary_id, m.name, m.marker_subtype, "
+					+ " s.by_location, s.by_symbol, loc.chromosome, loc.cytogenetic_offset, loc.start_coordinate, "
+					+ " loc.end_coordinate, loc.strand, mid.acc_id as ensembl_gm_id "
+					+ "from marker m "
+					+ "inner join marker_sequence_num s on (s.marker_key = m.marker_key) "
+					+ "inner join marker_location loc on (m.marker_key = loc.marker_key and loc.sequence_num = 1) "
+					+ "left outer join marker_id mid on (m.marker_key = mid.marker_key and mid.logical_db = 'Ensembl Gene Model') "
+					+ "where m.organism = 'mouse' ";
+			}
+	
+			ResultSet rs = ex.executeProto(markerQuery);
+			while (rs.next()) {
+				int markerKey = rs.getInt("marker_key");
+				markerSymbol.put(markerKey, rs.getString("symbol"));
+				markerID.put(markerKey, rs.getString("primary_id"));
+				markerName.put(markerKey, rs.getString("name"));
+				markerSubtype.put(markerKey, rs.getString("marker_subtype"));
+				markerByLocation.put(markerKey, rs.getString("by_location"));
+				markerBySymbol.put(markerKey, rs.getString("by_symbol"));
+				startCoord.put(markerKey, rs.getString("start_coordinate"));
+				endCoord.put(markerKey, rs.getString("end_coordinate"));
+				cytoband.put(markerKey, rs.getString("cytogenetic_offset"));
+				strand.put(markerKey, rs.getString("strand"));
+				chromosome.put(markerKey, rs.getString("chromosome"));
+				if (rs.getString("ensembl_gm_id") != null) {
+					ensemblGMID.put(markerKey, rs.getString("ensembl_gm_id"));
+				}
+			}
+			rs.close();
+			logger.info("Cached data for " + markerID.size() + " markers");
 		}
-		
-		ResultSet rs = ex.executeProto(markerQuery);
-		while (rs.next()) {
-			String markerKey = rs.getString("marker_key");
-			markerSymbol.put(markerKey, rs.getString("symbol"));
-			markerID.put(markerKey, rs.getString("primary_id"));
-			markerName.put(markerKey, rs.getString("name"));
-			markerSubtype.put(markerKey, rs.getString("marker_subtype"));
-			markerByLocation.put(markerKey, rs.getString("by_location"));
-			markerBySymbol.put(markerKey, rs.getString("by_symbol"));
-			startCoord.put(markerKey, rs.getString("start_coordinate"));
-			endCoord.put(markerKey, rs.getString("end_coordinate"));
-			cytoband.put(markerKey, rs.getString("cytogenetic_offset"));
-			strand.put(markerKey, rs.getString("strand"));
-			chromosome.put(markerKey, rs.getString("chromosome"));
-			if (rs.getString("ensembl_gm_id") != null) {
-				ensemblGMID.put(markerKey, rs.getString("ensembl_gm_id"));
+	
+		// cache data for references for expression results > startKey and <= endKey
+		public void cacheReferences (int startKey, int endKey) throws SQLException {
+			pubmedID = new IntStringMap();
+			citation = new IntStringMap();
+
+			String referenceQuery = "select distinct r.reference_key, r.pubmed_id, r.mini_citation "
+				+ "from expression_result_summary e, reference r "
+				+ "where e.result_key > " + startKey
+				+ " and e.result_key <= " + endKey
+				+ " and e.reference_key = r.reference_key";
+	
+			ResultSet rs = ex.executeProto(referenceQuery);
+			while (rs.next()) {
+				int referenceKey = rs.getInt("reference_key");
+				pubmedID.put(referenceKey, rs.getString("pubmed_id"));
+				citation.put(referenceKey, rs.getString("mini_citation"));
 			}
+			rs.close();
+			logger.info("Cached data for " + pubmedID.size() + " references");
 		}
-		rs.close();
-		logger.info("Cached data for " + markerID.size() + " markers");
-	}
+
+		/* get a mapping from result keys (as Strings) to a List of Strings,
+		 * each of which is a high-level EMAPA term (a high-level ancestor of
+		 * the structure noted in the result.  Returns for result keys > startKey and <= endKey.
+		 */
+		private Map<String, Set<String>> getAnatomicalSystemMap(int startKey, int endKey, boolean forRnaSeq) throws Exception {
+			logger.info ("building map of high-level EMAPA terms for results " + startKey + ".." + endKey);
 	
-	// cache data for references for expression results > startKey and <= endKey
-	public void cacheReferences (int startKey, int endKey) throws SQLException {
-		pubmedID = new HashMap<String, String>();
-		citation = new HashMap<String, String>();
-
-		String referenceQuery = "select distinct r.reference_key, r.pubmed_id, r.mini_citation "
-			+ "from expression_result_summary e, reference r "
-			+ "where e.result_key > " + startKey
-			+ " and e.result_key <= " + endKey
-			+ " and e.reference_key = r.reference_key";
-		
-		ResultSet rs = ex.executeProto(referenceQuery);
-		while (rs.next()) {
-			String referenceKey = rs.getString("reference_key");
-			pubmedID.put(referenceKey, rs.getString("pubmed_id"));
-			citation.put(referenceKey, rs.getString("mini_citation"));
+			Map<String, Set<String>> systemMap = new HashMap<String, Set<String>>();
+
+			String systemQuery = "select result_key, anatomical_system, emapa_id from expression_result_anatomical_systems"
+				+ " where result_key > " + startKey + " and result_key <= " + endKey;
+
+			if (forRnaSeq) {
+				// adjust the query when dealing with RNA-Seq data -- and be sure to consider EMAPS relationships
+				// so the results are accurate based on annotated stage
+				systemQuery = "select distinct sm.consolidated_measurement_key as result_key, "
+					+ "  ta.ancestor_term as anatomical_system, "
+					+ "  tas.emapa_id "
+					+ "from expression_ht_consolidated_sample_measurement sm, "
+					+ " expression_ht_consolidated_sample cs, "
+					+ " term_emap emap, term_emap emaps, term emapa_terms, "
+					+ " term_ancestor ta, tmp_anatomical_systems tas "
+					+ "where sm.consolidated_measurement_key >= " + startKey
+					+ " and sm.consolidated_measurement_key <= " + endKey
+					+ " and sm.consolidated_sample_key = cs.consolidated_sample_key "
+					+ " and cs.emapa_key = emap.emapa_term_key "
+					+ " and cs.theiler_stage::int = emap.stage "
+					+ " and emap.term_key = ta.term_key "
+					+ " and ta.ancestor_term_key = emaps.term_key "
+					+ " and emaps.emapa_term_key = emapa_terms.term_key "
+					+ " and emapa_terms.primary_id = tas.emapa_id";
+			}
+	
+			ResultSet rs = ex.executeProto(systemQuery);
+
+			while (rs.next()) {
+				String resultKey = rs.getString("result_key");
+				if (forRnaSeq) {
+					resultKey = "rnaseq" + resultKey;
+				}
+				String system = intern(rs.getString("anatomical_system") + "_" + rs.getString("emapa_id"));
+
+				if (!systemMap.containsKey(resultKey)) {
+					systemMap.put(resultKey, new HashSet<String>());
+				}
+				systemMap.get(resultKey).add(system);
+			}
+			logger.info(" - gathered EMAPA terms for " + systemMap.size() + " results, RAM used: " + memoryUsed());
+			rs.close();
+			return systemMap;
+		}
+
+		/*
+		 * get a mapping from expression result key (as a String) to a List of
+		 * figure labels for that result.  Returns results for result keys > startKey and <= endKey.
+		 */
+		private Map<String, Set<String>> getImageMap(int startKey, int endKey) throws Exception {
+			Map<String, Set<String>> imageMap = new HashMap<String, Set<String>>();
+
+			logger.info("building map of expression images for results " + startKey + ".." + endKey);
+
+			// label could be either specimen label or if null use the figure label
+			String imageQuery = "select eri.result_key, "
+					+ "  case when ei.pane_label is null then i.figure_label "
+					+ "    else (i.figure_label || ei.pane_label) end as label "
+					+ "from expression_result_summary ers, "
+					+ "  expression_result_to_imagepane eri, "
+					+ "  expression_imagepane ei, " + "  image i "
+					+ "where eri.imagepane_key = ei.imagepane_key "
+					+ "  and eri.result_key > " + startKey
+					+ "  and eri.result_key <= " + endKey
+					+ "  and ei.image_key = i.image_key "
+					+ "  and eri.result_key = ers.result_key "
+					+ "  and ers.specimen_key is null " + "UNION "
+					+ "select ers.result_key, sp.specimen_label as label "
+					+ "from expression_result_summary ers, "
+					+ "  assay_specimen sp "
+					+ "where ers.specimen_key = sp.specimen_key "
+					+ "  and ers.result_key > " + startKey
+					+ "  and ers.result_key <= " + endKey;
+
+			ResultSet rs = ex.executeProto(imageQuery);
+
+			String rkey; // result key
+			String label; // specimen label
+
+			while (rs.next()) {
+				rkey = rs.getString("result_key");
+				label = rs.getString("label");
+
+				// skip empty labels
+				if (label != null && !label.equals("")) {
+					if (!imageMap.containsKey(rkey)) {
+						imageMap.put(rkey, new HashSet<String>());
+					}
+					imageMap.get(rkey).add(label);
+				}
+			}
+			logger.info(" - gathered figure labels for " + imageMap.size() + " results, RAM used: " + memoryUsed());
+			rs.close();
+			return imageMap;
+		}
+
+		// Build a temp table with ordering data for results between the two keys, either for
+		// for classical data (true) or RNA-Seq data (false).  Technically, this isn't really needed
+		// (as it could just be done with joins in the main indexing queries), but it's in here to 
+		// help simplify later code and make it more maintainable.
+		public String buildOrderingTable(int start, int end, boolean isClassical) throws Exception {
+			int tableNumber = tempTableCount.getAndIncrement();
+			String tableName = "orderingTable" + tableNumber;
+			String indexName = "otIndex" + tableNumber;
+	
+			int isClassicalFlag = 1;
+			if (!isClassical) {
+				isClassicalFlag = 0;	// looking for RNA-Seq data, not classical
+			}
+
+			String cmd = "select r.result_key, s.by_symbol, t.by_assaytype, a.by_age, "
+				+ "  d.by_detected, ref.by_reference, st.by_structure "
+				+ " into temporary table " + tableName
+				+ " from universal_expression_result r, uni_by_symbol s, uni_by_age a, "
+				+ "  uni_by_assaytype t, uni_by_detected d, uni_by_reference ref, "
+				+ "  uni_by_structure st "
+				+ " where r.is_classical = " + isClassicalFlag
+				+ "  and r.result_key > " + start
+				+ "  and r.result_key <= " + end
+				+ "  and r.uni_key = s.uni_key "
+				+ "  and r.uni_key = a.uni_key "
+				+ "  and r.uni_key = t.uni_key "
+				+ "  and r.uni_key = d.uni_key "
+				+ "  and r.uni_key = ref.uni_key "
+				+ "  and r.uni_key = st.uni_key";
+			ex.executeVoid(cmd);
+			logger.info("Created " + tableName);
+	
+			ex.executeVoid("create index " + indexName + " on " + tableName + "(result_key)");
+			logger.info("Indexed " + tableName);
+			return tableName;
+		}
+
+		// drop the temp table with the given name
+		public void dropTempTable(String s) throws Exception {
+			ex.executeVoid("drop table " + s);
+			logger.info("Dropped temp table: " + s);
 		}
-		rs.close();
-		logger.info("Cached data for " + pubmedID.size() + " references");
 	}
 
 	// cache J#s for HT experiments
@@ -292,26 +526,6 @@ public class GxdResultIndexer extends Indexer {
 		logger.info("Cached J#s for " + htExpRefs.size() + " HT experiments.");
 	}
 	
-	// join non-null strings s1, s2, and s3 together, separated by underscores
-	public String joiner (String s1, String s2, String s3) {
-		return joiner(s1, s2, s3, null);
-	}
-	
-	// join non-null strings s1, s2, s3, and (nullable) s4 together, separated by underscores.
-	public String joiner (String s1, String s2, String s3, String s4) {
-		StringBuffer sb = new StringBuffer();
-		sb.append(s1);
-		sb.append("_");
-		sb.append(s2);
-		sb.append("_");
-		sb.append(s3);
-		if (s4 != null) {
-			sb.append("_");
-			sb.append(s4);
-		}
-		return sb.toString();
-	}
-	
 	/* build a temp table of all anatomical system IDs (high level EMAPA terms)
 	 * and index it for performance
 	 */
@@ -331,58 +545,6 @@ public class GxdResultIndexer extends Indexer {
 		rs.close();
 	}
 
-	/* get a mapping from result keys (as Strings) to a List of Strings,
-	 * each of which is a high-level EMAPA term (a high-level ancestor of
-	 * the structure noted in the result.  Returns for result keys > startKey and <= endKey.
-	 */
-	private Map<String, Set<String>> getAnatomicalSystemMap(int startKey, int endKey, boolean forRnaSeq) throws Exception {
-		logger.info ("building map of high-level EMAPA terms for results " + startKey + ".." + endKey);
-		
-		Map<String, Set<String>> systemMap = new HashMap<String, Set<String>>();
-
-		String systemQuery = "select result_key, anatomical_system, emapa_id from expression_result_anatomical_systems"
-			+ " where result_key > " + startKey + " and result_key <= " + endKey;
-
-		if (forRnaSeq) {
-			// adjust the query when dealing with RNA-Seq data -- and be sure to consider EMAPS relationships
-			// so the results are accurate based on annotated stage
-			systemQuery = "select distinct sm.consolidated_measurement_key as result_key, "
-				+ "  ta.ancestor_term as anatomical_system, "
-				+ "  tas.emapa_id "
-				+ "from expression_ht_consolidated_sample_measurement sm, "
-				+ " expression_ht_consolidated_sample cs, "
-				+ " term_emap emap, term_emap emaps, term emapa_terms, "
-				+ " term_ancestor ta, tmp_anatomical_systems tas "
-				+ "where sm.consolidated_measurement_key >= " + startKey
-				+ " and sm.consolidated_measurement_key <= " + endKey
-				+ " and sm.consolidated_sample_key = cs.consolidated_sample_key "
-				+ " and cs.emapa_key = emap.emapa_term_key "
-				+ " and cs.theiler_stage::int = emap.stage "
-				+ " and emap.term_key = ta.term_key "
-				+ " and ta.ancestor_term_key = emaps.term_key "
-				+ " and emaps.emapa_term_key = emapa_terms.term_key "
-				+ " and emapa_terms.primary_id = tas.emapa_id";
-		}
-		
-		ResultSet rs = ex.executeProto(systemQuery);
-
-		while (rs.next()) {
-			String resultKey = rs.getString("result_key");
-			if (forRnaSeq) {
-				resultKey = "rnaseq" + resultKey;
-			}
-			String system = rs.getString("anatomical_system") + "_" + rs.getString("emapa_id");
-
-			if (!systemMap.containsKey(resultKey)) {
-				systemMap.put(resultKey, new HashSet<String>());
-			}
-			systemMap.get(resultKey).add(system);
-		}
-		logger.info(" - gathered EMAPA terms for " + systemMap.size() + " results, RAM used: " + memoryUsed());
-		rs.close();
-		return systemMap;
-	}
-
 	/*
 	 * get a mapping from marker keys (as Strings) to a List of Strings, each of
 	 * which is a synonym for the marker -- where those markers also have
@@ -575,8 +737,6 @@ public class GxdResultIndexer extends Indexer {
 	 */
 	private Map<String, List<String>> getMarkerVocabMap() throws Exception {
 		
-		HashMap<String, String> allTermIdBuffer = new HashMap<String, String>();
-		
 		Map<String, List<String>> markerVocabMap = new HashMap<String, List<String>>();
 
 		logger.info("building map of vocabulary annotations");
@@ -588,15 +748,12 @@ public class GxdResultIndexer extends Indexer {
 
 		while (rs.next()) {
 			mkey = rs.getString("marker_key");
-			termId = rs.getString("term_id");
+			termId = intern(rs.getString("term_id"));
 
 			if (!markerVocabMap.containsKey(mkey)) {
 				markerVocabMap.put(mkey, new ArrayList<String>());
 			}
-			if(!allTermIdBuffer.containsKey(termId)) {
-				allTermIdBuffer.put(termId, termId);
-			}
-			markerVocabMap.get(mkey).add(allTermIdBuffer.get(termId));
+			markerVocabMap.get(mkey).add(termId);
 		}
 		rs.close();
 		logger.info(" - gathered annotated terms for " + markerVocabMap.size() + " markers, RAM used: " + memoryUsed());
@@ -609,101 +766,65 @@ public class GxdResultIndexer extends Indexer {
 
 		while (rs2.next()) {
 			mkey = rs2.getString("marker_key");
-			termId = rs2.getString("term_id");
+			termId = intern(rs2.getString("term_id"));
 
 			if (!markerVocabMap.containsKey(mkey)) {
 				markerVocabMap.put(mkey, new ArrayList<String>());
 			}
-			if(!allTermIdBuffer.containsKey(termId)) {
-				allTermIdBuffer.put(termId, termId);
-			}
 			if (!markerVocabMap.get(mkey).contains(termId)) {
-				markerVocabMap.get(mkey).add(allTermIdBuffer.get(termId));
+				markerVocabMap.get(mkey).add(termId);
 				i++;
 			}
 		}
 
 		logger.info(" - added " + i + " annotations to DO via homology, RAM used: " + memoryUsed());
-		allTermIdBuffer.clear();
 		rs2.close();
 		return markerVocabMap;
 	}
 
 	/*
-	 * get a mapping from each term ID to a Set of IDs for its ancestor terms,
+	 * get the closure from each term ID to the IDs of its ancestor terms,
 	 * for terms in non-anatomy vocabularies which are annotated to markers.
 	 */
-	private Map<String, Set<String>> getVocabAncestorMap() throws Exception {
-		Map<String, Set<String>> vocabAncestorMap = new HashMap<String, Set<String>>();
+	private DagClosure getVocabAncestors() throws Exception {
+		logger.info("building closure of vocabulary term ancestors");
 
-		logger.info("building map of vocabulary term ancestors");
-
-		String vocabAncestorQuery = SharedQueries.GXD_VOCAB_ANCESTOR_QUERY;
-		String termId; // term's ID
-		ResultSet rs = ex.executeProto(vocabAncestorQuery);
-
-		while (rs.next()) {
-			termId = rs.getString("primary_id");
+		DagClosure vocabAncestors = DagClosure.load(ex, SharedQueries.GXD_VOCAB_ANCESTOR_QUERY,
+			"primary_id", "ancestor_primary_id", false);
 
-			if (!vocabAncestorMap.containsKey(termId)) {
-				vocabAncestorMap.put(termId, new HashSet<String>());
-			}
-			vocabAncestorMap.get(termId).add(rs.getString("ancestor_primary_id"));
-		}
-		logger.info(" - gathered ancestor IDs for " + vocabAncestorMap.size() + " terms, RAM used: " + memoryUsed());
-		rs.close();
-		return vocabAncestorMap;
+		logger.info(" - gathered " + vocabAncestors.relationshipCount() + " ancestor IDs for "
+			+ vocabAncestors.size() + " terms, RAM used: " + memoryUsed());
+		return vocabAncestors;
 	}
 
 	/*
-	 * get a mapping from expression result key (as a String) to a List of
-	 * figure labels for that result.  Returns results for result keys > startKey and <= endKey.
+	 * build a closure from each structure (field specified by 'key') to the
+	 * values of the field specified by 'value1'. If 'value2' is specified then
+	 * each structure is also related to the value of that field. 'msg' specifies
+	 * the type of items we are gathering, only used for debugging output.
 	 */
-	private Map<String, Set<String>> getImageMap(int startKey, int endKey) throws Exception {
-		Map<String, Set<String>> imageMap = new HashMap<String, Set<String>>();
-
-		logger.info("building map of expression images for results " + startKey + ".." + endKey);
-
-		// label could be either specimen label or if null use the figure label
-		String imageQuery = "select eri.result_key, "
-				+ "  case when ei.pane_label is null then i.figure_label "
-				+ "    else (i.figure_label || ei.pane_label) end as label "
-				+ "from expression_result_summary ers, "
-				+ "  expression_result_to_imagepane eri, "
-				+ "  expression_imagepane ei, " + "  image i "
-				+ "where eri.imagepane_key = ei.imagepane_key "
-				+ "  and eri.result_key > " + startKey
-				+ "  and eri.result_key <= " + endKey
-				+ "  and ei.image_key = i.image_key "
-				+ "  and eri.result_key = ers.result_key "
-				+ "  and ers.specimen_key is null " + "UNION "
-				+ "select ers.result_key, sp.specimen_label as label "
-				+ "from expression_result_summary ers, "
-				+ "  assay_specimen sp "
-				+ "where ers.specimen_key = sp.specimen_key "
-				+ "  and ers.result_key > " + startKey
-				+ "  and ers.result_key <= " + endKey;
-
-		ResultSet rs = ex.executeProto(imageQuery);
-
-		String rkey; // result key
-		String label; // specimen label
+	private DagClosure getClosure(String query, String key, String value1, String value2, String msg) throws Exception {
+		logger.info("building closure of " + msg + " for structures");
+
+		DagClosure.Builder builder = new DagClosure.Builder();
+		ResultSet rs = ex.executeProto(query);
 
 		while (rs.next()) {
-			rkey = rs.getString("result_key");
-			label = rs.getString("label");
+			String sKey = rs.getString(key);
+			if (value2 != null) {
+				builder.add(sKey, rs.getString(value2));
+			}
 
-			// skip empty labels
-			if (label != null && !label.equals("")) {
-				if (!imageMap.containsKey(rkey)) {
-					imageMap.put(rkey, new HashSet<String>());
-				}
-				imageMap.get(rkey).add(label);
+			String sValue1 = rs.getString(value1);
+			if ((sValue1 != null) && (!sValue1.equals(""))) {
+				builder.add(sKey, sValue1);
 			}
 		}
-		logger.info(" - gathered figure labels for " + imageMap.size() + " results, RAM used: " + memoryUsed());
 		rs.close();
-		return imageMap;
+
+		DagClosure closure = builder.build();
+		logger.info(" - gathered " + closure.relationshipCount() + " " + msg + " for structures, RAM used: " + memoryUsed());
+		return closure;
 	}
 
 	/*
@@ -715,8 +836,6 @@ public class GxdResultIndexer extends Indexer {
 	 */
 	private Map<String, List<String>> getMap(String query, String key, String value1, String value2, String msg) throws Exception {
 
-		HashMap<String, String> allValuesBuffer = new HashMap<String, String>();
-		
 		Map<String, List<String>> structureAncestorMap = new HashMap<String, List<String>>();
 
 		logger.info("building map of " + msg + " for structures");
@@ -729,78 +848,84 @@ public class GxdResultIndexer extends Indexer {
 
 		while (rs.next()) {
 			sKey = rs.getString(key);
-			sValue1 = rs.getString(value1);
+			sValue1 = intern(rs.getString(value1));
+
 
-			if(!allValuesBuffer.containsKey(sValue1)) {
-				allValuesBuffer.put(sValue1, sValue1);
-			}
-			
 			if (!structureAncestorMap.containsKey(sKey)) {
 				structureAncestorMap.put(sKey, new ArrayList<String>());
 
 				// add value2 the first time this key is found, if defined
 				if (value2 != null) {
-					sValue2 = rs.getString(value2);
-					if(!allValuesBuffer.containsKey(sValue2)) {
-						allValuesBuffer.put(sValue2, sValue2);
-					}
-					structureAncestorMap.get(sKey).add(allValuesBuffer.get(sValue2));
+					sValue2 = intern(rs.getString(value2));
+					structureAncestorMap.get(sKey).add(sValue2);
 				}
 			}
 
 			if ((sValue1 != null) && (!sValue1.equals(""))) {
-				structureAncestorMap.get(sKey).add(allValuesBuffer.get(sValue1));
+				structureAncestorMap.get(sKey).add(sValue1);
 			}
 		}
 		logger.info(" - gathered " + msg + " for " + structureAncestorMap.size() + " terms, RAM used: " + memoryUsed());
-		allValuesBuffer.clear();
 		rs.close();
 		return structureAncestorMap;
 	}
 
+	// the chunk scanner's threads each hold a connection, alongside our own (and, when we
+	// fill gxdResultHasImage, the one it holds until that index is finished)
+	@Override
+	protected int getDefaultConnections() {
+		return getIntProperty("gxdResult.chunkThreads", 2) + 1 + ((hasImageIndexer != null) ? 1 : 0);
+	}
+
+	@Override
+	protected int getDefaultMemoryMB() {
+		return 4096;
+	}
+
 	/*
 	 * -------------------- main indexing method --------------------
 	 */
 	public void index() throws Exception {
 		// pull a bunch of mappings into memory, to make later
-		// processing easier
+		// processing easier (those also used by another indexer are shared
+		// through the LookupRegistry, so are only built once if runs overlap)
 
                 logger.info("gxdResultIndexer starting run");
 
 		try {
-			markerMpCache = new MarkerMPCache();
+			markerMpCache = getSharedLookup("MarkerMPCache", MarkerMPCache::new);
 		} catch (Exception e) {
 			logger.error("Marker/MP Cache failed; no MP filtering terms will be indexed.");
 		}
 
 		try {
-			markerGoCache = new MarkerGOCache();
+			markerGoCache = getSharedLookup("MarkerGOCache", MarkerGOCache::new);
 		} catch (Exception e) {
 			logger.error("Marker/GO Cache failed; no GO filtering terms will be indexed.");
 		}
 
 		try {
-			markerDoCache = new MarkerDOCache();
+			markerDoCache = getSharedLookup("MarkerDOCache", MarkerDOCache::new);
 		} catch (Exception e) {
 			logger.error("Marker/DO Cache failed; no DO filtering terms will be indexed.");
 		}
 
 		try {
-			resultCoCache = new ResultCOCache();
+			resultCoCache = getSharedLookup("ResultCOCache", ResultCOCache::new);
 		} catch (Exception e) {
 			logger.error("Result/Cell ontology Cache failed; no CO filtering terms will be indexed.");
 		}
 
 		try {
-			markerTypeCache = new MarkerTypeCache();
+			markerTypeCache = getSharedLookup("MarkerTypeCache", MarkerTypeCache::new);
 		} catch (Exception e) {
 			logger.error("Marker/Type Cache failed; no Feature Type filtering terms will be indexed.");
 		}
 				// mapping from marker key to List of synonyms for each marker
-		Map<String, List<String>> markerNomenMap = getMarkerNomenMap();
+		Map<String, List<String>> markerNomenMap = getSharedLookup("gxd.markerNomenMap", this::getMarkerNomenMap);
 
 		// mapping from marker key to its cM location, if available
-		Map<String, String> centimorganMap = getCentimorganMap();
+		Map<String, String> centimorganMap = getSharedLookup("gxd.centimorganMap", this::getCentimorganMap);
 		
 		// get markers mutated in each genotype
 		Map<String, Map<String, Map<String, String>>> mutatedInMap = getMutatedInMap();
@@ -809,147 +934,453 @@ public class GxdResultIndexer extends Indexer {
 		Map<String, List<String>> mutatedInAlleleMap = getMutatedInAlleleMap();
 
 		// get IDs of non-anatomy terms annotated to markers
-		Map<String, List<String>> markerVocabMap = getMarkerVocabMap();
+		Map<String, List<String>> markerVocabMap = getSharedLookup("gxd.markerVocabMap", this::getMarkerVocabMap);
 
-		// get List of ancestor term IDs for each non-anatomy term
-		Map<String, Set<String>> vocabAncestorMap = getVocabAncestorMap();
+		// get ancestor term IDs for each non-anatomy term
+		DagClosure vocabAncestors = getSharedLookup("gxd.vocabAncestors", this::getVocabAncestors);
 
-		// get List of ancestor IDs for each structure
-		Map<String, List<String>> structureAncestorIdMap = getMap(
-				SharedQueries.GXD_EMAP_ANCESTOR_QUERY, "structure_term_key", "ancestor_id", "structure_id", "IDs");
+		// get ancestor IDs for each structure (and the structure's own ID)
+		DagClosure structureAncestorIds = getSharedLookup("gxd.structureAncestorIds", () -> getClosure(
+				SharedQueries.GXD_EMAP_ANCESTOR_QUERY, "structure_term_key", "ancestor_id", "structure_id", "IDs"));
 
-		// get List of ancestor keys for each structure
-		Map<String, List<String>> structureAncestorKeyMap = getMap(
-				SharedQueries.GXD_EMAP_ANCESTOR_QUERY, "structure_term_key", "default_parent_key", null, "keys");
+		// get ancestor keys for each structure
+		DagClosure structureAncestorKeys = getSharedLookup("gxd.structureAncestorKeys", () -> getClosure(
+				SharedQueries.GXD_EMAP_ANCESTOR_QUERY, "structure_term_key", "default_parent_key", null, "keys"));
 
 		// get List of synonyms for each structure
-		Map<String, List<String>> structureSynonymMap = getMap(
-				SharedQueries.GXD_EMAP_SYNONYMS_QUERY, "structure_id", "synonym", "structure", "synonyms");
+		Map<String, List<String>> structureSynonymMap = getSharedLookup("gxd.structureSynonymMap", () -> getMap(
+				SharedQueries.GXD_EMAP_SYNONYMS_QUERY, "structure_id", "synonym", "structure", "synonyms"));
 
 		// -------------------------------------------------------------------
 		// Finally finished gathering mappings, time for the main body of work
 		// -------------------------------------------------------------------
 
 		identifySystemIDs();
-		indexClassicalData(markerNomenMap, centimorganMap, mutatedInMap, mutatedInAlleleMap,
-			markerVocabMap, vocabAncestorMap, structureAncestorIdMap, structureAncestorKeyMap,
-			structureSynonymMap);
-		indexRnaSeqData(markerNomenMap, centimorganMap, mutatedInMap, mutatedInAlleleMap,
-			markerVocabMap, vocabAncestorMap, structureAncestorIdMap, structureAncestorKeyMap,
+
+		// documents are built from the rows on a pool of their own, so reading the rows from
+		// the database is not held up by document assembly
+		GxdResultDocMapper mapper = new GxdResultDocMapper(markerMpCache, markerGoCache, markerDoCache,
+			resultCoCache, markerTypeCache, markerNomenMap, centimorganMap, mutatedInMap, mutatedInAlleleMap,
+			markerVocabMap, vocabAncestors, structureAncestorIds, structureAncestorKeys,
 			structureSynonymMap);
+		int docThreads = getIntProperty("gxdResult.docThreads", Runtime.getRuntime().availableProcessors());
+		docPool = new ForkJoinPool(docThreads);
+		batchPermits = new Semaphore(docThreads * 2);
+		logger.info("Building documents with " + docThreads + " thread(s)");
+
+		startHasImageIndex(mapper);
+		boolean finished = false;
+		try {
+			if (isIncremental()) {
+				indexChanges(mapper);
+			} else {
+				indexClassicalData(null, mapper);
+				indexRnaSeqData(null, mapper);
+			}
+			finished = true;
+		} finally {
+			docPool.shutdown();
+			finishHasImageIndex(finished);
+		}
 		this.setSkipOptimizer(true);
 	}
-		
-	// populate the GO fields in the SolrInputDocument for the given markerKey
-	public void addGoTerms(SolrInputDocument doc, String markerKey) throws Exception {
-		for (String goTerm : markerGoCache.getTermsBP(markerKey)) {
-			doc.addField(GxdResultFields.GO_HEADERS_BP, goTerm);
+
+	// drop our references to the shared caches along with our holds on them, so they
+	// can be freed once the last indexer using them is done
+	@Override
+	protected void releaseSharedLookups() {
+		super.releaseSharedLookups();
+		markerMpCache = null;
+		markerGoCache = null;
+		markerDoCache = null;
+		resultCoCache = null;
+		markerTypeCache = null;
+	}
+
+	// get the gxdResultHasImage index (if we are filling it) ready for documents, updating it
+	// in place if this is an incremental run, and give 'mapper' that index's own mutated-in
+	// lookups (which, unlike ours, keep recombinase and wild-type alleles); if that fails, we
+	// carry on without it
+	private void startHasImageIndex(GxdResultDocMapper mapper) {
+		if (hasImageIndexer == null) {
+			return;
+		}
+		try {
+			hasImageIndexer.incremental = isIncremental();
+			hasImageIndexer.setupConnection();
+			mapper.setHasImageGenotypeData(hasImageIndexer.getMutatedInMap(),
+				hasImageIndexer.getMutatedInAlleleMap());
+			logger.info("Also filling gxdResultHasImage from this pass");
+		} catch (Exception e) {
+			logger.error("Could not set up gxdResultHasImage; it will not be built", e);
+			hasImageIndexer.indexPassed = false;
+			hasImageIndexer.stopWriter();
+			releaseHasImageConnection();
+			hasImageIndexer = null;
+		}
+	}
+
+	// finish the gxdResultHasImage index (if we are filling it); it fails if our own run did
+	// not get through all the results
+	private void finishHasImageIndex(boolean finished) {
+		if (hasImageIndexer == null) {
+			return;
 		}
-		for (String goTerm : markerGoCache.getTermsCC(markerKey)) {
-			doc.addField(GxdResultFields.GO_HEADERS_CC, goTerm);
+		if (!finished) {
+			hasImageIndexer.indexPassed = false;
 		}
-		for (String goTerm : markerGoCache.getTermsMF(markerKey)) {
-			doc.addField(GxdResultFields.GO_HEADERS_MF, goTerm);
+		try {
+			hasImageIndexer.setSkipOptimizer(true);
+			hasImageIndexer.finishIndex();
+
+			// gxdResultHasImage now holds every change we saw
+			if (hasImageIndexer.indexPassed && (newWatermark != null) && !hasImageWatermarkFile.isEmpty()) {
+				Files.write(Paths.get(hasImageWatermarkFile), newWatermark.getBytes(StandardCharsets.UTF_8));
+				logger.info("Saved gxdResultHasImage watermark " + newWatermark + " to " + hasImageWatermarkFile);
+			}
+		} catch (Exception e) {
+			hasImageIndexer.indexPassed = false;
+			logger.error("Failed to finish gxdResultHasImage", e);
+		} finally {
+			hasImageIndexer.stopWriter();
+			releaseHasImageConnection();
 		}
 	}
 
-	// Build a temp table with ordering data for results between the two keys, either for
-	// for classical data (true) or RNA-Seq data (false).  Technically, this isn't really needed
-	// (as it could just be done with joins in the main indexing queries), but it's in here to 
-	// help simplify later code and make it more maintainable.
-	public String buildOrderingTable(int start, int end, boolean isClassical) throws Exception {
-		String tableName = "orderingTable" + tempTableCount;
-		String indexName = "otIndex" + tempTableCount;
-		
-		int isClassicalFlag = 1;
-		if (!isClassical) {
-			isClassicalFlag = 0;	// looking for RNA-Seq data, not classical
+	// hand back the connection gxdResultHasImage used for its lookups (as its own run would)
+	private void releaseHasImageConnection() {
+		try {
+			hasImageIndexer.ex.cleanup();
+		} catch (Exception e) {
+			logger.error("Failed to release gxdResultHasImage's database connection", e);
 		}
+	}
 
-		String cmd = "select r.result_key, s.by_symbol, t.by_assaytype, a.by_age, "
-			+ "  d.by_detected, ref.by_reference, st.by_structure "
-			+ " into temporary table " + tableName
-			+ " from universal_expression_result r, uni_by_symbol s, uni_by_age a, "
-			+ "  uni_by_assaytype t, uni_by_detected d, uni_by_reference ref, "
-			+ "  uni_by_structure st "
-			+ " where r.is_classical = " + isClassicalFlag
-			+ "  and r.result_key > " + start
-			+ "  and r.result_key <= " + end
-			+ "  and r.uni_key = s.uni_key "
-			+ "  and r.uni_key = a.uni_key "
-			+ "  and r.uni_key = t.uni_key "
-			+ "  and r.uni_key = d.uni_key "
-			+ "  and r.uni_key = ref.uni_key "
-			+ "  and r.uni_key = st.uni_key";
-		ex.executeVoid(cmd);
-		logger.info("Created " + tableName);
-		
-		ex.executeVoid("create index " + indexName + " on " + tableName + "(result_key)");
-		logger.info("Indexed " + tableName);
-		tempTableCount++;
-		return tableName;
+	/* Is: where a batch of finished documents goes (a queue, or straight to Solr)
+	 */
+	private interface DocSink {
+		public void accept(Collection<SolrInputDocument> docs) throws Exception;
 	}
 
-	// drop the temp table with the given name
-	public void dropTempTable(String s) throws Exception {
-		ex.executeVoid("drop table " + s);
-		logger.info("Dropped temp table: " + s);
+	// build the documents for 'rows' (using 'cc' for the chunk's data) on the document pool,
+	// then pass them to 'sink'; blocks while too many batches are already waiting for the pool
+	private Future<Void> submitRows(List<GxdResultRow> rows, GxdResultDocMapper mapper, ChunkCache cc,
+			DocSink sink) throws InterruptedException {
+		batchPermits.acquire();
+		try {
+			return docPool.submit(() -> {
+				try {
+					long start = System.nanoTime();
+					Collection<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(rows.size());
+					for (GxdResultRow row : rows) {
+						SolrInputDocument doc = mapper.toDoc(row, cc);
+						if (doc != null) {
+							docs.add(doc);
+						}
+					}
+					metrics.record(IndexerMetrics.DOC_BUILD, start, docs.size());
+					sink.accept(docs);
+
+					// classical results also go to gxdResultHasImage, if we are filling it -- the
+					// same ones as its own query picks (those with image sorts), whatever their
+					// has_image flag
+					if (hasImageIndexer != null) {
+						Collection<SolrInputDocument> imageDocs = new ArrayList<SolrInputDocument>();
+						for (GxdResultRow row : rows) {
+							if (!row.isRnaSeq) {
+								SolrInputDocument doc = mapper.hasImageDoc(row, cc);
+								if (doc != null) {
+									imageDocs.add(doc);
+								}
+							}
+						}
+						hasImageIndexer.writeDocs(imageDocs);
+					}
+					return null;
+				} finally {
+					batchPermits.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			batchPermits.release();
+			throw e;
+		}
 	}
 
-	// index classical expression data (not RNA-Seq data)
-	public void	indexClassicalData(
-			Map<String, List<String>> markerNomenMap,
-			Map<String, String> centimorganMap,
-			Map<String, Map<String, Map<String, String>>> mutatedInMap,
-			Map<String, List<String>> mutatedInAlleleMap,
-			Map<String, List<String>> markerVocabMap,
-			Map<String, Set<String>> vocabAncestorMap, 
-			Map<String, List<String>> structureAncestorIdMap,
-			Map<String, List<String>> structureAncestorKeyMap,
-			Map<String, List<String>> structureSynonymMap) throws Exception {
+	// wait for all the given batches to be built and handed off; rethrows the first failure
+	private void awaitTasks(List<Future<Void>> tasks) throws Exception {
+		for (Future<Void> task : tasks) {
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) {
+					throw (Exception) e.getCause();
+				}
+				throw e;
+			}
+		}
+	}
 
-		// find the maximum result key, so we have an upper bound when
-		// stepping through chunks of results
+	/*
+	 * -------------------- incremental (delta) runs --------------------
+	 */
+
+	// Is this run incremental?  Only if gxdResult.delta=true, the change table exists, and a
+	// previous successful run left a watermark (in gxdResult.delta.watermarkFile, which
+	// must then be set).  (Also notes the latest change in the table,
+	// so it can be saved as the watermark for the next run -- after a full build, too.)
+	@Override
+	protected boolean isIncremental() throws Exception {
+		if (incremental == null) {
+			incremental = false;
+			changeTable = getIndexProperty("delta.changeTable", "gxd_result_changes");
+			watermarkFile = getIndexProperty("delta.watermarkFile", "");
+			if (hasImageIndexer != null) {
+				hasImageWatermarkFile = hasImageIndexer.getIndexProperty("delta.watermarkFile", "");
+			}
 
-		ResultSet rs_tmp = ex.executeProto("select max(result_key) as max_result_key from expression_result_summary");
-		rs_tmp.next();
+			ResultSet rs = ex.executeProto("select to_regclass('" + changeTable + "') is not null as has_table");
+			rs.next();
+			boolean hasChangeTable = rs.getBoolean("has_table");
+			rs.close();
 
-		Integer start = 0;
-		Integer end = rs_tmp.getInt("max_result_key");
-		rs_tmp.close();
-		int chunkSize = 100000;
+			if (hasChangeTable) {
+				rs = ex.executeProto("select coalesce(max(changed_at)::text, '-infinity') as latest from " + changeTable);
+				rs.next();
+				newWatermark = rs.getString("latest");
+				rs.close();
+			}
 
-		// While it appears that modValue could be one iteration too low (due
-		// to rounding down), this is accounted for by using <= in the loop.
+			if ("true".equalsIgnoreCase(getIndexProperty("delta", "false"))) {
+				// the watermark decides what the next run picks up, so it must be kept
+				// somewhere of this install's own choosing
+				if (watermarkFile.isEmpty()) {
+					throw new IllegalStateException("gxdResult.delta=true requires gxdResult.delta.watermarkFile");
+				}
+				oldWatermark = readWatermark(watermarkFile);
+				String hasImageWatermark = null;
+				if (hasImageIndexer != null) {
+					if (hasImageWatermarkFile.isEmpty()) {
+						throw new IllegalStateException("gxdResult.delta=true with gxdResult.feedHasImage=true "
+							+ "requires gxdResultHasImage.delta.watermarkFile");
+					}
+					hasImageWatermark = readWatermark(hasImageWatermarkFile);
+				}
 
-		int modValue = end.intValue() / chunkSize;
+				if (!hasChangeTable) {
+					logger.warn("Change table " + changeTable + " not found; doing a full build");
+				} else if (oldWatermark == null) {
+					logger.warn("No watermark in " + watermarkFile + "; doing a full build");
+				} else if ((hasImageIndexer != null) && !oldWatermark.equals(hasImageWatermark)) {
+					// updating both from our watermark would miss the changes gxdResultHasImage
+					// has not seen yet
+					logger.warn("gxdResultHasImage's watermark (" + hasImageWatermark + " in " + hasImageWatermarkFile
+						+ ") does not match gxdResult's (" + oldWatermark + "); doing a full build of both");
+				} else {
+					incremental = true;
+					logger.info("Incremental run for changes after " + oldWatermark + " through " + newWatermark);
+				}
+			}
+		}
+		return incremental;
+	}
 
-		// Perform the chunking
+	// save the latest change we saw, so the next incremental run starts from there
+	@Override
+	protected void indexSucceeded() throws Exception {
+		if ((newWatermark != null) && !watermarkFile.isEmpty()) {
+			Files.write(Paths.get(watermarkFile), newWatermark.getBytes(StandardCharsets.UTF_8));
+			logger.info("Saved watermark " + newWatermark + " to " + watermarkFile);
+		}
+	}
 
-		logger.info("Getting all assay results and related search criteria");
-		logger.info("Max result_key: " + end + ", chunks: " + (modValue + 1));
+	// get the watermark saved in 'file' by the last successful run (null if there is none)
+	private String readWatermark(String file) throws Exception {
+		Path path = Paths.get(file);
+		if (!Files.isReadable(path)) {
+			return null;
+		}
+		String watermark = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+		return watermark.isEmpty() ? null : watermark;
+	}
 
-		// can set the size to our known max (slight efficiency gain)
-		Collection<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(1001);
+	// re-index the results listed in the change table since the last run:  delete the
+	// existing documents for each changed key, then rebuild (through the usual code) the
+	// ones that still exist, so deleted results stay gone
+	private void indexChanges(
+			GxdResultDocMapper mapper) throws Exception {
+
+		Set<Integer> classicalKeys = new TreeSet<Integer>();
+		Set<Integer> rnaSeqKeys = new TreeSet<Integer>();
+		Map<String, Integer> changeCounts = new HashMap<String, Integer>();
+
+		String cmd = "select result_key, is_classical, change_type "
+			+ "from " + changeTable + " "
+			+ "where changed_at > '" + oldWatermark + "' "
+			+ "  and changed_at <= '" + newWatermark + "'";
+
+		ResultSet rs = ex.executeProto(cmd);
+		while (rs.next()) {
+			if (rs.getInt("is_classical") == 1) {
+				classicalKeys.add(rs.getInt("result_key"));
+			} else {
+				rnaSeqKeys.add(rs.getInt("result_key"));
+			}
+			String changeType = rs.getString("change_type");
+			if (changeCounts.containsKey(changeType)) {
+				changeCounts.put(changeType, changeCounts.get(changeType) + 1);
+			} else {
+				changeCounts.put(changeType, 1);
+			}
+		}
+		rs.close();
+		logger.info("Changes by type: " + changeCounts + "; " + classicalKeys.size() + " classical results, "
+			+ rnaSeqKeys.size() + " RNA-Seq measurements");
+
+		deleteResultDocs(this, classicalKeys, "");
+		deleteResultDocs(this, rnaSeqKeys, "rnaseq");
+		if (hasImageIndexer != null) {
+			deleteResultDocs(hasImageIndexer, classicalKeys, "");
+		}
+
+		if (!classicalKeys.isEmpty()) {
+			indexClassicalData(new KeyRangeScanner("changed classical results",
+					KeyRangeScanner.rangesForKeys(new ArrayList<Integer>(classicalKeys), DELTA_MAX_GAP)),
+				mapper);
+		}
+		if (!rnaSeqKeys.isEmpty()) {
+			indexRnaSeqData(new KeyRangeScanner("changed RNA-Seq measurements",
+					KeyRangeScanner.rangesForKeys(new ArrayList<Integer>(rnaSeqKeys), DELTA_MAX_GAP)),
+				mapper);
+		}
+		commit();
+	}
+
+	// delete the documents for the given result keys (as indexed, with the given prefix)
+	// from the index of 'indexer'
+	private void deleteResultDocs(Indexer indexer, Set<Integer> keys, String prefix) {
+		List<String> terms = new ArrayList<String>();
+		for (Integer key : keys) {
+			terms.add("\"" + prefix + key + "\"");
+			if (terms.size() >= 500) {
+				indexer.deleteDocs(GxdResultFields.RESULT_KEY + ":(" + String.join(" OR ", terms) + ")");
+				terms.clear();
+			}
+		}
+		if (!terms.isEmpty()) {
+			indexer.deleteDocs(GxdResultFields.RESULT_KEY + ":(" + String.join(" OR ", terms) + ")");
+		}
+	}
 		
-		for (int i = 0; i <= modValue; i++) {
+	// index classical expression data (not RNA-Seq data)
+	public void	indexClassicalData(
+			KeyRangeScanner ranges,
+			GxdResultDocMapper mapper) throws Exception {
+
+		// Perform the chunking.  Chunks of result keys (sized by the number of results they
+		// actually hold, starting at 100,000 and adjusted as throughput and memory allow)
+		// are read concurrently by the scanner's worker threads (each with its own database
+		// connection), their rows are built into documents on the document pool, and this
+		// thread feeds the finished documents to Solr through a bounded queue.  (For an incremental run, 'ranges' has just the ranges
+		// of changed results; otherwise it is null, and we scan all results.)
+
+		int chunkThreads = getIntProperty("gxdResult.chunkThreads", 2);
+		KeyRangeScanner scanner = ranges;
+		if (scanner == null) {
+			scanner = new KeyRangeScanner(ex, "expression_result_summary", "result_key")
+				.where("assay_type != 'Recombinase reporter' and assay_type != 'In situ reporter (transgenic)'")
+				.setController(new ChunkSizeController("gxdResult classical", 100000));
+		}
+		scanner.setThreads(chunkThreads).setMetrics(metrics);
+
+		logger.info("Getting all assay results and related search criteria");
+		logger.info("Max result_key: " + scanner.getMaxKey() + ", results: " + scanner.getRowCount()
+			+ ", threads: " + chunkThreads);
 
-			start = i * chunkSize;
-			end = start + chunkSize;
+		BlockingQueue<Collection<SolrInputDocument>> batches =
+			new ArrayBlockingQueue<Collection<SolrInputDocument>>(chunkThreads * 2);
+		Future<Void> scanning = scanner.scanInBackground((start, end) ->
+			indexClassicalChunk(start, end, mapper, batches));
 
-			cacheGenotypes(start, end, false);		// cache allele combinations for genotypes for this chunk
-			cacheMarkers(start, end, false);		// cache marker symbols, names, IDs, and subtypes for this chunk
-			cacheReferences(start, end);			// cache pubmed IDs and citations for references for this chunk
-			cacheAssays(start, end, false);			// cache data for assays in this chunk
-			cacheTerms(start, end, false);			// cache data for structures in this chunk
+		boolean drained = false;
+		try {
+			// send batches to Solr until every chunk is finished and drained
+			while (!scanning.isDone() || !batches.isEmpty()) {
+				Collection<SolrInputDocument> batch = batches.poll(1, TimeUnit.SECONDS);
+				if (batch != null) {
+					writeDocs(batch);
+				}
+			}
+
+			// report any chunk that failed
+			scanning.get();
+			drained = true;
+		} finally {
+			if (!drained) {
+				// nothing drains the queue now, so stop the chunks and the document tasks
+				// (which give up queueing their batches once the pool is shut down), and wait
+				// for the chunks to let go of their connections
+				scanning.cancel(true);
+				docPool.shutdownNow();
+				batches.clear();
+				try {
+					scanning.get();
+				} catch (CancellationException | ExecutionException ignored) {
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		commit();
+	}
+
+	// put a finished batch on the queue for the draining thread, giving up if the document
+	// pool has been shut down (as it is when the drain stops early)
+	private void queueBatch(BlockingQueue<Collection<SolrInputDocument>> batches,
+			Collection<SolrInputDocument> docs) throws InterruptedException {
+		while (!batches.offer(docs, 1, TimeUnit.SECONDS)) {
+			if (docPool.isShutdown()) {
+				throw new CancellationException("gxdResult stopped; batch not queued");
+			}
+		}
+	}
+
+	// assemble the documents for classical results > start and <= end, using a database
+	// connection of its own, and put them (in batches) on the 'batches' queue for Solr
+	private void indexClassicalChunk(int start, int end,
+			GxdResultDocMapper mapper,
+			BlockingQueue<Collection<SolrInputDocument>> batches) throws Exception {
+
+		SQLExecutor sql = new SQLExecutor();
+		try {
+			ChunkCache cc = new ChunkCache(sql);
+			cc.cacheGenotypes(start, end, false);		// cache allele combinations for genotypes for this chunk
+			cc.cacheMarkers(start, end, false);		// cache marker symbols, names, IDs, and subtypes for this chunk
+			cc.cacheReferences(start, end);			// cache pubmed IDs and citations for references for this chunk
+			cc.cacheAssays(start, end, false);			// cache data for assays in this chunk
+			cc.cacheTerms(start, end, false);			// cache data for structures in this chunk
 			
-			String seqNumTable = buildOrderingTable(start, end, true);
+			String seqNumTable = cc.buildOrderingTable(start, end, true);
 			
 			// mapping from result key to List of high-level EMAPA structures for each result
-			Map<String, Set<String>> systemMap = getAnatomicalSystemMap(start, end, false);
+			Map<String, Set<String>> systemMap = cc.getAnatomicalSystemMap(start, end, false);
 
 			// get List of figure labels for each expression result key
-			Map<String, Set<String>> imageMap = getImageMap(start, end);
+			Map<String, Set<String>> imageMap = cc.getImageMap(start, end);
+
+			// when also filling gxdResultHasImage, get its sorts too
+			String imageSorts = "";
+			String imageSortJoin = "";
+			if (hasImageIndexer != null) {
+				imageSorts = ", ersq.by_assay_type i_by_assay_type, "
+					+ "  ersq.by_gene_symbol i_by_gene_symbol, "
+					+ "  ersq.by_age i_by_age, "
+					+ "  ersq.by_expressed i_by_expressed, "
+					+ "  ersq.by_structure i_by_structure, "
+					+ "  ersq.by_mutant_alleles i_by_mutant_alleles, "
+					+ "  ersq.by_reference i_by_reference ";
+				imageSortJoin = "left outer join expression_result_sequence_num ersq on (ersq.result_key = ers.result_key) ";
+			}
 
 			logger.info("Processing result key > " + start + " and <= " + end + ", RAM used: " + memoryUsed());
 			String query = "select ers.result_key, "
@@ -964,348 +1395,61 @@ public class GxdResultIndexer extends Indexer {
 					+ "  ersn.by_detected r_by_expressed, "
 					+ "  ersn.by_structure r_by_structure, "
 					+ "  ersn.by_reference r_by_reference "
+					+ imageSorts
 					+ "from expression_result_summary ers "
 					+ "inner join marker_counts mc on (ers.marker_key = mc.marker_key and mc.gxd_literature_count > 0) "
 					+ "inner join term emaps on (ers.structure_key = emaps.term_key) "
 					+ "inner join " + seqNumTable + " ersn on (ersn.result_key = ers.result_key) "
+					+ imageSortJoin
 					+ "left outer join expression_result_cell_type ct on (ers.result_key = ct.result_key) "
 					+ "where ers.assay_type != 'Recombinase reporter'"
 					+ "  and ers.assay_type != 'In situ reporter (transgenic)'"
 					+ "  and ers.result_key > " + start
 					+ "  and ers.result_key <= " + end + " ";
 
-			ResultSet rs = ex.executeProto(query);
+			ResultSet rs = sql.executeProto(query);
 
+			// read the rows here, and build their documents on the document pool
+			List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+			List<GxdResultRow> rows = new ArrayList<GxdResultRow>(solrCacheSize);
 			while (rs.next()) {
-				String markerKey = rs.getString("marker_key");
-				String result_key = rs.getString("result_key");
-				String assay_key = rs.getString("assay_key");
-				String assay_type = rs.getString("assay_type");
-
-				// result fields
-				String theilerStage = rs.getString("theiler_stage");
-				String isExpressed = rs.getString("is_expressed");
-				String structureTermKey = rs.getString("structure_key");
-				String has_image = rs.getString("has_image");
-
-				String chr = chromosome.get(markerKey);
-				String cm_offset = "";
-				if (centimorganMap.containsKey(markerKey)) {
-					cm_offset = centimorganMap.get(markerKey);
-				}
-				String start_coord = startCoord.get(markerKey);
-				String end_coord = endCoord.get(markerKey);
-				String spatialString = new String("");
-				if ((start_coord != null) && (end_coord != null)) {
-					spatialString = SolrLocationTranslator.getIndexValue(
-							chr,Long.parseLong(start_coord),Long.parseLong(end_coord),true);
-				}
-
-				String unique_key = assay_type + "-" + result_key;
-				if (unique_key == null || unique_key.equals("-")) {
-					continue;
-				}
-
-				SolrInputDocument doc = new SolrInputDocument();
-
-				// Add the single value fields
-				doc.addField(GxdResultFields.KEY, unique_key);
-				doc.addField(GxdResultFields.MARKER_KEY, markerKey);
-				doc.addField(IndexConstants.MRK_BY_SYMBOL, rs.getString("r_by_gene_symbol"));
-				doc.addField(GxdResultFields.M_BY_LOCATION, markerByLocation.get(markerKey));
-				doc.addField(GxdResultFields.ASSAY_KEY, assay_key);
-				doc.addField(GxdResultFields.RESULT_KEY, result_key);
-				doc.addField(GxdResultFields.RESULT_TYPE, assay_type);
-				doc.addField(GxdResultFields.ASSAY_TYPE, assay_type);
-				doc.addField(GxdResultFields.THEILER_STAGE, theilerStage);
-				doc.addField(GxdResultFields.EMAPS_ID, rs.getString("emaps_id"));
-				doc.addField(GxdResultFields.IS_EXPRESSED, isExpressed);
-				doc.addField(GxdResultFields.AGE_MIN, roundAge(rs.getString("age_min")));
-				doc.addField(GxdResultFields.AGE_MAX, roundAge(rs.getString("age_max")));
-				doc.addField(GxdResultFields.SEX, rs.getString("sex"));
-				doc.addField(GxdResultFields.STRAIN, bgStrains.get(rs.getString("genotype_key")));
-				doc.addField(GxdResultFields.CELL_TYPE, rs.getString("cell_type"));
-
-				boolean isWildType = rs.getString("is_wild_type").equals("1") || rs.getString("genotype_key").equals("-1");
-
-				String wildType = "mutant";
-				if (isWildType) {
-					wildType = "wild type";
-				}
-
-				doc.addField(GxdResultFields.IS_WILD_TYPE, wildType);
-
-				// marker summary
-				doc.addField(GxdResultFields.MARKER_MGIID, markerID.get(markerKey));
-				doc.addField(GxdResultFields.MARKER_SYMBOL, markerSymbol.get(markerKey));
-				doc.addField(GxdResultFields.MARKER_NAME, markerName.get(markerKey));
-				if (ensemblGMID.containsKey(markerKey)) {
-					doc.addField(GxdResultFields.ENSEMBL_GMID, ensemblGMID.get(markerKey));
-				}
-
-				// also add symbol and current name to searchable nomenclature
-				doc.addField(GxdResultFields.NOMENCLATURE, markerSymbol.get(markerKey));
-				doc.addField(GxdResultFields.NOMENCLATURE, markerName.get(markerKey));
-				doc.addField(GxdResultFields.MARKER_TYPE, markerSubtype.get(markerKey));
-
-				// location stuff
-				doc.addField(GxdResultFields.CHROMOSOME, chr);
-				doc.addField(GxdResultFields.START_COORD, start_coord);
-				doc.addField(GxdResultFields.END_COORD, end_coord);
-				doc.addField(GxdResultFields.CYTOBAND, cytoband.get(markerKey));
-				doc.addField(GxdResultFields.STRAND, strand.get(markerKey));
-				if (!spatialString.equals("")) {
-					doc.addField(GxdResultFields.MOUSE_COORDINATE, spatialString);
-				}
-
-				if (cm_offset == null || cm_offset.equals("-1"))
-					cm_offset = "";
-				doc.addField(GxdResultFields.CENTIMORGAN, cm_offset);
-
-				// assay summary
-				doc.addField(GxdResultFields.ASSAY_HAS_IMAGE, "1".equals(assayHasImage.get(assay_key)));
-				doc.addField(GxdResultFields.PROBE_KEY, assayProbeKey.get(assay_key));
-				doc.addField(GxdResultFields.ANTIBODY_KEY, assayAntibodyKey.get(assay_key));
-
-				// assay sorts
-				doc.addField(GxdResultFields.A_BY_SYMBOL, rs.getString("r_by_gene_symbol"));
-				doc.addField(GxdResultFields.A_BY_ASSAY_TYPE, rs.getString("r_by_assay_type"));
-
-				// result summary
-				doc.addField(GxdResultFields.DETECTION_LEVEL, mapDetectionLevel(rs.getString("detection_level")) );
-				doc.addField(GxdResultFields.STRUCTURE_PRINTNAME, printname.get(structureTermKey));
-				doc.addField(GxdResultFields.AGE, rs.getString("age_abbreviation"));
-				doc.addField(GxdResultFields.ASSAY_MGIID, assayID.get(assay_key));
-				doc.addField(GxdResultFields.JNUM, rs.getString("jnum_id"));
-				doc.addField(GxdResultFields.JNUMS, rs.getString("jnum_id"));
-				doc.addField(GxdResultFields.PUBMED_ID, pubmedID.get(rs.getString("reference_key")));
-				doc.addField(GxdResultFields.SHORT_CITATION, citation.get(rs.getString("reference_key")));
-				doc.addField(GxdResultFields.GENOTYPE, allelePairs.get(rs.getString("genotype_key")));
-				doc.addField(GxdResultFields.PATTERN, rs.getString("pattern"));
-
-				// add fields for filtering by marker-associated vocabularies
-				for (String mpTerm : markerMpCache.getTerms(markerKey)) {
-					doc.addField(GxdResultFields.MP_HEADERS, mpTerm);
-				}
-
-				addGoTerms(doc, markerKey);
-
-				for (String doTerm : markerDoCache.getTerms(markerKey)) {
-					doc.addField(GxdResultFields.DO_HEADERS, doTerm);
-				}
-
-				for (String coTerm : resultCoCache.getTerms(result_key)) {
-					doc.addField(GxdResultFields.CO_HEADERS, coTerm);
-				}
-
-				for (String featureType : markerTypeCache.getTerms(markerKey)) {
-					doc.addField(GxdResultFields.FEATURE_TYPES, featureType);
-				}
-
-				// multi values
-
-				if (systemMap.containsKey(result_key)) {
-					for (String system : systemMap.get(result_key)) {
-						doc.addField(GxdResultFields.ANATOMICAL_SYSTEM, system);
-					}
-					systemMap.remove(result_key);
-				}
-
-				if (markerNomenMap.containsKey(markerKey)) {
-					for (String nomen : markerNomenMap.get(markerKey)) {
-						doc.addField(GxdResultFields.NOMENCLATURE, nomen);
-					}
-				}
-
-				String genotype_key = rs.getString("genotype_key");
-				if (mutatedInMap.containsKey(genotype_key)) {
-					Map<String, Map<String, String>> gMap = mutatedInMap.get(genotype_key);
-					for (String genotype_marker_key : gMap.keySet()) {
-						doc.addField(GxdResultFields.MUTATED_IN, gMap.get(genotype_marker_key).get("symbol"));
-						doc.addField(GxdResultFields.MUTATED_IN, gMap.get(genotype_marker_key).get("name"));
-
-						// get any synonyms
-						if (markerNomenMap.containsKey(genotype_marker_key)) {
-							for (String synonym : markerNomenMap.get(genotype_marker_key)) {
-								doc.addField(GxdResultFields.MUTATED_IN, synonym);
-							}
-						}
-					}
-				}
-
-				if (mutatedInAlleleMap.containsKey(genotype_key)) {
-					List<String> alleleIds = mutatedInAlleleMap.get(genotype_key);
-
-					for (String alleleId : alleleIds) {
-						doc.addField(GxdResultFields.ALLELE_ID, alleleId);
-					}
-
+				rows.add(GxdResultRow.fromClassical(rs, systemMap, imageMap, hasImageIndexer != null));
+				if (rows.size() >= solrCacheSize) {
+					tasks.add(submitRows(rows, mapper, cc, docs -> queueBatch(batches, docs)));
+					rows = new ArrayList<GxdResultRow>(solrCacheSize);
 				}
-
-				if (markerVocabMap.containsKey(markerKey)) {
-					Set<String> uniqueAnnotationIDs = new HashSet<String>();
-
-					for (String termId : markerVocabMap.get(markerKey)) {
-						uniqueAnnotationIDs.add(termId);
-						if (vocabAncestorMap.containsKey(termId)) {
-							for (String ancestorId : vocabAncestorMap.get(termId)) {
-								uniqueAnnotationIDs.add(ancestorId);
-							}
-						}
-					}
-
-					for (String annotationID : uniqueAnnotationIDs) {
-						doc.addField(GxdResultFields.ANNOTATION, annotationID);
-					}
-				}
-
-				String cellTypeID = rs.getString("cell_type_id");
-				if (vocabAncestorMap.containsKey(cellTypeID)) {
-					// add this DAG node, and all it's parents (up to 'cell')
-					doc.addField(GxdResultFields.ANNOTATION, cellTypeID);
-					for (String ancestorId : vocabAncestorMap.get(cellTypeID)) {
-						doc.addField(GxdResultFields.ANNOTATION, ancestorId);
-					}
-				} 
-
-				if (imageMap.containsKey(result_key)) {
-					if (has_image.equals("1")) {
-						for (String figure : imageMap.get(result_key)) {
-							doc.addField(GxdResultFields.FIGURE, figure);
-							doc.addField(GxdResultFields.FIGURE_PLAIN, figure);
-						}
-					}
-					imageMap.remove(result_key);
-				}
-
-				String myEmapaID = emapaID.get(structureTermKey);
-
-				Set<String> ancestorIDs = new HashSet<String>();
-				ancestorIDs.add(structureID.get(structureTermKey));
-				Set<String> ancestorStructures = new HashSet<String>();
-				ancestorStructures.add(printname.get(structureTermKey));
-
-				if (structureAncestorIdMap.containsKey(structureTermKey)) {
-					// get ancestors
-					List<String> structure_ancestor_ids = structureAncestorIdMap.get(structureTermKey);
-
-					for (String structure_ancestor_id : structure_ancestor_ids) {
-						// get synonyms for each ancestor/term
-
-						if (structureSynonymMap.containsKey(structure_ancestor_id)) {
-
-							// also add structure MGI ID
-							ancestorIDs.add(structure_ancestor_id);
-							for (String structureSynonym : structureSynonymMap.get(structure_ancestor_id)) {
-								ancestorStructures.add(structureSynonym);
-							}
-						}
-					}
-
-					// only add unique structures (for best solr indexing
-					// performance)
-					for (String ancestorId : ancestorIDs) {
-						doc.addField(GxdResultFields.STRUCTURE_ID, ancestorId);
-					}
-					for (String ancestorStructure : ancestorStructures) {
-						doc.addField(GxdResultFields.STRUCTURE_ANCESTORS, ancestorStructure);
-					}
-				}
-				
-				// add the id for this exact structure
-				doc.addField(GxdResultFields.STRUCTURE_EXACT, myEmapaID);
-
-				Set<String> structureKeys = new HashSet<String>();
-				structureKeys.add(structureTermKey);
-				doc.addField(GxdResultFields.ANNOTATED_STRUCTURE_KEY, structureTermKey);
-
-				if (structureAncestorKeyMap.containsKey(structureTermKey)) {
-					// get ancestors by key as well (for links from AD browser)
-					for (String structureAncestorKey : structureAncestorKeyMap.get(structureTermKey)) {
-						structureKeys.add(structureAncestorKey);
-					}
-				}
-
-				for (String structKey : structureKeys) {
-					doc.addField(GxdResultFields.STRUCTURE_KEY, structKey);
-				}
-
-				// result sorts
-				doc.addField(GxdResultFields.R_BY_ASSAY_TYPE, rs.getString("r_by_assay_type"));
-				doc.addField(GxdResultFields.R_BY_MRK_SYMBOL, rs.getString("r_by_gene_symbol"));
-				doc.addField(GxdResultFields.R_BY_AGE, rs.getString("r_by_age"));
-				doc.addField(GxdResultFields.R_BY_STRUCTURE, rs.getString("r_by_structure"));
-				doc.addField(GxdResultFields.R_BY_EXPRESSED, rs.getString("r_by_expressed"));
-				doc.addField(GxdResultFields.R_BY_REFERENCE, rs.getString("r_by_reference"));
-
-				// add matrix grouping fields
-				String stageMatrixGroup = joiner(myEmapaID, isExpressed, theilerStage);
-				doc.addField(GxdResultFields.STAGE_MATRIX_GROUP, stageMatrixGroup);
-
-				String geneMatrixGroup = joiner(myEmapaID, isExpressed, markerKey, theilerStage);
-				doc.addField(GxdResultFields.GENE_MATRIX_GROUP, geneMatrixGroup);
-
-				docs.add(doc);
-				if (docs.size() >= solrCacheSize) {
-					writeDocs(docs);
-					docs = new ArrayList<SolrInputDocument>(solrCacheSize);		// max known size
-				}
-			} // while loop (stepping through rows for this chunk)
+			}
 
 			rs.close();
+			if (!rows.isEmpty()) {
+				tasks.add(submitRows(rows, mapper, cc, docs -> queueBatch(batches, docs)));
+			}
+			awaitTasks(tasks);
 			String ramUsed = memoryUsed();
 			systemMap = null;
 			imageMap = null;
 			logger.info("Finished chunk; RAM used: " + ramUsed + " -> " + memoryUsed());
 
-			if(memoryPercent() > .80) { printMemory(); commit(); }
+			// chunks finish on several threads, but one commit at a time is enough
+			if ((memoryPercent() > .80) && memoryCommit.compareAndSet(false, true)) {
+				try {
+					printMemory();
+					commit();
+				} finally {
+					memoryCommit.set(false);
+				}
+			}
 			
-			dropTempTable(seqNumTable); 
-		} // for loop (stepping through chunks)
-		
-		writeDocs(docs);
-		commit();
-	}
-
-	// maps detection level to currently approved display text.
-	public String mapDetectionLevel(String level) {
-		if (level.equals("Absent"))
-			return "No";
-		else if (detectedYesLevels.contains(level))
-			return "Yes";
-
-		return level;
-	}
-
-	public Double roundAge(String ageStr) {
-		if (ageStr != null) {
-			Double age = Double.parseDouble(ageStr);
-			Double ageInt = Math.floor(age);
-			Double ageDecimal = age - ageInt;
-			// try the rounding to nearest 0.5
-			if (ageDecimal < 0.25)
-				ageDecimal = 0.0;
-			else if (ageDecimal < 0.75)
-				ageDecimal = 0.5;
-			else
-				ageDecimal = 1.0;
-			return ageInt + ageDecimal;
+			cc.dropTempTable(seqNumTable); 
+		} finally {
+			sql.cleanup();
 		}
-		// not sure what to do here... age should never be null.
-		return -1.0;
 	}
 
 	// index RNA-Sequence expression data (not classical data)
 	public void	indexRnaSeqData(
-			Map<String, List<String>> markerNomenMap,
-			Map<String, String> centimorganMap,
-			Map<String, Map<String, Map<String, String>>> mutatedInMap,
-			Map<String, List<String>> mutatedInAlleleMap,
-			Map<String, List<String>> markerVocabMap,
-			Map<String, Set<String>> vocabAncestorMap, 
-			Map<String, List<String>> structureAncestorIdMap,
-			Map<String, List<String>> structureAncestorKeyMap,
-			Map<String, List<String>> structureSynonymMap) throws Exception {
+			KeyRangeScanner ranges,
+			GxdResultDocMapper mapper) throws Exception {
 
 		// In order to successfully have Whole Genome (RNA-Seq) assays appear after the classical assays (with
 		// a single marker) on the Assays tab of the summary page, we need to look up the maximum sequence
@@ -1318,36 +1462,32 @@ public class GxdResultIndexer extends Indexer {
 		int maxSymbol = rs_max.getInt("max_symbol");
 		rs_max.close();
 		
-		// find the maximum result key, so we have an upper bound when
-		// stepping through chunks of results
-
-		ResultSet rs_tmp = ex.executeProto("select max(consolidated_measurement_key) as max_cm_key from expression_ht_consolidated_sample_measurement");
-		rs_tmp.next();
-
-		Integer start = 0;
-		Integer end = rs_tmp.getInt("max_cm_key");
-		rs_tmp.close();
-		int chunkSize = 500000;
-
-		// While it appears that modValue could be one iteration too low (due
-		// to rounding down), this is accounted for by using <= in the loop.
-
-		int modValue = end.intValue() / chunkSize;
-
-		// pre-cache all the needed genotypes, markers, assays, terms
-		cacheGenotypes(0, end.intValue(), true);
-		cacheMarkers(0, end.intValue(), true);
+		// step through the measurements in chunks (starting at 500,000 measurements, then
+		// adjusted as throughput and memory allow), or just the ranges of changed
+		// measurements for an incremental run
+
+		KeyRangeScanner scanner = ranges;
+		if (scanner == null) {
+			scanner = new KeyRangeScanner(ex, "expression_ht_consolidated_sample_measurement",
+				"consolidated_measurement_key").setController(new ChunkSizeController("gxdResult RNA-Seq", 500000));
+		}
+		scanner.setMetrics(metrics);
+		int maxKey = scanner.getMaxKey();
+
+		// pre-cache all the needed genotypes, markers, assays, terms (RNA-Seq chunks all
+		// share these, and use our own connection, where the anatomical systems table lives)
+		ChunkCache cc = new ChunkCache(ex);
+		cc.cacheGenotypes(0, maxKey, true);
+		cc.cacheMarkers(0, maxKey, true);
 		cacheHtExpReferences();
-		cacheAssays(0, end.intValue(), true);
-		cacheTerms(0, end.intValue(), true);
+		cc.cacheAssays(0, maxKey, true);
+		cc.cacheTerms(0, maxKey, true);
+		mapper.setRnaSeqData(htExpRefs, maxSymbol);
 
 		// Perform the chunking
 
 		logger.info("Getting all RNA-Seq results and related search criteria");
-		logger.info("Max consolidated_measurement_key: " + end + ", chunks: " + (modValue + 1));
-
-		// can set the size to our known max (slight efficiency gain)
-		Collection<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(1001);
+		logger.info("Max consolidated_measurement_key: " + maxKey + ", measurements: " + scanner.getRowCount());
 
 		// get a formatter for average QN TPM level
 		NumberFormat fmt = NumberFormat.getInstance();
@@ -1357,15 +1497,12 @@ public class GxdResultIndexer extends Indexer {
 		fmt.setMinimumIntegerDigits(1);
 		fmt.setMaximumIntegerDigits(10);
 
-		for (int i = 0; i <= modValue; i++) {
+		scanner.scan((start, end) -> {
 
-			start = i * chunkSize;
-			end = start + chunkSize;
-
-			String seqNumTable = buildOrderingTable(start, end, false);
+			String seqNumTable = cc.buildOrderingTable(start, end, false);
 
 			// mapping from result key to List of high-level EMAPA structures for each result
-			Map<String, Set<String>> systemMap = getAnatomicalSystemMap(start, end, true);
+			Map<String, Set<String>> systemMap = cc.getAnatomicalSystemMap(start, end, true);
 
 			// Note: There are no figure labels for RNA-Seq data.
 
@@ -1403,300 +1540,23 @@ public class GxdResultIndexer extends Indexer {
 				+ "  and emaps.term_key = et.term_key";
 			
 			ResultSet rs = ex.executeProto(query);
-			String assay_type = "RNA-Seq";
-			String isExpressed = "No";
-			String detectionLevel = "No";
 
+			// read the rows here, and build their documents on the document pool
+			List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+			List<GxdResultRow> rows = new ArrayList<GxdResultRow>(solrCacheSize);
 			while (rs.next()) {
-				String markerKey = rs.getString("marker_key");
-				String result_key = "rnaseq" + rs.getString("consolidated_measurement_key");
-				String assay_key = rs.getString("experiment_key");
-				String genotypeKey = rs.getString("genotype_key");
-				String combination = allelePairs.get(rs.getString("genotype_key"));
-
-				// result fields
-				String theilerStage = rs.getString("theiler_stage");
-				Double avgQnTpmDbl = rs.getDouble("average_qn_tpm");
-
-				String avgQnTpm = null;
-				try {
-					avgQnTpm = fmt.format(avgQnTpmDbl);
-				} catch (NumberFormatException e) {
-					avgQnTpm = avgQnTpmDbl.toString();
-				}
-
-				if ("Below Cutoff".equals(rs.getString("tpm_level"))) {
-					isExpressed = "No";
-					detectionLevel = "No";
-				} else {
-					isExpressed = "Yes";
-					detectionLevel = "Yes";
-				}
-				String structureTermKey = rs.getString("structure_key");
-
-				String chr = chromosome.get(markerKey);
-				String cm_offset = "";
-				if (centimorganMap.containsKey(markerKey)) {
-					cm_offset = centimorganMap.get(markerKey);
-				}
-				String start_coord = startCoord.get(markerKey);
-				String end_coord = endCoord.get(markerKey);
-				String spatialString = new String("");
-				if ((start_coord != null) && (end_coord != null)) {
-					spatialString = SolrLocationTranslator.getIndexValue(
-							chr,Long.parseLong(start_coord),Long.parseLong(end_coord),true);
-				}
-
-				String unique_key = assay_type + "-" + result_key;
-				if (unique_key == null || unique_key.equals("-")) {
-					continue;
-				}
-
-				SolrInputDocument doc = new SolrInputDocument();
-
-				// Add the single value fields
-				doc.addField(GxdResultFields.KEY, unique_key);
-				doc.addField(GxdResultFields.MARKER_KEY, markerKey);
-				doc.addField(IndexConstants.MRK_BY_SYMBOL, Integer.toString(rs.getInt("r_by_gene_symbol")));
-				doc.addField(GxdResultFields.M_BY_LOCATION, markerByLocation.get(markerKey));
-				doc.addField(GxdResultFields.ASSAY_KEY, assay_key);
-				doc.addField(GxdResultFields.RESULT_KEY, result_key);
-				doc.addField(GxdResultFields.RESULT_TYPE, assay_type);
-				doc.addField(GxdResultFields.ASSAY_TYPE, assay_type);
-				doc.addField(GxdResultFields.THEILER_STAGE, theilerStage);
-				doc.addField(GxdResultFields.EMAPS_ID, rs.getString("emaps_id"));
-				doc.addField(GxdResultFields.IS_EXPRESSED, isExpressed);
-				doc.addField(GxdResultFields.AGE_MIN, roundAge(rs.getString("age_min")));
-				doc.addField(GxdResultFields.AGE_MAX, roundAge(rs.getString("age_max")));
-				doc.addField(GxdResultFields.TPM_LEVEL, rs.getString("tpm_level"));
-				doc.addField(GxdResultFields.AVG_QN_TPM_LEVEL, avgQnTpm);
-				doc.addField(GxdResultFields.BIOLOGICAL_REPLICATES, rs.getString("biological_replicate_count"));
-				doc.addField(GxdResultFields.SEX, rs.getString("sex"));
-				String note = rs.getString("note");
-				Integer isConditional = rs.getInt("is_conditional");
-				if (isConditional.intValue() == 1) {
-					if (note == null) {
-						note = "Conditional mutant.";
-					} else {
-						note = "Conditional mutant. " + note;
-					}
-				}
-				doc.addField(GxdResultFields.NOTES, note);
-				doc.addField(GxdResultFields.CONSOLIDATED_SAMPLE_KEY, rs.getString("consolidated_sample_key"));
-
-				boolean isWildType = "-1".equals(genotypeKey)
-					|| (combination == null)
-					|| ("".equals(combination));
-
-				String wildType = "mutant";
-				if (isWildType) {
-					wildType = "wild type";
-				}
-
-				doc.addField(GxdResultFields.IS_WILD_TYPE, wildType);
-
-				// marker summary
-				doc.addField(GxdResultFields.MARKER_MGIID, markerID.get(markerKey));
-				doc.addField(GxdResultFields.MARKER_SYMBOL, markerSymbol.get(markerKey));
-				doc.addField(GxdResultFields.MARKER_NAME, markerName.get(markerKey));
-				if (ensemblGMID.containsKey(markerKey)) {
-					doc.addField(GxdResultFields.ENSEMBL_GMID, ensemblGMID.get(markerKey));
-				}
-
-				// also add symbol and current name to searchable nomenclature
-				doc.addField(GxdResultFields.NOMENCLATURE, markerSymbol.get(markerKey));
-				doc.addField(GxdResultFields.NOMENCLATURE, markerName.get(markerKey));
-				doc.addField(GxdResultFields.MARKER_TYPE, markerSubtype.get(markerKey));
-
-				// add fields for filtering by marker-associated vocabularies
-				for (String mpTerm : markerMpCache.getTerms(markerKey)) {
-					doc.addField(GxdResultFields.MP_HEADERS, mpTerm);
-				}
-				
-				addGoTerms(doc, markerKey);
-
-				for (String doTerm : markerDoCache.getTerms(markerKey)) {
-					doc.addField(GxdResultFields.DO_HEADERS, doTerm);
+				rows.add(GxdResultRow.fromRnaSeq(rs, fmt, systemMap));
+				if (rows.size() >= solrCacheSize) {
+					tasks.add(submitRows(rows, mapper, cc, this::writeDocs));
+					rows = new ArrayList<GxdResultRow>(solrCacheSize);
 				}
-
-				for (String featureType : markerTypeCache.getTerms(markerKey)) {
-					doc.addField(GxdResultFields.FEATURE_TYPES, featureType);
-				}
-
-				// location stuff
-				doc.addField(GxdResultFields.CHROMOSOME, chr);
-				doc.addField(GxdResultFields.START_COORD, start_coord);
-				doc.addField(GxdResultFields.END_COORD, end_coord);
-				doc.addField(GxdResultFields.CYTOBAND, cytoband.get(markerKey));
-				doc.addField(GxdResultFields.STRAND, strand.get(markerKey));
-				if (!spatialString.equals("")) {
-					doc.addField(GxdResultFields.MOUSE_COORDINATE, spatialString);
-				}
-
-				if (cm_offset == null || cm_offset.equals("-1"))
-					cm_offset = "";
-				doc.addField(GxdResultFields.CENTIMORGAN, cm_offset);
-
-				// assay summary
-				doc.addField(GxdResultFields.ASSAY_HAS_IMAGE, "1".equals(assayHasImage.get(assay_key)));
-				doc.addField(GxdResultFields.PROBE_KEY, assayProbeKey.get(assay_key));
-				doc.addField(GxdResultFields.ANTIBODY_KEY, assayAntibodyKey.get(assay_key));
-
-				// assay sorts (For RNA-Seq, push these below the classical data and sort them by reference.)
-				int byReference = rs.getInt("r_by_reference");
-				doc.addField(GxdResultFields.A_BY_SYMBOL, maxSymbol + byReference);
-				doc.addField(GxdResultFields.A_BY_ASSAY_TYPE, maxSymbol + byReference);
-
-				// result summary
-				doc.addField(GxdResultFields.DETECTION_LEVEL, detectionLevel);
-				doc.addField(GxdResultFields.STRUCTURE_PRINTNAME, printname.get(structureTermKey));
-				doc.addField(GxdResultFields.AGE, rs.getString("age_abbreviation"));
-				doc.addField(GxdResultFields.ASSAY_MGIID, assayID.get(assay_key));
-				doc.addField(GxdResultFields.JNUM, rs.getString("ref_id"));
-				doc.addField(GxdResultFields.SHORT_CITATION, rs.getString("ref_title"));
-				doc.addField(GxdResultFields.GENOTYPE, combination);
-				doc.addField(GxdResultFields.STRAIN, bgStrains.get(genotypeKey));
-				doc.addField(GxdResultFields.PATTERN, rs.getString("pattern"));
-
-				// multi values
-
-				if (htExpRefs.containsKey(assay_key)) {
-					for (String jnum : htExpRefs.get(assay_key)) {
-						doc.addField(GxdResultFields.JNUMS, jnum);
-					}
-				}
-
-				if (systemMap.containsKey(result_key)) {
-					for (String system : systemMap.get(result_key)) {
-						doc.addField(GxdResultFields.ANATOMICAL_SYSTEM, system);
-					}
-					systemMap.remove(result_key);
-				}
-
-				if (markerNomenMap.containsKey(markerKey)) {
-					for (String nomen : markerNomenMap.get(markerKey)) {
-						doc.addField(GxdResultFields.NOMENCLATURE, nomen);
-					}
-				}
-
-				String genotype_key = rs.getString("genotype_key");
-				if (mutatedInMap.containsKey(genotype_key)) {
-					Map<String, Map<String, String>> gMap = mutatedInMap.get(genotype_key);
-					for (String genotype_marker_key : gMap.keySet()) {
-						doc.addField(GxdResultFields.MUTATED_IN, gMap.get(genotype_marker_key).get("symbol"));
-						doc.addField(GxdResultFields.MUTATED_IN, gMap.get(genotype_marker_key).get("name"));
-
-						// get any synonyms
-						if (markerNomenMap.containsKey(genotype_marker_key)) {
-							for (String synonym : markerNomenMap.get(genotype_marker_key)) {
-								doc.addField(GxdResultFields.MUTATED_IN, synonym);
-							}
-						}
-					}
-				}
-
-				if (mutatedInAlleleMap.containsKey(genotype_key)) {
-					List<String> alleleIds = mutatedInAlleleMap.get(genotype_key);
-
-					for (String alleleId : alleleIds) {
-						doc.addField(GxdResultFields.ALLELE_ID, alleleId);
-					}
-
-				}
-
-				if (markerVocabMap.containsKey(markerKey)) {
-					Set<String> uniqueAnnotationIDs = new HashSet<String>();
-
-					for (String termId : markerVocabMap.get(markerKey)) {
-						uniqueAnnotationIDs.add(termId);
-						if (vocabAncestorMap.containsKey(termId)) {
-							for (String ancestorId : vocabAncestorMap.get(termId)) {
-								uniqueAnnotationIDs.add(ancestorId);
-							}
-						}
-					}
-
-					for (String annotationID : uniqueAnnotationIDs) {
-						doc.addField(GxdResultFields.ANNOTATION, annotationID);
-					}
-				}
-
-				String myEmapaID = emapaID.get(structureTermKey);
-
-				Set<String> ancestorIDs = new HashSet<String>();
-				ancestorIDs.add(structureID.get(structureTermKey));
-				Set<String> ancestorStructures = new HashSet<String>();
-				ancestorStructures.add(printname.get(structureTermKey));
-
-				if (structureAncestorIdMap.containsKey(structureTermKey)) {
-					// get ancestors
-					List<String> structure_ancestor_ids = structureAncestorIdMap.get(structureTermKey);
-
-					for (String structure_ancestor_id : structure_ancestor_ids) {
-						// get synonyms for each ancestor/term
-
-						if (structureSynonymMap.containsKey(structure_ancestor_id)) {
-
-							// also add structure MGI ID
-							ancestorIDs.add(structure_ancestor_id);
-							for (String structureSynonym : structureSynonymMap.get(structure_ancestor_id)) {
-								ancestorStructures.add(structureSynonym);
-							}
-						}
-					}
-
-					// only add unique structures (for best solr indexing
-					// performance)
-					for (String ancestorId : ancestorIDs) {
-						doc.addField(GxdResultFields.STRUCTURE_ID, ancestorId);
-					}
-					for (String ancestorStructure : ancestorStructures) {
-						doc.addField(GxdResultFields.STRUCTURE_ANCESTORS, ancestorStructure);
-					}
-				}
-				
-				// add the id for this exact structure
-				doc.addField(GxdResultFields.STRUCTURE_EXACT, myEmapaID);
-
-				Set<String> structureKeys = new HashSet<String>();
-				structureKeys.add(structureTermKey);
-				doc.addField(GxdResultFields.ANNOTATED_STRUCTURE_KEY, structureTermKey);
-
-				if (structureAncestorKeyMap.containsKey(structureTermKey)) {
-					// get ancestors by key as well (for links from AD browser)
-					for (String structureAncestorKey : structureAncestorKeyMap.get(structureTermKey)) {
-						structureKeys.add(structureAncestorKey);
-					}
-				}
-
-				for (String structKey : structureKeys) {
-					doc.addField(GxdResultFields.STRUCTURE_KEY, structKey);
-				}
-
-				// result sorts
-				doc.addField(GxdResultFields.R_BY_ASSAY_TYPE, Integer.toString(rs.getInt("r_by_assay_type")));
-				doc.addField(GxdResultFields.R_BY_MRK_SYMBOL, Integer.toString(rs.getInt("r_by_gene_symbol")));
-				doc.addField(GxdResultFields.R_BY_AGE, Integer.toString(rs.getInt("r_by_age")));
-				doc.addField(GxdResultFields.R_BY_STRUCTURE, Integer.toString(rs.getInt("r_by_structure")));
-				doc.addField(GxdResultFields.R_BY_EXPRESSED, Integer.toString(rs.getInt("r_by_expressed")));
-				doc.addField(GxdResultFields.R_BY_MUTANT_ALLELES, "0");
-				doc.addField(GxdResultFields.R_BY_REFERENCE, Integer.toString(rs.getInt("r_by_reference")));
-
-				// add matrix grouping fields
-				String stageMatrixGroup = joiner(myEmapaID, isExpressed, theilerStage);
-				doc.addField(GxdResultFields.STAGE_MATRIX_GROUP, stageMatrixGroup);
-
-				String geneMatrixGroup = joiner(myEmapaID, isExpressed, markerKey, theilerStage);
-				doc.addField(GxdResultFields.GENE_MATRIX_GROUP, geneMatrixGroup);
-
-				docs.add(doc);
-				if (docs.size() >= solrCacheSize) {
-					writeDocs(docs);
-					docs = new ArrayList<SolrInputDocument>(solrCacheSize);		// max known size
-				}
-			} // while loop (stepping through rows for this chunk)
+			}
 
 			rs.close();
+			if (!rows.isEmpty()) {
+				tasks.add(submitRows(rows, mapper, cc, this::writeDocs));
+			}
+			awaitTasks(tasks);
 			String ramUsed = memoryUsed();
 			systemMap = null;
 			logger.info("Finished chunk; RAM used: " + ramUsed + " -> " + memoryUsed());
@@ -1706,10 +1566,9 @@ public class GxdResultIndexer extends Indexer {
 				commit();
 			}
 			
-			dropTempTable(seqNumTable); 
-		} // for loop (stepping through chunks)
+			cc.dropTempTable(seqNumTable); 
+		}); // stepping through chunks
 		
-		writeDocs(docs);
 		commit();
 	}
 }
@@ -0,0 +1,191 @@
+package org.jax.mgi.gxdindexer;
+
+import java.sql.ResultSet;
+import java.text.NumberFormat;
+import java.util.Map;
+import java.util.Set;
+
+import org.jax.mgi.gxdindexer.shr.StringPool;
+
+/**
+ * GxdResultRow
+ *
+ * One row of expression result data, as read from the database for the
+ * gxdResult index:  either a classical result or an RNA-Seq measurement.
+ * Rows are read from a ResultSet by a single thread, then can be handed to
+ * a GxdResultDocMapper (on any thread) to build the Solr document.
+ *
+ * Fields that apply only to one type of data are left null for the other.
+ * Vocabulary values (assay type, detection level, EMAPS ID, age, etc.) are
+ * taken from the StringPool, as they repeat across millions of documents.
+ */
+
+public class GxdResultRow {
+	public boolean isRnaSeq;
+
+	// fields common to classical and RNA-Seq data
+	public String markerKey;
+	public String resultKey;			// prefixed with "rnaseq" for RNA-Seq data
+	public String assayKey;				// experiment key for RNA-Seq data
+	public String assayType;
+	public String theilerStage;
+	public String isExpressed;
+	public String detectionLevel;
+	public String structureTermKey;
+	public String emapsID;
+	public String ageMin;
+	public String ageMax;
+	public String ageAbbreviation;
+	public String sex;
+	public String genotypeKey;
+	public String pattern;
+	public String byAssayType;
+	public String byGeneSymbol;
+	public String byAge;
+	public String byStructure;
+	public String byExpressed;
+	public String byReference;
+
+	// high-level EMAPA structures for this result (may be null)
+	public Set<String> systems;
+
+	// classical data only
+	public String hasImage;
+	public String jnumID;
+	public String cellType;
+	public String cellTypeID;
+	public String isWildType;
+	public String referenceKey;
+	public Set<String> figures;			// figure labels (may be null)
+
+	// classical data only, and only when also feeding gxdResultHasImage:  its sorts, which
+	// come from expression_result_sequence_num (all null if the result has none)
+	public String imageByAssayType;
+	public String imageByGeneSymbol;
+	public String imageByAge;
+	public String imageByStructure;
+	public String imageByExpressed;
+	public String imageByMutantAlleles;
+	public String imageByReference;
+
+	// RNA-Seq data only
+	public String avgQnTpm;
+	public String tpmLevel;
+	public String biologicalReplicates;
+	public String note;
+	public int isConditional;
+	public String consolidatedSampleKey;
+	public String refID;
+	public String refTitle;
+	public int byReferenceNumber;
+
+	/*
+	 * Read a classical result from the current row of 'rs' (as selected in
+	 * GxdResultIndexer's classical query).  'systemMap' and 'imageMap' are
+	 * keyed by result key; this result's entries are removed as they are read.  If
+	 * 'withImageSorts', the query also selected the gxdResultHasImage sorts (as i_by_*).
+	 */
+	public static GxdResultRow fromClassical(ResultSet rs, Map<String, Set<String>> systemMap,
+			Map<String, Set<String>> imageMap, boolean withImageSorts) throws Exception {
+		StringPool pool = StringPool.getInstance();
+		GxdResultRow row = new GxdResultRow();
+		row.isRnaSeq = false;
+		row.markerKey = rs.getString("marker_key");
+		row.resultKey = rs.getString("result_key");
+		row.assayKey = rs.getString("assay_key");
+		row.assayType = pool.intern(rs.getString("assay_type"));
+		row.theilerStage = pool.intern(rs.getString("theiler_stage"));
+		row.isExpressed = pool.intern(rs.getString("is_expressed"));
+		row.detectionLevel = pool.intern(rs.getString("detection_level"));
+		row.structureTermKey = rs.getString("structure_key");
+		row.emapsID = pool.intern(rs.getString("emaps_id"));
+		row.ageMin = rs.getString("age_min");
+		row.ageMax = rs.getString("age_max");
+		row.ageAbbreviation = pool.intern(rs.getString("age_abbreviation"));
+		row.sex = pool.intern(rs.getString("sex"));
+		row.genotypeKey = rs.getString("genotype_key");
+		row.pattern = pool.intern(rs.getString("pattern"));
+		row.byAssayType = rs.getString("r_by_assay_type");
+		row.byGeneSymbol = rs.getString("r_by_gene_symbol");
+		row.byAge = rs.getString("r_by_age");
+		row.byStructure = rs.getString("r_by_structure");
+		row.byExpressed = rs.getString("r_by_expressed");
+		row.byReference = rs.getString("r_by_reference");
+		row.hasImage = rs.getString("has_image");
+		row.jnumID = rs.getString("jnum_id");
+		row.cellType = rs.getString("cell_type");
+		row.cellTypeID = rs.getString("cell_type_id");
+		row.isWildType = rs.getString("is_wild_type");
+		row.referenceKey = rs.getString("reference_key");
+		row.systems = systemMap.remove(row.resultKey);
+		row.figures = imageMap.remove(row.resultKey);
+		if (withImageSorts) {
+			row.imageByAssayType = rs.getString("i_by_assay_type");
+			row.imageByGeneSymbol = rs.getString("i_by_gene_symbol");
+			row.imageByAge = rs.getString("i_by_age");
+			row.imageByStructure = rs.getString("i_by_structure");
+			row.imageByExpressed = rs.getString("i_by_expressed");
+			row.imageByMutantAlleles = rs.getString("i_by_mutant_alleles");
+			row.imageByReference = rs.getString("i_by_reference");
+		}
+		return row;
+	}
+
+	/*
+	 * Read an RNA-Seq measurement from the current row of 'rs' (as selected in
+	 * GxdResultIndexer's RNA-Seq query), formatting the average QN TPM with
+	 * 'fmt'.  'systemMap' is keyed by (prefixed) result key; this result's entry
+	 * is removed as it is read.
+	 */
+	public static GxdResultRow fromRnaSeq(ResultSet rs, NumberFormat fmt, Map<String, Set<String>> systemMap)
+			throws Exception {
+		StringPool pool = StringPool.getInstance();
+		GxdResultRow row = new GxdResultRow();
+		row.isRnaSeq = true;
+		row.markerKey = rs.getString("marker_key");
+		row.resultKey = "rnaseq" + rs.getString("consolidated_measurement_key");
+		row.assayKey = rs.getString("experiment_key");
+		row.assayType = "RNA-Seq";
+		row.theilerStage = pool.intern(rs.getString("theiler_stage"));
+
+		Double avgQnTpmDbl = rs.getDouble("average_qn_tpm");
+		try {
+			row.avgQnTpm = fmt.format(avgQnTpmDbl);
+		} catch (NumberFormatException e) {
+			row.avgQnTpm = avgQnTpmDbl.toString();
+		}
+
+		row.tpmLevel = pool.intern(rs.getString("tpm_level"));
+		if ("Below Cutoff".equals(row.tpmLevel)) {
+			row.isExpressed = "No";
+			row.detectionLevel = "No";
+		} else {
+			row.isExpressed = "Yes";
+			row.detectionLevel = "Yes";
+		}
+
+		row.structureTermKey = rs.getString("structure_key");
+		row.emapsID = pool.intern(rs.getString("emaps_id"));
+		row.ageMin = rs.getString("age_min");
+		row.ageMax = rs.getString("age_max");
+		row.ageAbbreviation = pool.intern(rs.getString("age_abbreviation"));
+		row.sex = pool.intern(rs.getString("sex"));
+		row.genotypeKey = rs.getString("genotype_key");
+		row.pattern = pool.intern(rs.getString("pattern"));
+		row.byAssayType = Integer.toString(rs.getInt("r_by_assay_type"));
+		row.byGeneSymbol = Integer.toString(rs.getInt("r_by_gene_symbol"));
+		row.byAge = Integer.toString(rs.getInt("r_by_age"));
+		row.byStructure = Integer.toString(rs.getInt("r_by_structure"));
+		row.byExpressed = Integer.toString(rs.getInt("r_by_expressed"));
+		row.byReferenceNumber = rs.getInt("r_by_reference");
+		row.byReference = Integer.toString(row.byReferenceNumber);
+		row.biologicalReplicates = rs.getString("biological_replicate_count");
+		row.note = rs.getString("note");
+		row.isConditional = rs.getInt("is_conditional");
+		row.consolidatedSampleKey = rs.getString("consolidated_sample_key");
+		row.refID = rs.getString("ref_id");
+		row.refTitle = rs.getString("ref_title");
+		row.systems = systemMap.remove(row.resultKey);
+		return row;
+	}
+}
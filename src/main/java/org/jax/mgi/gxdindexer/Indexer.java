@@ -1,7 +1,6 @@
 package org.jax.mgi.gxdindexer;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.sql.ResultSet;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -14,10 +13,19 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrClient;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CoreAdminParams.CoreAdminAction;
+import org.jax.mgi.gxdindexer.shr.ConnectionPool;
+import org.jax.mgi.gxdindexer.shr.DagClosure;
+import org.jax.mgi.gxdindexer.shr.IndexerMetrics;
+import org.jax.mgi.gxdindexer.shr.LookupRegistry;
 import org.jax.mgi.gxdindexer.shr.SQLExecutor;
+import org.jax.mgi.gxdindexer.shr.SolrWriter;
+import org.jax.mgi.gxdindexer.shr.StringPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,20 +37,39 @@ import org.slf4j.LoggerFactory;
  * 
  * It also sets up the sql connection, as well as the connection to a solr index, 
  * which is passed to it during construction time.
+ * 
+ * If index.staging is true (for all indexes, or for one as eg. gxdResult.index.staging),
+ * documents are written to a staging core (eg. gxdResult_staging) instead, and that core
+ * is swapped with the serving core once the build succeeds.  The serving core is never
+ * emptied or partially built, and the staging core is left holding the previous index.
  */
 
 public abstract class Indexer implements Runnable {
 
-	private ConcurrentUpdateSolrClient client = null;
+	private SolrClient client = null;
+	private SolrWriter writer = null;
 	public SQLExecutor ex = new SQLExecutor();
 
 	public Logger logger = LoggerFactory.getLogger(this.getClass());
 	private String solrIndexName = "";
+	private String solrBaseUrl = null;
+
+	// when building into a staging core, its name (swapped onto solrIndexName once complete)
+	private String stagingCoreName = null;
 	protected DecimalFormat df = new DecimalFormat("#.00");
 	protected Runtime runtime = Runtime.getRuntime();
 	public boolean indexPassed = true;
 	public boolean skipOptimizer = false;
 
+	// timings for this index's run (also visible through JMX, and summarized at the end of Main)
+	protected IndexerMetrics metrics;
+
+	// names of the lookups this indexer holds in the LookupRegistry (released when the run ends)
+	private List<String> sharedLookups = new ArrayList<String>();
+
+	// names of all the shared lookups this indexer has used (kept after the run, for the scheduler)
+	private Set<String> usedLookups = new LinkedHashSet<String>();
+
 	// Variables for handling threads
 	private List<Thread> currentThreads =new ArrayList<Thread>();
 	// maxThreads is configurable. When maxThreads is reached, program waits until they are finished.
@@ -50,44 +77,168 @@ public abstract class Indexer implements Runnable {
 
 	protected Indexer(String solrIndexName) {
 		this.solrIndexName = solrIndexName;
+		this.metrics = IndexerMetrics.forIndex(solrIndexName);
+	}
+
+	public IndexerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/*
+	 * Write to the given client (eg. an embedded Solr core) instead of the core at
+	 * index.url.  Staging cores are not used then.  Must be called before the run.
+	 */
+	public void setSolrClient(SolrClient client) {
+		this.client = client;
+	}
+
+	/*
+	 * Returns the heap (in MB) this indexer may need while running, as declared by
+	 * scheduler.memoryMB for this index (eg. gxdResult.scheduler.memoryMB) or all
+	 * indexes, falling back on getDefaultMemoryMB().  Used by the IndexerScheduler.
+	 */
+	public int getMemoryBudgetMB() {
+		return getIndexIntProperty("scheduler.memoryMB", getDefaultMemoryMB());
+	}
+
+	/*
+	 * Returns the number of database connections this indexer holds at once while
+	 * running, as declared by scheduler.connections for this index or all indexes,
+	 * falling back on getDefaultConnections().  Used by the IndexerScheduler.
+	 */
+	public int getConnectionBudget() {
+		return getIndexIntProperty("scheduler.connections", getDefaultConnections());
+	}
+
+	// heap (in MB) assumed for an indexer that declares none; overridden by bigger indexers
+	protected int getDefaultMemoryMB() {
+		return 1024;
+	}
+
+	// connections assumed for an indexer that declares none (the one it holds; its caches
+	// lease theirs only briefly)
+	protected int getDefaultConnections() {
+		return 1;
+	}
+
+	/*
+	 * Returns the names of the shared lookups this indexer has used (see
+	 * getSharedLookup()), including those already released.
+	 */
+	public Set<String> getUsedLookups() {
+		synchronized (sharedLookups) {
+			return new LinkedHashSet<String>(usedLookups);
+		}
 	}
 
 	public void setupConnection() throws Exception {
+		metrics.start();
 		logger.info("Setting up the properties");
 
-		InputStream in = Indexer.class.getClassLoader().getResourceAsStream("config.properties");
-		Properties props = new Properties();
-		if (in== null) {
+		// config.properties is read once per JVM by the shared connection pool
+		Properties props = ConnectionPool.getInstance().getProperties();
+		if (props.isEmpty()) {
 			logger.info("resource config.properties not found");
 		}
-		try {
-			props.load(in);
-			logger.debug(props.toString());
-		} catch (IOException e1) {
-			e1.printStackTrace();
-		}
 		logger.info("db connection info: "+ ex);
 
-		String solrBaseUrl = props.getProperty("index.url");
+		solrBaseUrl = props.getProperty("index.url");
+		String coreName = solrIndexName;
+		if (client != null) {
+			logger.info("Using the given Solr client for " + solrIndexName);
+		} else if (isIncremental()) {
+			logger.info("Updating the existing index in place (incremental run)");
+		} else if ("true".equalsIgnoreCase(getIndexProperty("index.staging", "false"))) {
+			stagingCoreName = solrIndexName + getIndexProperty("index.stagingSuffix", "_staging");
+			coreName = stagingCoreName;
+			logger.info("Building into staging core " + stagingCoreName + ", to be swapped onto " + solrIndexName);
+		}
 		
 		logger.info("Setting up index: " + solrBaseUrl);
 		try {
-			client = new ConcurrentUpdateSolrClient.Builder(solrBaseUrl + "/" + solrIndexName).withQueueSize(160).withThreadCount(4).build();
+			if (client == null) {
+				client = new HttpSolrClient.Builder(solrBaseUrl + "/" + coreName).build();
+			}
+
+			// documents are sent by a bounded write stage; these settings may be given
+			// for all indexes (eg. solr.writeThreads) or per index (eg. gxdResult.solr.writeThreads)
+			writer = new SolrWriter(solrIndexName, client,
+				getIndexIntProperty("solr.writeThreads", 4),
+				getIndexIntProperty("solr.maxInFlightDocs", 20000),
+				getIndexIntProperty("solr.maxInFlightMB", 64),
+				getIndexIntProperty("solr.maxRetries", 5),
+				getIndexIntProperty("solr.retryBackoffMs", 500))
+				.setMetrics(metrics);
 		} catch (Throwable e) {
 			logger.info("Failed to set up solr client:");
 			e.printStackTrace();
 			throw e;
 		}
-		logger.info("Working with index: " + solrBaseUrl + "/" + solrIndexName);
+		logger.info("Working with index: " + solrBaseUrl + "/" + coreName);
 
+		if (isIncremental()) {
+			return;
+		}
 		try {
-			logger.info("Deleting current index: " + solrIndexName);
+			logger.info("Deleting current index: " + coreName);
 			client.deleteByQuery("*:*");
 			commit();
 		}
 		catch (Exception e) { throw e; }
 	}
 
+	/*
+	 * Returns true if this run updates the existing index rather than rebuilding it
+	 * (so the index is not emptied, or built in a staging core, first).  Indexers that
+	 * support incremental runs override this.
+	 */
+	protected boolean isIncremental() throws Exception {
+		return false;
+	}
+
+	/*
+	 * Called after a run has written everything to Solr without failures (and after any
+	 * staging core is swapped into service).  Indexers override this to record state for
+	 * their next run.
+	 */
+	protected void indexSucceeded() throws Exception {
+	}
+
+	/*
+	 * Returns the integer value of the named setting from config.properties,
+	 * or 'defaultValue' if it is missing or not an integer.
+	 */
+	protected int getIntProperty(String name, int defaultValue) {
+		String value = ConnectionPool.getInstance().getProperties().getProperty(name);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.error("Non-integer value for " + name + ": " + value + "; using " + defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	/*
+	 * Returns the value of the named setting for this index (eg. for
+	 * "index.staging", gxdResult looks for "gxdResult.index.staging"), falling
+	 * back on the setting for all indexes, then on 'defaultValue'.
+	 */
+	protected String getIndexProperty(String name, String defaultValue) {
+		Properties props = ConnectionPool.getInstance().getProperties();
+		return props.getProperty(solrIndexName + "." + name, props.getProperty(name, defaultValue)).trim();
+	}
+
+	/*
+	 * Returns the integer value of the named setting for this index (eg. for
+	 * "solr.writeThreads", gxdResult looks for "gxdResult.solr.writeThreads"),
+	 * falling back on the setting for all indexes, then on 'defaultValue'.
+	 */
+	protected int getIndexIntProperty(String name, int defaultValue) {
+		return getIntProperty(solrIndexName + "." + name, getIntProperty(name, defaultValue));
+	}
+
 	/*
 	 * Code for loading a solr index must be implemented here
 	 */
@@ -101,14 +252,87 @@ public abstract class Indexer implements Runnable {
 		try {
 			setupConnection();
 			index();
-			closeConnection();
+			finishIndex();
 			logger.info("Completed run of " + getClass());
 		} catch (Exception e) {
 			indexPassed = false;
 			logger.error("Indexer: " + getClass() + " failed.", e);
+		} finally {
+			metrics.finish();
+			releaseSharedLookups();
+			stopWriter();
+
+			// hand our database connection back to the pool for other indexers
+			try {
+				ex.cleanup();
+			} catch (Exception e) {
+				logger.error("Failed to release database connection", e);
+			}
 		}
 	}
 	
+	/*
+	 * Returns the named lookup from the process-wide LookupRegistry, building it with
+	 * 'loader' unless another indexer has already built it (or is building it).  The
+	 * lookup is held until this indexer's run ends, and must not be modified.
+	 */
+	protected <T> T getSharedLookup(String name, LookupRegistry.Loader<T> loader) throws Exception {
+		long start = System.nanoTime();
+		T lookup = LookupRegistry.getInstance().acquire(name, loader);
+		synchronized (sharedLookups) {
+			sharedLookups.add(name);
+			usedLookups.add(name);
+		}
+		metrics.record(IndexerMetrics.CACHE_LOAD, start);
+		return lookup;
+	}
+
+	/*
+	 * Gives back this indexer's holds on its shared lookups, so each can be freed once
+	 * no other indexer is using it.
+	 */
+	protected void releaseSharedLookups() {
+		synchronized (sharedLookups) {
+			for (String name : sharedLookups) {
+				LookupRegistry.getInstance().release(name);
+			}
+			sharedLookups.clear();
+		}
+	}
+
+	/*
+	 * Finishes a build once all documents are written:  closes the Solr connection (with a
+	 * last commit), notes any documents that could not be written, swaps in the staging
+	 * core (if any), and calls indexSucceeded() if all went well.  (Also used by an indexer
+	 * that fills another index's core alongside its own; see GxdResultIndexer.)
+	 */
+	protected void finishIndex() throws Exception {
+		closeConnection();
+		if (writer.getFailed() > 0) {
+			indexPassed = false;
+			logger.error("Indexer: " + getClass() + " failed to write " + writer.getFailed() + " documents to Solr.");
+		}
+		if (stagingCoreName != null) {
+			if (indexPassed) {
+				swapStagingCore();
+			} else {
+				logger.error("Not swapping " + stagingCoreName + " onto " + solrIndexName + "; the serving index is unchanged.");
+			}
+		}
+		if (indexPassed) {
+			indexSucceeded();
+		}
+		metrics.finish();
+	}
+
+	// stops the Solr writer's sender threads, which closeConnection() only does when the
+	// index is finished (so a failed run would otherwise leave them running in the JVM)
+	protected void stopWriter() {
+		if (writer != null) {
+			writer.shutdown();
+		}
+	}
+
 	// closes down the connection and makes sure a last commit is run
 	public void closeConnection() {
 		
@@ -127,8 +351,49 @@ public abstract class Indexer implements Runnable {
 		if (!this.skipOptimizer) {
 			optimize(true);
 		}
+		try {
+			writer.close();
+		} catch (InterruptedException e) {
+			logger.error(e.getMessage());
+			e.printStackTrace();
+		}
 		logger.info("Solr Documents are flushed to the server shuting down: " + solrIndexName);
-		client.close();
+		try {
+			client.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	// swap the finished staging core with the serving core, so the new index is served
+	// as solrIndexName (and the previous one is left in the staging core)
+	private void swapStagingCore() throws Exception {
+		logger.info("Swapping " + stagingCoreName + " onto " + solrIndexName);
+		HttpSolrClient admin = new HttpSolrClient.Builder(solrBaseUrl).build();
+		try {
+			CoreAdminRequest swap = new CoreAdminRequest();
+			swap.setAction(CoreAdminAction.SWAP);
+			swap.setCoreName(stagingCoreName);
+			swap.setOtherCoreName(solrIndexName);
+			swap.process(admin);
+		} finally {
+			admin.close();
+		}
+		logger.info("Now serving the new " + solrIndexName + " index");
+	}
+	
+	/*
+	 * deletes documents matching 'query' from solr, after first sending any documents
+	 * already written (so a delete is not overtaken by an earlier add)
+	 */
+	public void deleteDocs(String query) {
+		try {
+			writer.flush();
+			client.deleteByQuery(query);
+		} catch (SolrServerException | IOException | InterruptedException e) {
+			indexPassed = false;
+			e.printStackTrace();
+		}
 	}
 	
 	public void commit() {
@@ -138,11 +403,13 @@ public abstract class Indexer implements Runnable {
 	public void optimize(boolean wait) {
 		try {
 			logger.info("Waiting for Solr Optimize");
+			long start = System.nanoTime();
 			if(wait) {
 				client.optimize(wait, wait);
 			} else {
 				client.optimize();
 			}
+			metrics.record(IndexerMetrics.OPTIMIZE, start);
 		} catch (SolrServerException | IOException e) {
 			e.printStackTrace();
 		}
@@ -150,14 +417,19 @@ public abstract class Indexer implements Runnable {
 	
 	public void commit(boolean wait) {
 		try {
+			// make sure everything written so far is in Solr before committing
+			writer.flush();
 			logger.info("Waiting for Solr Commit");
 			checkMemory();
+			long start = System.nanoTime();
 			if(wait) {
 				client.commit(wait, wait);
 			} else {
 				client.commit();
 			}
-		} catch (SolrServerException | IOException e) {
+			metrics.record(IndexerMetrics.COMMIT, start);
+		} catch (SolrServerException | IOException | InterruptedException e) {
+			indexPassed = false;
 			e.printStackTrace();
 		}
 	}
@@ -191,8 +463,6 @@ public abstract class Indexer implements Runnable {
 	// The hashSet is simply a collection for our 1->N cases.
 	// This does not belong in this class. It's a straight up utility function
 	protected HashMap <String, HashSet <String>> makeHash(String sql, String keyString, String valueString) {
-		HashMap<String, String> allValues = new HashMap<String, String>();
-		
 		HashMap <String, HashSet <String>> tempMap = new HashMap <String, HashSet <String>> ();
 
 		try {
@@ -203,13 +473,7 @@ public abstract class Indexer implements Runnable {
 
 			while (rs.next()) {
 				key = rs.getString(keyString);
-				value = rs.getString(valueString);
-				
-				if(allValues.containsKey(value)) {
-					value = allValues.get(value);
-				} else {
-					allValues.put(value, value);
-				}
+				value = intern(rs.getString(valueString));
 				
 				if (tempMap.containsKey(key)) {
 					tempMap.get(key).add(value);
@@ -222,25 +486,34 @@ public abstract class Indexer implements Runnable {
 			}
 			
 		} catch (Exception e) {e.printStackTrace();}
-		allValues.clear();
 		return tempMap;
 	}
 
+	/*
+	 * Returns the shared copy of 's' from the process-wide StringPool (or 's' itself),
+	 * for values that repeat many times in the lookups we keep.
+	 */
+	protected String intern(String s) {
+		return StringPool.getInstance().intern(s);
+	}
+
 	/*
 	 * writes documents to solr.
 	 * Best practice is to write small batches of documents to Solr
-	 * and to commit less frequently. (TIP: this method will commit documents automatically using commitWithin)
-	 * Here we also spawn a new process for each batch of documents.
+	 * and to commit less frequently.
+	 * Batches are sent in the background by the SolrWriter; this blocks when too many
+	 * documents are already waiting on Solr.  Failed batches are retried, and any that
+	 * still fail mark the index as failed.  (Don't reuse 'docs' after passing it in.)
 	 */
 	
 	public void writeDocs(Collection<SolrInputDocument> docs) {
 		if(docs == null || docs.size() == 0) return;
 		
 		try {
-			client.add(docs);
-		} catch (SolrServerException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
+			writer.write(docs);
+		} catch (InterruptedException e) {
+			indexPassed = false;
+			Thread.currentThread().interrupt();
 			e.printStackTrace();
 		}
 		
@@ -305,7 +578,7 @@ public abstract class Indexer implements Runnable {
 		int rows = 0;
 		while (rs.next()) {
 			String uniqueField = rs.getString(uniqueFieldName);
-			String secondField = rs.getString(secondFieldName);
+			String secondField = intern(rs.getString(secondFieldName));
 			if(!returnLookup.containsKey(uniqueField)) {
 				returnLookup.put(uniqueField, setClass.getDeclaredConstructor().newInstance());
 			}
@@ -373,6 +646,13 @@ public abstract class Indexer implements Runnable {
 	}
 
 
+	protected void addAllFromLookup(SolrInputDocument solrDoc,String solrField,String lookupId,DagClosure closure) {
+		int index = closure.indexOf(lookupId);
+		for(int i = closure.start(index); i < closure.end(index); i++) {
+			solrDoc.addField(solrField,closure.getLabel(closure.relatedAt(i)));
+		}
+	}
+
 	private Map<String,Set<String>> dupTracker = new HashMap<String,Set<String>>();
 	protected void addAllFromLookupNoDups(SolrInputDocument solrDoc,String solrField,String lookupId,Map<String,Set<String>> lookupRef) {
 		Set<String> uniqueList = getNoDupList(solrField);
@@ -1,16 +1,22 @@
 package org.jax.mgi.gxdindexer;
 
+import java.io.FileWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
+import org.jax.mgi.gxdindexer.shr.ConnectionPool;
+import org.jax.mgi.gxdindexer.shr.IndexerMetrics;
+import org.jax.mgi.gxdindexer.shr.IndexerScheduler;
+import org.jax.mgi.gxdindexer.shr.StringPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -99,20 +105,35 @@ public class Main {
 		// track failed indexers for later reporting
 		List<String> failedIndexers = new ArrayList<String>();
 
-		ExecutorService executorPool = Executors.newFixedThreadPool(maxThreads);
-		
+		// with gxdResult.feedHasImage=true, gxdResult also fills gxdResultHasImage in its
+		// own pass over the results (rather than gxdResultHasImage repeating that work)
+		Set<String> fedIndexers = new HashSet<String>();
+		if (SPECIFIED_INDEXERS.contains("gxdResult") && SPECIFIED_INDEXERS.contains("gxdResultHasImage")
+				&& "true".equalsIgnoreCase(ConnectionPool.getInstance().getProperties().getProperty("gxdResult.feedHasImage", "false").trim())) {
+			((GxdResultIndexer) indexerMap.get("gxdResult")).setHasImageIndexer(
+				(GxdResultHasImageIndexer) indexerMap.get("gxdResultHasImage"));
+			fedIndexers.add("gxdResultHasImage");
+			logger.info("gxdResultHasImage will be filled by gxdResult");
+		}
+
+		// run them together, longest first, within the memory and connection budgets
+		Map<String,Indexer> toRun = new LinkedHashMap<String,Indexer>();
 		for(String idxKey: SPECIFIED_INDEXERS) {
-			executorPool.submit(indexerMap.get(idxKey));
+			if (!fedIndexers.contains(idxKey)) {
+				toRun.put(idxKey, indexerMap.get(idxKey));
+			}
 		}
-		
+
+		sizeConnectionPool(toRun.values());
+
 		try {
-			executorPool.shutdown();
-			while(!executorPool.awaitTermination(30, TimeUnit.SECONDS)) {
-				logger.info("Waiting for Threads to finish");
-			}
+			new IndexerScheduler(maxThreads).run(toRun);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
+		ConnectionPool.getInstance().closeIdle();
+		logger.info(StringPool.getInstance().getSummary());
+		writeMetricsSummary();
 		
 		for(String idxKey: SPECIFIED_INDEXERS) {
 			if(!indexerMap.get(idxKey).indexPassed) {
@@ -129,6 +150,51 @@ public class Main {
 		}
 	}
 
+	// grow the connection pool to the most connections the scheduler could have in use at
+	// once (the biggest maxThreads budgets together, plus one for a cache being loaded), after
+	// checking that the configured pool can hold each indexer's budget on its own
+	private static void sizeConnectionPool(Collection<Indexer> indexers) {
+		ConnectionPool pool = ConnectionPool.getInstance();
+		List<Integer> budgets = new ArrayList<Integer>();
+		for (Indexer indexer : indexers) {
+			int budget = indexer.getConnectionBudget();
+			if (budget > pool.getMaxSize()) {
+				exitWithMessage(indexer.getClass().getSimpleName() + " holds up to " + budget
+					+ " database connections at once, but mgd.pool.size is " + pool.getMaxSize());
+			}
+			budgets.add(budget);
+		}
+		Collections.sort(budgets, Collections.reverseOrder());
+
+		int admissible = 0;
+		for (int i = 0; i < Math.min(maxThreads, budgets.size()); i++) {
+			admissible += budgets.get(i);
+		}
+		pool.ensureCapacity(admissible + 1);
+	}
+
+	// log the timing metrics of the indexers that ran, and write them (as JSON) to the file
+	// named by metrics.summaryFile, if any
+	private static void writeMetricsSummary() {
+		try {
+			String json = IndexerMetrics.toJson(IndexerMetrics.getStarted());
+			logger.info("Indexer metrics: " + json);
+
+			String path = ConnectionPool.getInstance().getProperties().getProperty("metrics.summaryFile", "").trim();
+			if (path.length() > 0) {
+				Writer writer = new FileWriter(path);
+				try {
+					writer.write(json);
+				} finally {
+					writer.close();
+				}
+				logger.info("Wrote indexer metrics to " + path);
+			}
+		} catch (Exception e) {
+			logger.error("Failed to write indexer metrics", e);
+		}
+	}
+
 	private static void exitWithMessage(String errorMsg) {
 		exitWithMessage(errorMsg,null);
 	}
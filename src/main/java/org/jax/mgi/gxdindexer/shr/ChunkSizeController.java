@@ -0,0 +1,140 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.text.DecimalFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/* Is: a controller that decides how many rows an indexer should take in its next chunk
+ * Has: bounds on the chunk size, the current chunk size, and what was measured for the
+ *	previous chunk (throughput and database time per row)
+ * Does: after each chunk, grows or shrinks the chunk size.  The size keeps moving in the
+ *	same direction while throughput (rows/sec) holds up, and reverses when throughput drops.
+ *	It shrinks sharply when heap use gets high or the database time per row jumps (as
+ *	when a larger query spills to disk), and it stops growing while heap use is elevated.
+ * Notes: Safe to share across threads; each thread reports its own chunks.
+ *
+ * Example Usage:
+ *	ChunkSizeController controller = new ChunkSizeController("gxdResult", 100000);
+ *	int rows = controller.getChunkRows();
+ *	... process a chunk of (about) 'rows' rows ...
+ *	controller.record(rowsProcessed, elapsedMs, databaseMs);
+ */
+public class ChunkSizeController {
+
+	// above this fraction of the max heap in use, chunks are cut in half
+	public static double HIGH_MEMORY = 0.80;
+
+	// above this fraction of the max heap in use, chunks may not grow
+	public static double SAFE_MEMORY = 0.65;
+
+	// factor by which the chunk size moves up (or down) in each step
+	private static double STEP = 1.5;
+
+	// throughput may drop by this fraction before we change direction (allows for noise)
+	private static double TOLERANCE = 0.10;
+
+	/*--- instance variables ---*/
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private DecimalFormat df = new DecimalFormat("#.##");
+	private Runtime runtime = Runtime.getRuntime();
+	private String name;
+	private int minRows;
+	private int maxRows;
+	private int chunkRows;
+	private boolean growing = true;
+	private double lastRowsPerSec = -1.0;
+	private double lastDbMsPerRow = -1.0;
+
+	/*--- public methods ---*/
+
+	// start with chunks of 'initialRows', allowing them to range from 1/8 to 4 times that
+	public ChunkSizeController(String name, int initialRows) {
+		this(name, initialRows, Math.max(1, initialRows / 8), initialRows * 4);
+	}
+
+	public ChunkSizeController(String name, int initialRows, int minRows, int maxRows) {
+		this.name = name;
+		this.minRows = Math.max(1, minRows);
+		this.maxRows = Math.max(this.minRows, maxRows);
+		this.chunkRows = clamp(initialRows);
+	}
+
+	// number of rows to aim for in the next chunk
+	public synchronized int getChunkRows() {
+		return chunkRows;
+	}
+
+	// smallest chunk we will ever ask for
+	public int getMinRows() {
+		return minRows;
+	}
+
+	// record that a chunk of 'rows' rows took 'elapsedMs' in all, of which 'dbMs' was spent
+	// waiting on the database, and pick the size of the next chunk
+	public synchronized void record(int rows, long elapsedMs, long dbMs) {
+		// a short chunk (like the last one in a scan) says little about throughput
+		if (rows < chunkRows / 4) {
+			return;
+		}
+
+		double memory = memoryPercent();
+		double rowsPerSec = (rows * 1000.0) / Math.max(1, elapsedMs);
+		double dbMsPerRow = ((double) dbMs) / Math.max(1, rows);
+		int previous = chunkRows;
+		String reason;
+
+		if (memory > HIGH_MEMORY) {
+			chunkRows = clamp(chunkRows / 2);
+			growing = false;
+			reason = "heap is " + df.format(memory * 100) + "% used";
+		} else if ((lastDbMsPerRow > 0) && (dbMsPerRow > lastDbMsPerRow * 2) && (dbMs > elapsedMs / 2)) {
+			chunkRows = clamp(chunkRows / 2);
+			growing = false;
+			reason = "database time per row went from " + df.format(lastDbMsPerRow) + " to " + df.format(dbMsPerRow) + " ms";
+		} else if ((lastRowsPerSec > 0) && (rowsPerSec < lastRowsPerSec * (1.0 - TOLERANCE))) {
+			growing = !growing;
+			chunkRows = step();
+			reason = "throughput fell from " + Math.round(lastRowsPerSec) + " to " + Math.round(rowsPerSec) + " rows/sec";
+		} else if (growing && (memory > SAFE_MEMORY)) {
+			reason = "holding while heap is " + df.format(memory * 100) + "% used";
+		} else {
+			chunkRows = step();
+			reason = "throughput " + Math.round(rowsPerSec) + " rows/sec";
+		}
+
+		lastRowsPerSec = rowsPerSec;
+		lastDbMsPerRow = dbMsPerRow;
+
+		if (chunkRows != previous) {
+			logger.info(name + " chunk size " + previous + " -> " + chunkRows + " rows (" + reason + ")");
+		} else {
+			logger.debug(name + " chunk size stays at " + chunkRows + " rows (" + reason + ")");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "[ChunkSizeController " + name + ": " + chunkRows + " rows (" + minRows + ".." + maxRows + ")]";
+	}
+
+	/*--- private methods ---*/
+
+	// move the chunk size one step in the current direction
+	private int step() {
+		if (growing) {
+			return clamp((int) Math.min(Integer.MAX_VALUE, chunkRows * STEP));
+		}
+		return clamp((int) (chunkRows / STEP));
+	}
+
+	private int clamp(int rows) {
+		return Math.max(minRows, Math.min(maxRows, rows));
+	}
+
+	// fraction of the max heap in use (as in Indexer.memoryPercent())
+	private double memoryPercent() {
+		return ((double) runtime.totalMemory() - (double) runtime.freeMemory()) / (double) runtime.maxMemory();
+	}
+}
@@ -0,0 +1,221 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jax.mgi.gxdindexer.Indexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ConnectionPool is a process-wide, bounded pool of connections to MGD.
+ *
+ * Connection settings are read from config.properties once per JVM, and
+ * connections are opened lazily as they are first needed.  No more than
+ * 'mgd.pool.size' connections are ever open at once; callers that try to lease
+ * a connection beyond that limit wait until another caller releases one.
+ *
+ * Each lease is an exclusive checkout.  When a connection is released, any
+ * open transaction is rolled back, so temp tables created by one lease are not
+ * visible to the next one.
+ *
+ * @does Hands out and takes back connections to the MGD Database.
+ */
+
+public class ConnectionPool {
+
+	// default number of connections when 'mgd.pool.size' is not configured
+	public static int DEFAULT_POOL_SIZE = 4;
+
+	// how long (in seconds) to wait for a connection before logging a warning
+	private static int WAIT_WARNING_SECONDS = 60;
+
+	private static ConnectionPool instance = null;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private Properties props;
+	private String user;
+	private String password;
+	private String mgdJDBCUrl;
+	private int maxSize;
+
+	// idle connections, ready to be leased (most recently used first)
+	private LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<Connection>();
+
+	// one permit per connection that may be leased
+	private Semaphore permits;
+
+	/**
+	 * Get the shared pool, creating it from config.properties the first time
+	 * this is called.
+	 */
+	public static synchronized ConnectionPool getInstance() {
+		if (instance == null) {
+			instance = new ConnectionPool();
+		}
+		return instance;
+	}
+
+	/**
+	 * Replace the shared pool with one using the given settings (in place of
+	 * config.properties), closing the idle connections of any earlier pool.
+	 * Must be called before any indexers are created, as each one keeps the
+	 * pool it was created with.
+	 */
+	public static synchronized ConnectionPool configure(Properties props) {
+		if (instance != null) {
+			instance.closeIdle();
+		}
+		instance = new ConnectionPool(props);
+		return instance;
+	}
+
+	private ConnectionPool() {
+		this(loadConfig());
+	}
+
+	private ConnectionPool(Properties props) {
+		this.props = props;
+		try {
+			Class.forName(props.getProperty("database.JDBC.driver"));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		user = props.getProperty("mgd.user");
+		password = props.getProperty("mgd.password");
+		mgdJDBCUrl = props.getProperty("mgd.JDBC.url");
+
+		maxSize = DEFAULT_POOL_SIZE;
+		String poolSize = props.getProperty("mgd.pool.size");
+		if (poolSize != null) {
+			try {
+				maxSize = Integer.parseInt(poolSize.trim());
+			} catch (NumberFormatException e) {
+				logger.error("Non-integer mgd.pool.size: " + poolSize + "; using " + DEFAULT_POOL_SIZE);
+			}
+		}
+		permits = new Semaphore(maxSize, true);
+		logger.info("Initialized " + this.toString());
+	}
+
+	// read config.properties from the classpath
+	private static Properties loadConfig() {
+		Properties props = new Properties();
+		InputStream in = Indexer.class.getClassLoader().getResourceAsStream("config.properties");
+		try {
+			props.load(in);
+		} catch (Exception e1) {
+			e1.printStackTrace();
+		}
+		return props;
+	}
+
+	/**
+	 * Return the (shared) properties read from config.properties.
+	 */
+	public Properties getProperties() {
+		return props;
+	}
+
+	/**
+	 * Ensure that the pool allows at least 'size' connections.  Used by Main
+	 * to keep the pool larger than the number of indexers running at once, so
+	 * each indexer can still lease a connection for its caches.
+	 */
+	public synchronized void ensureCapacity(int size) {
+		if (size > maxSize) {
+			permits.release(size - maxSize);
+			logger.info("Grew connection pool from " + maxSize + " to " + size);
+			maxSize = size;
+		}
+	}
+
+	/**
+	 * Return the most connections the pool will have open at once.
+	 */
+	public synchronized int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Check out a connection, waiting if all of them are in use.  The caller
+	 * must hand it back with release().
+	 *
+	 * @throws SQLException
+	 */
+	public Connection lease() throws SQLException {
+		try {
+			while (!permits.tryAcquire(WAIT_WARNING_SECONDS, TimeUnit.SECONDS)) {
+				logger.warn("Waiting for a database connection (" + maxSize + " in use)");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+
+		try {
+			Connection con;
+			while ((con = idle.pollFirst()) != null) {
+				if (!con.isClosed()) {
+					return con;
+				}
+			}
+			con = DriverManager.getConnection(mgdJDBCUrl, user, password);
+			con.setAutoCommit(false);
+			logger.debug("Opened new database connection");
+			return con;
+		} catch (SQLException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Hand back a connection that was checked out with lease().  Any open
+	 * transaction (and so any temp tables) is rolled back first.
+	 */
+	public void release(Connection con) {
+		if (con == null) {
+			return;
+		}
+		try {
+			if (!con.isClosed()) {
+				con.rollback();
+				idle.offerFirst(con);
+			}
+		} catch (SQLException e) {
+			logger.error("Discarding database connection: " + e.getMessage());
+			try {
+				con.close();
+			} catch (SQLException e2) {}
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Close all idle connections.  Leased connections are closed when they
+	 * are released after this point only if they are found to be unusable.
+	 */
+	public void closeIdle() {
+		Connection con;
+		while ((con = idle.pollFirst()) != null) {
+			try {
+				con.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool[user=" + user + ",url=" + mgdJDBCUrl + ",size=" + maxSize + "]";
+	}
+}
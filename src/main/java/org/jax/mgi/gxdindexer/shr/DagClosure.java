@@ -0,0 +1,205 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Is: an immutable transitive closure of a DAG (each term's ancestors, or each
+ *	term's descendants), in compressed sparse row form
+ * Has: a dictionary between term labels (IDs or keys, as Strings) and int term
+ *	indexes, an array of offsets by term index, and one array of related term
+ *	indexes, where the terms related to term i are at positions offsets[i] up to
+ *	(but not including) offsets[i+1], sorted and without duplicates
+ * Does: looks up terms by label or index, and scans or tests a term's related terms
+ * Notes: Built once with a DagClosure.Builder (or load()), then safe to share between
+ *	threads.  Takes a few bytes per relationship, where a Map<String,Set<String>>
+ *	takes an entry object (and often a String) for each one.
+ *	Example Usage:
+ *		DagClosure ancestors = DagClosure.load(ex, query, "term_key", "ancestor_term_key", true);
+ *		int term = ancestors.indexOf(termKey);
+ *		for (int i = ancestors.start(term); i < ancestors.end(term); i++) {
+ *			String ancestorKey = ancestors.getLabel(ancestors.relatedAt(i));
+ *			...
+ *		}
+ */
+public class DagClosure {
+	/*--- instance variables ---*/
+	private String[] labels;			// term index -> label
+	private Map<String,Integer> indexes;	// label -> term index
+	private int[] offsets;				// term index -> start of its related terms
+	private int[] related;				// related term indexes, grouped by term
+
+	/*--- public methods ---*/
+
+	// return the index of the term with the given label, or -1 if it is not in the DAG
+	public int indexOf(String label) {
+		if (label == null) {
+			return -1;
+		}
+		Integer index = indexes.get(label);
+		return (index == null) ? -1 : index;
+	}
+
+	// return the label of the term with the given index
+	public String getLabel(int index) {
+		return labels[index];
+	}
+
+	// number of terms (with or without related terms)
+	public int size() {
+		return labels.length;
+	}
+
+	// number of relationships (summed over all terms)
+	public int relationshipCount() {
+		return related.length;
+	}
+
+	// position of the first term related to term 'index' (or -1, for no term, gives an empty range)
+	public int start(int index) {
+		return (index < 0) ? 0 : offsets[index];
+	}
+
+	// position just past the last term related to term 'index'
+	public int end(int index) {
+		return (index < 0) ? 0 : offsets[index + 1];
+	}
+
+	// index of the related term at position 'i' (from start() up to end())
+	public int relatedAt(int i) {
+		return related[i];
+	}
+
+	// return true if term 'index' has any related terms (false for -1, no term)
+	public boolean hasRelated(int index) {
+		return end(index) > start(index);
+	}
+
+	// return true if the term with the given label has any related terms
+	public boolean hasRelated(String label) {
+		return hasRelated(indexOf(label));
+	}
+
+	// return true if term 'relatedIndex' is related to term 'index'
+	public boolean isRelated(int index, int relatedIndex) {
+		if (index < 0) {
+			return false;
+		}
+		return Arrays.binarySearch(related, offsets[index], offsets[index + 1], relatedIndex) >= 0;
+	}
+
+	// convenience method to return the labels of the terms related to the given one
+	// (empty if none); the scan methods above avoid building the list
+	public List<String> getRelatedLabels(String label) {
+		int index = indexOf(label);
+		List<String> out = new ArrayList<String>(end(index) - start(index));
+		for (int i = start(index); i < end(index); i++) {
+			out.add(labels[related[i]]);
+		}
+		return out;
+	}
+
+	// build a closure from the rows returned by 'query', relating each term in
+	// 'termField' to the term in 'relatedField'.  If 'reflexive', each term is also
+	// related to itself.
+	public static DagClosure load(SQLExecutor ex, String query, String termField, String relatedField,
+			boolean reflexive) throws Exception {
+		Builder builder = new Builder();
+		ResultSet rs = ex.executeProto(query);
+		while (rs.next()) {
+			String term = rs.getString(termField);
+			if (reflexive) {
+				builder.add(term, term);
+			}
+			builder.add(term, rs.getString(relatedField));
+		}
+		rs.close();
+		return builder.build();
+	}
+
+	/*--- private methods ---*/
+
+	private DagClosure() {}
+
+	/*--- inner classes ---*/
+
+	/* Is: collects the relationships for a DagClosure, then builds it
+	 * Notes: Term labels are taken from the StringPool.  A null label is ignored, as
+	 *	is a relationship added more than once.
+	 */
+	public static class Builder {
+		private Map<String,Integer> indexes = new HashMap<String,Integer>();
+		private List<String> labels = new ArrayList<String>();
+		private int[] terms = new int[1024];
+		private int[] relatedTerms = new int[1024];
+		private int count = 0;
+
+		// note that 'relatedLabel' is related to (an ancestor of, or descendant of) 'label'
+		public Builder add(String label, String relatedLabel) {
+			if ((label == null) || (relatedLabel == null)) {
+				return this;
+			}
+			if (count == terms.length) {
+				terms = Arrays.copyOf(terms, count * 2);
+				relatedTerms = Arrays.copyOf(relatedTerms, count * 2);
+			}
+			terms[count] = indexOf(label);
+			relatedTerms[count] = indexOf(relatedLabel);
+			count++;
+			return this;
+		}
+
+		// lay the relationships out by term (a counting sort), then sort and
+		// de-duplicate each term's related terms
+		public DagClosure build() {
+			int n = labels.size();
+			int[] offsets = new int[n + 1];
+			for (int i = 0; i < count; i++) {
+				offsets[terms[i] + 1]++;
+			}
+			for (int i = 0; i < n; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			int[] related = new int[count];
+			int[] next = Arrays.copyOf(offsets, n);
+			for (int i = 0; i < count; i++) {
+				related[next[terms[i]]++] = relatedTerms[i];
+			}
+
+			// compact each term's range in place, removing duplicates
+			int[] compactOffsets = new int[n + 1];
+			int out = 0;
+			for (int t = 0; t < n; t++) {
+				compactOffsets[t] = out;
+				Arrays.sort(related, offsets[t], offsets[t + 1]);
+				for (int i = offsets[t]; i < offsets[t + 1]; i++) {
+					if ((out == compactOffsets[t]) || (related[out - 1] != related[i])) {
+						related[out++] = related[i];
+					}
+				}
+			}
+			compactOffsets[n] = out;
+
+			DagClosure closure = new DagClosure();
+			closure.labels = labels.toArray(new String[n]);
+			closure.indexes = indexes;
+			closure.offsets = compactOffsets;
+			closure.related = (out == count) ? related : Arrays.copyOf(related, out);
+			return closure;
+		}
+
+		private int indexOf(String label) {
+			Integer index = indexes.get(label);
+			if (index == null) {
+				index = labels.size();
+				String pooled = StringPool.getInstance().intern(label);
+				labels.add(pooled);
+				indexes.put(pooled, index);
+			}
+			return index;
+		}
+	}
+}
@@ -0,0 +1,501 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/* Is: the EMAPA and EMAPS anatomy DAGs, held in memory
+ * Has: each term's key, ID, name and stages (start and end stage for EMAPA terms,
+ *	the stage and EMAPA term of EMAPS terms), and the parent->child edges of both DAGs
+ *	(with term_child's unique_key), in compressed sparse row form by dense term index;
+ *	and term_descendent's unique_key for each EMAPA ancestor->descendant pair
+ * Does: loads the DAGs in four scans (terms with term_emap, term_child,
+ *	term_emaps_child, and term_descendent), then answers closures in memory:  an EMAPA term's ancestors and
+ *	descendants, and for each EMAPA ancestor->descendant edge, the EMAPS terms (at any
+ *	stage) whose own ancestry follows that edge
+ * Notes: Read-only once loaded, so it may be shared (eg. through the LookupRegistry) and
+ *	traversed from any number of threads; getDescendents(int[]) traverses in parallel.
+ *	If term_child has no EMAPS edges, the load fails, unless asked to derive them from
+ *	the EMAPA edges (at each stage, an EMAPS term's parents are then the EMAPS terms, at
+ *	that stage, of its EMAPA term's parents).  Derived edges are a guess at the EMAPS
+ *	DAG, not a copy of it, so deriving is only done when asked for.
+ *	Example Usage:
+ *		EmapDag dag = EmapDag.load(ex, false);
+ *		for (EmapDag.Descendents d : dag.getDescendents(ancestorKeys)) {
+ *			for (int i = 0; i < d.keys.length; i++) {
+ *				... edge from d.ancestorKey to d.keys[i], found through EMAPS IDs d.emapsIds.get(i)
+ *			}
+ *		}
+ */
+public class EmapDag {
+	/* Is: the descendants of one EMAPA term
+	 * Has: the descendants' term keys (sorted), and for each, the IDs of the EMAPS terms
+	 *	that descend (at their stage) from an EMAPS term of the ancestor
+	 */
+	public static class Descendents {
+		public int ancestorKey;
+		public int[] keys;
+		public List<List<String>> emapsIds;
+	}
+
+	/*--- static variables ---*/
+	private static Logger logger = LoggerFactory.getLogger(EmapDag.class);
+
+	/*--- instance variables ---*/
+	private IntIntMap indexes;			// term key -> term index
+	private int[] keys;					// term index -> term key
+	private String[] ids;				// term index -> primary ID
+	private String[] terms;				// term index -> term
+	private boolean[] isEmaps;			// term index -> true for EMAPS terms
+	private byte[] startStages;			// term index -> start stage (the stage, for EMAPS)
+	private byte[] endStages;			// term index -> end stage (the stage, for EMAPS)
+	private int[] emapaOf;				// EMAPS term index -> its EMAPA term's index (-1 for EMAPA)
+	private int[] emapaKeys;			// keys of the EMAPA terms, sorted
+
+	private int[] childOffsets;			// term index -> start of its children
+	private int[] children;				// child term indexes, grouped by parent
+	private int[] childEdgeKeys;		// term_child.unique_key of each child edge (-1 if derived)
+	private int[] parentOffsets;		// term index -> start of its parents
+	private int[] parents;				// parent term indexes, grouped by child
+	private int[] emapsOffsets;			// EMAPA term index -> start of its EMAPS terms
+	private int[] emapsTerms;			// EMAPS term indexes, grouped by EMAPA term
+	private int[] descendentOffsets;	// term index -> start of its term_descendent rows
+	private long[] descendentEdges;		// descendant key << 32 | term_descendent.unique_key,
+										// grouped by ancestor and sorted within each group
+
+	/*--- public methods ---*/
+
+	// read the EMAPA and EMAPS terms, their edges, and their EMAPA/EMAPS mapping through 'ex';
+	// if term_child has no EMAPS edges, derive them from the EMAPA edges when 'deriveEmaps'
+	// is set, and fail otherwise
+	public static EmapDag load(SQLExecutor ex, boolean deriveEmaps) throws Exception {
+		long startTime = System.currentTimeMillis();
+		EmapDag dag = new EmapDag();
+		dag.loadTerms(ex);
+		int[][] edges = dag.loadEdges(ex);
+		dag.loadEmapsMapping(ex);
+		dag.loadDescendentEdgeKeys(ex);
+		if (!dag.hasEmapsEdges(edges)) {
+			if (!deriveEmaps) {
+				throw new IllegalStateException("No EMAPS edges in term_child, so EMAPS IDs cannot be computed");
+			}
+			logger.warn("No EMAPS edges in term_child; deriving them from the EMAPA edges, "
+				+ "so EMAPS IDs may differ from term_ancestor's");
+			edges = dag.deriveEmapsEdges(edges);
+		}
+		dag.buildEdges(edges);
+		logger.info("Loaded EMAPA/EMAPS DAG: " + dag.keys.length + " terms, " + dag.children.length
+			+ " edges in " + (System.currentTimeMillis() - startTime) + " ms");
+		return dag;
+	}
+
+	// keys of the EMAPA terms, in ascending order
+	public int[] getEmapaKeys() {
+		return emapaKeys;
+	}
+
+	public boolean contains(int key) {
+		return indexes.containsKey(key);
+	}
+
+	public String getId(int key) {
+		return ids[indexOf(key)];
+	}
+
+	// "EMAPA" or "EMAPS"
+	public String getVocab(int key) {
+		return isEmaps[indexOf(key)] ? "EMAPS" : "EMAPA";
+	}
+
+	public String getTerm(int key) {
+		return terms[indexOf(key)];
+	}
+
+	public int getStartStage(int key) {
+		return startStages[indexOf(key)];
+	}
+
+	public int getEndStage(int key) {
+		return endStages[indexOf(key)];
+	}
+
+	// keys of the term's children
+	public int[] getChildKeys(int key) {
+		int term = indexOf(key);
+		int[] childKeys = new int[childOffsets[term + 1] - childOffsets[term]];
+		for (int i = 0; i < childKeys.length; i++) {
+			childKeys[i] = keys[children[childOffsets[term] + i]];
+		}
+		return childKeys;
+	}
+
+	// term_child.unique_key of the edges to the term's children (in getChildKeys() order)
+	public int[] getChildEdgeKeys(int key) {
+		int term = indexOf(key);
+		return Arrays.copyOfRange(childEdgeKeys, childOffsets[term], childOffsets[term + 1]);
+	}
+
+	// term_descendent.unique_key of the edge from 'ancestorKey' to 'descendentKey', or -1
+	// if term_descendent has no such row
+	public int getDescendentEdgeKey(int ancestorKey, int descendentKey) {
+		int term = indexOf(ancestorKey);
+		int low = descendentOffsets[term];
+		int high = descendentOffsets[term + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int key = (int) (descendentEdges[mid] >> 32);
+			if (key < descendentKey) {
+				low = mid + 1;
+			} else if (key > descendentKey) {
+				high = mid - 1;
+			} else {
+				return (int) descendentEdges[mid];
+			}
+		}
+		return -1;
+	}
+
+	// IDs of all the term's ancestors (not including itself)
+	public List<String> getAncestorIds(int key) {
+		return idsOf(closure(indexOf(key), parentOffsets, parents));
+	}
+
+	// IDs of all the term's descendants (not including itself)
+	public List<String> getDescendentIds(int key) {
+		return idsOf(closure(indexOf(key), childOffsets, children));
+	}
+
+	// the descendants of the EMAPA term with the given key, and the EMAPS IDs for each
+	public Descendents getDescendents(int key) {
+		int term = indexOf(key);
+		BitSet emapa = closure(term, childOffsets, children);
+
+		// term indexes follow term keys (see loadTerms()), so the descendants come out sorted
+		Descendents d = new Descendents();
+		d.ancestorKey = key;
+		d.keys = new int[emapa.cardinality()];
+		d.emapsIds = new ArrayList<List<String>>(d.keys.length);
+		IntIntMap slots = new IntIntMap(d.keys.length);
+		int n = 0;
+		for (int i = emapa.nextSetBit(0); i >= 0; i = emapa.nextSetBit(i + 1)) {
+			slots.put(i, n);
+			d.keys[n++] = keys[i];
+			d.emapsIds.add(new ArrayList<String>());
+		}
+
+		// follow the EMAPS DAG down from each of the term's EMAPS terms, noting the EMAPS
+		// terms reached under each EMAPA descendant
+		BitSet reached = new BitSet(keys.length);
+		for (int e = emapsOffsets[term]; e < emapsOffsets[term + 1]; e++) {
+			reached.or(closure(emapsTerms[e], childOffsets, children));
+		}
+		for (int s = reached.nextSetBit(0); s >= 0; s = reached.nextSetBit(s + 1)) {
+			int slot = slots.get(emapaOf[s], -1);
+			if (slot >= 0) {
+				d.emapsIds.get(slot).add(ids[s]);
+			}
+		}
+		return d;
+	}
+
+	// the descendants of each of the given EMAPA terms (in the same order), traversed in parallel
+	public Descendents[] getDescendents(int[] ancestorKeys) {
+		Descendents[] result = new Descendents[ancestorKeys.length];
+		IntStream.range(0, ancestorKeys.length).parallel().forEach(i -> result[i] = getDescendents(ancestorKeys[i]));
+		return result;
+	}
+
+	/*--- private methods ---*/
+
+	private EmapDag() {}
+
+	private int indexOf(int key) {
+		int index = indexes.get(key, -1);
+		if (index < 0) {
+			throw new IllegalArgumentException("Not an EMAPA or EMAPS term: " + key);
+		}
+		return index;
+	}
+
+	// indexes of the terms below (or above) 'term', not including it
+	private BitSet closure(int term, int[] offsets, int[] related) {
+		BitSet seen = new BitSet(keys.length);
+		int[] stack = new int[16];
+		int top = 0;
+		stack[top++] = term;
+		while (top > 0) {
+			int t = stack[--top];
+			for (int i = offsets[t]; i < offsets[t + 1]; i++) {
+				int r = related[i];
+				if (!seen.get(r)) {
+					seen.set(r);
+					if (top == stack.length) {
+						stack = Arrays.copyOf(stack, top * 2);
+					}
+					stack[top++] = r;
+				}
+			}
+		}
+		return seen;
+	}
+
+	private List<String> idsOf(BitSet termIndexes) {
+		List<String> result = new ArrayList<String>(termIndexes.cardinality());
+		for (int i = termIndexes.nextSetBit(0); i >= 0; i = termIndexes.nextSetBit(i + 1)) {
+			result.add(ids[i]);
+		}
+		return result;
+	}
+
+	private void loadTerms(SQLExecutor ex) throws Exception {
+		String query = "select t.term_key, t.primary_id, t.term, t.vocab_name, "
+			+ " e.start_stage, e.end_stage, e.stage "
+			+ "from term t left outer join term_emap e on (e.term_key = t.term_key) "
+			+ "where t.vocab_name in ('EMAPA', 'EMAPS') "
+			+ "order by t.term_key";
+		List<Integer> keyList = new ArrayList<Integer>();
+		List<String> idList = new ArrayList<String>();
+		List<String> termList = new ArrayList<String>();
+		List<Boolean> emapsList = new ArrayList<Boolean>();
+		List<int[]> stageList = new ArrayList<int[]>();
+
+		ResultSet rs = ex.executeProto(query);
+		StringPool pool = StringPool.getInstance();
+		while (rs.next()) {
+			boolean emaps = "EMAPS".equals(rs.getString("vocab_name"));
+			keyList.add(rs.getInt("term_key"));
+			idList.add(rs.getString("primary_id"));
+			termList.add(pool.intern(rs.getString("term")));
+			emapsList.add(emaps);
+			if (emaps) {
+				int stage = rs.getInt("stage");
+				stageList.add(new int[] { stage, stage });
+			} else {
+				stageList.add(new int[] { rs.getInt("start_stage"), rs.getInt("end_stage") });
+			}
+		}
+		rs.close();
+
+		int n = keyList.size();
+		indexes = new IntIntMap(n);
+		keys = new int[n];
+		ids = idList.toArray(new String[0]);
+		terms = termList.toArray(new String[0]);
+		isEmaps = new boolean[n];
+		startStages = new byte[n];
+		endStages = new byte[n];
+		emapaOf = new int[n];
+		Arrays.fill(emapaOf, -1);
+		int emapaCount = 0;
+		for (int i = 0; i < n; i++) {
+			keys[i] = keyList.get(i);
+			indexes.put(keys[i], i);
+			isEmaps[i] = emapsList.get(i);
+			startStages[i] = (byte) stageList.get(i)[0];
+			endStages[i] = (byte) stageList.get(i)[1];
+			if (!isEmaps[i]) {
+				emapaCount++;
+			}
+		}
+
+		// keys are read in order, so the EMAPA keys are already sorted
+		emapaKeys = new int[emapaCount];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			if (!isEmaps[i]) {
+				emapaKeys[e++] = keys[i];
+			}
+		}
+	}
+
+	// read the parent->child edges between known terms, as { parents, children, unique keys }
+	private int[][] loadEdges(SQLExecutor ex) throws Exception {
+		String query = "select tc.unique_key, tc.term_key, tc.child_term_key "
+			+ "from term_child tc join term t on (t.term_key = tc.term_key) "
+			+ "where t.vocab_name in ('EMAPA', 'EMAPS')";
+		int[] from = new int[1024];
+		int[] to = new int[1024];
+		int[] edgeKeys = new int[1024];
+		int count = 0;
+
+		ResultSet rs = ex.executeProto(query);
+		while (rs.next()) {
+			int parent = indexes.get(rs.getInt("term_key"), -1);
+			int child = indexes.get(rs.getInt("child_term_key"), -1);
+			if ((parent < 0) || (child < 0)) {
+				continue;
+			}
+			if (count == from.length) {
+				from = Arrays.copyOf(from, count * 2);
+				to = Arrays.copyOf(to, count * 2);
+				edgeKeys = Arrays.copyOf(edgeKeys, count * 2);
+			}
+			from[count] = parent;
+			to[count] = child;
+			edgeKeys[count] = rs.getInt("unique_key");
+			count++;
+		}
+		rs.close();
+		return new int[][] { Arrays.copyOf(from, count), Arrays.copyOf(to, count), Arrays.copyOf(edgeKeys, count) };
+	}
+
+	// read which EMAPA term each EMAPS term belongs to, and group the EMAPS terms by EMAPA term
+	private void loadEmapsMapping(SQLExecutor ex) throws Exception {
+		String query = "select emaps_child_term_key, emapa_term_key from term_emaps_child";
+		ResultSet rs = ex.executeProto(query);
+		while (rs.next()) {
+			int emaps = indexes.get(rs.getInt("emaps_child_term_key"), -1);
+			int emapa = indexes.get(rs.getInt("emapa_term_key"), -1);
+			if ((emaps >= 0) && (emapa >= 0) && isEmaps[emaps]) {
+				emapaOf[emaps] = emapa;
+			}
+		}
+		rs.close();
+
+		int[] counts = new int[keys.length];
+		for (int s = 0; s < keys.length; s++) {
+			if (emapaOf[s] >= 0) {
+				counts[emapaOf[s]]++;
+			}
+		}
+		emapsOffsets = offsetsFor(counts);
+		emapsTerms = new int[emapsOffsets[keys.length]];
+		int[] next = Arrays.copyOf(emapsOffsets, keys.length);
+		for (int s = 0; s < keys.length; s++) {
+			if (emapaOf[s] >= 0) {
+				emapsTerms[next[emapaOf[s]]++] = s;
+			}
+		}
+	}
+
+	// read term_descendent's unique key for each EMAPA ancestor->descendant pair, so edges
+	// built here keep the keys the per-range queries give them
+	private void loadDescendentEdgeKeys(SQLExecutor ex) throws Exception {
+		String query = "select td.unique_key, td.term_key, td.descendent_term_key "
+			+ "from term_descendent td join term t on (t.term_key = td.term_key) "
+			+ "where t.vocab_name = 'EMAPA'";
+		int[] from = new int[1024];
+		long[] edges = new long[1024];
+		int count = 0;
+
+		ResultSet rs = ex.executeProto(query);
+		while (rs.next()) {
+			int ancestor = indexes.get(rs.getInt("term_key"), -1);
+			if (ancestor < 0) {
+				continue;
+			}
+			if (count == from.length) {
+				from = Arrays.copyOf(from, count * 2);
+				edges = Arrays.copyOf(edges, count * 2);
+			}
+			from[count] = ancestor;
+			edges[count] = ((long) rs.getInt("descendent_term_key") << 32) | (rs.getInt("unique_key") & 0xffffffffL);
+			count++;
+		}
+		rs.close();
+
+		int[] counts = new int[keys.length];
+		for (int e = 0; e < count; e++) {
+			counts[from[e]]++;
+		}
+		descendentOffsets = offsetsFor(counts);
+		descendentEdges = new long[count];
+		int[] next = Arrays.copyOf(descendentOffsets, keys.length);
+		for (int e = 0; e < count; e++) {
+			descendentEdges[next[from[e]]++] = edges[e];
+		}
+		for (int t = 0; t < keys.length; t++) {
+			Arrays.sort(descendentEdges, descendentOffsets[t], descendentOffsets[t + 1]);
+		}
+	}
+
+	private boolean hasEmapsEdges(int[][] edges) {
+		for (int parent : edges[0]) {
+			if (isEmaps[parent]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// add, for each EMAPA edge and each stage, the edge between the parent's and child's
+	// EMAPS terms at that stage (where both exist)
+	private int[][] deriveEmapsEdges(int[][] edges) {
+		// EMAPA term index * 32 + stage -> EMAPS term index
+		IntIntMap emapsAtStage = new IntIntMap(keys.length);
+		for (int s = 0; s < keys.length; s++) {
+			if (emapaOf[s] >= 0) {
+				emapsAtStage.put(emapaOf[s] * 32 + startStages[s], s);
+			}
+		}
+
+		int count = edges[0].length;
+		int[] from = Arrays.copyOf(edges[0], count * 2 + 16);
+		int[] to = Arrays.copyOf(edges[1], count * 2 + 16);
+		int[] edgeKeys = Arrays.copyOf(edges[2], count * 2 + 16);
+		int total = count;
+		for (int e = 0; e < count; e++) {
+			int parent = edges[0][e];
+			int child = edges[1][e];
+			for (int i = emapsOffsets[child]; i < emapsOffsets[child + 1]; i++) {
+				int childEmaps = emapsTerms[i];
+				int parentEmaps = emapsAtStage.get(parent * 32 + startStages[childEmaps], -1);
+				if (parentEmaps < 0) {
+					continue;
+				}
+				if (total == from.length) {
+					from = Arrays.copyOf(from, total * 2);
+					to = Arrays.copyOf(to, total * 2);
+					edgeKeys = Arrays.copyOf(edgeKeys, total * 2);
+				}
+				from[total] = parentEmaps;
+				to[total] = childEmaps;
+				edgeKeys[total] = -1;
+				total++;
+			}
+		}
+		return new int[][] { Arrays.copyOf(from, total), Arrays.copyOf(to, total), Arrays.copyOf(edgeKeys, total) };
+	}
+
+	// group the edges by parent (for children) and by child (for parents)
+	private void buildEdges(int[][] edges) {
+		int[] from = edges[0];
+		int[] to = edges[1];
+		int count = from.length;
+
+		int[] childCounts = new int[keys.length];
+		int[] parentCounts = new int[keys.length];
+		for (int e = 0; e < count; e++) {
+			childCounts[from[e]]++;
+			parentCounts[to[e]]++;
+		}
+		childOffsets = offsetsFor(childCounts);
+		parentOffsets = offsetsFor(parentCounts);
+		children = new int[count];
+		childEdgeKeys = new int[count];
+		parents = new int[count];
+		int[] nextChild = Arrays.copyOf(childOffsets, keys.length);
+		int[] nextParent = Arrays.copyOf(parentOffsets, keys.length);
+		for (int e = 0; e < count; e++) {
+			int c = nextChild[from[e]]++;
+			children[c] = to[e];
+			childEdgeKeys[c] = edges[2][e];
+			parents[nextParent[to[e]]++] = from[e];
+		}
+	}
+
+	// offsets (with a final entry for the total) for groups of the given sizes
+	private static int[] offsetsFor(int[] counts) {
+		int[] offsets = new int[counts.length + 1];
+		for (int i = 0; i < counts.length; i++) {
+			offsets[i + 1] = offsets[i] + counts[i];
+		}
+		return offsets;
+	}
+}
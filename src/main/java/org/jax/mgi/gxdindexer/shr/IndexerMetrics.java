@@ -0,0 +1,317 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/* Is: the timing and throughput metrics for one indexer's run
+ * Has: a start and finish time, and for each phase of the run (cache loads, chunks and
+ *	their database time, document building, Solr adds, commits, optimizes), the number
+ *	of times it ran, the total and longest time, and the rows it handled; plus the
+ *	highest heap use seen while recording
+ * Does: collects timings from any number of threads, exposes them through JMX, and
+ *	renders them (for all indexers) as a JSON summary
+ * Notes: One instance per index name, shared by everything working on that index
+ *	(the indexer, its KeyRangeScanners and its SolrWriter).  Indexers may record
+ *	phases of their own besides the standard ones below.
+ *	Example Usage:
+ *		IndexerMetrics metrics = IndexerMetrics.forIndex("gxdResult");
+ *		long start = System.nanoTime();
+ *		... build documents ...
+ *		metrics.record(IndexerMetrics.DOC_BUILD, start, docs.size());
+ */
+public class IndexerMetrics implements IndexerMetricsMBean {
+
+	// standard phases
+	public static String CACHE_LOAD = "cacheLoad";		// getting a lookup (built, or shared)
+	public static String CHUNK = "chunk";				// one range of keys, from start to finish
+	public static String CHUNK_QUERY = "chunkQuery";	// database time within a range of keys
+	public static String DOC_BUILD = "docBuild";		// building Solr documents from rows read
+	public static String SOLR_ADD = "solrAdd";			// one batch sent to Solr (incl. retries)
+	public static String COMMIT = "commit";
+	public static String OPTIMIZE = "optimize";
+
+	private static Map<String,IndexerMetrics> instances = new LinkedHashMap<String,IndexerMetrics>();
+	private static Logger logger = LoggerFactory.getLogger(IndexerMetrics.class);
+
+	/*--- inner classes ---*/
+
+	/* Is: the totals for one phase
+	 */
+	private static class Phase {
+		LongAdder count = new LongAdder();
+		LongAdder nanos = new LongAdder();
+		LongAdder rows = new LongAdder();
+		AtomicLong maxNanos = new AtomicLong(0);
+	}
+
+	/*--- instance variables ---*/
+
+	private String indexName;
+	private volatile long startMs = 0;
+	private volatile long finishMs = 0;
+	private Map<String,Phase> phases = new ConcurrentHashMap<String,Phase>();
+	private List<String> phaseOrder = new ArrayList<String>();	// phases in the order first seen
+	private AtomicLong peakHeapBytes = new AtomicLong(0);
+
+	/*--- public methods ---*/
+
+	// get the metrics for 'indexName', creating them (and registering them with JMX) the
+	// first time they are asked for
+	public static synchronized IndexerMetrics forIndex(String indexName) {
+		IndexerMetrics metrics = instances.get(indexName);
+		if (metrics == null) {
+			metrics = new IndexerMetrics(indexName);
+			instances.put(indexName, metrics);
+			metrics.register();
+		}
+		return metrics;
+	}
+
+	// metrics for all the indexes that have started a run
+	public static synchronized List<IndexerMetrics> getStarted() {
+		List<IndexerMetrics> started = new ArrayList<IndexerMetrics>();
+		for (IndexerMetrics metrics : instances.values()) {
+			if (metrics.startMs > 0) {
+				started.add(metrics);
+			}
+		}
+		return started;
+	}
+
+	// render the metrics for 'indexes' (plus the process's peak heap use) as JSON
+	public static String toJson(Collection<IndexerMetrics> indexes) throws Exception {
+		Map<String,Object> summary = new LinkedHashMap<String,Object>();
+		summary.put("peakHeapMB", getProcessPeakHeapMB());
+		Map<String,Object> byIndex = new LinkedHashMap<String,Object>();
+		for (IndexerMetrics metrics : indexes) {
+			byIndex.put(metrics.indexName, metrics.toMap());
+		}
+		summary.put("indexes", byIndex);
+		return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(summary);
+	}
+
+	// the most heap (in MB) the JVM has used at once since it started, or since the last
+	// resetPeakHeap()
+	public static long getProcessPeakHeapMB() {
+		return processPeakHeapBytes() / (1024 * 1024);
+	}
+
+	// start measuring the JVM's peak heap use over again from now
+	public static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	// clear everything recorded so far, so the index can be measured over again (as when
+	// one process runs the same indexer more than once)
+	public void reset() {
+		synchronized (phaseOrder) {
+			phases.clear();
+			phaseOrder.clear();
+		}
+		peakHeapBytes.set(0);
+		startMs = 0;
+		finishMs = 0;
+	}
+
+	// note the start and finish of the indexer's run
+	public void start() {
+		startMs = System.currentTimeMillis();
+		finishMs = 0;
+		sampleHeap();
+	}
+
+	public void finish() {
+		finishMs = System.currentTimeMillis();
+		sampleHeap();
+	}
+
+	// record one run of 'phase', started at 'startNanos' (from System.nanoTime()) and
+	// just finished, which handled 'rows' rows (or documents)
+	public void record(String phase, long startNanos, long rows) {
+		add(phase, System.nanoTime() - startNanos, rows);
+	}
+
+	public void record(String phase, long startNanos) {
+		record(phase, startNanos, 0);
+	}
+
+	// record one run of 'phase' that took 'elapsedMs', for timings taken in ms
+	public void recordMs(String phase, long elapsedMs, long rows) {
+		add(phase, elapsedMs * 1000000L, rows);
+	}
+
+	// total ms spent in 'phase' (summed across threads)
+	public long getTotalMs(String phase) {
+		Phase p = phases.get(phase);
+		return (p == null) ? 0 : p.nanos.sum() / 1000000L;
+	}
+
+	/*--- IndexerMetricsMBean ---*/
+
+	@Override
+	public String getIndexName() {
+		return indexName;
+	}
+
+	@Override
+	public long getElapsedMs() {
+		if (startMs == 0) {
+			return 0;
+		}
+		return ((finishMs > 0) ? finishMs : System.currentTimeMillis()) - startMs;
+	}
+
+	@Override
+	public long getRowsRead() {
+		Phase p = phases.get(CHUNK);
+		return (p == null) ? 0 : p.rows.sum();
+	}
+
+	@Override
+	public long getRowsPerSecond() {
+		return (getRowsRead() * 1000L) / Math.max(1, getElapsedMs());
+	}
+
+	@Override
+	public long getDocsBuilt() {
+		Phase p = phases.get(DOC_BUILD);
+		return (p == null) ? 0 : p.rows.sum();
+	}
+
+	@Override
+	public long getPeakHeapMB() {
+		return peakHeapBytes.get() / (1024 * 1024);
+	}
+
+	@Override
+	public String[] getPhases() {
+		List<String> lines = new ArrayList<String>();
+		for (String name : getPhaseNames()) {
+			Phase p = phases.get(name);
+			lines.add(name + ": " + p.count.sum() + " times, " + (p.nanos.sum() / 1000000L) + " ms total, "
+				+ (p.maxNanos.get() / 1000000L) + " ms max, " + p.rows.sum() + " rows");
+		}
+		return lines.toArray(new String[0]);
+	}
+
+	@Override
+	public String getSummaryJson() {
+		try {
+			return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(toMap());
+		} catch (Exception e) {
+			return "{}";
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "IndexerMetrics[" + indexName + "]";
+	}
+
+	/*--- private methods ---*/
+
+	private IndexerMetrics(String indexName) {
+		this.indexName = indexName;
+	}
+
+	// make these metrics visible through JMX (a failure here only costs us the JMX view)
+	private void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("org.jax.mgi.gxdindexer:type=IndexerMetrics,name=" + indexName);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch (Exception e) {
+			logger.warn("Could not register JMX metrics for " + indexName + ": " + e.getMessage());
+		}
+	}
+
+	private void add(String phase, long nanos, long rows) {
+		Phase p = phases.get(phase);
+		if (p == null) {
+			synchronized (phaseOrder) {
+				p = phases.get(phase);
+				if (p == null) {
+					p = new Phase();
+					phases.put(phase, p);
+					phaseOrder.add(phase);
+				}
+			}
+		}
+		p.count.increment();
+		p.nanos.add(nanos);
+		p.rows.add(rows);
+		p.maxNanos.accumulateAndGet(nanos, Math::max);
+		sampleHeap();
+	}
+
+	private List<String> getPhaseNames() {
+		synchronized (phaseOrder) {
+			return new ArrayList<String>(phaseOrder);
+		}
+	}
+
+	// note the heap in use now, if it is the most we have seen
+	private void sampleHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		peakHeapBytes.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+	}
+
+	private Map<String,Object> toMap() {
+		Map<String,Object> map = new LinkedHashMap<String,Object>();
+		map.put("elapsedMs", getElapsedMs());
+		map.put("rowsRead", getRowsRead());
+		map.put("rowsPerSecond", getRowsPerSecond());
+		map.put("docsBuilt", getDocsBuilt());
+		map.put("peakHeapMB", getPeakHeapMB());
+
+		Map<String,Object> byPhase = new LinkedHashMap<String,Object>();
+		for (String name : getPhaseNames()) {
+			Phase p = phases.get(name);
+			Map<String,Object> phase = new LinkedHashMap<String,Object>();
+			long count = p.count.sum();
+			long totalMs = p.nanos.sum() / 1000000L;
+			phase.put("count", count);
+			phase.put("totalMs", totalMs);
+			phase.put("meanMs", (count == 0) ? 0 : totalMs / count);
+			phase.put("maxMs", p.maxNanos.get() / 1000000L);
+			phase.put("rows", p.rows.sum());
+			byPhase.put(name, phase);
+		}
+		map.put("phases", byPhase);
+		return map;
+	}
+
+	// the most heap the JVM has used at once (summed over the heap's memory pools)
+	private static long processPeakHeapBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ((pool.getType() == MemoryType.HEAP) && (pool.getPeakUsage() != null)) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
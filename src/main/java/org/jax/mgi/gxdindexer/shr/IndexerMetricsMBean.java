@@ -0,0 +1,29 @@
+package org.jax.mgi.gxdindexer.shr;
+
+/* Is: the JMX view of one indexer's IndexerMetrics (registered under
+ *	org.jax.mgi.gxdindexer:type=IndexerMetrics,name=<index name>)
+ */
+public interface IndexerMetricsMBean {
+	public String getIndexName();
+
+	// time since the indexer started (or its total run time, once finished)
+	public long getElapsedMs();
+
+	// rows read by the indexer's key range scans
+	public long getRowsRead();
+
+	// rows read per second of run time
+	public long getRowsPerSecond();
+
+	// documents built (as reported by indexers that time their document building)
+	public long getDocsBuilt();
+
+	// highest heap use seen while recording this indexer's phases
+	public long getPeakHeapMB();
+
+	// one line per phase: name, count, total and maximum ms, and rows
+	public String[] getPhases();
+
+	// the metrics as JSON, as written to the summary file at the end of a run
+	public String getSummaryJson();
+}
@@ -0,0 +1,274 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jax.mgi.gxdindexer.Indexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The IndexerScheduler runs a set of indexers together in one JVM, several at
+ * a time (as bin/buildIndexes does with one JVM per indexer).
+ *
+ * Indexers are started longest first, by their runtimes in earlier runs, which
+ * are kept in a history file ('scheduler.historyFile', which has no default so
+ * that each install keeps its own); those with no history are started first, as
+ * they may be the longest.  Without a history file, none is read or written.  An indexer is only started
+ * while the running ones leave room for its memory and connection budgets (see
+ * Indexer.getMemoryBudgetMB() and getConnectionBudget()) within the totals
+ * ('scheduler.totalMemoryMB', by default the JVM's maximum heap, and the size
+ * of the connection pool).  When the next indexer does not fit, a shorter one
+ * that does is started in its place; one too big to ever fit is started once
+ * nothing else is running.  A connection budget must count every connection the
+ * indexer holds at once (its own, its worker threads', and any other index's it
+ * fills), not just its own; one that falls short lets the scheduler start indexers
+ * that then wait on the pool.
+ *
+ * The history also records which shared lookups (see LookupRegistry) each
+ * indexer used.  A lookup used by more than one of the indexers being run is
+ * kept loaded until the last of them finishes, so they share it even when
+ * their runs do not overlap.
+ *
+ * @does Orders, admits, and times the indexers run by Main.
+ */
+
+public class IndexerScheduler {
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	// most indexers to run at once
+	private int maxRunning;
+
+	// memory (in MB) and connections shared by the running indexers
+	private long totalMemoryMB;
+	private int totalConnections;
+
+	// <index>.ms (runtime of its last successful run) and <index>.lookups (comma-separated)
+	private Properties history = new Properties();
+	private String historyFile;
+
+	public IndexerScheduler(int maxRunning) {
+		ConnectionPool pool = ConnectionPool.getInstance();
+		Properties props = pool.getProperties();
+
+		this.maxRunning = Math.max(1, maxRunning);
+		this.totalConnections = pool.getMaxSize();
+		this.totalMemoryMB = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+		String memory = props.getProperty("scheduler.totalMemoryMB", "").trim();
+		if (memory.length() > 0) {
+			try {
+				totalMemoryMB = Long.parseLong(memory);
+			} catch (NumberFormatException e) {
+				logger.error("Non-integer scheduler.totalMemoryMB: " + memory + "; using " + totalMemoryMB);
+			}
+		}
+		this.historyFile = props.getProperty("scheduler.historyFile", "").trim();
+		readHistory();
+	}
+
+	/**
+	 * Run the given indexers (by index name), returning once all have finished.
+	 * Each indexer's indexPassed tells whether it succeeded.
+	 */
+	public void run(Map<String,Indexer> indexers) throws InterruptedException {
+		List<String> pending = order(indexers.keySet());
+		logger.info("Scheduling " + pending + " (up to " + maxRunning + " at once, " + totalMemoryMB
+			+ " MB, " + totalConnections + " connections)");
+
+		// keep each lookup used by more than one of them until the last of those finishes
+		Map<String,Integer> lookupUsers = new HashMap<String,Integer>();
+		for (String name : pending) {
+			for (String lookup : getLookups(name)) {
+				Integer users = lookupUsers.get(lookup);
+				lookupUsers.put(lookup, (users == null) ? 1 : users + 1);
+			}
+		}
+		for (Map.Entry<String,Integer> entry : lookupUsers.entrySet()) {
+			if (entry.getValue() > 1) {
+				LookupRegistry.getInstance().keep(entry.getKey());
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(maxRunning);
+		CompletionService<String> completed = new ExecutorCompletionService<String>(executor);
+		Map<String,Long> startTimes = new HashMap<String,Long>();
+		long usedMemoryMB = 0;
+		int usedConnections = 0;
+
+		try {
+			while (!pending.isEmpty() || !startTimes.isEmpty()) {
+				// start whatever now fits, longest first
+				Iterator<String> it = pending.iterator();
+				while (it.hasNext() && (startTimes.size() < maxRunning)) {
+					String name = it.next();
+					Indexer indexer = indexers.get(name);
+					int memoryMB = indexer.getMemoryBudgetMB();
+					int connections = indexer.getConnectionBudget();
+					boolean fits = (usedMemoryMB + memoryMB <= totalMemoryMB)
+						&& (usedConnections + connections <= totalConnections);
+					if (!fits && !startTimes.isEmpty()) {
+						continue;
+					}
+					if (!fits) {
+						logger.warn(name + " needs " + memoryMB + " MB and " + connections
+							+ " connections, more than the scheduler allows; running it alone");
+					}
+					it.remove();
+					usedMemoryMB += memoryMB;
+					usedConnections += connections;
+					startTimes.put(name, System.currentTimeMillis());
+					logger.info("Starting " + name + " (" + memoryMB + " MB, " + connections + " connections; "
+						+ "now running " + startTimes.keySet() + ")");
+					start(completed, name, indexer);
+				}
+
+				// then wait for one to finish
+				String name;
+				try {
+					name = completed.take().get();
+				} catch (ExecutionException e) {
+					// each run catches everything it throws (see start()), so this can't happen
+					throw new IllegalStateException(e);
+				}
+
+				Indexer indexer = indexers.get(name);
+				long elapsedMs = System.currentTimeMillis() - startTimes.remove(name);
+				usedMemoryMB -= indexer.getMemoryBudgetMB();
+				usedConnections -= indexer.getConnectionBudget();
+				logger.info("Finished " + name + " in " + elapsedMs + " ms ("
+					+ (indexer.indexPassed ? "passed" : "failed") + ")");
+				recordRun(name, indexer, elapsedMs);
+
+				for (String lookup : getLookups(name)) {
+					Integer users = lookupUsers.get(lookup);
+					if ((users != null) && (users > 1)) {
+						lookupUsers.put(lookup, users - 1);
+					} else if (users != null) {
+						lookupUsers.remove(lookup);
+						LookupRegistry.getInstance().unkeep(lookup);
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			for (String lookup : lookupUsers.keySet()) {
+				LookupRegistry.getInstance().unkeep(lookup);
+			}
+			writeHistory();
+		}
+	}
+
+	/*--- private methods ---*/
+
+	// run the indexer on the executor, marking it failed if it throws (Indexer.run() catches
+	// its own exceptions, but not errors such as running out of memory)
+	private void start(CompletionService<String> completed, String name, Indexer indexer) {
+		completed.submit(() -> {
+			try {
+				indexer.run();
+			} catch (Throwable t) {
+				indexer.indexPassed = false;
+				logger.error("Indexer " + name + " failed", t);
+			}
+			return name;
+		});
+	}
+
+	// the given index names, longest (by the history) first, with those not yet timed before them
+	private List<String> order(Collection<String> names) {
+		List<String> ordered = new ArrayList<String>(names);
+		Collections.sort(ordered, (a, b) -> {
+			int byTime = Long.compare(getRuntimeMs(b), getRuntimeMs(a));
+			return (byTime != 0) ? byTime : a.compareTo(b);
+		});
+		return ordered;
+	}
+
+	// runtime of the named index's last successful run, or Long.MAX_VALUE if unknown
+	private long getRuntimeMs(String name) {
+		String ms = history.getProperty(name + ".ms");
+		if (ms != null) {
+			try {
+				return Long.parseLong(ms.trim());
+			} catch (NumberFormatException e) {}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	// the shared lookups the named index used in its last run
+	private List<String> getLookups(String name) {
+		String lookups = history.getProperty(name + ".lookups", "").trim();
+		if (lookups.length() == 0) {
+			return Collections.emptyList();
+		}
+		return Arrays.asList(lookups.split(","));
+	}
+
+	// note a finished run in the history (its runtime only if it succeeded, as a failed run
+	// may have stopped early)
+	private synchronized void recordRun(String name, Indexer indexer, long elapsedMs) {
+		if (indexer.indexPassed) {
+			history.setProperty(name + ".ms", "" + elapsedMs);
+		}
+		if (!indexer.getUsedLookups().isEmpty()) {
+			history.setProperty(name + ".lookups", String.join(",", indexer.getUsedLookups()));
+		}
+	}
+
+	private void readHistory() {
+		if (historyFile.isEmpty()) {
+			logger.warn("No scheduler.historyFile; indexers will be ordered without their earlier runtimes");
+			return;
+		}
+		File file = new File(historyFile);
+		if (!file.exists()) {
+			logger.info("No scheduling history in " + historyFile + " yet");
+			return;
+		}
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				history.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			logger.error("Failed to read scheduling history from " + historyFile, e);
+		}
+	}
+
+	private synchronized void writeHistory() {
+		if (historyFile.isEmpty()) {
+			return;
+		}
+		try {
+			OutputStream out = new FileOutputStream(historyFile);
+			try {
+				history.store(out, "gxdindexer runtimes (ms) and shared lookups, by index");
+			} finally {
+				out.close();
+			}
+			logger.info("Wrote scheduling history to " + historyFile);
+		} catch (Exception e) {
+			logger.error("Failed to write scheduling history to " + historyFile, e);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.util.Arrays;
+
+/* Is: a map from (int) database keys to int values, without boxing
+ * Has: parallel arrays of keys and values, addressed by open addressing (linear probing)
+ * Does: puts and looks up values by key, growing as needed
+ * Notes: Integer.MIN_VALUE marks an empty slot, so may not be used as a key (database
+ *	keys are never negative).  Not synchronized; fill it on one thread, then it may be
+ *	read from any number of threads.
+ */
+public class IntIntMap {
+	/*--- static variables ---*/
+	private static int EMPTY = Integer.MIN_VALUE;
+
+	/*--- instance variables ---*/
+	private int[] keys;
+	private int[] values;
+	private int size = 0;
+	private int mask;
+	private int shift;
+
+	/*--- public methods ---*/
+
+	public IntIntMap() {
+		this(16);
+	}
+
+	// build a map sized to hold 'expectedSize' entries without growing
+	public IntIntMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity = capacity * 2;
+		}
+		allocate(capacity);
+	}
+
+	// map 'key' to 'value', replacing any value it had
+	public void put(int key, int value) {
+		if (key == EMPTY) {
+			throw new IllegalArgumentException("Invalid key: " + key);
+		}
+		int slot = slotFor(key);
+		if (keys[slot] == EMPTY) {
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+		if (size > keys.length * 3 / 4) {
+			rehash(keys.length * 2);
+		}
+	}
+
+	// return the value for 'key', or 'defaultValue' if it has none
+	public int get(int key, int defaultValue) {
+		if (key == EMPTY) {
+			return defaultValue;
+		}
+		int slot = slotFor(key);
+		if (keys[slot] == EMPTY) {
+			return defaultValue;
+		}
+		return values[slot];
+	}
+
+	public boolean containsKey(int key) {
+		return (key != EMPTY) && (keys[slotFor(key)] != EMPTY);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*--- private methods ---*/
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new int[capacity];
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+	}
+
+	// find the slot holding 'key', or the empty slot where it would go
+	private int slotFor(int key) {
+		// take the high bits of a multiplicative hash, as database keys are often sequential
+		int slot = (key * 0x9E3779B9) >>> shift;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = slotFor(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.util.Arrays;
+
+/* Is: a map from (int) database keys to String values, without boxing the keys
+ * Has: an IntIntMap from each key to either a position in an array of values, or (for
+ *	columns with few distinct values) the ID of the value in a StringTable
+ * Does: puts and looks up values by key, given as an int or as a String from a
+ *	ResultSet or document field
+ * Notes: Not synchronized; fill it on one thread, then it may be read from any number
+ *	of threads.  Keys that are not integers are never found.
+ *	Example Usage:
+ *		StringTable locations = new StringTable();
+ *		IntStringMap chromosome = new IntStringMap(locations);	// dictionary-encoded
+ *		IntStringMap symbol = new IntStringMap();		// one value per key
+ *		chromosome.put(rs.getInt("marker_key"), rs.getString("chromosome"));
+ *		...
+ *		String chr = chromosome.get(markerKey);
+ */
+public class IntStringMap {
+	/*--- static variables ---*/
+	private static int MISSING = Integer.MIN_VALUE;
+
+	/*--- instance variables ---*/
+
+	// key -> position in 'values', or key -> ID in 'table' if encoded
+	private IntIntMap index = new IntIntMap();
+
+	// values by position (when not encoded)
+	private String[] values = null;
+
+	// dictionary of values (when encoded); may be shared by several maps
+	private StringTable table = null;
+
+	/*--- public methods ---*/
+
+	// build a map that keeps each key's value
+	public IntStringMap() {
+		this.values = new String[16];
+	}
+
+	// build a map that stores each value as its ID in 'table'
+	public IntStringMap(StringTable table) {
+		this.table = table;
+	}
+
+	// map 'key' to 'value' (which may be null), replacing any value it had
+	public void put(int key, String value) {
+		if (table != null) {
+			index.put(key, table.add(value));
+			return;
+		}
+		int position = index.get(key, MISSING);
+		if (position == MISSING) {
+			position = index.size();
+			if (position == values.length) {
+				values = Arrays.copyOf(values, values.length * 2);
+			}
+			index.put(key, position);
+		}
+		values[position] = value;
+	}
+
+	// return the value for 'key', or null if it has none
+	public String get(int key) {
+		int position = index.get(key, MISSING);
+		if (position == MISSING) {
+			return null;
+		}
+		if (table != null) {
+			return table.get(position);
+		}
+		return values[position];
+	}
+
+	// convenience wrapper for keys read as Strings
+	public String get(String key) {
+		int intKey = parseKey(key);
+		if (intKey == MISSING) {
+			return null;
+		}
+		return get(intKey);
+	}
+
+	public boolean containsKey(int key) {
+		return index.containsKey(key);
+	}
+
+	public boolean containsKey(String key) {
+		int intKey = parseKey(key);
+		return (intKey != MISSING) && index.containsKey(intKey);
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	/*--- private methods ---*/
+
+	// return 'key' as an int, or MISSING if it is not an integer
+	private static int parseKey(String key) {
+		if (key == null) {
+			return MISSING;
+		}
+		try {
+			return Integer.parseInt(key);
+		} catch (NumberFormatException e) {
+			return MISSING;
+		}
+	}
+}
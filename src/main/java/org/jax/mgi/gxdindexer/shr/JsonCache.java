@@ -0,0 +1,68 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * A JsonCache writes objects as JSON through one pre-built ObjectWriter, and
+ * remembers the JSON by a key that the caller builds from everything the
+ * object's JSON depends on.  Objects with the same key then share one String
+ * rather than each being serialized again, so an object must not change once
+ * it has been written.
+ *
+ * Once the cache holds 'maxEntries' strings, objects with new keys are still
+ * written, just not remembered.  Counts of lookups and hits are kept for the
+ * log.
+ *
+ * @does Serializes repeated objects as JSON once, safely from any number of threads.
+ */
+
+public class JsonCache {
+
+	private ObjectWriter writer;
+	private ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<String, String>();
+	private AtomicInteger entries = new AtomicInteger(0);
+	private int maxEntries;
+
+	// statistics
+	private LongAdder lookups = new LongAdder();
+	private LongAdder hits = new LongAdder();
+
+	public JsonCache(ObjectWriter writer, int maxEntries) {
+		this.writer = writer;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Return the JSON for 'value', whose content is identified by 'key'
+	 * (written now unless an object with the same key was written before).
+	 */
+	public String toJson(String key, Object value) throws JsonProcessingException {
+		lookups.increment();
+		String json = cache.get(key);
+		if (json != null) {
+			hits.increment();
+			return json;
+		}
+		json = writer.writeValueAsString(value);
+		if (entries.get() < maxEntries) {
+			String earlier = cache.putIfAbsent(key, json);
+			if (earlier == null) {
+				entries.incrementAndGet();
+			} else {
+				json = earlier;
+			}
+		}
+		return json;
+	}
+
+	public String getSummary() {
+		long lookupCount = lookups.sum();
+		return "JSON cache: " + entries.get() + " entries, " + lookupCount + " lookups, "
+			+ String.format("%.1f", (lookupCount == 0) ? 0.0 : (hits.sum() * 100.0 / lookupCount)) + "% hits";
+	}
+}
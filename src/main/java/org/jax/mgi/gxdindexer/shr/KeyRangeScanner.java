@@ -0,0 +1,439 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/* Is: a scanner that walks the keys of a table in chunks, for indexers that process
+ *	their data one range of keys at a time
+ * Has: a key column (and optional filter) to scan, a target number of rows per range
+ *	(fixed, or chosen before each range by a ChunkSizeController), and a number of
+ *	threads to process ranges with
+ * Does: finds range boundaries from the actual keys (so empty stretches of the key space
+ *	cost nothing), hands each range to a RangeHandler (serially or in parallel), and
+ *	logs the time taken for each range
+ * Notes: Ranges follow the convention used throughout the indexers:  a range includes
+ *	keys > start and <= end.  With a controller, the keys are first split into small
+ *	grains, and each range is built from as many grains as the controller asks for.
+ *
+ * Example Usage:
+ *	KeyRangeScanner scanner = new KeyRangeScanner(ex, "expression_imagepane", "imagepane_key");
+ *	scanner.setTargetRows(15000);
+ *	scanner.scan((start, end) -> { ... process keys > start and <= end ... });
+ */
+public class KeyRangeScanner {
+
+	/* Is: the code that processes one range of keys
+	 */
+	public interface RangeHandler {
+		// process keys > start and <= end
+		public void process(int start, int end) throws Exception;
+	}
+
+	/* Is: one range of keys (> start and <= end) and what we know about it
+	 */
+	public static class KeyRange {
+		public int start;
+		public int end;
+		public int rows;			// rows found for these keys when the ranges were computed
+		public long elapsedMs = -1;	// time taken to process the range (-1 if not yet processed)
+
+		public KeyRange(int start, int end, int rows) {
+			this.start = start;
+			this.end = end;
+			this.rows = rows;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + start + ".." + end + "]";
+		}
+	}
+
+	/*--- instance variables ---*/
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private SQLExecutor ex;
+	private String table;
+	private String keyColumn;
+	private String where = null;
+	private int targetRows = 100000;
+	private int threads = 1;
+	private ChunkSizeController controller = null;
+	private IndexerMetrics metrics = null;
+	private List<KeyRange> grains = null;	// smallest ranges we can hand out
+	private int nextGrain = 0;				// index of the next grain to hand out
+	private boolean fixedRanges = false;	// true if grains were given to us (and so are never joined)
+	private volatile boolean failed = false;
+
+	/*--- public methods ---*/
+
+	// scan 'keyColumn' of 'table' (which may also be a join or a parenthesized, aliased
+	// subquery), using 'ex' to look up the range boundaries
+	public KeyRangeScanner(SQLExecutor ex, String table, String keyColumn) {
+		this.ex = ex;
+		this.table = table;
+		this.keyColumn = keyColumn;
+	}
+
+	// scan only the given ranges (as-is), rather than ranges computed from a table; 'label'
+	// identifies them in log messages
+	public KeyRangeScanner(String label, List<KeyRange> ranges) {
+		this.table = label;
+		this.keyColumn = "key";
+		this.grains = ranges;
+		this.fixedRanges = true;
+	}
+
+	// group the (sorted) 'keys' into ranges, joining neighboring keys into one range when
+	// they are within 'maxGap' of each other (so each range may also include some keys
+	// that are not in the list)
+	public static List<KeyRange> rangesForKeys(List<Integer> keys, int maxGap) {
+		List<KeyRange> ranges = new ArrayList<KeyRange>();
+		KeyRange current = null;
+		for (Integer key : keys) {
+			if ((current != null) && (key <= current.end)) {
+				continue;
+			} else if ((current != null) && (key - current.end <= maxGap)) {
+				current.end = key;
+				current.rows++;
+			} else {
+				current = new KeyRange(key - 1, key, 1);
+				ranges.add(current);
+			}
+		}
+		return ranges;
+	}
+
+	// only scan keys for rows matching this SQL condition
+	public KeyRangeScanner where(String condition) {
+		this.where = condition;
+		resetRanges();
+		return this;
+	}
+
+	// aim for (at most) this many rows in each range
+	public KeyRangeScanner setTargetRows(int targetRows) {
+		this.targetRows = Math.max(1, targetRows);
+		resetRanges();
+		return this;
+	}
+
+	// shrink the row target, if needed, so that one range of rows (at roughly 'bytesPerRow'
+	// each) fits within 'heapFraction' of the maximum heap, divided among our threads
+	public KeyRangeScanner setMemoryTarget(double heapFraction, int bytesPerRow) {
+		long budget = (long) (Runtime.getRuntime().maxMemory() * heapFraction) / threads;
+		long rowsForBudget = budget / Math.max(1, bytesPerRow);
+		if (rowsForBudget < targetRows) {
+			logger.info("Reducing target rows for " + table + " from " + targetRows + " to " + rowsForBudget
+				+ " to fit memory target");
+			setTargetRows((int) rowsForBudget);
+		}
+		return this;
+	}
+
+	// process this many ranges at once (handlers must then be thread-safe, and should use
+	// their own SQLExecutor rather than a shared one)
+	public KeyRangeScanner setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	// let 'controller' pick the number of rows in each range (rather than the fixed target),
+	// based on how the previous ranges went
+	public KeyRangeScanner setController(ChunkSizeController controller) {
+		this.controller = controller;
+		resetRanges();
+		return this;
+	}
+
+	// record the time, database time, and rows of each range in 'metrics'
+	public KeyRangeScanner setMetrics(IndexerMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	// get the ranges to be scanned, computing them the first time through; with a
+	// controller, these are the grains that the actual ranges are built from
+	public List<KeyRange> getRanges() throws Exception {
+		if (grains == null) {
+			int rowsPerGrain = (controller == null) ? targetRows : controller.getMinRows();
+			grains = computeRanges(rowsPerGrain);
+		}
+		return grains;
+	}
+
+	// get the total number of rows to be scanned
+	public int getRowCount() throws Exception {
+		int rows = 0;
+		for (KeyRange grain : getRanges()) {
+			rows += grain.rows;
+		}
+		return rows;
+	}
+
+	// get the largest key in the scan (0 if there are no keys)
+	public int getMaxKey() throws Exception {
+		List<KeyRange> r = getRanges();
+		if (r.isEmpty()) {
+			return 0;
+		}
+		return r.get(r.size() - 1).end;
+	}
+
+	// run 'handler' for each range, returning once all ranges are processed; rethrows the
+	// first failure from any range
+	public void scan(RangeHandler handler) throws Exception {
+		getRanges();
+		List<KeyRange> scanned = Collections.synchronizedList(new ArrayList<KeyRange>());
+		nextGrain = 0;
+		failed = false;
+		long scanStart = System.currentTimeMillis();
+
+		if (threads <= 1) {
+			KeyRange range;
+			while ((range = nextRange()) != null) {
+				checkInterrupted();
+				process(range, handler);
+				scanned.add(range);
+			}
+		} else {
+			// each worker takes the next range as soon as it finishes one
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			try {
+				for (int i = 0; i < threads; i++) {
+					futures.add(pool.submit(() -> {
+						try {
+							KeyRange range;
+							while ((range = nextRange()) != null) {
+								checkInterrupted();
+								process(range, handler);
+								scanned.add(range);
+							}
+						} catch (Exception e) {
+							failed = true;
+							throw e;
+						}
+						return null;
+					}));
+				}
+				pool.shutdown();
+				for (Future<Void> f : futures) {
+					try {
+						f.get();
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof Exception) {
+							throw (Exception) e.getCause();
+						}
+						throw e;
+					}
+				}
+			} finally {
+				// stop the workers, and wait for them, so none is still using a connection
+				// once we return
+				pool.shutdownNow();
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+		}
+		logSummary(scanned, System.currentTimeMillis() - scanStart);
+	}
+
+	// start scanning in a background thread (so the caller can consume what the handlers
+	// produce); the returned Future completes (or fails) when scan() would return.  Once
+	// cancelled, the scan stops before its next range, and get() waits for that (so the
+	// handlers' connections can then be released safely) before throwing
+	// CancellationException.
+	public Future<Void> scanInBackground(RangeHandler handler) {
+		ExecutorService coordinator = Executors.newSingleThreadExecutor();
+		Future<Void> f = coordinator.submit(() -> {
+			scan(handler);
+			return null;
+		});
+		coordinator.shutdown();
+		return new BackgroundScan(f, coordinator);
+	}
+
+	@Override
+	public String toString() {
+		return "[KeyRangeScanner " + table + "." + keyColumn + "]";
+	}
+
+	/*--- private methods ---*/
+
+	// give up on the scan if its thread has been interrupted (cancelled)
+	private void checkInterrupted() throws InterruptedException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedException("scan of " + this + " cancelled");
+		}
+	}
+
+	// split the keys into buckets of 'rowsPerRange' rows each (in key order), and turn each
+	// bucket into a range that picks up where the previous one left off
+	private List<KeyRange> computeRanges(int rowsPerRange) throws Exception {
+		String whereClause = "";
+		if (where != null) {
+			whereClause = " where " + where;
+		}
+		String cmd = "select min(scan_key) as min_key, max(scan_key) as max_key, count(1) as row_count "
+			+ "from (select " + keyColumn + " as scan_key, "
+			+ "  (row_number() over (order by " + keyColumn + ") - 1) / " + rowsPerRange + " as bucket "
+			+ "  from " + table + whereClause + ") keys "
+			+ "group by bucket "
+			+ "order by bucket";
+
+		List<KeyRange> computed = new ArrayList<KeyRange>();
+		ResultSet rs = ex.executeProto(cmd);
+		Integer previousEnd = null;
+		int totalRows = 0;
+		while (rs.next()) {
+			int minKey = rs.getInt("min_key");
+			int maxKey = rs.getInt("max_key");
+			int rows = rs.getInt("row_count");
+			int start = (previousEnd == null) ? minKey - 1 : previousEnd;
+
+			// a key with more than targetRows rows may fill a bucket it already started
+			if (maxKey > start) {
+				computed.add(new KeyRange(start, maxKey, rows));
+				previousEnd = maxKey;
+			} else if (!computed.isEmpty()) {
+				computed.get(computed.size() - 1).rows += rows;
+			}
+			totalRows += rows;
+		}
+		rs.close();
+
+		logger.info(this.toString() + " found " + totalRows + " rows in " + computed.size()
+			+ " ranges of up to " + rowsPerRange + " rows");
+		return computed;
+	}
+
+	// forget the computed ranges (if any), so they are recomputed with new settings
+	private void resetRanges() {
+		if (!fixedRanges) {
+			grains = null;
+		}
+	}
+
+	// get the next range to process (null once all are handed out, or after a failure),
+	// joining grains until we reach the number of rows the controller (if any) asks for
+	private synchronized KeyRange nextRange() {
+		if (failed || (nextGrain >= grains.size())) {
+			return null;
+		}
+		int target = (controller == null) ? targetRows : controller.getChunkRows();
+
+		KeyRange first = grains.get(nextGrain++);
+		KeyRange range = new KeyRange(first.start, first.end, first.rows);
+		while (!fixedRanges && (nextGrain < grains.size()) && (range.rows + grains.get(nextGrain).rows <= target)) {
+			KeyRange grain = grains.get(nextGrain++);
+			range.end = grain.end;
+			range.rows += grain.rows;
+		}
+		return range;
+	}
+
+	// process one range, timing it (and reporting to the controller, if any)
+	private void process(KeyRange range, RangeHandler handler) throws Exception {
+		long start = System.currentTimeMillis();
+		long dbStart = SQLExecutor.getThreadTiming();
+		handler.process(range.start, range.end);
+		range.elapsedMs = System.currentTimeMillis() - start;
+		long dbMs = SQLExecutor.getThreadTiming() - dbStart;
+
+		if (controller != null) {
+			controller.record(range.rows, range.elapsedMs, dbMs);
+		}
+		if (metrics != null) {
+			metrics.recordMs(IndexerMetrics.CHUNK, range.elapsedMs, range.rows);
+			metrics.recordMs(IndexerMetrics.CHUNK_QUERY, dbMs, 0);
+		}
+
+		logger.info("Processed " + table + " keys " + range + ": " + range.rows + " rows in "
+			+ range.elapsedMs + " ms (" + rowsPerSecond(range.rows, range.elapsedMs) + " rows/sec)");
+	}
+
+	// report the overall time and the slowest range
+	private void logSummary(List<KeyRange> scanned, long elapsedMs) {
+		if (controller != null) {
+			logger.info("Final chunk size: " + controller);
+		}
+		KeyRange slowest = null;
+		int totalRows = 0;
+		for (KeyRange range : scanned) {
+			totalRows += range.rows;
+			if ((slowest == null) || (range.elapsedMs > slowest.elapsedMs)) {
+				slowest = range;
+			}
+		}
+		String msg = "Scanned " + scanned.size() + " ranges of " + table + " (" + totalRows + " rows) in "
+			+ elapsedMs + " ms with " + threads + " thread(s), " + rowsPerSecond(totalRows, elapsedMs) + " rows/sec";
+		if (slowest != null) {
+			msg = msg + "; slowest range " + slowest + " took " + slowest.elapsedMs + " ms";
+		}
+		logger.info(msg);
+	}
+
+	private long rowsPerSecond(int rows, long elapsedMs) {
+		return (rows * 1000L) / Math.max(1, elapsedMs);
+	}
+
+	/* Is: the Future for a scan started by scanInBackground()
+	 * Does: as the coordinator's Future, except that get() on a cancelled scan waits
+	 *	for the scan to stop
+	 */
+	private static class BackgroundScan implements Future<Void> {
+		private Future<Void> scan;
+		private ExecutorService coordinator;
+
+		BackgroundScan(Future<Void> scan, ExecutorService coordinator) {
+			this.scan = scan;
+			this.coordinator = coordinator;
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return scan.cancel(mayInterruptIfRunning);
+		}
+
+		public boolean isCancelled() {
+			return scan.isCancelled();
+		}
+
+		public boolean isDone() {
+			return scan.isDone();
+		}
+
+		public Void get() throws InterruptedException, ExecutionException {
+			if (scan.isCancelled()) {
+				coordinator.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				throw new CancellationException();
+			}
+			return scan.get();
+		}
+
+		public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (scan.isCancelled()) {
+				if (!coordinator.awaitTermination(timeout, unit)) {
+					throw new TimeoutException();
+				}
+				throw new CancellationException();
+			}
+			return scan.get(timeout, unit);
+		}
+	}
+}
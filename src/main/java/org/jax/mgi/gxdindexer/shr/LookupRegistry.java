@@ -0,0 +1,153 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The LookupRegistry is a process-wide set of named, read-only lookups (caches
+ * and maps) that several indexers build with identical queries.
+ *
+ * Each lookup is loaded once per JVM, by the first indexer to ask for it;
+ * indexers asking for it while that load is in flight wait for it rather than
+ * running the same queries again.  Every acquire() must be matched by a
+ * release() once the indexer is done with the lookup, and the lookup is
+ * dropped (so its memory can be reclaimed) when the last one is released.
+ *
+ * A lookup may also be kept (see keep()), so that it stays loaded between
+ * indexers whose runs do not overlap; it is dropped once it is no longer kept
+ * and has no holders.
+ *
+ * A load that fails is not kept, so a later acquire() will try it again.
+ * Lookups are shared between threads, so they must not be modified once loaded.
+ *
+ * @does Loads, shares, and frees lookups used by more than one indexer.
+ */
+
+public class LookupRegistry {
+
+	/*
+	 * Builds one lookup for the registry.
+	 */
+	public interface Loader<T> {
+		T load() throws Exception;
+	}
+
+	// one named lookup:  its (possibly in-flight) load and the number of holders
+	private static class Entry {
+		FutureTask<Object> load;
+		int holders = 0;
+	}
+
+	private static LookupRegistry instance = null;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	// lookup name -> entry, for lookups currently held by at least one indexer (or kept)
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	// names of lookups to keep loaded even while no indexer holds them
+	private Set<String> kept = new HashSet<String>();
+
+	/**
+	 * Get the shared registry, creating it the first time this is called.
+	 */
+	public static synchronized LookupRegistry getInstance() {
+		if (instance == null) {
+			instance = new LookupRegistry();
+		}
+		return instance;
+	}
+
+	private LookupRegistry() {}
+
+	/**
+	 * Get the lookup with the given name, using 'loader' to build it if no
+	 * one holds it yet, or waiting for it if another thread is building it.
+	 * The caller must release(name) once done with it.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T acquire(String name, Loader<T> loader) throws Exception {
+		Entry entry;
+		boolean loadHere = false;
+		synchronized (this) {
+			entry = entries.get(name);
+			if (entry == null) {
+				entry = new Entry();
+				entry.load = new FutureTask<Object>(() -> loader.load());
+				entries.put(name, entry);
+				loadHere = true;
+			}
+			entry.holders++;
+		}
+
+		if (loadHere) {
+			long startTime = System.currentTimeMillis();
+			entry.load.run();
+			logger.info("Loaded shared lookup " + name + " in "
+				+ (System.currentTimeMillis() - startTime) + " ms");
+		} else {
+			logger.info("Using shared lookup " + name);
+		}
+
+		try {
+			return (T) entry.load.get();
+		} catch (ExecutionException e) {
+			// forget the failed load, so the next caller tries again
+			synchronized (this) {
+				entry.holders--;
+				if (entries.get(name) == entry) {
+					entries.remove(name);
+				}
+			}
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Give up one hold on the named lookup, dropping it from the registry if
+	 * that was the last one.
+	 */
+	public synchronized void release(String name) {
+		Entry entry = entries.get(name);
+		if (entry == null) {
+			return;
+		}
+		entry.holders--;
+		if ((entry.holders <= 0) && !kept.contains(name)) {
+			entries.remove(name);
+			logger.info("Released shared lookup " + name);
+		}
+	}
+
+	/**
+	 * Keep the named lookup loaded (once some indexer has loaded it) even while
+	 * no indexer holds it, until unkeep(name) is called.
+	 */
+	public synchronized void keep(String name) {
+		kept.add(name);
+	}
+
+	/**
+	 * Stop keeping the named lookup, dropping it now if no indexer holds it.
+	 */
+	public synchronized void unkeep(String name) {
+		if (!kept.remove(name)) {
+			return;
+		}
+		Entry entry = entries.get(name);
+		if ((entry != null) && (entry.holders <= 0)) {
+			entries.remove(name);
+			logger.info("Released kept lookup " + name);
+		}
+	}
+}
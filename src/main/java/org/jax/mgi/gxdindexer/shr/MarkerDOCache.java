@@ -1,5 +1,8 @@
 package org.jax.mgi.gxdindexer.shr;
 
+import java.util.List;
+import java.util.Map;
+
 /* Is: a TermAssociationCache that maps from each mouse marker key to a list of associated DO header terms
  */
 public class MarkerDOCache extends TermAssociationCache {
@@ -23,4 +26,9 @@ public class MarkerDOCache extends TermAssociationCache {
 			+ "order by 1, 2";
 		this.populate(cmd);
 	}
+
+	// build the cache from the given terms (by marker key), rather than the database
+	MarkerDOCache(Map<Integer,List<String>> termsByKey) {
+		this.populate(termsByKey);
+	}
 }
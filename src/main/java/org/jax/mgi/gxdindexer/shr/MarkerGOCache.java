@@ -2,6 +2,7 @@ package org.jax.mgi.gxdindexer.shr;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
 import java.sql.ResultSet;
@@ -9,10 +10,11 @@ import java.sql.ResultSet;
 /* Is: a TermAssociationCache that maps from each mouse marker key to a list of associated GO header terms
  */
 public class MarkerGOCache extends TermAssociationCache {
-	// sets of possible headers for each DAG
-	private Set<String> ccHeaders = null;	// cellular component
-	private Set<String> bpHeaders = null;	// biological process
-	private Set<String> mfHeaders = null;	// molecular function
+	// sets of possible headers for each DAG (loaded with the cache, as documents may be
+	// built by several threads at once, none of which should go to the database)
+	private final Set<String> ccHeaders;	// cellular component
+	private final Set<String> bpHeaders;	// biological process
+	private final Set<String> mfHeaders;	// molecular function
 
 	// initialize this cache upon instantiation of the object, propagating any Exception
 	// raised in the initialization process
@@ -26,44 +28,51 @@ public class MarkerGOCache extends TermAssociationCache {
 			+ " and c.value > 0 "
 			+ "order by 1, 2";
 		this.populate(cmd);
-	}
 
-	// populate the three caches of GO header terms (one per DAG), so we
-	// can filter out an individual marker's GO headers into the categories
-	private void loadFilterCaches() throws Exception {
-		bpHeaders = new HashSet<String>();
-		ccHeaders = new HashSet<String>();
-		mfHeaders = new HashSet<String>();
+		// populate the three caches of GO header terms (one per DAG), so we
+		// can filter out an individual marker's GO headers into the categories
+		this.bpHeaders = new HashSet<String>();
+		this.ccHeaders = new HashSet<String>();
+		this.mfHeaders = new HashSet<String>();
 
-		String cmd = "select heading_abbreviation, grid_name "
+		String headerCmd = "select heading_abbreviation, grid_name "
 			+ "from marker_grid_heading "
 			+ "where grid_name in ('Molecular Function', 'Cellular Component', 'Biological Process')";
 
 		SQLExecutor sql = new SQLExecutor();
-		ResultSet rs = sql.executeProto(cmd, cursorLimit);
-		while (rs.next()) {
-			String grid = rs.getString("grid_name");
-			String heading = rs.getString("heading_abbreviation");
+		try {
+			ResultSet rs = sql.executeProto(headerCmd, cursorLimit);
+			while (rs.next()) {
+				String grid = rs.getString("grid_name");
+				String heading = rs.getString("heading_abbreviation");
 
-			if ("Molecular Function".equals(grid)) {
-				mfHeaders.add(heading);
-			} else if ("Biological Process".equals(grid)) {
-				bpHeaders.add(heading);
-			} else {
-				ccHeaders.add(heading);
+				if ("Molecular Function".equals(grid)) {
+					mfHeaders.add(heading);
+				} else if ("Biological Process".equals(grid)) {
+					bpHeaders.add(heading);
+				} else {
+					ccHeaders.add(heading);
+				}
 			}
+			rs.close();
+		} finally {
+			sql.cleanup();
 		}
-		rs.close();
+	}
+
+	// build the cache from the given terms (by marker key) and the headers of each DAG,
+	// rather than the database
+	MarkerGOCache(Map<Integer,List<String>> termsByKey, Set<String> bpHeaders,
+			Set<String> ccHeaders, Set<String> mfHeaders) {
+		this.populate(termsByKey);
+		this.ccHeaders = ccHeaders;
+		this.mfHeaders = mfHeaders;
+		this.bpHeaders = bpHeaders;
 	}
 
 	// look up the full set of GO headers for 'markerKey' and filter it down
 	// to return only those appropriate for the specified DAG
 	private List<String> filter(String markerKey, String dag) throws Exception {
-		// If we've not yet loaded these caches, do it.
-		if (bpHeaders == null) {
-			loadFilterCaches();
-		}
-
 		List<String> selected = new ArrayList<String>();
 		Set<String> dagHeaders = null;
 		if ("BP".equals(dag)) {
@@ -1,5 +1,8 @@
 package org.jax.mgi.gxdindexer.shr;
 
+import java.util.List;
+import java.util.Map;
+
 /* Is: a TermAssociationCache that maps from each mouse marker key to a list of associated MP header terms
  */
 public class MarkerMPCache extends TermAssociationCache {
@@ -16,4 +19,9 @@ public class MarkerMPCache extends TermAssociationCache {
 			+ "order by 1, 2";
 		this.populate(cmd);
 	}
+
+	// build the cache from the given terms (by marker key), rather than the database
+	MarkerMPCache(Map<Integer,List<String>> termsByKey) {
+		this.populate(termsByKey);
+	}
 }
@@ -1,5 +1,8 @@
 package org.jax.mgi.gxdindexer.shr;
 
+import java.util.List;
+import java.util.Map;
+
 /* Is: a TermAssociationCache that maps from each mouse marker key to a list of associated MP header terms
  */
 public class MarkerTypeCache extends TermAssociationCache {
@@ -32,4 +35,9 @@ public class MarkerTypeCache extends TermAssociationCache {
 			+ "order by 1, 2";
 		this.populate(cmd);
 	}
+
+	// build the cache from the given terms (by marker key), rather than the database
+	MarkerTypeCache(Map<Integer,List<String>> termsByKey) {
+		this.populate(termsByKey);
+	}
 }
@@ -1,5 +1,8 @@
 package org.jax.mgi.gxdindexer.shr;
 
+import java.util.List;
+import java.util.Map;
+
 /* Is: a TermAssociationCache that maps from each result key to a list of associated cell ontology header terms
  */
 public class ResultCOCache extends TermAssociationCache {
@@ -15,4 +18,9 @@ public class ResultCOCache extends TermAssociationCache {
 			+ "order by 1, 2";
 		this.populate(cmd);
 	}
+
+	// build the cache from the given terms (by result key), rather than the database
+	ResultCOCache(Map<Integer,List<String>> termsByKey) {
+		this.populate(termsByKey);
+	}
 }
@@ -1,15 +1,11 @@
 package org.jax.mgi.gxdindexer.shr;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
 import java.util.Properties;
 
-import org.jax.mgi.gxdindexer.Indexer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,8 +15,9 @@ import org.slf4j.LoggerFactory;
  * given database.
  * 
  * The class is also smart enough to only open connections when they are needed.
- * If we go to run a new query and a connection hasn't been created yet, we
- * create one.
+ * If we go to run a new query and a connection hasn't been leased yet, we
+ * lease one from the shared ConnectionPool.  cleanup() hands the connection
+ * back to the pool, so it can be reused by the next indexer or cache.
  * 
  * @author mhall
  * 
@@ -31,61 +28,48 @@ import org.slf4j.LoggerFactory;
 public class SQLExecutor {
 
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
-	public Properties props = new Properties();
+	public Properties props = null;
 	protected Connection conMGD = null;
-	private String user;
-	private String password;
-	private String mgdJDBCUrl;
+	private ConnectionPool pool;
 
 	private Date start;
 	private Date end;
 
+	// total query time (in ms) on each thread, across all executors; lets a caller measure
+	// the database time spent on a unit of work that uses more than one executor
+	private static ThreadLocal<long[]> threadTiming = ThreadLocal.withInitial(() -> new long[1]);
+
 	/**
-	 * The default constructor pulls in connection information from the property
-	 * files.
-	 * 
-	 * @param config
+	 * The default constructor uses the shared ConnectionPool, which pulls in
+	 * connection information from the property files (once per JVM).
 	 */
 
 	public SQLExecutor() {
-		try {
-
-			InputStream in = Indexer.class.getClassLoader().getResourceAsStream("config.properties");
-			try {
-				props.load(in);
-			} catch (IOException e1) {
-				e1.printStackTrace();
-			}
-
-			Class.forName(props.getProperty("database.JDBC.driver"));
-			user = props.getProperty("mgd.user");
-			password = props.getProperty("mgd.password");
-			mgdJDBCUrl = props.getProperty("mgd.JDBC.url");
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		pool = ConnectionPool.getInstance();
+		props = pool.getProperties();
 	}
 
 	/**
-	 * Sets up the connection to the MGD Database.
+	 * Leases a connection to the MGD Database from the pool.
 	 * 
 	 * @throws SQLException
 	 */
 
 	private void getMGDConnection() throws SQLException {
-		conMGD = DriverManager.getConnection(mgdJDBCUrl, user, password);
-		conMGD.setAutoCommit(false);
+		conMGD = pool.lease();
 	}
 
 	/**
-	 * Clean up the connections to the database, if they have been initialized.
+	 * Hand the connection back to the pool, if one has been leased.  (The
+	 * executor may be used again afterward; it will lease a new connection.)
 	 * 
 	 * @throws SQLException
 	 */
 
 	public void cleanup() throws SQLException {
 		if (conMGD != null) {
-			conMGD.close();
+			pool.release(conMGD);
+			conMGD = null;
 		}
 	}
 
@@ -107,6 +91,7 @@ public class SQLExecutor {
 			logger.info(cmd);
 			stmt.executeUpdate(cmd);
 			end = new Date();
+			threadTiming.get()[0] += getTiming();
 			logger.info("Query took: " + getTimestamp());
 			return;
 		} catch (Exception e) {
@@ -128,6 +113,7 @@ public class SQLExecutor {
 			logger.info(sql);
 			stmt.execute(sql);
 			end = new Date();
+			threadTiming.get()[0] += getTiming();
 			logger.info("Query took: " + getTimestamp());
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -169,6 +155,7 @@ public class SQLExecutor {
 			start = new Date();
 			set = stmt.executeQuery(query);
 			end = new Date();
+			threadTiming.get()[0] += getTiming();
 			logger.info("Query took: " + getTimestamp());
 			return set;
 		} catch (Exception e) {
@@ -188,6 +175,17 @@ public class SQLExecutor {
 		return end.getTime() - start.getTime();
 	}
 
+	/**
+	 * Return the total time (in ms) spent executing queries on the current
+	 * thread, by any SQLExecutor.
+	 * 
+	 * @return
+	 */
+
+	public static long getThreadTiming() {
+		return threadTiming.get()[0];
+	}
+
 	/*
 	 * returns a formatted timestamp as a string, showing the last query's execution
 	 * time in ms. format: "(n ms)"
@@ -198,7 +196,7 @@ public class SQLExecutor {
 
 	@Override
 	public String toString() {
-		return "SQLExecutor[user=" + user + ",password=" + password + ",url=" + mgdJDBCUrl + "]";
+		return "SQLExecutor[" + pool + "]";
 	}
 
 }
@@ -0,0 +1,215 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/* Is: the write stage between an indexer and its Solr index
+ * Has: a pool of sender threads, a budget for the documents (and bytes) that may be
+ *	in flight at once, retry settings, and counters of documents sent, acknowledged by
+ *	Solr, and failed
+ * Does: accepts batches of documents and sends them to Solr in the background.  When the
+ *	in-flight budget is used up, write() blocks until Solr catches up (so indexers cannot
+ *	run ahead of Solr and fill the heap).  A batch that fails is retried with exponential
+ *	backoff; one that still fails after the last retry is counted as failed (and logged),
+ *	so the indexer can report the failure.
+ * Notes: A batch handed to write() belongs to the writer; callers should start a new
+ *	collection rather than clear the one they passed in.
+ *
+ * Example Usage:
+ *	SolrWriter writer = new SolrWriter("gxdResult", client, 4, 20000, 64, 5, 500);
+ *	writer.write(docs);
+ *	...
+ *	writer.flush();		// wait for everything in flight (eg. before a commit)
+ *	if (writer.getFailed() > 0) { ... }
+ *	writer.close();
+ *	...
+ *	writer.shutdown();	// on the way out, whether or not close() was reached
+ */
+public class SolrWriter {
+
+	// longest we will wait between retries of a batch (in ms)
+	private static long MAX_BACKOFF_MS = 30000;
+
+	/*--- instance variables ---*/
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private String indexName;
+	private SolrClient client;
+	private ExecutorService senders;
+	private int maxInFlightDocs;
+	private int maxInFlightKB;
+	private Semaphore docPermits;		// one per document that may be in flight
+	private Semaphore kbPermits;		// one per KB (estimated) that may be in flight
+	private int maxRetries;
+	private long initialBackoffMs;
+
+	private AtomicLong sent = new AtomicLong(0);		// documents written (queued for Solr)
+	private AtomicLong acked = new AtomicLong(0);		// documents Solr accepted
+	private AtomicLong failed = new AtomicLong(0);		// documents given up on
+	private AtomicLong retries = new AtomicLong(0);		// batches re-sent after a failure
+	private IndexerMetrics metrics = null;				// where to record each batch's time, if anywhere
+
+	/*--- public methods ---*/
+
+	public SolrWriter(String indexName, SolrClient client, int threads, int maxInFlightDocs,
+			int maxInFlightMB, int maxRetries, long initialBackoffMs) {
+		this.indexName = indexName;
+		this.client = client;
+		this.senders = Executors.newFixedThreadPool(Math.max(1, threads));
+		this.maxInFlightDocs = Math.max(1, maxInFlightDocs);
+		this.maxInFlightKB = Math.max(1, maxInFlightMB * 1024);
+		this.docPermits = new Semaphore(this.maxInFlightDocs, true);
+		this.kbPermits = new Semaphore(this.maxInFlightKB, true);
+		this.maxRetries = Math.max(0, maxRetries);
+		this.initialBackoffMs = Math.max(1, initialBackoffMs);
+		logger.info("Initialized " + this.toString());
+	}
+
+	// record the time taken to send each batch in 'metrics'
+	public SolrWriter setMetrics(IndexerMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	// queue 'docs' to be sent to Solr, blocking while the in-flight budget is used up
+	public void write(Collection<SolrInputDocument> docs) throws InterruptedException {
+		if ((docs == null) || docs.isEmpty()) {
+			return;
+		}
+
+		// a batch bigger than the whole budget just waits for everything else to finish
+		int docCount = Math.min(docs.size(), maxInFlightDocs);
+		int kb = Math.min(estimateKB(docs), maxInFlightKB);
+
+		long waitStart = System.currentTimeMillis();
+		docPermits.acquire(docCount);
+		try {
+			kbPermits.acquire(kb);
+		} catch (InterruptedException e) {
+			docPermits.release(docCount);
+			throw e;
+		}
+		long waited = System.currentTimeMillis() - waitStart;
+		if (waited > 1000) {
+			logger.info(indexName + ": waited " + waited + " ms for Solr to catch up");
+		}
+
+		sent.addAndGet(docs.size());
+		senders.submit(() -> {
+			try {
+				send(docs);
+			} finally {
+				kbPermits.release(kb);
+				docPermits.release(docCount);
+			}
+		});
+	}
+
+	// wait until every batch written so far has been acknowledged by Solr (or given up on)
+	public void flush() throws InterruptedException {
+		docPermits.acquire(maxInFlightDocs);
+		docPermits.release(maxInFlightDocs);
+	}
+
+	// flush, then stop the sender threads
+	public void close() throws InterruptedException {
+		flush();
+		senders.shutdown();
+		senders.awaitTermination(1, TimeUnit.MINUTES);
+		logger.info(indexName + ": " + getSummary());
+	}
+
+	// stop the sender threads without waiting for what is in flight (eg. once the indexer
+	// has failed); does nothing if the writer is already closed
+	public void shutdown() {
+		senders.shutdownNow();
+	}
+
+	public long getSent() {
+		return sent.get();
+	}
+
+	public long getAcked() {
+		return acked.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	public String getSummary() {
+		return "sent " + sent.get() + " docs, acknowledged " + acked.get() + ", failed " + failed.get()
+			+ " (" + retries.get() + " batch retries)";
+	}
+
+	@Override
+	public String toString() {
+		return "SolrWriter[" + indexName + ",maxInFlightDocs=" + maxInFlightDocs + ",maxInFlightMB="
+			+ (maxInFlightKB / 1024) + ",maxRetries=" + maxRetries + "]";
+	}
+
+	/*--- private methods ---*/
+
+	// send one batch, retrying with exponential backoff
+	private void send(Collection<SolrInputDocument> docs) {
+		long backoff = initialBackoffMs;
+		long start = System.nanoTime();
+		for (int attempt = 0; ; attempt++) {
+			try {
+				client.add(docs);
+				acked.addAndGet(docs.size());
+				if (metrics != null) {
+					metrics.record(IndexerMetrics.SOLR_ADD, start, docs.size());
+				}
+				return;
+			} catch (Exception e) {
+				if (attempt >= maxRetries) {
+					failed.addAndGet(docs.size());
+					logger.error(indexName + ": gave up on batch of " + docs.size() + " docs after "
+						+ (attempt + 1) + " attempts", e);
+					return;
+				}
+				logger.warn(indexName + ": batch of " + docs.size() + " docs failed (" + e.getMessage()
+					+ "); retrying in " + backoff + " ms");
+				retries.incrementAndGet();
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					failed.addAndGet(docs.size());
+					return;
+				}
+				backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+			}
+		}
+	}
+
+	// rough size of a batch in KB (field names and values as text, which is close to what
+	// goes over the wire)
+	private int estimateKB(Collection<SolrInputDocument> docs) {
+		long chars = 0;
+		for (SolrInputDocument doc : docs) {
+			for (SolrInputField field : doc) {
+				Collection<Object> values = field.getValues();
+				if (values == null) {
+					continue;
+				}
+				int nameLength = field.getName().length();
+				for (Object value : values) {
+					chars += nameLength + String.valueOf(value).length();
+				}
+			}
+		}
+		return (int) Math.min(Integer.MAX_VALUE, (chars / 1024) + 1);
+	}
+}
@@ -0,0 +1,125 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The StringPool is a process-wide, bounded pool of canonical String objects,
+ * for values that repeat many times across lookups and indexers (term IDs,
+ * header labels, detection levels, assay types, EMAPA IDs, etc.).
+ *
+ * Passing a value through intern() returns the pooled copy of an equal String
+ * if there is one, so the copy just read from the database can be discarded.
+ * Once the pool holds 'stringPool.maxEntries' strings (from config.properties),
+ * new values are no longer added, but are still matched against those already
+ * pooled.  Pooled strings are kept for the life of the JVM.
+ *
+ * The pool keeps counts of lookups, hits, and an estimate of the bytes saved
+ * by the hits, which are logged at the end of a run.
+ *
+ * @does Canonicalizes repeated String values, safely from any number of threads.
+ */
+
+public class StringPool {
+
+	// default maximum number of strings when 'stringPool.maxEntries' is not configured
+	public static int DEFAULT_MAX_ENTRIES = 500000;
+
+	private static StringPool instance = null;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	private ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<String, String>();
+	private AtomicInteger entries = new AtomicInteger(0);
+	private int maxEntries;
+
+	// statistics
+	private LongAdder lookups = new LongAdder();
+	private LongAdder hits = new LongAdder();
+	private LongAdder bytesSaved = new LongAdder();
+	private LongAdder rejected = new LongAdder();
+
+	/**
+	 * Get the shared pool, creating it the first time this is called.
+	 */
+	public static synchronized StringPool getInstance() {
+		if (instance == null) {
+			instance = new StringPool();
+		}
+		return instance;
+	}
+
+	private StringPool() {
+		maxEntries = DEFAULT_MAX_ENTRIES;
+		String value = ConnectionPool.getInstance().getProperties().getProperty("stringPool.maxEntries");
+		if (value != null) {
+			try {
+				maxEntries = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.error("Non-integer value for stringPool.maxEntries: " + value + "; using " + maxEntries);
+			}
+		}
+	}
+
+	/**
+	 * Return the pooled String equal to 's' (adding 's' to the pool if there
+	 * is none, and the pool is not full), or 's' itself.  Null is returned
+	 * as null.
+	 */
+	public String intern(String s) {
+		if (s == null) {
+			return null;
+		}
+		lookups.increment();
+		String pooled = pool.get(s);
+		if (pooled == null) {
+			if (entries.get() >= maxEntries) {
+				rejected.increment();
+				return s;
+			}
+			pooled = pool.putIfAbsent(s, s);
+			if (pooled == null) {
+				entries.incrementAndGet();
+				return s;
+			}
+		}
+		hits.increment();
+		bytesSaved.add(estimateSize(s));
+		return pooled;
+	}
+
+	// number of distinct strings in the pool
+	public int size() {
+		return entries.get();
+	}
+
+	// fraction of lookups that found an equal string already pooled
+	public double getHitRate() {
+		long n = lookups.sum();
+		return (n == 0) ? 0.0 : (double) hits.sum() / n;
+	}
+
+	// estimated bytes of duplicate strings that were discarded in favor of pooled ones
+	public long getBytesSaved() {
+		return bytesSaved.sum();
+	}
+
+	// one-line summary of the pool's statistics, for logging
+	public String getSummary() {
+		return "String pool: " + entries.get() + " strings, " + lookups.sum() + " lookups, "
+			+ String.format("%.1f", getHitRate() * 100.0) + "% hits, ~"
+			+ (getBytesSaved() / (1024 * 1024)) + " MB saved"
+			+ (rejected.sum() > 0 ? ", " + rejected.sum() + " values not pooled (pool full)" : "");
+	}
+
+	/*--- private methods ---*/
+
+	// rough heap size of a String: object and array headers, plus its characters
+	// (one byte each for Latin-1 strings, as most of ours are)
+	private static long estimateSize(String s) {
+		return 40 + s.length();
+	}
+}
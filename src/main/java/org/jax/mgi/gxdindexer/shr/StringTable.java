@@ -0,0 +1,51 @@
+package org.jax.mgi.gxdindexer.shr;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/* Is: a dictionary of distinct strings, each identified by a small int ID
+ * Has: the strings (by ID) and an index from each string to its ID
+ * Does: assigns IDs to strings as they are added, and looks strings up by ID
+ * Notes: Lets a column with few distinct values (chromosome, strand, marker subtype,
+ *	etc.) be stored as one int per row, with each distinct value kept only once.
+ *	A null string has ID -1.  Not synchronized; fill it on one thread, then it may be
+ *	read from any number of threads.
+ */
+public class StringTable {
+	/*--- instance variables ---*/
+	private Map<String,Integer> ids = new HashMap<String,Integer>();
+	private String[] strings = new String[16];
+
+	/*--- public methods ---*/
+
+	// return the ID for 's', adding it to the table if it is new
+	public int add(String s) {
+		if (s == null) {
+			return -1;
+		}
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = ids.size();
+			if (id == strings.length) {
+				strings = Arrays.copyOf(strings, strings.length * 2);
+			}
+			strings[id] = s;
+			ids.put(s, id);
+		}
+		return id;
+	}
+
+	// return the string with the given ID (null for -1)
+	public String get(int id) {
+		if (id < 0) {
+			return null;
+		}
+		return strings[id];
+	}
+
+	// number of distinct (non-null) strings in the table
+	public int size() {
+		return ids.size();
+	}
+}
@@ -2,6 +2,8 @@ package org.jax.mgi.gxdindexer.shr;
 
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,16 +13,21 @@ import org.slf4j.LoggerFactory;
 /* Is: a cache of (string) terms for objects identified by (integer) object key
  * Has: a cache of 0-n terms cached for each object key
  * Does: knows how to initialize itself and look up terms by object key
- * Notes: is abstract to force the initialize method to be defined in a subclass
+ * Notes: is abstract to force the initialize method to be defined in a subclass.
+ *	Many objects share the same list of terms, so each distinct list is kept once
+ *	and the cache maps each object key to the ID of its list (with no boxed keys).
+ *	The lists returned are shared, so may not be modified.
  */
 public abstract class TermAssociationCache {
 	/*--- static variables ---*/
-	private static List<String> emptyList = new ArrayList<String>();
+	private static List<String> emptyList = Collections.emptyList();
+	private static int NO_TERMS = -1;
 
 	/*--- instance variables ---*/
 
 	public Logger logger = LoggerFactory.getLogger(this.getClass());
-	protected Map<Integer,List<String>> cache = null;
+	protected IntIntMap cache = null;		// object key -> ID of its term list
+	protected List<List<String>> termLists = null;	// distinct term lists, by ID
 	protected int cursorLimit = 50000;
 	
 	/*--- public methods ---*/
@@ -35,23 +42,23 @@ public abstract class TermAssociationCache {
 	
 	// return true if we have any terms for the given objectKey, false if not
 	public boolean hasTerms(Integer objectKey) {
-		return this.cache.containsKey(objectKey);
+		return (objectKey != null) && this.cache.containsKey(objectKey);
 	}
 	
 	// return a list of (String) terms associated with 'objectKey';
 	// returns an empty list if none
 	public List<String> getTerms(Integer objectKey) {
-		if (!this.cache.containsKey(objectKey)) {
+		if (objectKey == null) {
 			return emptyList;
 		}
-		return this.cache.get(objectKey);
+		return this.lookup(objectKey);
 	}
 	
 	// convenience wrapper for dealing with object keys as Strings
 	public List<String> getTerms(String objectKey) {
 		try {
 			int objKey = Integer.parseInt(objectKey);
-			return this.getTerms(objKey);
+			return this.lookup(objKey);
 		} catch (Exception e) {
 			logger.error("Non-integer object key: " + objectKey);
 			return emptyList;
@@ -60,24 +67,79 @@ public abstract class TermAssociationCache {
 	
 	/*--- private methods ---*/
 	
+	// look up the terms for 'objectKey' without boxing it
+	private List<String> lookup(int objectKey) {
+		int listID = this.cache.get(objectKey, NO_TERMS);
+		if (listID == NO_TERMS) {
+			return emptyList;
+		}
+		return this.termLists.get(listID);
+	}
+	
 	// convenience method for use by various 'initialize()' implementations in subclasses, where we
 	// can just define a single SQL command that returns rows with an object_key and a term field,
-	// and we can walk the corresponding list of results in order to populate this.cache.
+	// and we can walk the corresponding list of results in order to populate this.cache.  (Rows
+	// are expected to be ordered by object_key, though a key seen again later is still merged.)
 	protected void populate(String cmd) throws Exception {
-		this.cache = new HashMap<Integer,List<String>>();
+		this.cache = new IntIntMap();
+		this.termLists = new ArrayList<List<String>>();
+		Map<List<String>,Integer> listIDs = new HashMap<List<String>,Integer>();
 		
 		logger.info("initializing " + this.getClass().getName());
 		SQLExecutor ex = new SQLExecutor();
 		ResultSet rs = ex.executeProto(cmd, cursorLimit);
+		int objectKey = 0;
+		List<String> terms = null;
 		while (rs.next()) {
-			Integer objectKey = rs.getInt("object_key");
-			
-			if (!this.cache.containsKey(objectKey)) {
-				this.cache.put(objectKey, new ArrayList<String>());
+			int nextKey = rs.getInt("object_key");
+			if ((terms != null) && (nextKey != objectKey)) {
+				addTerms(objectKey, terms, listIDs);
+				terms = null;
 			}
-			this.cache.get(objectKey).add(rs.getString("term").trim());
+			if (terms == null) {
+				objectKey = nextKey;
+				terms = new ArrayList<String>();
+			}
+			terms.add(StringPool.getInstance().intern(rs.getString("term").trim()));
+		}
+		if (terms != null) {
+			addTerms(objectKey, terms, listIDs);
 		}
 		rs.close();
-		logger.info(" - done (" + this.cache.size() + " object keys)");
+		ex.cleanup();
+		logger.info(" - done (" + this.cache.size() + " object keys, " + this.termLists.size() + " distinct term lists)");
+	}
+
+	// populate this.cache from terms already in hand (eg. synthetic data for benchmarks),
+	// rather than from the database
+	void populate(Map<Integer,List<String>> termsByKey) {
+		this.cache = new IntIntMap(termsByKey.size());
+		this.termLists = new ArrayList<List<String>>();
+		Map<List<String>,Integer> listIDs = new HashMap<List<String>,Integer>();
+		for (Map.Entry<Integer,List<String>> entry : termsByKey.entrySet()) {
+			List<String> terms = new ArrayList<String>();
+			for (String term : entry.getValue()) {
+				terms.add(StringPool.getInstance().intern(term));
+			}
+			addTerms(entry.getKey(), terms, listIDs);
+		}
+	}
+
+	// associate 'terms' with 'objectKey' (after any it already has), reusing the
+	// matching list from 'listIDs' if we have seen the same terms before
+	private void addTerms(int objectKey, List<String> terms, Map<List<String>,Integer> listIDs) {
+		int oldID = this.cache.get(objectKey, NO_TERMS);
+		if (oldID != NO_TERMS) {
+			List<String> merged = new ArrayList<String>(this.termLists.get(oldID));
+			merged.addAll(terms);
+			terms = merged;
+		}
+		Integer listID = listIDs.get(terms);
+		if (listID == null) {
+			listID = this.termLists.size();
+			this.termLists.add(Collections.unmodifiableList(Arrays.asList(terms.toArray(new String[0]))));
+			listIDs.put(terms, listID);
+		}
+		this.cache.put(objectKey, listID);
 	}
 }
@@ -0,0 +1,42 @@
+package org.jax.mgi.gxdindexer;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * DiscardingSolrClient
+ *
+ * A SolrClient that accepts every request and throws away the documents sent
+ * to it, counting them.  Lets the perf harness measure an indexer's database
+ * and document-building work without a Solr core for it.
+ */
+
+public class DiscardingSolrClient extends SolrClient {
+	private LongAdder docCount = new LongAdder();
+
+	@Override
+	public NamedList<Object> request(@SuppressWarnings("rawtypes") SolrRequest request, String collection) {
+		if (request instanceof UpdateRequest) {
+			List<SolrInputDocument> docs = ((UpdateRequest) request).getDocuments();
+			if (docs != null) {
+				docCount.add(docs.size());
+			}
+		}
+		return new NamedList<Object>();
+	}
+
+	// number of documents sent so far
+	public long getDocCount() {
+		return docCount.sum();
+	}
+
+	@Override
+	public void close() {
+	}
+}
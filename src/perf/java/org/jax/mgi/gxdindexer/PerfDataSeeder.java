@@ -0,0 +1,193 @@
+package org.jax.mgi.gxdindexer;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * PerfDataSeeder
+ *
+ * Creates the fe tables the indexers read (perf/fe-schema.sql) in a schema of
+ * their own, and fills them with synthetic data (perf/fe-seed.sql) at a given
+ * scale.  At scale 1 there are BASE_SIZES of each kind of data; at scale 10
+ * there are ten times as many, and so on, except for the vocabularies (the
+ * anatomy and the terms annotated to markers), which stay the same size.
+ *
+ * The schema is dropped and re-created for each scale.  So that a mistyped
+ * setting cannot drop real data, an existing schema is only dropped if it was
+ * created here (recognized by its perf_info table).
+ */
+
+public class PerfDataSeeder {
+	private static Logger logger = LoggerFactory.getLogger(PerfDataSeeder.class);
+
+	// cardinalities at scale 1 (each may be changed with perf.base.<name>)
+	public static Map<String,Long> BASE_SIZES = new LinkedHashMap<String,Long>();
+	static {
+		BASE_SIZES.put("markers", 400L);
+		BASE_SIZES.put("alleles", 600L);
+		BASE_SIZES.put("genotypes", 300L);
+		BASE_SIZES.put("references", 250L);
+		BASE_SIZES.put("assays", 1500L);
+		BASE_SIZES.put("specimens", 2500L);
+		BASE_SIZES.put("results", 25000L);
+		BASE_SIZES.put("images", 500L);
+		BASE_SIZES.put("experiments", 2L);
+		BASE_SIZES.put("samples", 100L);
+		BASE_SIZES.put("measurements", 40000L);
+		BASE_SIZES.put("emapaTerms", 6000L);
+		BASE_SIZES.put("vocabTerms", 2000L);
+	}
+
+	// sizes that do not grow with the scale
+	public static List<String> FIXED_SIZES = Arrays.asList("emapaTerms", "vocabTerms");
+
+	private String url;
+	private String user;
+	private String password;
+	private String schema;
+	private Properties props;
+
+	public PerfDataSeeder(String url, String user, String password, String schema, Properties props) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.schema = schema;
+		this.props = props;
+	}
+
+	// the number of each kind of data at 'scale'
+	public Map<String,Long> getSizes(int scale) {
+		Map<String,Long> sizes = new LinkedHashMap<String,Long>();
+		for (String name : BASE_SIZES.keySet()) {
+			long size = Long.parseLong(props.getProperty("perf.base." + name, "" + BASE_SIZES.get(name)).trim());
+			sizes.put(name, FIXED_SIZES.contains(name) ? size : size * scale);
+		}
+		sizes.put("imagepanes", 2 * sizes.get("images"));
+		return sizes;
+	}
+
+	// (re-)create the schema and fill it with data at 'scale'; returns the sizes used
+	public Map<String,Long> seed(int scale) throws Exception {
+		Map<String,Long> sizes = getSizes(scale);
+		logger.info("Seeding schema " + schema + " at scale " + scale + ": " + sizes);
+		long start = System.currentTimeMillis();
+
+		Connection con = DriverManager.getConnection(url, user, password);
+		try {
+			con.setAutoCommit(true);
+			Statement stmt = con.createStatement();
+			dropSchema(con);
+			stmt.execute("create schema " + schema);
+			stmt.execute("set search_path to " + schema);
+			stmt.execute("create table perf_info (scale int, seeded_at timestamp default now())");
+			stmt.execute("insert into perf_info (scale) values (" + scale + ")");
+
+			for (String resource : new String[] { "perf/fe-schema.sql", "perf/fe-seed.sql" }) {
+				for (String sql : readStatements(resource)) {
+					long statementStart = System.currentTimeMillis();
+					stmt.execute(fillSizes(sql, sizes));
+					long elapsed = System.currentTimeMillis() - statementStart;
+					if (elapsed > 5000) {
+						logger.info(" - " + elapsed + " ms for: " + firstLine(sql));
+					}
+				}
+			}
+			stmt.close();
+		} finally {
+			con.close();
+		}
+		logger.info("Seeded schema " + schema + " at scale " + scale + " in "
+			+ (System.currentTimeMillis() - start) + " ms");
+		return sizes;
+	}
+
+	/*--- private methods ---*/
+
+	// drop the schema if it exists, and was created by an earlier seed()
+	private void dropSchema(Connection con) throws Exception {
+		PreparedStatement ps = con.prepareStatement(
+			"select exists (select 1 from information_schema.schemata where schema_name = ?) as has_schema, "
+			+ " exists (select 1 from information_schema.tables where table_schema = ? and table_name = 'perf_info') as has_info");
+		ps.setString(1, schema);
+		ps.setString(2, schema);
+		ResultSet rs = ps.executeQuery();
+		rs.next();
+		boolean hasSchema = rs.getBoolean("has_schema");
+		boolean hasInfo = rs.getBoolean("has_info");
+		rs.close();
+		ps.close();
+
+		if (hasSchema && !hasInfo) {
+			throw new IllegalStateException("Schema " + schema + " was not created by the perf harness; "
+				+ "not dropping it (choose another perf.schema)");
+		}
+		if (hasSchema) {
+			Statement stmt = con.createStatement();
+			stmt.execute("drop schema " + schema + " cascade");
+			stmt.close();
+		}
+	}
+
+	// the statements in the given SQL resource (each ending with a ';' at the end of a line),
+	// without comment lines
+	private List<String> readStatements(String resource) throws Exception {
+		InputStream in = PerfDataSeeder.class.getClassLoader().getResourceAsStream(resource);
+		if (in == null) {
+			throw new IllegalStateException("Missing resource " + resource);
+		}
+		List<String> statements = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		try {
+			StringBuilder sb = new StringBuilder();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String trimmed = line.trim();
+				if (trimmed.startsWith("--") || trimmed.isEmpty()) {
+					continue;
+				}
+				if (trimmed.endsWith(";")) {
+					sb.append(trimmed, 0, trimmed.length() - 1);
+					statements.add(sb.toString());
+					sb.setLength(0);
+				} else {
+					sb.append(line).append('\n');
+				}
+			}
+			if (sb.toString().trim().length() > 0) {
+				statements.add(sb.toString());
+			}
+		} finally {
+			reader.close();
+		}
+		return statements;
+	}
+
+	// replace each {name} in 'sql' with that size
+	private String fillSizes(String sql, Map<String,Long> sizes) {
+		for (Map.Entry<String,Long> entry : sizes.entrySet()) {
+			sql = sql.replace("{" + entry.getKey() + "}", entry.getValue().toString());
+		}
+		return sql;
+	}
+
+	private String firstLine(String sql) {
+		int newline = sql.indexOf('\n');
+		return (newline < 0) ? sql : sql.substring(0, newline) + " ...";
+	}
+}
@@ -0,0 +1,260 @@
+package org.jax.mgi.gxdindexer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.core.CoreContainer;
+import org.jax.mgi.gxdindexer.shr.ConnectionPool;
+import org.jax.mgi.gxdindexer.shr.IndexerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * PerfHarness
+ *
+ * Runs indexers end to end on synthetic data, without MGD or a Solr server, to
+ * see how they scale.  For each scale (perf.scales, by default 1, 10 and 100)
+ * it seeds a schema in a local Postgres database (see PerfDataSeeder), then
+ * runs each indexer in turn against that schema, writing to an embedded Solr
+ * core (from perf.solrHome) or, if there is none for the index, discarding the
+ * documents.  For each run it reports the wall time, rows read per second and
+ * peak heap, as a table in the log and as JSON in perf.reportFile.
+ *
+ * Settings come from the properties file named on the command line (see
+ * conf/perf.properties.template), which also holds any indexer settings to
+ * use in place of config.properties.
+ *
+ * Usage:
+ *	java -jar gxdindexer-perf.jar perf.properties [index name ...]
+ */
+
+public class PerfHarness {
+	public static Logger logger = LoggerFactory.getLogger("gxdindexer PerfHarness");
+
+	// the indexers that can be run (under the names Main uses), in the order they are run
+	private static Map<String,Supplier<Indexer>> INDEXERS = new LinkedHashMap<String,Supplier<Indexer>>();
+	static {
+		INDEXERS.put("gxdDagEdge", GxdDagEdgeIndexer::new);
+		INDEXERS.put("gxdConsolidatedSample", GxdConsolidatedSampleIndexer::new);
+		INDEXERS.put("gxdImagePane", GxdImagePaneIndexer::new);
+		INDEXERS.put("gxdProfileMarker", GxdProfileMarkerIndexer::new);
+		INDEXERS.put("gxdResultHasImage", GxdResultHasImageIndexer::new);
+		INDEXERS.put("gxdResult", GxdResultIndexer::new);
+	}
+
+	private Properties props;
+	private CoreContainer solr = null;
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	public PerfHarness(Properties props) {
+		this.props = props;
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: PerfHarness <perf.properties> [index name ...]");
+			System.err.println("Index names: " + INDEXERS.keySet());
+			System.exit(-1);
+		}
+		try {
+			Properties props = new Properties();
+			InputStream in = new FileInputStream(args[0]);
+			try {
+				props.load(in);
+			} finally {
+				in.close();
+			}
+
+			List<String> indexes = new ArrayList<String>();
+			for (int i = 1; i < args.length; i++) {
+				indexes.add(args[i]);
+			}
+			if (indexes.isEmpty()) {
+				indexes.addAll(split(props.getProperty("perf.indexers", String.join(",", INDEXERS.keySet()))));
+			}
+			for (String index : indexes) {
+				if (!INDEXERS.containsKey(index)) {
+					throw new IllegalArgumentException("Unknown index " + index + "; expected one of " + INDEXERS.keySet());
+				}
+			}
+
+			new PerfHarness(props).run(indexes);
+		} catch (Exception e) {
+			logger.error("Perf run failed", e);
+			System.exit(-1);
+		}
+	}
+
+	// seed and index at each scale in turn, writing the report after each one
+	public void run(List<String> indexes) throws Exception {
+		String url = props.getProperty("mgd.JDBC.url");
+		String schema = props.getProperty("perf.schema", "gxdperf").trim();
+		PerfDataSeeder seeder = new PerfDataSeeder(url, props.getProperty("mgd.user"),
+			props.getProperty("mgd.password"), schema, props);
+
+		// the indexers read the seeded schema, through the shared connection pool
+		Properties indexerProps = new Properties();
+		indexerProps.putAll(props);
+		indexerProps.setProperty("mgd.JDBC.url", url + (url.contains("?") ? "&" : "?") + "currentSchema=" + schema);
+		ConnectionPool.configure(indexerProps);
+
+		String solrHome = props.getProperty("perf.solrHome", "").trim();
+		if (solrHome.length() > 0) {
+			logger.info("Loading embedded Solr cores from " + solrHome);
+			solr = CoreContainer.createAndLoad(Paths.get(solrHome));
+			logger.info("Embedded Solr cores: " + solr.getAllCoreNames());
+		} else {
+			logger.info("No perf.solrHome; documents will be discarded");
+		}
+
+		List<Map<String,Object>> report = new ArrayList<Map<String,Object>>();
+		try {
+			for (String scale : split(props.getProperty("perf.scales", "1,10,100"))) {
+				report.add(runScale(seeder, Integer.parseInt(scale), indexes));
+				writeReport(report);
+			}
+		} finally {
+			ConnectionPool.getInstance().closeIdle();
+			if (solr != null) {
+				solr.shutdown();
+			}
+		}
+		logScaling(report, indexes);
+	}
+
+	/*--- private methods ---*/
+
+	// seed the data for 'scale' and run each of 'indexes' on it
+	private Map<String,Object> runScale(PerfDataSeeder seeder, int scale, List<String> indexes) throws Exception {
+		Map<String,Object> result = new LinkedHashMap<String,Object>();
+		result.put("scale", scale);
+
+		// idle connections would still see the dropped schema's tables
+		ConnectionPool.getInstance().closeIdle();
+		long start = System.currentTimeMillis();
+		result.put("sizes", seeder.seed(scale));
+		result.put("seedMs", System.currentTimeMillis() - start);
+
+		Map<String,Object> byIndex = new LinkedHashMap<String,Object>();
+		for (String index : indexes) {
+			byIndex.put(index, runIndexer(index));
+		}
+		result.put("indexes", byIndex);
+
+		logger.info(String.format("%-22s %6s %10s %12s %10s %10s %8s %6s", "index", "scale", "wall ms",
+			"rows read", "rows/sec", "docs", "heap MB", "passed"));
+		for (String index : indexes) {
+			@SuppressWarnings("unchecked")
+			Map<String,Object> run = (Map<String,Object>) byIndex.get(index);
+			logger.info(String.format("%-22s %6d %10d %12d %10d %10d %8d %6s", index, scale, run.get("wallMs"),
+				run.get("rowsRead"), run.get("rowsPerSecond"), run.get("docs"), run.get("peakHeapMB"),
+				run.get("passed")));
+		}
+		return result;
+	}
+
+	// run one indexer (a new instance, so nothing is left over from an earlier scale)
+	private Map<String,Object> runIndexer(String index) throws Exception {
+		logger.info("Running " + index);
+		Indexer indexer = INDEXERS.get(index).get();
+
+		SolrClient client;
+		if ((solr != null) && solr.getAllCoreNames().contains(index)) {
+			client = new EmbeddedSolrServer(solr, index);
+		} else {
+			if (solr != null) {
+				logger.warn("No embedded core named " + index + "; discarding its documents");
+			}
+			client = new DiscardingSolrClient();
+		}
+		indexer.setSolrClient(client);
+
+		IndexerMetrics metrics = indexer.getMetrics();
+		metrics.reset();
+		System.gc();
+		IndexerMetrics.resetPeakHeap();
+
+		long start = System.currentTimeMillis();
+		indexer.run();
+		long wallMs = Math.max(1, System.currentTimeMillis() - start);
+
+		Map<String,Object> run = new LinkedHashMap<String,Object>();
+		run.put("passed", indexer.indexPassed);
+		run.put("wallMs", wallMs);
+		run.put("rowsRead", metrics.getRowsRead());
+		run.put("rowsPerSecond", (metrics.getRowsRead() * 1000L) / wallMs);
+		run.put("docs", countDocs(index, client));
+		run.put("peakHeapMB", IndexerMetrics.getProcessPeakHeapMB());
+		run.put("phases", metrics.getPhases());
+		return run;
+	}
+
+	// number of documents the indexer sent (or that are now in its embedded core)
+	private long countDocs(String index, SolrClient client) throws Exception {
+		if (client instanceof DiscardingSolrClient) {
+			return ((DiscardingSolrClient) client).getDocCount();
+		}
+		EmbeddedSolrServer server = new EmbeddedSolrServer(solr, index);
+		try {
+			return server.query(new SolrQuery("*:*").setRows(0)).getResults().getNumFound();
+		} finally {
+			server.close();
+		}
+	}
+
+	private void writeReport(List<Map<String,Object>> report) throws Exception {
+		String path = props.getProperty("perf.reportFile", "/tmp/gxdindexer.perf.json").trim();
+		objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(path), report);
+		logger.info("Wrote perf report to " + path);
+	}
+
+	// log how each index's wall time grew with the data, relative to the first scale
+	private void logScaling(List<Map<String,Object>> report, List<String> indexes) {
+		if (report.size() < 2) {
+			return;
+		}
+		for (String index : indexes) {
+			StringBuilder sb = new StringBuilder(index + " wall time:");
+			long firstMs = 0;
+			int firstScale = 0;
+			for (Map<String,Object> scaleResult : report) {
+				int scale = (Integer) scaleResult.get("scale");
+				@SuppressWarnings("unchecked")
+				Map<String,Object> run = (Map<String,Object>) ((Map<String,Object>) scaleResult.get("indexes")).get(index);
+				long wallMs = (Long) run.get("wallMs");
+				sb.append("  ").append(scale).append("x ").append(wallMs).append(" ms");
+				if (firstMs == 0) {
+					firstMs = wallMs;
+					firstScale = scale;
+				} else {
+					sb.append(String.format(" (%.1fx time for %dx data)", (double) wallMs / firstMs, scale / firstScale));
+				}
+			}
+			logger.info(sb.toString());
+		}
+	}
+
+	private static List<String> split(String value) {
+		List<String> items = new ArrayList<String>();
+		for (String item : Arrays.asList(value.split(","))) {
+			if (item.trim().length() > 0) {
+				items.add(item.trim());
+			}
+		}
+		return items;
+	}
+}
@@ -0,0 +1,333 @@
+-- The parts of the fe (front-end) schema that the indexers read, with only the
+-- columns they use.  Run by PerfDataSeeder in an empty schema, before fe-seed.sql.
+
+-- vocabularies and the anatomy DAG
+
+create table term (
+	term_key int primary key,
+	term text,
+	primary_id text,
+	vocab_name text,
+	definition text,
+	is_obsolete int default 0
+);
+
+create table term_ancestor (
+	term_key int,
+	ancestor_term_key int,
+	ancestor_term text,
+	ancestor_primary_id text
+);
+
+create table term_child (
+	unique_key serial primary key,
+	term_key int,
+	child_term_key int,
+	child_term text,
+	child_primary_id text
+);
+
+create table term_descendent (
+	unique_key serial primary key,
+	term_key int,
+	descendent_term_key int,
+	descendent_term text,
+	descendent_primary_id text
+);
+
+create table term_emap (
+	term_key int primary key,
+	emapa_term_key int,
+	stage int,
+	start_stage int,
+	end_stage int,
+	default_parent_key int
+);
+
+create table term_emaps_child (
+	term_key int,
+	emaps_child_term_key int,
+	emapa_term_key int
+);
+
+create table term_synonym (
+	term_key int,
+	synonym text
+);
+
+create table term_to_header (
+	term_key int,
+	header_term_key int,
+	label text,
+	accid text
+);
+
+-- markers, alleles and genotypes
+
+create table marker (
+	marker_key int primary key,
+	symbol text,
+	primary_id text,
+	name text,
+	marker_subtype text,
+	organism text,
+	status text
+);
+
+create table marker_sequence_num (
+	marker_key int primary key,
+	by_symbol int,
+	by_location int
+);
+
+create table marker_location (
+	marker_key int,
+	sequence_num int,
+	location_type text,
+	chromosome text,
+	cytogenetic_offset text,
+	start_coordinate bigint,
+	end_coordinate bigint,
+	strand text,
+	cm_offset text
+);
+
+create table marker_id (
+	marker_key int,
+	acc_id text,
+	logical_db text
+);
+
+create table marker_counts (
+	marker_key int primary key,
+	gxd_literature_count int
+);
+
+create table marker_searchable_nomenclature (
+	marker_key int,
+	term text,
+	term_type text
+);
+
+create table marker_grid_heading (
+	heading_key int primary key,
+	heading_abbreviation text,
+	grid_name text,
+	grid_name_abbreviation text
+);
+
+create table marker_grid_cell (
+	marker_key int,
+	heading_key int,
+	value int
+);
+
+create table annotation (
+	annotation_key int primary key,
+	term_key int,
+	term_id text,
+	vocab_name text,
+	qualifier text,
+	annotation_type text
+);
+
+create table marker_to_annotation (
+	marker_key int,
+	annotation_key int,
+	annotation_type text
+);
+
+create table homology_cluster (
+	cluster_key int primary key,
+	source text
+);
+
+create table homology_cluster_organism (
+	cluster_organism_key int primary key,
+	cluster_key int
+);
+
+create table homology_cluster_organism_to_marker (
+	cluster_organism_key int,
+	marker_key int
+);
+
+create table allele (
+	allele_key int primary key,
+	primary_id text,
+	is_recombinase int,
+	is_wild_type int
+);
+
+create table marker_to_allele (
+	marker_key int,
+	allele_key int
+);
+
+create table genotype (
+	genotype_key int primary key,
+	combination_1 text,
+	combination_2 text,
+	background_strain text,
+	is_conditional int
+);
+
+create table allele_to_genotype (
+	allele_key int,
+	genotype_key int
+);
+
+create table reference (
+	reference_key int primary key,
+	jnum_id text,
+	pubmed_id text,
+	mini_citation text
+);
+
+-- classical expression results, and their images
+
+create table expression_assay (
+	assay_key int primary key,
+	assay_type text,
+	assay_type_seq int,
+	has_image int,
+	probe_key int,
+	antibody_key int
+);
+
+create table assay_specimen (
+	specimen_key int primary key,
+	specimen_label text,
+	hybridization text
+);
+
+create table expression_result_summary (
+	result_key int primary key,
+	assay_key int,
+	assay_id text,
+	assay_type text,
+	marker_key int,
+	marker_symbol text,
+	structure_key int,
+	structure_printname text,
+	theiler_stage text,
+	is_expressed text,
+	has_image int,
+	age_abbreviation text,
+	age_min numeric,
+	age_max numeric,
+	jnum_id text,
+	detection_level text,
+	pattern text,
+	is_wild_type int,
+	genotype_key int,
+	reference_key int,
+	specimen_key int,
+	sex text
+);
+
+create table expression_result_sequence_num (
+	result_key int primary key,
+	by_assay_type int,
+	by_gene_symbol int,
+	by_age int,
+	by_expressed int,
+	by_structure int,
+	by_mutant_alleles int,
+	by_reference int
+);
+
+create table expression_result_cell_type (
+	result_key int,
+	cell_type text,
+	cell_type_id text
+);
+
+create table expression_result_anatomical_systems (
+	result_key int,
+	anatomical_system text,
+	emapa_id text
+);
+
+create table image (
+	image_key int primary key,
+	mgi_id text,
+	figure_label text,
+	pixeldb_numeric_id text,
+	width int,
+	height int
+);
+
+create table expression_imagepane (
+	imagepane_key int primary key,
+	image_key int,
+	pane_label text,
+	x int,
+	y int,
+	width int,
+	height int,
+	by_assay_type int,
+	by_marker int,
+	by_hybridization_asc int,
+	by_hybridization_desc int
+);
+
+create table expression_result_to_imagepane (
+	result_key int,
+	imagepane_key int
+);
+
+-- RNA-Seq (high-throughput) data
+
+create table expression_ht_experiment (
+	experiment_key int primary key,
+	primary_id text,
+	name text
+);
+
+create table expression_ht_experiment_to_reference (
+	experiment_key int,
+	reference_key int
+);
+
+create table expression_ht_consolidated_sample (
+	consolidated_sample_key int primary key,
+	experiment_key int,
+	genotype_key int,
+	emapa_key int,
+	theiler_stage text,
+	age text,
+	age_min numeric,
+	age_max numeric,
+	sex text,
+	note text
+);
+
+create table expression_ht_sample_map (
+	sample_key int,
+	consolidated_sample_key int
+);
+
+create table expression_ht_consolidated_sample_measurement (
+	consolidated_measurement_key int primary key,
+	consolidated_sample_key int,
+	marker_key int,
+	average_qn_tpm numeric,
+	level text,
+	biological_replicate_count int
+);
+
+-- sort orders across classical and RNA-Seq results
+
+create table universal_expression_result (
+	uni_key int primary key,
+	result_key int,
+	is_classical int
+);
+
+create table uni_by_symbol (uni_key int primary key, by_symbol int);
+create table uni_by_age (uni_key int primary key, by_age int);
+create table uni_by_assaytype (uni_key int primary key, by_assaytype int);
+create table uni_by_detected (uni_key int primary key, by_detected int);
+create table uni_by_reference (uni_key int primary key, by_reference int);
+create table uni_by_structure (uni_key int primary key, by_structure int);
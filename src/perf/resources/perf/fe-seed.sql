@@ -0,0 +1,432 @@
+-- Fills the tables of fe-schema.sql with synthetic data.  PerfDataSeeder replaces each
+-- {name} with a cardinality (scaled for the run, except for the vocabularies), and runs
+-- the statements in order.  Values are derived from the keys, so a given scale always
+-- produces the same data.  Tables named perf_* are working tables, dropped at the end.
+
+-- anatomy: EMAPA terms form a tree (the parent of term k is (k + 2) / 4), each term
+-- spanning a range of Theiler stages within its parent's range
+
+insert into term (term_key, term, primary_id, vocab_name, definition)
+select k, 'structure ' || k, 'EMAPA:' || (16000 + k), 'EMAPA', 'definition of structure ' || k
+from generate_series(1, {emapaTerms}) k;
+
+insert into term_emap (term_key, start_stage, end_stage, default_parent_key)
+with recursive tree(term_key, parent_key, start_stage, end_stage) as (
+	select 1, null::int, 1, 28
+	union all
+	select c.k, p.term_key, least(p.start_stage + c.k % 3, p.end_stage),
+		greatest(least(p.start_stage + c.k % 3, p.end_stage), p.end_stage - c.k % 2)
+	from tree p join generate_series(2, {emapaTerms}) c(k) on (c.k + 2) / 4 = p.term_key
+)
+select term_key, start_stage, end_stage, parent_key from tree;
+
+-- EMAPS terms: one for each EMAPA term and stage, keyed 1000000 + (EMAPA key * 100) + stage,
+-- whose parent is the EMAPS term for the EMAPA parent at the same stage
+
+insert into term_emap (term_key, emapa_term_key, stage, default_parent_key)
+select 1000000 + a.term_key * 100 + s, a.term_key, s,
+	case when s between p.start_stage and p.end_stage then 1000000 + p.term_key * 100 + s end
+from term_emap a
+join generate_series(1, 28) s on s between a.start_stage and a.end_stage
+left outer join term_emap p on p.term_key = a.default_parent_key;
+
+insert into term (term_key, term, primary_id, vocab_name, definition)
+select te.term_key, t.term, 'EMAPS:' || (16000 + te.emapa_term_key) || lpad(te.stage::text, 2, '0'), 'EMAPS', t.definition
+from term_emap te join term t on t.term_key = te.emapa_term_key;
+
+insert into term_ancestor (term_key, ancestor_term_key)
+with recursive anc(term_key, ancestor_term_key) as (
+	select term_key, default_parent_key from term_emap where default_parent_key is not null
+	union all
+	select a.term_key, p.default_parent_key
+	from anc a join term_emap p on p.term_key = a.ancestor_term_key
+	where p.default_parent_key is not null
+)
+select term_key, ancestor_term_key from anc;
+
+insert into term_child (term_key, child_term_key, child_term, child_primary_id)
+select te.default_parent_key, t.term_key, t.term, t.primary_id
+from term_emap te join term t on t.term_key = te.term_key
+where te.emapa_term_key is null and te.default_parent_key is not null;
+
+insert into term_descendent (term_key, descendent_term_key, descendent_term, descendent_primary_id)
+select ta.ancestor_term_key, t.term_key, t.term, t.primary_id
+from term_ancestor ta join term t on t.term_key = ta.term_key
+where t.vocab_name = 'EMAPA';
+
+insert into term_emaps_child (term_key, emaps_child_term_key, emapa_term_key)
+select default_parent_key, term_key, emapa_term_key
+from term_emap where emapa_term_key is not null;
+
+insert into term_synonym (term_key, synonym)
+select term_key, term || ' (synonym)' from term where vocab_name = 'EMAPA' and term_key % 3 = 0;
+
+-- other vocabularies annotated to markers and results, each a tree like EMAPA's,
+-- keyed 2000000 + (vocabulary * 100000) + k
+
+create table perf_vocab (vocab_id int, vocab_name text, prefix text, annotation_type text);
+insert into perf_vocab values
+	(1, 'GO', 'GO:', 'GO/Marker'),
+	(2, 'Mammalian Phenotype', 'MP:', 'Mammalian Phenotype/Marker'),
+	(3, 'Disease Ontology', 'DOID:', 'DO/Marker'),
+	(4, 'Cell Ontology', 'CL:', 'Cell Ontology/Marker');
+
+insert into term (term_key, term, primary_id, vocab_name)
+select 2000000 + v.vocab_id * 100000 + k, v.vocab_name || ' term ' || k, v.prefix || lpad(k::text, 7, '0'), v.vocab_name
+from perf_vocab v, generate_series(1, {vocabTerms}) k;
+
+insert into term_ancestor (term_key, ancestor_term_key)
+with recursive anc(k, ancestor) as (
+	select k, (k + 2) / 4 from generate_series(2, {vocabTerms}) k
+	union all
+	select k, (ancestor + 2) / 4 from anc where ancestor > 1
+)
+select 2000000 + v.vocab_id * 100000 + a.k, 2000000 + v.vocab_id * 100000 + a.ancestor
+from perf_vocab v, anc a;
+
+-- the children of each root are the header terms
+insert into term_to_header (term_key, header_term_key, label, accid)
+select t.term_key, h.term_key, h.term, t.primary_id
+from term_ancestor ta
+join term t on t.term_key = ta.term_key
+join term h on h.term_key = ta.ancestor_term_key
+where t.vocab_name in ('Disease Ontology', 'Cell Ontology')
+	and h.term_key % 100000 between 2 and 5;
+
+insert into term (term_key, term, primary_id, vocab_name) values
+	(3000001, 'gene', 'MCV:0000001', 'Marker Category'),
+	(3000002, 'protein coding gene', 'MCV:0000002', 'Marker Category'),
+	(3000003, 'non-coding RNA gene', 'MCV:0000003', 'Marker Category'),
+	(3000004, 'lncRNA gene', 'MCV:0000004', 'Marker Category'),
+	(3000005, 'miRNA gene', 'MCV:0000005', 'Marker Category'),
+	(3000006, 'pseudogene', 'MCV:0000006', 'Marker Category');
+
+insert into term_ancestor (term_key, ancestor_term_key) values
+	(3000002, 3000001), (3000003, 3000001), (3000004, 3000003), (3000004, 3000001),
+	(3000005, 3000003), (3000005, 3000001), (3000006, 3000001);
+
+update term_ancestor ta set ancestor_term = t.term, ancestor_primary_id = t.primary_id
+from term t where t.term_key = ta.ancestor_term_key;
+
+-- mouse markers (1 .. {markers}), and a human homolog for each
+
+insert into marker (marker_key, symbol, primary_id, name, marker_subtype, organism, status)
+select k, 'Gene' || k, 'MGI:' || (1000000 + k), 'gene ' || k,
+	(array['protein coding gene', 'protein coding gene', 'protein coding gene', 'lncRNA gene',
+		'miRNA gene', 'pseudogene'])[1 + k % 6],
+	'mouse', 'official'
+from generate_series(1, {markers}) k;
+
+insert into marker (marker_key, symbol, primary_id, name, marker_subtype, organism, status)
+select {markers} + k, 'GENE' || k, 'HGNC:' || k, 'human gene ' || k, 'protein coding gene', 'human', 'official'
+from generate_series(1, {markers}) k;
+
+insert into marker_sequence_num (marker_key, by_symbol, by_location)
+select k, k, 1 + mod(k::bigint * 7919, {markers})
+from generate_series(1, {markers}) k;
+
+insert into marker_location (marker_key, sequence_num, location_type, chromosome, cytogenetic_offset,
+	start_coordinate, end_coordinate, strand)
+select k, 1, 'coordinates',
+	case when k % 20 = 0 then 'X' else (1 + k % 19)::text end,
+	(array['A1', 'A2', 'B', 'C', 'D', 'E1', 'F'])[1 + k % 7],
+	case when k % 25 != 0 then 3000000 + mod(k::bigint * 2654435761, 190000000) end,
+	case when k % 25 != 0 then 3000000 + mod(k::bigint * 2654435761, 190000000) + 1000 + k % 50000 end,
+	case when k % 2 = 0 then '+' else '-' end
+from generate_series(1, {markers}) k;
+
+insert into marker_location (marker_key, sequence_num, location_type, cm_offset)
+select k, 2, 'centimorgans', case when k % 30 = 0 then '-1' else (mod(k * 37, 9000) / 100.0)::text end
+from generate_series(1, {markers}) k;
+
+insert into marker_id (marker_key, acc_id, logical_db)
+select k, 'ENSMUSG' || lpad(k::text, 11, '0'), 'Ensembl Gene Model'
+from generate_series(1, {markers}) k where k % 2 = 0;
+
+insert into marker_counts (marker_key, gxd_literature_count)
+select k, case when k % 50 = 0 then 0 else 1 + k % 20 end
+from generate_series(1, {markers}) k;
+
+insert into marker_searchable_nomenclature (marker_key, term, term_type)
+select k, 'Syn' || k, 'synonym' from generate_series(1, {markers}) k where k % 2 = 0
+union all
+select k, 'RelSyn' || k, 'related synonym' from generate_series(1, {markers}) k where k % 5 = 0;
+
+insert into marker_grid_heading (heading_key, heading_abbreviation, grid_name, grid_name_abbreviation)
+select h, 'MP header ' || h, 'Mammalian Phenotype', 'MP' from generate_series(1, 28) h
+union all
+select 100 + h, 'MF header ' || h, 'Molecular Function', 'GO' from generate_series(1, 10) h
+union all
+select 200 + h, 'CC header ' || h, 'Cellular Component', 'GO' from generate_series(1, 10) h
+union all
+select 300 + h, 'BP header ' || h, 'Biological Process', 'GO' from generate_series(1, 15) h;
+
+insert into marker_grid_cell (marker_key, heading_key, value)
+select k, h.heading_key, 1
+from generate_series(1, {markers}) k, marker_grid_heading h
+where mod(k::bigint * 7919 + h.heading_key * 104729, 4) = 0;
+
+-- annotations: eight for each mouse marker (the last one a NOT), and DO annotations for
+-- a third of the human markers, through homology clusters
+
+insert into annotation (annotation_key, term_key, term_id, vocab_name, qualifier, annotation_type)
+select (k - 1) * 8 + j, t.term_key, t.primary_id, t.vocab_name,
+	case when j = 8 then 'NOT' end, v.annotation_type
+from generate_series(1, {markers}) k
+cross join generate_series(1, 8) j
+join perf_vocab v on v.vocab_id = 1 + j % 4
+join term t on t.term_key = 2000000 + v.vocab_id * 100000 + 1 + mod(k::bigint * 7919 + j * 104729, {vocabTerms});
+
+insert into marker_to_annotation (marker_key, annotation_key, annotation_type)
+select 1 + (annotation_key - 1) / 8, annotation_key, annotation_type
+from annotation;
+
+insert into annotation (annotation_key, term_key, term_id, vocab_name, qualifier, annotation_type)
+select {markers} * 8 + k, t.term_key, t.primary_id, t.vocab_name, null, 'DO/Human Marker'
+from generate_series(1, {markers}) k
+join term t on t.term_key = 2300000 + 1 + mod(k * 31, {vocabTerms})
+where k % 3 = 0;
+
+insert into marker_to_annotation (marker_key, annotation_key, annotation_type)
+select {markers} + k, {markers} * 8 + k, 'DO/Human Marker'
+from generate_series(1, {markers}) k where k % 3 = 0;
+
+insert into homology_cluster (cluster_key, source)
+select k, 'HGNC and HomoloGene' from generate_series(1, {markers}) k;
+
+insert into homology_cluster_organism (cluster_organism_key, cluster_key)
+select 2 * k - 1, k from generate_series(1, {markers}) k
+union all
+select 2 * k, k from generate_series(1, {markers}) k;
+
+insert into homology_cluster_organism_to_marker (cluster_organism_key, marker_key)
+select 2 * k - 1, k from generate_series(1, {markers}) k
+union all
+select 2 * k, {markers} + k from generate_series(1, {markers}) k;
+
+-- alleles, genotypes (-1 is the wild type) and references
+
+insert into allele (allele_key, primary_id, is_recombinase, is_wild_type)
+select a, 'MGI:' || (5000000 + a), case when a % 17 = 0 then 1 else 0 end, case when a % 23 = 0 then 1 else 0 end
+from generate_series(1, {alleles}) a;
+
+insert into marker_to_allele (marker_key, allele_key)
+select 1 + mod(a::bigint * 7919, {markers}), a from generate_series(1, {alleles}) a;
+
+insert into genotype (genotype_key, combination_1, combination_2, background_strain, is_conditional)
+values (-1, null, null, 'Not Specified', 0);
+
+insert into genotype (genotype_key, combination_1, combination_2, background_strain, is_conditional)
+select g, 'Allele(MGI:' || (5000000 + 1 + mod(g * 31, {alleles})) || ')/Allele(+)',
+	'Gene' || g || '<tm1>/Gene' || g || '<+>',
+	(array['involves: 129S1/Sv * C57BL/6J', 'C57BL/6J', 'B6.129P2', 'FVB/N', 'Not Specified'])[1 + g % 5],
+	case when g % 10 = 0 then 1 else 0 end
+from generate_series(1, {genotypes}) g;
+
+insert into allele_to_genotype (allele_key, genotype_key)
+select 1 + mod(g * 31, {alleles}), g from generate_series(1, {genotypes}) g
+union all
+select 1 + mod(g::bigint * 7919, {alleles}), g from generate_series(1, {genotypes}) g where g % 3 = 0;
+
+insert into reference (reference_key, jnum_id, pubmed_id, mini_citation)
+select r, 'J:' || (100000 + r), (20000000 + r)::text, 'Author' || r || ' A, et al., J Dev Biol ' || (1990 + r % 35)
+from generate_series(1, {references}) r;
+
+-- classical assays: each has one marker (skewed, so a few markers have many results),
+-- reference and genotype; assays of the first three types are in situ, with specimens
+
+create table perf_assay_type (seq int, assay_type text);
+insert into perf_assay_type values
+	(1, 'Immunohistochemistry'), (2, 'RNA in situ'), (3, 'In situ reporter (knock in)'),
+	(4, 'Northern blot'), (5, 'Western blot'), (6, 'RT-PCR'), (7, 'RNase protection'),
+	(8, 'Nuclease S1'), (9, 'Recombinase reporter'), (10, 'In situ reporter (transgenic)');
+
+create table perf_assay as
+select a as assay_key,
+	(array[1, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2, 3, 3, 4, 5, 6, 6, 7, 9, 10])[1 + mod(a * 31, 20)::int] as assay_type_seq,
+	1 + floor({markers} * power(mod(a * 7919, 10007) / 10007.0, 2))::int as marker_key,
+	1 + mod(a * 104729, {references}) as reference_key,
+	case when mod(a, 3) = 0 then 1 + mod(a * 15485863, {genotypes}) else -1 end as genotype_key
+from generate_series(1::bigint, {assays}) a;
+
+insert into expression_assay (assay_key, assay_type, assay_type_seq, has_image, probe_key, antibody_key)
+select pa.assay_key, pat.assay_type, pat.seq,
+	case when pat.seq <= 3 and pa.assay_key % 3 != 0 then 1 else 0 end,
+	case when pat.seq != 1 and pat.seq != 5 then pa.assay_key end,
+	case when pat.seq = 1 or pat.seq = 5 then pa.assay_key end
+from perf_assay pa join perf_assay_type pat on pat.seq = pa.assay_type_seq;
+
+insert into assay_specimen (specimen_key, specimen_label, hybridization)
+select s, 'Specimen ' || s, (array['section', 'whole mount', 'section from whole mount'])[1 + s % 3]
+from generate_series(1, {specimens}) s;
+
+create table perf_emaps as
+select row_number() over (order by te.term_key) as n, te.term_key, te.emapa_term_key, te.stage, t.term
+from term_emap te join term t on t.term_key = te.emapa_term_key
+where te.emapa_term_key is not null;
+create index perf_emaps_n on perf_emaps (n);
+
+-- classical results: consecutive result keys belong to the same assay
+
+insert into expression_result_summary
+select r, ea.assay_key, 'MGI:' || (6000000 + ea.assay_key), ea.assay_type, pa.marker_key, 'Gene' || pa.marker_key,
+	e.term_key, e.term, e.stage::text,
+	(array['Yes', 'Yes', 'No', 'Yes', 'Unknown/Ambiguous', 'No'])[1 + (r % 6)::int],
+	case when ea.has_image = 1 and r % 2 = 0 then 1 else 0 end,
+	case when e.stage < 27 then 'E' || round(e.stage * 0.7, 1) else 'P' || (e.stage - 26) * 10 end,
+	round(e.stage * 0.7, 1), round(e.stage * 0.7, 1) + 0.5,
+	'J:' || (100000 + pa.reference_key),
+	case r % 6 when 2 then 'Absent' when 5 then 'Absent' when 4 then 'Ambiguous'
+		else (array['Present', 'Trace', 'Weak', 'Moderate', 'Strong', 'Very strong'])[1 + (r % 7 % 6)::int] end,
+	(array['Homogeneous', 'Regionally restricted', 'Single cells', 'Scattered', 'Not Specified'])[1 + (r * 7 % 5)::int],
+	case when pa.genotype_key = -1 then 1 else 0 end,
+	pa.genotype_key, pa.reference_key,
+	case when ea.assay_type_seq <= 3 then 1 + mod(r * 31, {specimens}) end,
+	(array['Female', 'Male', 'Pooled', 'Not Specified'])[1 + (r % 4)::int]
+from generate_series(1::bigint, {results}) r
+join perf_assay pa on pa.assay_key = 1 + (r - 1) * {assays} / {results}
+join expression_assay ea on ea.assay_key = pa.assay_key
+join perf_emaps e on e.n = 1 + mod(r * 7919, (select count(1) from perf_emaps));
+
+insert into expression_result_sequence_num (result_key, by_assay_type, by_gene_symbol, by_age, by_expressed,
+	by_structure, by_mutant_alleles, by_reference)
+select result_key, 1 + mod(result_key * 31, {results}), 1 + mod(result_key * 7919, {results}),
+	1 + mod(result_key * 104729, {results}), 1 + mod(result_key * 1299709, {results}),
+	1 + mod(result_key * 15485863, {results}), 1 + mod(result_key * 179424673, {results}), result_key
+from expression_result_summary;
+
+insert into expression_result_cell_type (result_key, cell_type, cell_type_id)
+select ers.result_key, t.term, t.primary_id
+from expression_result_summary ers
+join term t on t.term_key = 2400000 + 6 + mod(ers.result_key, {vocabTerms} - 6)
+where ers.result_key % 20 = 0;
+
+create table perf_system as
+select term_key as emapa_key, ancestor_term_key as system_key
+from term_ancestor where term_key <= {emapaTerms} and ancestor_term_key between 2 and 5
+union all
+select k, k from generate_series(2, 5) k;
+
+insert into expression_result_anatomical_systems (result_key, anatomical_system, emapa_id)
+select ers.result_key, t.term, t.primary_id
+from expression_result_summary ers
+join term_emap te on te.term_key = ers.structure_key
+join perf_system s on s.emapa_key = te.emapa_term_key
+join term t on t.term_key = s.system_key;
+
+-- images, with two panes each (all but every 20th image are in pixeldb)
+
+insert into image (image_key, mgi_id, figure_label, pixeldb_numeric_id, width, height)
+select i, 'MGI:' || (7000000 + i), 'Fig. ' || (1 + i % 8),
+	case when i % 20 != 0 then (10000 + i)::text end, 800 + i % 400, 600 + i % 300
+from generate_series(1, {images}) i;
+
+insert into expression_imagepane (imagepane_key, image_key, pane_label, x, y, width, height,
+	by_assay_type, by_marker, by_hybridization_asc, by_hybridization_desc)
+select p, 1 + (p - 1) / 2, case when p % 7 = 0 then null when p % 2 = 1 then 'A' else 'B' end,
+	(p % 2) * 400, 0, 400, 600,
+	1 + mod(p * 31, {imagepanes}), 1 + mod(p * 7919, {imagepanes}),
+	1 + mod(p * 104729, {imagepanes}), {imagepanes} - mod(p * 104729, {imagepanes})
+from generate_series(1::bigint, {imagepanes}) p;
+
+insert into expression_result_to_imagepane (result_key, imagepane_key)
+select result_key, 1 + mod(result_key * 31, {imagepanes})
+from expression_result_summary where has_image = 1;
+
+-- RNA-Seq: experiments, their consolidated samples (most wild type), and one
+-- measurement per sample and marker
+
+insert into expression_ht_experiment (experiment_key, primary_id, name)
+select x, 'E-MTAB-' || (1000 + x), 'RNA-Seq experiment ' || x
+from generate_series(1, {experiments}) x;
+
+insert into expression_ht_experiment_to_reference (experiment_key, reference_key)
+select x, 1 + mod(x * 31, {references}) from generate_series(1, {experiments}) x;
+
+insert into expression_ht_consolidated_sample (consolidated_sample_key, experiment_key, genotype_key, emapa_key,
+	theiler_stage, age, age_min, age_max, sex, note)
+select s, 1 + (s - 1) * {experiments} / {samples},
+	case when s % 4 = 0 then 1 + mod(s * 7, {genotypes}) else -1 end,
+	e.emapa_term_key, e.stage::text,
+	case when e.stage < 27 then 'embryonic day ' || round(e.stage * 0.7, 1) else 'postnatal adult' end,
+	round(e.stage * 0.7, 1), round(e.stage * 0.7, 1) + 0.5,
+	(array['Female', 'Male', 'Pooled', 'Not Specified'])[1 + (s % 4)::int],
+	case when s % 10 = 0 then 'sample note ' || s end
+from generate_series(1::bigint, {samples}) s
+join perf_emaps e on e.n = 1 + mod(s * 7919, (select count(1) from perf_emaps));
+
+insert into expression_ht_sample_map (sample_key, consolidated_sample_key)
+select s * 4 + j, s from generate_series(1, {samples}) s, generate_series(0, 3) j where j <= s % 4;
+
+insert into expression_ht_consolidated_sample_measurement (consolidated_measurement_key, consolidated_sample_key,
+	marker_key, average_qn_tpm, level, biological_replicate_count)
+select m, 1 + (m - 1) * {samples} / {measurements}, 1 + mod(m - 1, {markers}), tpm,
+	case when tpm < 0.5 then 'Below Cutoff' when tpm < 10 then 'Low' when tpm < 1000 then 'Medium' else 'High' end,
+	1 + m % 4
+from (select m, power(mod(m * 7919, 10007) / 10007.0, 3) * 5000 as tpm
+	from generate_series(1::bigint, {measurements}) m) ms;
+
+-- result sort orders, over classical results then RNA-Seq measurements
+
+insert into universal_expression_result (uni_key, result_key, is_classical)
+select result_key, result_key, 1 from expression_result_summary
+union all
+select {results} + consolidated_measurement_key, consolidated_measurement_key, 0
+from expression_ht_consolidated_sample_measurement;
+
+insert into uni_by_symbol select uni_key, 1 + mod(uni_key::bigint * 31, {results} + {measurements}) from universal_expression_result;
+insert into uni_by_age select uni_key, 1 + mod(uni_key::bigint * 7919, {results} + {measurements}) from universal_expression_result;
+insert into uni_by_assaytype select uni_key, 1 + mod(uni_key::bigint * 104729, {results} + {measurements}) from universal_expression_result;
+insert into uni_by_detected select uni_key, 1 + mod(uni_key::bigint * 1299709, {results} + {measurements}) from universal_expression_result;
+insert into uni_by_reference select uni_key, 1 + mod(uni_key::bigint * 15485863, {results} + {measurements}) from universal_expression_result;
+insert into uni_by_structure select uni_key, 1 + mod(uni_key::bigint * 179424673, {results} + {measurements}) from universal_expression_result;
+
+-- indexes on the keys the indexers join and filter on
+
+create index term_vocab on term (vocab_name);
+create index term_primary_id on term (primary_id);
+create index term_term on term (term);
+create index term_ancestor_term on term_ancestor (term_key);
+create index term_ancestor_ancestor on term_ancestor (ancestor_term_key);
+create index term_ancestor_ancestor_id on term_ancestor (ancestor_primary_id);
+create index term_child_term on term_child (term_key);
+create index term_child_child on term_child (child_term_key);
+create index term_descendent_term on term_descendent (term_key);
+create index term_emap_emapa on term_emap (emapa_term_key, stage);
+create index term_emaps_child_child on term_emaps_child (emaps_child_term_key);
+create index term_synonym_term on term_synonym (term_key);
+create index term_to_header_term on term_to_header (term_key);
+create index marker_location_marker on marker_location (marker_key);
+create index marker_id_marker on marker_id (marker_key);
+create index msn_marker on marker_searchable_nomenclature (marker_key);
+create index marker_grid_cell_marker on marker_grid_cell (marker_key);
+create index mta_marker on marker_to_annotation (marker_key);
+create index mta_annotation on marker_to_annotation (annotation_key);
+create index hcotm_cluster_organism on homology_cluster_organism_to_marker (cluster_organism_key);
+create index hcotm_marker on homology_cluster_organism_to_marker (marker_key);
+create index marker_to_allele_allele on marker_to_allele (allele_key);
+create index allele_to_genotype_genotype on allele_to_genotype (genotype_key);
+create index ers_marker on expression_result_summary (marker_key);
+create index ers_assay on expression_result_summary (assay_key);
+create index ers_genotype on expression_result_summary (genotype_key);
+create index ers_structure on expression_result_summary (structure_key);
+create index ers_specimen on expression_result_summary (specimen_key);
+create index ercell_result on expression_result_cell_type (result_key);
+create index eras_result on expression_result_anatomical_systems (result_key);
+create index eri_result on expression_result_to_imagepane (result_key);
+create index eri_imagepane on expression_result_to_imagepane (imagepane_key);
+create index imagepane_image on expression_imagepane (image_key);
+create index cs_experiment on expression_ht_consolidated_sample (experiment_key);
+create index cs_genotype on expression_ht_consolidated_sample (genotype_key);
+create index sample_map_sample on expression_ht_sample_map (consolidated_sample_key);
+create index sm_sample on expression_ht_consolidated_sample_measurement (consolidated_sample_key);
+create index sm_marker on expression_ht_consolidated_sample_measurement (marker_key);
+create index uer_result on universal_expression_result (result_key, is_classical);
+
+drop table perf_vocab;
+drop table perf_assay_type;
+drop table perf_assay;
+drop table perf_emaps;
+drop table perf_system;
+
+analyze;